@@ -17,7 +17,10 @@
 package org.jetbrains.jet.codegen;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.asm4.ClassVisitor;
 import org.jetbrains.asm4.ClassWriter;
+import org.jetbrains.asm4.tree.ClassNode;
 import org.jetbrains.asm4.util.TraceClassVisitor;
 
 import java.io.PrintWriter;
@@ -35,7 +38,7 @@ public class ClassBuilderFactories {
 
         @Override
         public ClassBuilder newClassBuilder() {
-            return new TraceBuilder(new BinaryClassWriter());
+            return new TraceBuilder(new BinaryClassWriter(null));
         }
 
         @Override
@@ -85,7 +88,14 @@ public class ClassBuilderFactories {
     private ClassBuilderFactories() {
     }
 
-    public static ClassBuilderFactory binaries(final boolean stubs) {
+    public static ClassBuilderFactory binaries(boolean stubs) {
+        return binaries(stubs, null);
+    }
+
+    /**
+     * @param classHierarchy if not null, answers common super class queries of frame computation before classes are loaded
+     */
+    public static ClassBuilderFactory binaries(final boolean stubs, @Nullable final DescriptorBasedClassHierarchy classHierarchy) {
         return new ClassBuilderFactory() {
             @NotNull
             @Override
@@ -95,7 +105,7 @@ public class ClassBuilderFactories {
 
             @Override
             public ClassBuilder newClassBuilder() {
-                return new ClassBuilder.Concrete(new BinaryClassWriter());
+                return new ClassBuilder.Concrete(new BinaryClassWriter(classHierarchy));
             }
 
             @Override
@@ -111,13 +121,82 @@ public class ClassBuilderFactories {
         };
     }
 
+    /**
+     * Generated classes are only recorded as ASM trees. Frames are computed and bytes are written when {@code asBytes()}
+     * is called, which may happen for different classes on different threads at once. The tree of a class is dropped once
+     * its bytes are written, even if its builder is still referenced, so {@code asBytes()} may be called only once per class
+     */
+    public static ClassBuilderFactory deferredBinaries(boolean stubs) {
+        return deferredBinaries(stubs, null);
+    }
+
+    public static ClassBuilderFactory deferredBinaries(final boolean stubs, @Nullable final DescriptorBasedClassHierarchy classHierarchy) {
+        return new ClassBuilderFactory() {
+            @NotNull
+            @Override
+            public ClassBuilderMode getClassBuilderMode() {
+                return stubs ? ClassBuilderMode.STUBS : ClassBuilderMode.FULL;
+            }
+
+            @Override
+            public ClassBuilder newClassBuilder() {
+                return new DeferredClassBuilder();
+            }
+
+            @Override
+            public String asText(ClassBuilder builder) {
+                throw new UnsupportedOperationException("BINARIES generator asked for text");
+            }
+
+            @Override
+            public byte[] asBytes(ClassBuilder builder) {
+                ClassNode node = ((DeferredClassBuilder) builder).release();
+                ClassWriter writer = new BinaryClassWriter(classHierarchy);
+                node.accept(writer);
+                return writer.toByteArray();
+            }
+        };
+    }
+
+    private static class DeferredClassBuilder extends ClassBuilder {
+        @Nullable
+        private ClassNode node = new ClassNode();
+
+        @NotNull
+        @Override
+        public ClassVisitor getVisitor() {
+            if (node == null) {
+                throw new IllegalStateException("Class is already written");
+            }
+            return node;
+        }
+
+        @NotNull
+        public ClassNode release() {
+            ClassNode result = (ClassNode) getVisitor();
+            node = null;
+            return result;
+        }
+    }
+
     private static class BinaryClassWriter extends ClassWriter {
-        public BinaryClassWriter() {
+        @Nullable
+        private final DescriptorBasedClassHierarchy classHierarchy;
+
+        public BinaryClassWriter(@Nullable DescriptorBasedClassHierarchy classHierarchy) {
             super(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+            this.classHierarchy = classHierarchy;
         }
 
         @Override
         protected String getCommonSuperClass(String type1, String type2) {
+            if (classHierarchy != null) {
+                String commonSuperClass = classHierarchy.getCommonSuperClass(type1, type2);
+                if (commonSuperClass != null) {
+                    return commonSuperClass;
+                }
+            }
+
             try {
                 return super.getCommonSuperClass(type1, type2);
             }
@@ -32,6 +32,7 @@ import org.jetbrains.jet.lang.resolve.name.FqName;
 import javax.inject.Inject;
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static org.jetbrains.jet.codegen.AsmUtil.isPrimitive;
 
@@ -40,6 +41,7 @@ public final class ClassFileFactory extends GenerationStateAware {
 
     private final Map<FqName, NamespaceCodegen> ns2codegen = new HashMap<FqName, NamespaceCodegen>();
     private final Map<String, ClassBuilder> generators = new LinkedHashMap<String, ClassBuilder>();
+    private final ConcurrentMap<String, byte[]> writtenClasses = new ConcurrentHashMap<String, byte[]>();
     private boolean isDone = false;
 
     public ClassFileFactory(@NotNull GenerationState state) {
@@ -82,9 +84,51 @@ public final class ClassFileFactory extends GenerationStateAware {
 
     public byte[] asBytes(String file) {
         done();
+        byte[] bytes = writtenClasses.get(file);
+        if (bytes != null) return bytes;
         return builderFactory.asBytes(generators.get(file));
     }
 
+    /**
+     * Converts every generated class to bytes on {@code threads} threads, so that subsequent {@link #asBytes(String)} calls
+     * are served from memory. The bytes of each class do not depend on the thread that wrote them, and {@link #files()}
+     * keeps the generation order, so the output stays deterministic. Builders of deferred factories drop their trees once
+     * written, so only the bytes are kept
+     */
+    public void writeAllClassesInParallel(int threads) {
+        done();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(generators.size());
+            for (final Map.Entry<String, ClassBuilder> entry : generators.entrySet()) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        writtenClasses.put(entry.getKey(), builderFactory.asBytes(entry.getValue()));
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
     public List<String> files() {
         done();
         return new ArrayList<String>(generators.keySet());
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.codegen;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.asm4.Type;
+import org.jetbrains.jet.codegen.state.JetTypeMapper;
+import org.jetbrains.jet.codegen.state.JetTypeMapperMode;
+import org.jetbrains.jet.lang.descriptors.ClassDescriptor;
+import org.jetbrains.jet.lang.descriptors.ClassifierDescriptor;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.DelegatingBindingTrace;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.types.JetType;
+
+import java.util.*;
+
+import static org.jetbrains.jet.codegen.CodegenUtil.isInterface;
+
+/**
+ * Answers common super class queries of frame computation from resolved class descriptors, so that
+ * classes don't have to be loaded by the compiler. A class is known if it is declared in the compiled sources
+ * (and is not local), or if it is a supertype of a known class.
+ *
+ * Thread-safe: frames of different classes may be computed in parallel.
+ */
+public class DescriptorBasedClassHierarchy {
+    private static final String OBJECT = "java/lang/Object";
+    private static final ClassInfo OBJECT_INFO = new ClassInfo(false, Collections.<String>emptyList(), Collections.singleton(OBJECT));
+
+    private final BindingContext bindingContext;
+    private final JetTypeMapper typeMapper;
+
+    private final Map<String, ClassDescriptor> descriptors = new HashMap<String, ClassDescriptor>();
+    private final Map<String, ClassInfo> infos = new HashMap<String, ClassInfo>();
+
+    public DescriptorBasedClassHierarchy(@NotNull BindingContext bindingContext, boolean mapBuiltinsToJava) {
+        this.bindingContext = bindingContext;
+        // Names of non-local classes do not depend on the codegen state, so a separate mapper can be used
+        this.typeMapper = new JetTypeMapper(new DelegatingBindingTrace(bindingContext, "trace for class hierarchy"),
+                                            mapBuiltinsToJava, ClassBuilderMode.FULL);
+    }
+
+    /**
+     * @return internal name of the common super class in the same sense as {@link org.jetbrains.asm4.ClassWriter#getCommonSuperClass},
+     *         or null if one of the classes is not known
+     */
+    @Nullable
+    public synchronized String getCommonSuperClass(@NotNull String type1, @NotNull String type2) {
+        ClassInfo info1 = getInfo(type1);
+        ClassInfo info2 = info1 == null ? null : getInfo(type2);
+        if (info1 == null || info2 == null) return null;
+
+        if (info2.supertypes.contains(type1)) return type1;
+        if (info1.supertypes.contains(type2)) return type2;
+        if (info1.isInterface || info2.isInterface) return OBJECT;
+
+        for (String superClass : info1.superClasses) {
+            if (info2.supertypes.contains(superClass)) return superClass;
+        }
+        return OBJECT;
+    }
+
+    @Nullable
+    private ClassInfo getInfo(@NotNull String internalName) {
+        if (OBJECT.equals(internalName)) return OBJECT_INFO;
+
+        ClassInfo info = infos.get(internalName);
+        if (info == null) {
+            ClassDescriptor descriptor = findDescriptor(internalName);
+            if (descriptor == null) return null;
+
+            info = computeInfo(internalName, descriptor);
+            infos.put(internalName, info);
+        }
+        return info;
+    }
+
+    @Nullable
+    private ClassDescriptor findDescriptor(@NotNull String internalName) {
+        ClassDescriptor descriptor = descriptors.get(internalName);
+        if (descriptor != null || internalName.startsWith("[")) return descriptor;
+
+        FqName fqName = new FqName(internalName.replace('/', '.').replace('$', '.'));
+        descriptor = bindingContext.get(BindingContext.FQNAME_TO_CLASS_DESCRIPTOR, fqName);
+        // '$' may be a part of the class name as well, so the guess is checked
+        if (descriptor == null || !internalName.equals(getInternalName(descriptor))) return null;
+
+        descriptors.put(internalName, descriptor);
+        return descriptor;
+    }
+
+    /**
+     * Supertypes are those of the JVM class: a trait extending a class is compiled to an interface which does not extend it,
+     * so the class is not a supertype of the trait here, while traits of the super classes are supertypes of the class.
+     */
+    @NotNull
+    private ClassInfo computeInfo(@NotNull String internalName, @NotNull ClassDescriptor descriptor) {
+        boolean isInterface = isInterface(descriptor);
+        List<String> superClasses = new ArrayList<String>();
+        Set<String> supertypes = new HashSet<String>();
+        supertypes.add(internalName);
+        supertypes.add(OBJECT);
+
+        Queue<ClassDescriptor> interfaces = new LinkedList<ClassDescriptor>();
+        addInterfaces(descriptor, interfaces);
+
+        // The chain of super classes is walked on its own, traits reached on the way can't change it
+        if (!isInterface) {
+            ClassDescriptor current = descriptor;
+            while (true) {
+                ClassDescriptor superClass = getSuperClass(current);
+                if (superClass == null) break;
+
+                String superName = getInternalName(superClass);
+                // java/lang/Object ends the chain
+                if (superName == null || !supertypes.add(superName)) break;
+
+                descriptors.put(superName, superClass);
+                superClasses.add(superName);
+                addInterfaces(superClass, interfaces);
+                current = superClass;
+            }
+        }
+
+        while (!interfaces.isEmpty()) {
+            ClassDescriptor current = interfaces.poll();
+            String name = getInternalName(current);
+            if (name == null || !supertypes.add(name)) continue;
+
+            descriptors.put(name, current);
+            addInterfaces(current, interfaces);
+        }
+
+        return new ClassInfo(isInterface, superClasses, supertypes);
+    }
+
+    @Nullable
+    private static ClassDescriptor getSuperClass(@NotNull ClassDescriptor descriptor) {
+        for (ClassDescriptor superDescriptor : getDirectSuperDescriptors(descriptor)) {
+            if (!isInterface(superDescriptor)) return superDescriptor;
+        }
+        return null;
+    }
+
+    private static void addInterfaces(@NotNull ClassDescriptor descriptor, @NotNull Queue<ClassDescriptor> interfaces) {
+        for (ClassDescriptor superDescriptor : getDirectSuperDescriptors(descriptor)) {
+            if (isInterface(superDescriptor)) {
+                interfaces.add(superDescriptor);
+            }
+        }
+    }
+
+    @NotNull
+    private static List<ClassDescriptor> getDirectSuperDescriptors(@NotNull ClassDescriptor descriptor) {
+        List<ClassDescriptor> result = new ArrayList<ClassDescriptor>();
+        for (JetType supertype : descriptor.getTypeConstructor().getSupertypes()) {
+            ClassifierDescriptor classifier = supertype.getConstructor().getDeclarationDescriptor();
+            if (classifier instanceof ClassDescriptor) {
+                result.add((ClassDescriptor) classifier);
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    private String getInternalName(@NotNull ClassDescriptor descriptor) {
+        Type type = typeMapper.mapType(descriptor.getDefaultType(), JetTypeMapperMode.IMPL);
+        return type.getSort() == Type.OBJECT ? type.getInternalName() : null;
+    }
+
+    private static class ClassInfo {
+        private final boolean isInterface;
+        // Super classes from the nearest one, java/lang/Object excluded
+        private final List<String> superClasses;
+        // All supertypes including the class itself and java/lang/Object
+        private final Set<String> supertypes;
+
+        private ClassInfo(boolean isInterface, @NotNull List<String> superClasses, @NotNull Set<String> supertypes) {
+            this.isInterface = isInterface;
+            this.superClasses = superClasses;
+            this.supertypes = supertypes;
+        }
+    }
+}
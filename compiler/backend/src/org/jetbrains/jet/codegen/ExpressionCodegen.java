@@ -2230,9 +2230,7 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
                     JvmClassName className =
                             classNameForScriptDescriptor(bindingContext,
                                                                         receiver.getDeclarationDescriptor());
-                    String fieldName = state.getScriptCodegen().getScriptFieldName(receiver.getDeclarationDescriptor());
-                    result.put(currentScriptClassName.getAsmType(), v);
-                    StackValue.field(className.getAsmType(), currentScriptClassName, fieldName, false).put(className.getAsmType(), v);
+                    StackValue.field(className.getAsmType(), className, JvmAbi.INSTANCE_FIELD, true).put(className.getAsmType(), v);
                 }
                 return;
             }
@@ -3695,6 +3693,30 @@ The "returned" value of try expression with no finally is either the last expres
         Label end = new Label();
         boolean hasElse = JetPsiUtil.checkWhenExpressionHasSingleElse(expression);
 
+        SwitchCodegenUtil.SwitchTable switchTable = SwitchCodegenUtil.getSwitchTable(expression, bindingContext, typeMapper);
+        if (switchTable != null) {
+            generateWhenAsSwitch(expression, switchTable, StackValue.local(subjectLocal, subjectType), resultType, hasElse, end);
+        }
+        else {
+            generateWhenAsChain(expression, subjectType, subjectLocal, resultType, hasElse, end);
+        }
+
+        markLineNumber(expression);
+        v.mark(end);
+
+        myFrameMap.leaveTemp(subjectType);
+        tempVariables.remove(expr);
+        return StackValue.onStack(resultType);
+    }
+
+    private void generateWhenAsChain(
+            @NotNull JetWhenExpression expression,
+            @NotNull Type subjectType,
+            int subjectLocal,
+            @NotNull Type resultType,
+            boolean hasElse,
+            @NotNull Label end
+    ) {
         Label nextCondition = null;
         for (JetWhenEntry whenEntry : expression.getEntries()) {
             if (nextCondition != null) {
@@ -3727,13 +3749,80 @@ The "returned" value of try expression with no finally is either the last expres
             v.mark(nextCondition);
             throwNewException(CLASS_NO_PATTERN_MATCHED_EXCEPTION);
         }
+    }
 
-        markLineNumber(expression);
-        v.mark(end);
+    private void generateWhenAsSwitch(
+            @NotNull JetWhenExpression expression,
+            @NotNull SwitchCodegenUtil.SwitchTable switchTable,
+            @NotNull StackValue subject,
+            @NotNull Type resultType,
+            boolean hasElse,
+            @NotNull Label end
+    ) {
+        Map<JetWhenEntry, Label> entryLabels = new HashMap<JetWhenEntry, Label>();
+        Label defaultLabel = new Label();
+        for (JetWhenEntry whenEntry : expression.getEntries()) {
+            entryLabels.put(whenEntry, whenEntry.isElse() ? defaultLabel : new Label());
+        }
+
+        SortedMap<Integer, Label> cases = new TreeMap<Integer, Label>();
+        if (switchTable.getKind() == SwitchCodegenUtil.SubjectKind.STRING_HASH_CODE) {
+            // Strings with the same hash code are told apart by equals() in the order of entries
+            Map<Integer, List<String>> buckets = new LinkedHashMap<Integer, List<String>>();
+            for (Object key : switchTable.getKeyToEntry().keySet()) {
+                String string = (String) key;
+                List<String> bucket = buckets.get(string.hashCode());
+                if (bucket == null) {
+                    bucket = new ArrayList<String>();
+                    buckets.put(string.hashCode(), bucket);
+                }
+                bucket.add(string);
+            }
 
-        myFrameMap.leaveTemp(subjectType);
-        tempVariables.remove(expr);
-        return StackValue.onStack(resultType);
+            for (Integer hashCode : buckets.keySet()) {
+                cases.put(hashCode, new Label());
+            }
+
+            subject.put(JAVA_STRING_TYPE, v);
+            v.invokevirtual("java/lang/String", "hashCode", "()I");
+            SwitchCodegenUtil.genSwitch(v, cases, defaultLabel);
+
+            for (Map.Entry<Integer, List<String>> bucket : buckets.entrySet()) {
+                v.mark(cases.get(bucket.getKey()));
+                for (String string : bucket.getValue()) {
+                    subject.put(JAVA_STRING_TYPE, v);
+                    v.aconst(string);
+                    v.invokevirtual("java/lang/String", "equals", "(Ljava/lang/Object;)Z");
+                    v.ifne(entryLabels.get(switchTable.getKeyToEntry().get(string)));
+                }
+                v.goTo(defaultLabel);
+            }
+        }
+        else {
+            for (Map.Entry<Object, JetWhenEntry> entry : switchTable.getKeyToEntry().entrySet()) {
+                cases.put((Integer) entry.getKey(), entryLabels.get(entry.getValue()));
+            }
+
+            subject.put(subject.type, v);
+            if (switchTable.getKind() == SwitchCodegenUtil.SubjectKind.ENUM_ORDINAL) {
+                v.invokevirtual("java/lang/Enum", "ordinal", "()I");
+            }
+            SwitchCodegenUtil.genSwitch(v, cases, defaultLabel);
+        }
+
+        for (JetWhenEntry whenEntry : expression.getEntries()) {
+            v.mark(entryLabels.get(whenEntry));
+            FrameMap.Mark mark = myFrameMap.mark();
+            gen(whenEntry.getExpression(), resultType);
+            mark.dropTo();
+            if (!whenEntry.isElse()) {
+                v.goTo(end);
+            }
+        }
+        if (!hasElse) {
+            v.mark(defaultLabel);
+            throwNewException(CLASS_NO_PATTERN_MATCHED_EXCEPTION);
+        }
     }
 
     private StackValue generateWhenCondition(Type subjectType, int subjectLocal, JetWhenCondition condition) {
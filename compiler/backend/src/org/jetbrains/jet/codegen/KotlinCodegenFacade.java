@@ -16,11 +16,9 @@
 
 package org.jetbrains.jet.codegen;
 
-import com.intellij.openapi.util.Pair;
 import com.intellij.util.containers.MultiMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.jet.codegen.state.GenerationState;
-import org.jetbrains.jet.lang.descriptors.ScriptDescriptor;
 import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.psi.JetPsiUtil;
 import org.jetbrains.jet.lang.psi.JetScript;
@@ -29,7 +27,6 @@ import org.jetbrains.jet.lang.resolve.java.JvmClassName;
 import org.jetbrains.jet.lang.resolve.name.FqName;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Map;
 
 import static org.jetbrains.jet.codegen.binding.CodegenBinding.registerClassNameForScript;
@@ -48,8 +45,6 @@ public class KotlinCodegenFacade {
             }
         }
 
-        state.getScriptCodegen().registerEarlierScripts(Collections.<Pair<ScriptDescriptor, JvmClassName>>emptyList());
-
         state.beforeCompile();
 
         MultiMap<FqName, JetFile> namespaceGrouping = new MultiMap<FqName, JetFile>();
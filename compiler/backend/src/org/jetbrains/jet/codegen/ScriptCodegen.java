@@ -16,8 +16,6 @@
 
 package org.jetbrains.jet.codegen;
 
-import com.google.common.collect.Lists;
-import com.intellij.openapi.util.Pair;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.asm4.MethodVisitor;
 import org.jetbrains.asm4.Type;
@@ -34,22 +32,20 @@ import org.jetbrains.jet.lang.descriptors.ScriptDescriptor;
 import org.jetbrains.jet.lang.descriptors.ValueParameterDescriptor;
 import org.jetbrains.jet.lang.psi.*;
 import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.java.JvmAbi;
 import org.jetbrains.jet.lang.resolve.java.JvmClassName;
 
 import javax.inject.Inject;
 import java.util.Collections;
-import java.util.List;
 
 import static org.jetbrains.asm4.Opcodes.*;
 import static org.jetbrains.jet.codegen.binding.CodegenBinding.*;
-import static org.jetbrains.jet.lang.resolve.java.AsmTypeConstants.OBJECT_TYPE;
 
 public class ScriptCodegen extends MemberCodegen {
 
     @NotNull
     private ClassFileFactory classFileFactory;
 
-    private List<ScriptDescriptor> earlierScripts;
     private Method scriptConstructorMethod;
 
     public ScriptCodegen(@NotNull GenerationState state) {
@@ -88,8 +84,7 @@ public class ScriptCodegen extends MemberCodegen {
         genMembers(scriptDeclaration, context, classBuilder);
         genFieldsForParameters(scriptDescriptor, classBuilder);
         genConstructor(scriptDeclaration, scriptDescriptor, classDescriptorForScript, classBuilder,
-                       context.intoFunction(scriptDescriptor.getScriptCodeDescriptor()),
-                       earlierScripts);
+                       context.intoFunction(scriptDescriptor.getScriptCodeDescriptor()));
 
         classBuilder.done();
     }
@@ -99,8 +94,7 @@ public class ScriptCodegen extends MemberCodegen {
             @NotNull ScriptDescriptor scriptDescriptor,
             @NotNull ClassDescriptor classDescriptorForScript,
             @NotNull ClassBuilder classBuilder,
-            @NotNull MethodContext context,
-            @NotNull List<ScriptDescriptor> importedScripts
+            @NotNull MethodContext context
     ) {
 
         Type blockType = typeMapper.mapType(scriptDescriptor.getReturnType());
@@ -108,7 +102,7 @@ public class ScriptCodegen extends MemberCodegen {
         classBuilder.newField(null, ACC_PUBLIC | ACC_FINAL, ScriptDescriptor.LAST_EXPRESSION_VALUE_FIELD_NAME,
                               blockType.getDescriptor(), null, null);
 
-        JvmMethodSignature jvmSignature = typeMapper.mapScriptSignature(scriptDescriptor, importedScripts);
+        JvmMethodSignature jvmSignature = typeMapper.mapScriptSignature(scriptDescriptor);
 
         state.getScriptCodegen().setScriptConstructorMethod(jvmSignature.getAsmMethod());
 
@@ -127,19 +121,17 @@ public class ScriptCodegen extends MemberCodegen {
         instructionAdapter.invokespecial("java/lang/Object", "<init>", "()V");
 
         instructionAdapter.load(0, className.getAsmType());
+        instructionAdapter.putstatic(className.getInternalName(), JvmAbi.INSTANCE_FIELD, className.getDescriptor());
 
-        FrameMap frameMap = context.prepareFrame(typeMapper);
+        instructionAdapter.load(0, className.getAsmType());
 
-        for (ScriptDescriptor importedScript : importedScripts) {
-            frameMap.enter(importedScript, OBJECT_TYPE);
-        }
+        FrameMap frameMap = context.prepareFrame(typeMapper);
 
         Type[] argTypes = jvmSignature.getAsmMethod().getArgumentTypes();
-        int add = 0;
 
         for (int i = 0; i < scriptDescriptor.getValueParameters().size(); i++) {
             ValueParameterDescriptor parameter = scriptDescriptor.getValueParameters().get(i);
-            frameMap.enter(parameter, argTypes[i + add]);
+            frameMap.enter(parameter, argTypes[i]);
         }
 
         ImplementationBodyCodegen.generateInitializers(
@@ -150,15 +142,6 @@ public class ScriptCodegen extends MemberCodegen {
 
         int offset = 1;
 
-        for (ScriptDescriptor earlierScript : importedScripts) {
-            JvmClassName earlierClassName = classNameForScriptDescriptor(bindingContext, earlierScript);
-            instructionAdapter.load(0, className.getAsmType());
-            instructionAdapter.load(offset, earlierClassName.getAsmType());
-            offset += earlierClassName.getAsmType().getSize();
-            instructionAdapter.putfield(className.getInternalName(), getScriptFieldName(earlierScript),
-                                        earlierClassName.getAsmType().getDescriptor());
-        }
-
         for (ValueParameterDescriptor parameter : scriptDescriptor.getValueParameters()) {
             Type parameterType = typeMapper.mapType(parameter.getType());
             instructionAdapter.load(0, className.getAsmType());
@@ -181,12 +164,9 @@ public class ScriptCodegen extends MemberCodegen {
     }
 
     private void genFieldsForParameters(@NotNull ScriptDescriptor script, @NotNull ClassBuilder classBuilder) {
-        for (ScriptDescriptor earlierScript : earlierScripts) {
-            JvmClassName earlierClassName;
-            earlierClassName = classNameForScriptDescriptor(bindingContext, earlierScript);
-            int access = ACC_PRIVATE | ACC_FINAL;
-            classBuilder.newField(null, access, getScriptFieldName(earlierScript), earlierClassName.getDescriptor(), null, null);
-        }
+        // Later scripts (e.g. lines of REPL) refer to the instance of this script through the field
+        JvmClassName className = classNameForScriptDescriptor(bindingContext, script);
+        classBuilder.newField(null, ACC_PUBLIC | ACC_STATIC, JvmAbi.INSTANCE_FIELD, className.getDescriptor(), null, null);
 
         for (ValueParameterDescriptor parameter : script.getValueParameters()) {
             Type parameterType = typeMapper.mapType(parameter);
@@ -201,34 +181,6 @@ public class ScriptCodegen extends MemberCodegen {
         }
     }
 
-    public void registerEarlierScripts(List<Pair<ScriptDescriptor, JvmClassName>> earlierScripts) {
-        for (Pair<ScriptDescriptor, JvmClassName> t : earlierScripts) {
-            ScriptDescriptor earlierDescriptor = t.first;
-            JvmClassName earlierClassName = t.second;
-
-            registerClassNameForScript(state.getBindingTrace(), earlierDescriptor, earlierClassName);
-        }
-
-        List<ScriptDescriptor> earlierScriptDescriptors = Lists.newArrayList();
-        for (Pair<ScriptDescriptor, JvmClassName> t : earlierScripts) {
-            ScriptDescriptor earlierDescriptor = t.first;
-            earlierScriptDescriptors.add(earlierDescriptor);
-        }
-        this.earlierScripts = earlierScriptDescriptors;
-    }
-
-    protected int getScriptIndex(@NotNull ScriptDescriptor scriptDescriptor) {
-        int index = earlierScripts.indexOf(scriptDescriptor);
-        if (index < 0) {
-            throw new IllegalStateException("Unregistered script: " + scriptDescriptor);
-        }
-        return index + 1;
-    }
-
-    public String getScriptFieldName(@NotNull ScriptDescriptor scriptDescriptor) {
-        return "script$" + getScriptIndex(scriptDescriptor);
-    }
-
     public void setScriptConstructorMethod(Method scriptConstructorMethod) {
         this.scriptConstructorMethod = scriptConstructorMethod;
     }
@@ -237,15 +189,11 @@ public class ScriptCodegen extends MemberCodegen {
         return scriptConstructorMethod;
     }
 
-    public void compileScript(
-            @NotNull JetScript script,
-            @NotNull JvmClassName className,
-            @NotNull List<Pair<ScriptDescriptor, JvmClassName>> earlierScripts,
-            @NotNull CompilationErrorHandler errorHandler
-    ) {
-        registerEarlierScripts(earlierScripts);
-        registerClassNameForScript(state.getBindingTrace(), script, className);
-
+    /**
+     * Class names of the script and of the earlier scripts it refers to should be registered in the binding context
+     * (see {@link org.jetbrains.jet.codegen.binding.CodegenBinding#registerClassNameForScript})
+     */
+    public void compileScript(@NotNull JetScript script, @NotNull CompilationErrorHandler errorHandler) {
         state.beforeCompile();
         KotlinCodegenFacade.generateNamespace(
                 state,
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.codegen;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.asm4.Label;
+import org.jetbrains.asm4.Type;
+import org.jetbrains.asm4.commons.InstructionAdapter;
+import org.jetbrains.jet.codegen.state.JetTypeMapper;
+import org.jetbrains.jet.lang.descriptors.ClassDescriptor;
+import org.jetbrains.jet.lang.descriptors.ClassifierDescriptor;
+import org.jetbrains.jet.lang.descriptors.DeclarationDescriptor;
+import org.jetbrains.jet.lang.descriptors.VariableDescriptorForObject;
+import org.jetbrains.jet.lang.psi.*;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.BindingContextUtils;
+import org.jetbrains.jet.lang.resolve.DescriptorUtils;
+import org.jetbrains.jet.lang.resolve.constants.*;
+import org.jetbrains.jet.lang.types.JetType;
+
+import java.util.*;
+
+import static org.jetbrains.jet.codegen.AsmUtil.isIntPrimitive;
+import static org.jetbrains.jet.lang.resolve.java.AsmTypeConstants.JAVA_STRING_TYPE;
+
+/**
+ * Decides whether a when expression with a subject can be generated as a JVM switch instead of a chain of equality checks.
+ * That is possible when every condition is a constant of the subject's int-like primitive type, a string literal,
+ * or an entry of an enum compiled together with the expression.
+ */
+public class SwitchCodegenUtil {
+    // A switch over one or two values is not cheaper than comparisons
+    private static final int MIN_SWITCH_KEYS = 3;
+
+    public enum SubjectKind {
+        INT,
+        ENUM_ORDINAL,
+        STRING_HASH_CODE
+    }
+
+    public static class SwitchTable {
+        private final SubjectKind kind;
+        // Integers for INT and ENUM_ORDINAL, strings for STRING_HASH_CODE. Duplicate keys are matched by the first entry
+        private final Map<Object, JetWhenEntry> keyToEntry;
+
+        private SwitchTable(@NotNull SubjectKind kind, @NotNull Map<Object, JetWhenEntry> keyToEntry) {
+            this.kind = kind;
+            this.keyToEntry = keyToEntry;
+        }
+
+        @NotNull
+        public SubjectKind getKind() {
+            return kind;
+        }
+
+        @NotNull
+        public Map<Object, JetWhenEntry> getKeyToEntry() {
+            return keyToEntry;
+        }
+    }
+
+    private SwitchCodegenUtil() {}
+
+    @Nullable
+    public static SwitchTable getSwitchTable(
+            @NotNull JetWhenExpression expression,
+            @NotNull BindingContext bindingContext,
+            @NotNull JetTypeMapper typeMapper
+    ) {
+        JetExpression subject = expression.getSubjectExpression();
+        if (subject == null) return null;
+        JetType subjectJetType = bindingContext.get(BindingContext.EXPRESSION_TYPE, subject);
+        if (subjectJetType == null || subjectJetType.isNullable()) return null;
+
+        Type subjectType = typeMapper.mapType(subjectJetType);
+        ClassifierDescriptor subjectClass = subjectJetType.getConstructor().getDeclarationDescriptor();
+        SubjectKind kind;
+        if (isIntPrimitive(subjectType)) {
+            kind = SubjectKind.INT;
+        }
+        else if (subjectType.equals(JAVA_STRING_TYPE)) {
+            kind = SubjectKind.STRING_HASH_CODE;
+        }
+        else if (subjectClass != null && DescriptorUtils.isEnumClass(subjectClass)) {
+            kind = SubjectKind.ENUM_ORDINAL;
+        }
+        else {
+            return null;
+        }
+
+        Map<Object, JetWhenEntry> keyToEntry = new LinkedHashMap<Object, JetWhenEntry>();
+        List<JetWhenEntry> entries = expression.getEntries();
+        for (int i = 0; i < entries.size(); i++) {
+            JetWhenEntry entry = entries.get(i);
+            if (entry.isElse()) {
+                if (i != entries.size() - 1) return null;
+                continue;
+            }
+
+            boolean entryReachable = false;
+            for (JetWhenCondition condition : entry.getConditions()) {
+                if (!(condition instanceof JetWhenConditionWithExpression)) return null;
+                JetExpression conditionExpression = ((JetWhenConditionWithExpression) condition).getExpression();
+                if (conditionExpression == null) return null;
+
+                Object key = getKey(kind, subjectType, conditionExpression, bindingContext, typeMapper);
+                if (key == null) return null;
+
+                if (!keyToEntry.containsKey(key)) {
+                    keyToEntry.put(key, entry);
+                    entryReachable = true;
+                }
+            }
+            // The switch would make the body of such an entry unreachable code, the chain of checks keeps it as it is
+            if (!entryReachable) return null;
+        }
+
+        return keyToEntry.size() >= MIN_SWITCH_KEYS ? new SwitchTable(kind, keyToEntry) : null;
+    }
+
+    @Nullable
+    private static Object getKey(
+            @NotNull SubjectKind kind,
+            @NotNull Type subjectType,
+            @NotNull JetExpression expression,
+            @NotNull BindingContext bindingContext,
+            @NotNull JetTypeMapper typeMapper
+    ) {
+        if (kind == SubjectKind.ENUM_ORDINAL) {
+            return getEnumEntryOrdinal(expression, bindingContext);
+        }
+
+        CompileTimeConstant<?> constant = bindingContext.get(BindingContext.COMPILE_TIME_VALUE, expression);
+        if (constant == null) return null;
+
+        if (kind == SubjectKind.STRING_HASH_CODE) {
+            return constant instanceof StringValue ? ((StringValue) constant).getValue() : null;
+        }
+
+        // Values of other types are compared boxed by the chain of checks
+        JetType type = bindingContext.get(BindingContext.EXPRESSION_TYPE, expression);
+        if (type == null || !typeMapper.mapType(type).equals(subjectType)) return null;
+
+        if (constant instanceof IntValue) return ((IntValue) constant).getValue();
+        if (constant instanceof ShortValue) return ((ShortValue) constant).getValue().intValue();
+        if (constant instanceof ByteValue) return ((ByteValue) constant).getValue().intValue();
+        if (constant instanceof CharValue) return (int) ((CharValue) constant).getValue().charValue();
+        return null;
+    }
+
+    /**
+     * Ordinals of enum entries are not known for compiled enums, which may change independently of the code using them,
+     * so only enums declared in the sources being compiled are supported.
+     */
+    @Nullable
+    private static Integer getEnumEntryOrdinal(@NotNull JetExpression expression, @NotNull BindingContext bindingContext) {
+        JetExpression reference = JetPsiUtil.deparenthesize(expression);
+        if (reference instanceof JetQualifiedExpression) {
+            reference = ((JetQualifiedExpression) reference).getSelectorExpression();
+        }
+        if (!(reference instanceof JetSimpleNameExpression)) return null;
+
+        DeclarationDescriptor target = bindingContext.get(BindingContext.REFERENCE_TARGET, (JetSimpleNameExpression) reference);
+        if (!(target instanceof VariableDescriptorForObject)) return null;
+
+        ClassDescriptor entryDescriptor = ((VariableDescriptorForObject) target).getObjectClass();
+        if (!DescriptorUtils.isEnumEntry(entryDescriptor)) return null;
+
+        PsiElement entry = BindingContextUtils.classDescriptorToDeclaration(bindingContext, entryDescriptor);
+        if (!(entry instanceof JetEnumEntry)) return null;
+        JetClass enumClass = PsiTreeUtil.getParentOfType(entry, JetClass.class, true);
+        if (enumClass == null) return null;
+
+        // The same order as the one of enum constants initialization in ImplementationBodyCodegen
+        int ordinal = 0;
+        for (JetDeclaration declaration : enumClass.getDeclarations()) {
+            if (declaration == entry) return ordinal;
+            if (declaration instanceof JetEnumEntry) ordinal++;
+        }
+        return null;
+    }
+
+    /**
+     * Generates TABLESWITCH or LOOKUPSWITCH, whichever is smaller, over the int value on the stack,
+     * with the same cost estimation as the one used by javac.
+     */
+    public static void genSwitch(@NotNull InstructionAdapter v, @NotNull SortedMap<Integer, Label> cases, @NotNull Label defaultLabel) {
+        assert !cases.isEmpty() : "No cases in switch";
+
+        int min = cases.firstKey();
+        int max = cases.lastKey();
+        long tableSpaceCost = 4 + ((long) max - min + 1);
+        long tableTimeCost = 3;
+        long lookupSpaceCost = 3 + 2 * (long) cases.size();
+        long lookupTimeCost = cases.size();
+
+        if (tableSpaceCost + 3 * tableTimeCost <= lookupSpaceCost + 3 * lookupTimeCost) {
+            Label[] labels = new Label[max - min + 1];
+            for (int i = 0; i < labels.length; i++) {
+                Label label = cases.get(min + i);
+                labels[i] = label != null ? label : defaultLabel;
+            }
+            v.tableswitch(min, max, defaultLabel, labels);
+        }
+        else {
+            int[] keys = new int[cases.size()];
+            Label[] labels = new Label[cases.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Label> entry : cases.entrySet()) {
+                keys[i] = entry.getKey();
+                labels[i] = entry.getValue();
+                i++;
+            }
+            v.lookupswitch(defaultLabel, keys, labels);
+        }
+    }
+}
@@ -920,21 +920,13 @@ public class JetTypeMapper extends BindingTraceAware {
     }
 
     @NotNull
-    public JvmMethodSignature mapScriptSignature(@NotNull ScriptDescriptor script, @NotNull List<ScriptDescriptor> importedScripts) {
+    public JvmMethodSignature mapScriptSignature(@NotNull ScriptDescriptor script) {
         BothSignatureWriter signatureWriter = new BothSignatureWriter(BothSignatureWriter.Mode.METHOD, false);
 
         writeFormalTypeParameters(Collections.<TypeParameterDescriptor>emptyList(), signatureWriter);
 
         signatureWriter.writeParametersStart();
 
-        for (ScriptDescriptor importedScript : importedScripts) {
-            signatureWriter.writeParameterType(JvmMethodParameterKind.VALUE);
-            ClassDescriptor descriptor = bindingContext.get(CLASS_FOR_SCRIPT, importedScript);
-            assert descriptor != null;
-            mapType(descriptor.getDefaultType(), signatureWriter, JetTypeMapperMode.VALUE);
-            signatureWriter.writeParameterTypeEnd();
-        }
-
         for (ValueParameterDescriptor valueParameter : script.getValueParameters()) {
             writeParameter(signatureWriter, valueParameter.getType());
         }
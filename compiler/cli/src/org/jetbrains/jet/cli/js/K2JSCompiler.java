@@ -43,8 +43,9 @@ import org.jetbrains.k2js.analyze.AnalyzerFacadeForJS;
 import org.jetbrains.k2js.config.*;
 import org.jetbrains.k2js.facade.K2JSTranslator;
 import org.jetbrains.k2js.facade.MainCallParameters;
+import org.jetbrains.k2js.serialize.JsLibraryMetadataSerializer;
 
-import java.io.File;
+import java.io.*;
 import java.util.Arrays;
 import java.util.List;
 
@@ -88,7 +89,8 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
         }
 
         Config config = getConfig(arguments, project);
-        if (analyzeAndReportErrors(messageCollector, environmentForJS.getSourceFiles(), config)) {
+        AnalyzeExhaust exhaust = analyzeAndReportErrors(messageCollector, environmentForJS.getSourceFiles(), config);
+        if (exhaust == null) {
             return COMPILATION_ERROR;
         }
 
@@ -98,10 +100,31 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
             return ExitCode.INTERNAL_ERROR;
         }
 
+        if (arguments.metadataFile != null) {
+            writeMetadata(exhaust, environmentForJS.getSourceFiles(), arguments.metadataFile);
+        }
+
         MainCallParameters mainCallParameters = arguments.createMainCallParameters();
         return translateAndGenerateOutputFile(mainCallParameters, environmentForJS, config, outputFile);
     }
 
+    private static void writeMetadata(@NotNull AnalyzeExhaust exhaust, @NotNull List<JetFile> sourceFiles, @NotNull String metadataFile) {
+        try {
+            File file = new File(metadataFile);
+            FileUtil.createParentDirs(file);
+            OutputStream stream = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                JsLibraryMetadataSerializer.serialize(exhaust.getBindingContext(), sourceFiles, stream);
+            }
+            finally {
+                stream.close();
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private static void reportCompiledSourcesList(@NotNull MessageCollector messageCollector,
             @NotNull JetCoreEnvironment environmentForJS) {
         List<JetFile> files = environmentForJS.getSourceFiles();
@@ -136,7 +159,8 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
         return OK;
     }
 
-    private static boolean analyzeAndReportErrors(@NotNull MessageCollector messageCollector,
+    @Nullable
+    private static AnalyzeExhaust analyzeAndReportErrors(@NotNull MessageCollector messageCollector,
             @NotNull final List<JetFile> sources, @NotNull final Config config) {
         AnalyzerWithCompilerReport analyzerWithCompilerReport = new AnalyzerWithCompilerReport(messageCollector);
         analyzerWithCompilerReport.analyzeAndReport(new Function0<AnalyzeExhaust>() {
@@ -145,7 +169,7 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
                 return AnalyzerFacadeForJS.analyzeFiles(sources, Predicates.<PsiFile>alwaysTrue(), config);
             }
         }, sources);
-        return analyzerWithCompilerReport.hasErrors();
+        return analyzerWithCompilerReport.hasErrors() ? null : analyzerWithCompilerReport.getAnalyzeExhaust();
     }
 
     @NotNull
@@ -156,11 +180,13 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
         EcmaVersion ecmaVersion = EcmaVersion.defaultVersion();
         String moduleId = FileUtil.getNameWithoutExtension(new File(arguments.outputFile));
         if (arguments.libraryFiles != null) {
-            return new LibrarySourcesConfig(project, moduleId, Arrays.asList(arguments.libraryFiles), ecmaVersion, arguments.sourcemap);
+            return new LibrarySourcesConfig(project, moduleId, Arrays.asList(arguments.libraryFiles), ecmaVersion,
+                                            arguments.sourcemap, arguments.getExportedDeclarations());
         }
         else {
             // lets discover the JS library definitions on the classpath
-            return new ClassPathLibraryDefintionsConfig(project, moduleId, ecmaVersion, arguments.sourcemap);
+            return new ClassPathLibraryDefintionsConfig(project, moduleId, ecmaVersion, arguments.sourcemap,
+                                                        arguments.getExportedDeclarations());
         }
     }
 }
@@ -21,6 +21,10 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.cli.CommonCompilerArguments;
 import org.jetbrains.k2js.facade.MainCallParameters;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 
 /**
  * NOTE: for now K2JSCompiler supports only minimal amount of parameters required to launch it from the plugin.
@@ -35,12 +39,21 @@ public class K2JSCompilerArguments extends CommonCompilerArguments {
     @Argument(value = "sourceFiles", description = "Source files (dir or file)")
     public String[] sourceFiles;
 
+    @Argument(value = "metadata", description = "Write descriptors of the compiled declarations to the file, so that it can be used as a library instead of the sources")
+    public String metadataFile;
+
     @Argument(value = "sourcemap", description = "Generate SourceMap")
     public boolean sourcemap;
 
     @Argument(value = "target", description = "Generate js files for specific ECMA version (now support only ECMA 5)")
     public String target;
 
+    @Argument(value = "dce", description = "Eliminate declarations which are not used by the module itself or by the exported declarations")
+    public boolean eliminateDeadCode;
+
+    @Argument(value = "exported", description = "Fully qualified names of declarations used from outside of the module, e.g. by a page script")
+    public String[] exportedDeclarations;
+
     @Nullable
     @Argument(value = "main", description = "Whether a main function should be called; either 'call' or 'noCall', default 'call' (main function will be auto detected)")
     public String main;
@@ -50,6 +63,12 @@ public class K2JSCompilerArguments extends CommonCompilerArguments {
         throw new IllegalStateException();
     }
 
+    @Nullable
+    public List<String> getExportedDeclarations() {
+        if (!eliminateDeadCode) return null;
+        return exportedDeclarations != null ? Arrays.asList(exportedDeclarations) : Collections.<String>emptyList();
+    }
+
     public MainCallParameters createMainCallParameters() {
         if ("noCall".equals(main)) {
             return MainCallParameters.noCall();
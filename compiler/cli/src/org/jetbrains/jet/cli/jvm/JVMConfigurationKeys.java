@@ -39,4 +39,9 @@ public class JVMConfigurationKeys {
             CompilerConfigurationKey.create("generate not-null assertions");
     public static final CompilerConfigurationKey<Boolean> GENERATE_NOT_NULL_PARAMETER_ASSERTIONS =
             CompilerConfigurationKey.create("generate not-null parameter assertions");
+
+    public static final CompilerConfigurationKey<Boolean> PARALLEL_CODEGEN =
+            CompilerConfigurationKey.create("compute frames and write class files in parallel");
+    public static final CompilerConfigurationKey<Boolean> DESCRIPTOR_BASED_FRAMES =
+            CompilerConfigurationKey.create("compute frames from class descriptors");
 }
@@ -78,13 +78,7 @@ public class K2JVMCompiler extends CLICompiler<K2JVMCompilerArguments> {
             return INTERNAL_ERROR;
         }
 
-        List<String> argumentsSourceDirs = arguments.getSourceDirs();
-        if (!arguments.script &&
-            arguments.module == null &&
-            arguments.src == null &&
-            arguments.freeArgs.isEmpty() &&
-            (argumentsSourceDirs == null || argumentsSourceDirs.size() == 0)) {
-
+        if (isReplRequested(arguments)) {
             ReplFromTerminal.run(rootDisposable, configuration);
             return ExitCode.OK;
         }
@@ -123,6 +117,8 @@ public class K2JVMCompiler extends CLICompiler<K2JVMCompilerArguments> {
 
         configuration.put(JVMConfigurationKeys.GENERATE_NOT_NULL_ASSERTIONS, arguments.notNullAssertions);
         configuration.put(JVMConfigurationKeys.GENERATE_NOT_NULL_PARAMETER_ASSERTIONS, arguments.notNullParamAssertions);
+        configuration.put(JVMConfigurationKeys.PARALLEL_CODEGEN, arguments.parallelCodegen);
+        configuration.put(JVMConfigurationKeys.DESCRIPTOR_BASED_FRAMES, arguments.descriptorFrames);
 
         configuration.put(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, messageCollector);
 
@@ -161,6 +157,17 @@ public class K2JVMCompiler extends CLICompiler<K2JVMCompilerArguments> {
         }
     }
 
+    /**
+     * The REPL is started when there is nothing to compile
+     */
+    protected static boolean isReplRequested(@NotNull K2JVMCompilerArguments arguments) {
+        List<String> argumentsSourceDirs = arguments.getSourceDirs();
+        return !arguments.script &&
+               arguments.module == null &&
+               arguments.src == null &&
+               arguments.freeArgs.isEmpty() &&
+               (argumentsSourceDirs == null || argumentsSourceDirs.size() == 0);
+    }
 
     /**
      * Allow derived classes to add additional command line arguments
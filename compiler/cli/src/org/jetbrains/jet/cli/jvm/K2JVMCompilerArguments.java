@@ -70,6 +70,12 @@ public class K2JVMCompilerArguments extends CommonCompilerArguments {
     @Argument(value = "notNullParamAssertions", description = "generate not-null assertions on parameters of methods accessible from Java")
     public boolean notNullParamAssertions;
 
+    @Argument(value = "parallelCodegen", description = "compute frames and write class files on all available cores")
+    public boolean parallelCodegen;
+
+    @Argument(value = "descriptorFrames", description = "compute stack map frames from class descriptors instead of loading classes")
+    public boolean descriptorFrames;
+
     @Argument(value = "builtins", description = "compile builtin classes (internal)")
     public boolean builtins;
 
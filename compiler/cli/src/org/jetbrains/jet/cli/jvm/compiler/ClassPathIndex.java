@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.cli.jvm.compiler;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Packages and class files of all the roots of a class path, collected in one traversal, so that looking a class up
+ * does not depend on the number of roots.
+ */
+/* package */ class ClassPathIndex {
+    private static final String JAR_SEPARATOR = "!/";
+    private static final String CLASS_FILE_EXTENSION = ".class";
+
+    // "java/util" -> indices of the roots which contain this package
+    private final Map<String, BitSet> packages = new HashMap<String, BitSet>();
+    // "java/util/Map$Entry" -> class files in class path order
+    private final Map<String, List<ClassFile>> classFiles = new HashMap<String, List<ClassFile>>();
+
+    /* package */ ClassPathIndex(@NotNull ClassPath classPath) {
+        int rootIndex = 0;
+        for (VirtualFile root : classPath) {
+            addDirectory(root, "", rootIndex, getJarTimeStamp(root));
+            rootIndex++;
+        }
+    }
+
+    private void addDirectory(@NotNull VirtualFile directory, @NotNull String path, int rootIndex, long jarTimeStamp) {
+        BitSet roots = packages.get(path);
+        if (roots == null) {
+            roots = new BitSet();
+            packages.put(path, roots);
+        }
+        roots.set(rootIndex);
+
+        for (VirtualFile child : directory.getChildren()) {
+            String name = child.getName();
+            String childPath = path.isEmpty() ? name : path + "/" + name;
+            if (child.isDirectory()) {
+                addDirectory(child, childPath, rootIndex, jarTimeStamp);
+            }
+            else if (name.endsWith(CLASS_FILE_EXTENSION)) {
+                String key = childPath.substring(0, childPath.length() - CLASS_FILE_EXTENSION.length());
+                List<ClassFile> files = classFiles.get(key);
+                if (files == null) {
+                    files = new ArrayList<ClassFile>(1);
+                    classFiles.put(key, files);
+                }
+                files.add(new ClassFile(child, rootIndex, jarTimeStamp));
+            }
+        }
+    }
+
+    private static long getJarTimeStamp(@NotNull VirtualFile root) {
+        String path = root.getPath();
+        int separator = path.indexOf(JAR_SEPARATOR);
+        return separator < 0 ? 0 : new File(path.substring(0, separator)).lastModified();
+    }
+
+    /**
+     * Finds the class files a qualified name may refer to, in class path order, at most one per root.
+     *
+     * Within a root the package part of the name is the longest prefix of it which exists as a directory in this root,
+     * the rest is a (possibly nested) class name, exactly as if roots were traversed directory by directory.
+     */
+    @NotNull
+    /* package */ List<ClassFile> findClassFiles(@NotNull String qualifiedName) {
+        List<ClassFile> result = null;
+        BitSet rootsWithLongerPackage = new BitSet();
+
+        String packagePath = qualifiedName.replace('.', '/');
+        String className = "";
+        while (true) {
+            BitSet roots = className.isEmpty() ? null : packages.get(packagePath);
+            if (roots != null) {
+                List<ClassFile> files = classFiles.get(packagePath.isEmpty() ? className : packagePath + "/" + className);
+                if (files != null) {
+                    for (ClassFile file : files) {
+                        if (!rootsWithLongerPackage.get(file.rootIndex)) {
+                            if (result == null) {
+                                result = new ArrayList<ClassFile>(1);
+                            }
+                            result.add(file);
+                        }
+                    }
+                }
+                rootsWithLongerPackage.or(roots);
+            }
+
+            if (packagePath.isEmpty()) break;
+
+            int lastSlash = packagePath.lastIndexOf('/');
+            String lastSegment = packagePath.substring(lastSlash + 1);
+            className = className.isEmpty() ? lastSegment : lastSegment + "$" + className;
+            packagePath = lastSlash < 0 ? "" : packagePath.substring(0, lastSlash);
+        }
+
+        if (result == null) return Collections.emptyList();
+
+        if (result.size() > 1) {
+            Collections.sort(result, ClassFile.BY_ROOT_INDEX);
+        }
+        return result;
+    }
+
+    /* package */ static class ClassFile {
+        private static final Comparator<ClassFile> BY_ROOT_INDEX = new Comparator<ClassFile>() {
+            @Override
+            public int compare(ClassFile a, ClassFile b) {
+                return a.rootIndex - b.rootIndex;
+            }
+        };
+
+        private final VirtualFile file;
+        private final int rootIndex;
+        private final long jarTimeStamp;
+
+        private ClassFile(@NotNull VirtualFile file, int rootIndex, long jarTimeStamp) {
+            this.file = file;
+            this.rootIndex = rootIndex;
+            this.jarTimeStamp = jarTimeStamp;
+        }
+
+        @NotNull
+        public VirtualFile getFile() {
+            return file;
+        }
+
+        /**
+         * Modification time of the jar containing this file, or of the file itself if it is not in a jar
+         */
+        public long getTimeStamp() {
+            return jarTimeStamp != 0 ? jarTimeStamp : file.getTimeStamp();
+        }
+    }
+}
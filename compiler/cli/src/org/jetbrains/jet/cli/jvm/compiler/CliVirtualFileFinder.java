@@ -25,11 +25,21 @@ import org.jetbrains.jet.lang.resolve.java.resolver.KotlinClassFileHeader;
 import org.jetbrains.jet.lang.resolve.java.vfilefinder.VirtualFileFinder;
 import org.jetbrains.jet.lang.resolve.name.FqName;
 
-public class CliVirtualFileFinder implements VirtualFileFinder {
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+public class CliVirtualFileFinder implements VirtualFileFinder {
     @NotNull
     private final ClassPath classPath;
 
+    @Nullable
+    private volatile ClassPathIndex index;
+
+    // Header types of class files of the index looked up earlier. Kept as long as the index, i.e. by one environment only:
+    // a long-living process (e.g. the compile daemon) would otherwise keep every class file it has ever seen
+    private final ConcurrentMap<ClassPathIndex.ClassFile, CachedHeaderType> headerTypes =
+            new ConcurrentHashMap<ClassPathIndex.ClassFile, CachedHeaderType>();
+
     public CliVirtualFileFinder(@NotNull ClassPath path) {
         classPath = path;
     }
@@ -45,45 +55,57 @@ public class CliVirtualFileFinder implements VirtualFileFinder {
     @Nullable
     @Override
     public VirtualFile find(@NotNull FqName className) {
-        for (VirtualFile root : classPath) {
-            VirtualFile fileInRoot = findFileInRoot(className.asString(), root);
-            if (fileInRoot != null) {
-                return fileInRoot;
+        for (ClassPathIndex.ClassFile classFile : getIndex().findClassFiles(className.asString())) {
+            VirtualFile vFile = classFile.getFile();
+            if (!vFile.isValid()) {
+                //TODO: log
+                continue;
+            }
+            //NOTE: currently we use VirtualFileFinder to find Kotlin binaries only
+            if (getHeaderType(classFile) != KotlinClassFileHeader.HeaderType.NONE) {
+                return vFile;
             }
         }
         return null;
     }
 
-    //NOTE: copied with some changes from CoreJavaFileManager
-    @Nullable
-    private static VirtualFile findFileInRoot(@NotNull String qName, @NotNull VirtualFile root) {
-        String pathRest = qName;
-        VirtualFile cur = root;
-
-        while (true) {
-            int dot = pathRest.indexOf('.');
-            if (dot < 0) break;
+    // The class path is not modified after the environment is set up, so the index is built on the first lookup
+    @NotNull
+    private ClassPathIndex getIndex() {
+        ClassPathIndex result = index;
+        if (result == null) {
+            synchronized (this) {
+                result = index;
+                if (result == null) {
+                    result = new ClassPathIndex(classPath);
+                    index = result;
+                }
+            }
+        }
+        return result;
+    }
 
-            String pathComponent = pathRest.substring(0, dot);
-            VirtualFile child = cur.findChild(pathComponent);
+    @NotNull
+    private KotlinClassFileHeader.HeaderType getHeaderType(@NotNull ClassPathIndex.ClassFile classFile) {
+        long timeStamp = classFile.getTimeStamp();
 
-            if (child == null) break;
-            pathRest = pathRest.substring(dot + 1);
-            cur = child;
+        CachedHeaderType cached = headerTypes.get(classFile);
+        if (cached != null && cached.timeStamp == timeStamp) {
+            return cached.type;
         }
 
-        String className = pathRest.replace('.', '$');
-        VirtualFile vFile = cur.findChild(className + ".class");
-        if (vFile != null) {
-            if (!vFile.isValid()) {
-                //TODO: log
-                return null;
-            }
-            //NOTE: currently we use VirtualFileFinder to find Kotlin binaries only
-            if (KotlinClassFileHeader.readKotlinHeaderFromClassFile(vFile).getType() != KotlinClassFileHeader.HeaderType.NONE) {
-                return vFile;
-            }
+        KotlinClassFileHeader.HeaderType type = KotlinClassFileHeader.readKotlinHeaderFromClassFile(classFile.getFile()).getType();
+        headerTypes.put(classFile, new CachedHeaderType(timeStamp, type));
+        return type;
+    }
+
+    private static class CachedHeaderType {
+        private final long timeStamp;
+        private final KotlinClassFileHeader.HeaderType type;
+
+        private CachedHeaderType(long timeStamp, @NotNull KotlinClassFileHeader.HeaderType type) {
+            this.timeStamp = timeStamp;
+            this.type = type;
         }
-        return null;
     }
 }
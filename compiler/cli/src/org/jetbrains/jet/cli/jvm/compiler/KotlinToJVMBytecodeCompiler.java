@@ -48,6 +48,7 @@ import org.jetbrains.jet.lang.resolve.ScriptNameUtil;
 import org.jetbrains.jet.lang.resolve.java.AnalyzerFacadeForJVM;
 import org.jetbrains.jet.lang.resolve.java.PackageClassUtils;
 import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.types.checker.SubtypeCache;
 import org.jetbrains.jet.plugin.JetMainDetector;
 import org.jetbrains.jet.utils.ExceptionUtils;
 import org.jetbrains.jet.utils.KotlinPaths;
@@ -305,27 +306,40 @@ public class KotlinToJVMBytecodeCompiler {
             final JetCoreEnvironment environment,
             final List<AnalyzerScriptParameter> scriptParameters,
             boolean stubs) {
-        AnalyzerWithCompilerReport analyzerWithCompilerReport = new AnalyzerWithCompilerReport(
-                environment.getConfiguration().get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY));
+        MessageCollector messageCollector = environment.getConfiguration().get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY);
+        AnalyzerWithCompilerReport analyzerWithCompilerReport = new AnalyzerWithCompilerReport(messageCollector);
         final Predicate<PsiFile> filesToAnalyzeCompletely =
                 stubs ? Predicates.<PsiFile>alwaysFalse() : Predicates.<PsiFile>alwaysTrue();
-        analyzerWithCompilerReport.analyzeAndReport(
-                new Function0<AnalyzeExhaust>() {
-                    @NotNull
-                    @Override
-                    public AnalyzeExhaust invoke() {
-                        BindingTrace sharedTrace = CliLightClassGenerationSupport.getInstanceForCli(environment.getProject()).getTrace();
-                        return AnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
-                                environment.getProject(),
-                                environment.getSourceFiles(),
-                                sharedTrace,
-                                scriptParameters,
-                                filesToAnalyzeCompletely,
-                                false
-                        );
-                    }
-                }, environment.getSourceFiles()
-        );
+        SubtypeCache subtypeCache = SubtypeCache.createDefault();
+        SubtypeCache previousSubtypeCache = SubtypeCache.setCurrent(subtypeCache);
+        try {
+            analyzerWithCompilerReport.analyzeAndReport(
+                    new Function0<AnalyzeExhaust>() {
+                        @NotNull
+                        @Override
+                        public AnalyzeExhaust invoke() {
+                            BindingTrace sharedTrace = CliLightClassGenerationSupport.getInstanceForCli(environment.getProject()).getTrace();
+                            return AnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
+                                    environment.getProject(),
+                                    environment.getSourceFiles(),
+                                    sharedTrace,
+                                    scriptParameters,
+                                    filesToAnalyzeCompletely,
+                                    false
+                            );
+                        }
+                    }, environment.getSourceFiles()
+            );
+        }
+        finally {
+            SubtypeCache.setCurrent(previousSubtypeCache);
+        }
+
+        if (subtypeCache != null && messageCollector != null) {
+            messageCollector.report(CompilerMessageSeverity.LOGGING,
+                                    "Subtype checks: " + subtypeCache.getHits() + " cached, " + subtypeCache.getMisses() + " computed",
+                                    CompilerMessageLocation.NO_LOCATION);
+        }
 
         return analyzerWithCompilerReport.hasErrors() ? null : analyzerWithCompilerReport.getAnalyzeExhaust();
     }
@@ -351,14 +365,26 @@ public class KotlinToJVMBytecodeCompiler {
                         CompilerMessageLocation.NO_LOCATION);
             }
         };
+        BuiltinToJavaTypesMapping builtinToJavaTypesMapping =
+                configuration.get(JVMConfigurationKeys.BUILTIN_TO_JAVA_TYPES_MAPPING_KEY, BuiltinToJavaTypesMapping.ENABLED);
+        DescriptorBasedClassHierarchy classHierarchy = configuration.get(JVMConfigurationKeys.DESCRIPTOR_BASED_FRAMES, false)
+                ? new DescriptorBasedClassHierarchy(exhaust.getBindingContext(), builtinToJavaTypesMapping == BuiltinToJavaTypesMapping.ENABLED)
+                : null;
+        boolean parallelCodegen = configuration.get(JVMConfigurationKeys.PARALLEL_CODEGEN, false);
+        ClassBuilderFactory builderFactory = parallelCodegen
+                                             ? ClassBuilderFactories.deferredBinaries(stubs, classHierarchy)
+                                             : ClassBuilderFactories.binaries(stubs, classHierarchy);
         GenerationState generationState = new GenerationState(
-                project, ClassBuilderFactories.binaries(stubs), backendProgress, exhaust.getBindingContext(), environment.getSourceFiles(),
-                configuration.get(JVMConfigurationKeys.BUILTIN_TO_JAVA_TYPES_MAPPING_KEY, BuiltinToJavaTypesMapping.ENABLED),
+                project, builderFactory, backendProgress, exhaust.getBindingContext(), environment.getSourceFiles(),
+                builtinToJavaTypesMapping,
                 configuration.get(JVMConfigurationKeys.GENERATE_NOT_NULL_ASSERTIONS, false),
                 configuration.get(JVMConfigurationKeys.GENERATE_NOT_NULL_PARAMETER_ASSERTIONS, false),
                 /*generateDeclaredClasses = */true
         );
         KotlinCodegenFacade.compileCorrectFiles(generationState, CompilationErrorHandler.THROW_EXCEPTION);
+        if (parallelCodegen) {
+            generationState.getFactory().writeAllClassesInParallel(Runtime.getRuntime().availableProcessors());
+        }
 
         CompilerPluginContext context = new CompilerPluginContext(project, exhaust.getBindingContext(), environment.getSourceFiles());
         for (CompilerPlugin plugin : configuration.getList(CLIConfigurationKeys.COMPILER_PLUGINS)) {
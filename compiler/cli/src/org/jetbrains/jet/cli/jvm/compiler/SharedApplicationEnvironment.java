@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.cli.jvm.compiler;
+
+import com.intellij.core.JavaCoreApplicationEnvironment;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Application environment reused by all the compilations in a long-living process (see {@code K2JVMCompileDaemon}),
+ * so that jar file system handles and other application-level state are not recreated for every compilation.
+ *
+ * The environment is recreated when the contents of some jar it has seen changes.
+ * Callers are responsible for not running several compilations at the same time.
+ */
+public class SharedApplicationEnvironment {
+    // Unreadable jars are always considered changed
+    private static final long UNREADABLE = -1;
+
+    private static boolean enabled = false;
+
+    @Nullable
+    private static Disposable disposable = null;
+    @Nullable
+    private static JavaCoreApplicationEnvironment environment = null;
+
+    private static final Map<String, JarChecksum> jarChecksums = new HashMap<String, JarChecksum>();
+
+    private SharedApplicationEnvironment() {
+    }
+
+    public static synchronized void enable() {
+        enabled = true;
+    }
+
+    public static synchronized void disable() {
+        enabled = false;
+        dispose();
+    }
+
+    /**
+     * @return the shared environment which is up to date with the given jars, or null if sharing is not enabled
+     */
+    @Nullable
+    public static synchronized JavaCoreApplicationEnvironment getEnvironment(@NotNull Iterable<File> jars) {
+        if (!enabled) return null;
+
+        boolean changed = false;
+        for (File jar : jars) {
+            if (!jar.isFile()) continue;
+            if (updateChecksum(jar)) {
+                changed = true;
+            }
+        }
+
+        if (changed || environment == null) {
+            dispose();
+            disposable = CompileEnvironmentUtil.createMockDisposable();
+            environment = JetCoreEnvironment.createApplicationEnvironment(disposable);
+        }
+        return environment;
+    }
+
+    private static void dispose() {
+        if (disposable != null) {
+            Disposer.dispose(disposable);
+        }
+        disposable = null;
+        environment = null;
+    }
+
+    /**
+     * @return true if the contents of the jar differ from the last time it was seen
+     */
+    private static boolean updateChecksum(@NotNull File jar) {
+        String path = jar.getAbsolutePath();
+        long length = jar.length();
+        long lastModified = jar.lastModified();
+
+        JarChecksum old = jarChecksums.get(path);
+        if (old != null && old.length == length && old.lastModified == lastModified) {
+            return false;
+        }
+
+        // The jar is read only if it was touched, so that a rebuilt but identical jar does not invalidate anything
+        long crc = computeCrc(jar);
+        jarChecksums.put(path, new JarChecksum(length, lastModified, crc));
+        return old != null && (old.length != length || old.crc != crc || crc == UNREADABLE);
+    }
+
+    private static long computeCrc(@NotNull File file) {
+        CRC32 crc = new CRC32();
+        try {
+            InputStream stream = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = stream.read(buffer)) > 0) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+            finally {
+                stream.close();
+            }
+        }
+        catch (IOException e) {
+            return UNREADABLE;
+        }
+        return crc.getValue();
+    }
+
+    private static class JarChecksum {
+        private final long length;
+        private final long lastModified;
+        private final long crc;
+
+        private JarChecksum(long length, long lastModified, long crc) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.crc = crc;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.cli.jvm.daemon;
+
+import com.intellij.openapi.Disposable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.cli.common.ExitCode;
+import org.jetbrains.jet.cli.common.messages.CompilerMessageLocation;
+import org.jetbrains.jet.cli.common.messages.CompilerMessageSeverity;
+import org.jetbrains.jet.cli.common.messages.MessageCollector;
+import org.jetbrains.jet.cli.jvm.K2JVMCompiler;
+import org.jetbrains.jet.cli.jvm.K2JVMCompilerArguments;
+import org.jetbrains.jet.cli.jvm.compiler.SharedApplicationEnvironment;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Compiles on requests coming from {@link K2JVMCompileDaemonClient} through a local socket, in a single long-living JVM.
+ * Built-ins, loaded and JIT-compiled compiler classes and the application environment (see {@link SharedApplicationEnvironment})
+ * survive between compilations.
+ *
+ * Every launch generates a secret token and writes it to a file only the owner of the daemon can read (see
+ * {@link #getDefaultTokenFile}). Requests which don't start with the token are rejected, so that other local users can't
+ * make the daemon write files with its owner's permissions or stop it.
+ *
+ * Requests are served one by one. A client has ten seconds to send the whole request, so that a connection which sends
+ * nothing can't block the daemon. Relative paths in the arguments are resolved against the working directory of the daemon.
+ *
+ * Usage: K2JVMCompileDaemon [port]
+ */
+@SuppressWarnings("UseOfSystemOutOrSystemErr")
+public class K2JVMCompileDaemon {
+    public static final int DEFAULT_PORT = 3344;
+
+    /**
+     * The only argument of a request which stops the daemon
+     */
+    public static final String SHUTDOWN_COMMAND = "-shutdown";
+
+    /* package */ static final String ENCODING = "UTF-8";
+
+    // Bounds the memory a request can make the daemon allocate before it is authenticated
+    private static final int MAX_TOKEN_LENGTH = 256;
+    private static final int MAX_ARGUMENT_COUNT = 1 << 16;
+    private static final int REQUEST_TIMEOUT = 10000;
+    private static final int TOKEN_BYTES = 32;
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        K2JVMCompileDaemon daemon = new K2JVMCompileDaemon(port, getDefaultTokenFile(port), System.err);
+        System.out.println("Kotlin compile daemon is listening on port " + daemon.getPort());
+        daemon.run();
+    }
+
+    /**
+     * @return the file where the daemon listening on the given port keeps its token, in the home directory of the user
+     */
+    @NotNull
+    public static File getDefaultTokenFile(int port) {
+        return new File(System.getProperty("user.home"), ".kotlin/daemon/" + port + ".token");
+    }
+
+    private final ServerSocket serverSocket;
+    private final File tokenFile;
+    private final byte[] token;
+    private final PrintStream log;
+    private final int requestTimeout;
+
+    /**
+     * Binds the socket and writes the token, requests are not served until {@link #run()} is called
+     *
+     * @param port the port to listen on, 0 to choose any free one
+     * @param log the stream to report failed requests to
+     */
+    public K2JVMCompileDaemon(int port, @NotNull File tokenFile, @NotNull PrintStream log) throws IOException {
+        this(port, tokenFile, log, REQUEST_TIMEOUT);
+    }
+
+    /* package */ K2JVMCompileDaemon(int port, @NotNull File tokenFile, @NotNull PrintStream log, int requestTimeout)
+            throws IOException {
+        // Only local clients are served: the daemon writes files wherever it is asked to
+        this.serverSocket = new ServerSocket(port, 0, InetAddress.getByName(null));
+        this.tokenFile = tokenFile;
+        this.log = log;
+        this.requestTimeout = requestTimeout;
+        try {
+            this.token = generateToken().getBytes(ENCODING);
+            writeTokenFile(tokenFile, token, log);
+        }
+        catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Serves requests until the daemon is asked to stop
+     */
+    public void run() throws IOException {
+        SharedApplicationEnvironment.enable();
+        try {
+            boolean running = true;
+            while (running) {
+                Socket socket = serverSocket.accept();
+                try {
+                    running = serve(socket);
+                }
+                catch (IOException e) {
+                    // The client has gone, wait for the next one
+                    log.println("Kotlin compile daemon: failed to serve a request: " + e);
+                }
+                finally {
+                    socket.close();
+                }
+            }
+        }
+        finally {
+            SharedApplicationEnvironment.disable();
+            serverSocket.close();
+            if (!tokenFile.delete()) {
+                log.println("Kotlin compile daemon: can't delete " + tokenFile);
+            }
+        }
+    }
+
+    /**
+     * @return false if the daemon is asked to stop
+     */
+    private boolean serve(@NotNull Socket socket) throws IOException {
+        DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new DeadlineInputStream(socket, System.currentTimeMillis() + requestTimeout)));
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        byte[] requestToken = readBytes(input, MAX_TOKEN_LENGTH);
+        if (!MessageDigest.isEqual(token, requestToken)) {
+            // Nothing is sent back, the client only sees the connection closed
+            log.println("Kotlin compile daemon: rejected a request with a wrong token");
+            return true;
+        }
+
+        String[] args = new String[readLength(input, MAX_ARGUMENT_COUNT)];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = readString(input);
+        }
+
+        if (args.length == 1 && SHUTDOWN_COMMAND.equals(args[0])) {
+            writeResponse(output, ExitCode.OK, "");
+            return false;
+        }
+
+        ByteArrayOutputStream compilerOutput = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(compilerOutput, true, ENCODING);
+        ExitCode exitCode = new DaemonCompiler().exec(out, args);
+        out.flush();
+
+        writeResponse(output, exitCode, compilerOutput.toString(ENCODING));
+        return true;
+    }
+
+    private static void writeResponse(@NotNull DataOutputStream output, @NotNull ExitCode exitCode, @NotNull String text)
+            throws IOException {
+        output.writeInt(exitCode.getCode());
+        writeString(output, text);
+        output.flush();
+    }
+
+    // writeUTF() and readUTF() are limited to 64K, so strings are written as their length followed by the bytes
+
+    /* package */ static void writeString(@NotNull DataOutputStream output, @NotNull String text) throws IOException {
+        writeBytes(output, text.getBytes(ENCODING));
+    }
+
+    /* package */ static void writeBytes(@NotNull DataOutputStream output, @NotNull byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    @NotNull
+    /* package */ static String readString(@NotNull DataInputStream input) throws IOException {
+        return new String(readBytes(input, Integer.MAX_VALUE), ENCODING);
+    }
+
+    @NotNull
+    private static byte[] readBytes(@NotNull DataInputStream input, int maxLength) throws IOException {
+        byte[] bytes = new byte[readLength(input, maxLength)];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static int readLength(@NotNull DataInputStream input, int maxLength) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Unexpected length in a request: " + length);
+        }
+        return length;
+    }
+
+    @NotNull
+    private static String generateToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return token.toString();
+    }
+
+    private static void writeTokenFile(@NotNull File tokenFile, @NotNull byte[] token, @NotNull PrintStream log)
+            throws IOException {
+        File directory = tokenFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create directory " + directory);
+        }
+        if (tokenFile.exists() && !tokenFile.delete()) {
+            throw new IOException("Can't delete the token file of a previous daemon " + tokenFile);
+        }
+        if (!tokenFile.createNewFile()) {
+            throw new IOException("Can't create " + tokenFile);
+        }
+
+        // Access is restricted before the token is written. Some file systems (e.g. on Windows) can't restrict
+        // reading to the owner, there the directory in the home of the user is relied upon
+        if (!(restrictToOwner(directory) && restrictToOwner(tokenFile))) {
+            log.println("Kotlin compile daemon: can't restrict access to " + tokenFile + " to its owner");
+        }
+
+        OutputStream stream = new FileOutputStream(tokenFile);
+        try {
+            stream.write(token);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    private static boolean restrictToOwner(@NotNull File file) {
+        return file.setReadable(false, false) && file.setReadable(true, true) &&
+               file.setWritable(false, false) && file.setWritable(true, true);
+    }
+
+    @NotNull
+    /* package */ static byte[] readTokenFile(@NotNull File tokenFile) throws IOException {
+        DataInputStream stream = new DataInputStream(new FileInputStream(tokenFile));
+        try {
+            byte[] token = new byte[(int) tokenFile.length()];
+            stream.readFully(token);
+            return token;
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    private static class DaemonCompiler extends K2JVMCompiler {
+        @NotNull
+        @Override
+        protected ExitCode doExecute(K2JVMCompilerArguments arguments, MessageCollector messageCollector, Disposable rootDisposable) {
+            // The REPL would read the daemon's standard input, and scripts would run in the daemon's JVM
+            if (arguments.script || isReplRequested(arguments)) {
+                messageCollector.report(CompilerMessageSeverity.ERROR, "Compile daemon can only compile sources or modules",
+                                        CompilerMessageLocation.NO_LOCATION);
+                return ExitCode.INTERNAL_ERROR;
+            }
+            return super.doExecute(arguments, messageCollector, rootDisposable);
+        }
+    }
+
+    /**
+     * Fails reading when the deadline has passed, however slowly the client sends the request
+     */
+    private static class DeadlineInputStream extends FilterInputStream {
+        private final Socket socket;
+        private final long deadline;
+
+        private DeadlineInputStream(@NotNull Socket socket, long deadline) throws IOException {
+            super(socket.getInputStream());
+            this.socket = socket;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            setTimeout();
+            try {
+                return super.read();
+            }
+            catch (SocketTimeoutException e) {
+                throw timedOut();
+            }
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            setTimeout();
+            try {
+                return super.read(b, off, len);
+            }
+            catch (SocketTimeoutException e) {
+                throw timedOut();
+            }
+        }
+
+        private void setTimeout() throws IOException {
+            long timeout = deadline - System.currentTimeMillis();
+            if (timeout <= 0) {
+                throw timedOut();
+            }
+            // Zero would mean no timeout at all
+            socket.setSoTimeout((int) Math.max(timeout, 1));
+        }
+
+        @NotNull
+        private static SocketTimeoutException timedOut() {
+            return new SocketTimeoutException("The request was not received in time");
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.cli.jvm.daemon;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * Sends compiler arguments to a running {@link K2JVMCompileDaemon}.
+ *
+ * Usage: K2JVMCompileDaemonClient port [compiler arguments]
+ */
+@SuppressWarnings("UseOfSystemOutOrSystemErr")
+public class K2JVMCompileDaemonClient {
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: K2JVMCompileDaemonClient port [compiler arguments]");
+            System.exit(2);
+        }
+
+        int port = Integer.parseInt(args[0]);
+        int exitCode = compile(port, Arrays.copyOfRange(args, 1, args.length), System.out);
+        if (exitCode != 0) {
+            System.exit(exitCode);
+        }
+    }
+
+    /**
+     * Compiles with the daemon listening on the given port, which keeps its token in the default location
+     * @return compiler exit code, see {@link org.jetbrains.jet.cli.common.ExitCode}
+     */
+    public static int compile(int port, @NotNull String[] args, @NotNull PrintStream out) throws IOException {
+        return compile(port, K2JVMCompileDaemon.getDefaultTokenFile(port), args, out);
+    }
+
+    /**
+     * Compiles with the daemon, printing the compiler output to {@code out}
+     * @return compiler exit code, see {@link org.jetbrains.jet.cli.common.ExitCode}
+     */
+    public static int compile(int port, @NotNull File tokenFile, @NotNull String[] args, @NotNull PrintStream out)
+            throws IOException {
+        byte[] token = K2JVMCompileDaemon.readTokenFile(tokenFile);
+
+        Socket socket = new Socket(InetAddress.getByName(null), port);
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            K2JVMCompileDaemon.writeBytes(output, token);
+            output.writeInt(args.length);
+            for (String arg : args) {
+                K2JVMCompileDaemon.writeString(output, arg);
+            }
+            output.flush();
+
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            int exitCode;
+            try {
+                exitCode = input.readInt();
+            }
+            catch (EOFException e) {
+                throw new IOException("The daemon on port " + port + " rejected the request, the token in " + tokenFile + " may be stale");
+            }
+
+            out.print(K2JVMCompileDaemon.readString(input));
+            out.flush();
+            return exitCode;
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Stops the daemon after it completes the current compilation
+     */
+    public static void shutdown(int port, @NotNull File tokenFile) throws IOException {
+        compile(port, tokenFile, new String[] {K2JVMCompileDaemon.SHUTDOWN_COMMAND}, new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    /**
+     * Stops the daemon listening on the given port, which keeps its token in the default location
+     */
+    public static void shutdown(int port) throws IOException {
+        shutdown(port, K2JVMCompileDaemon.getDefaultTokenFile(port));
+    }
+
+    private K2JVMCompileDaemonClient() {
+    }
+}
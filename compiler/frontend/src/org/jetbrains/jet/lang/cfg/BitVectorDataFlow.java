@@ -0,0 +1,396 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.cfg;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.cfg.PseudocodeTraverser.Edges;
+import org.jetbrains.jet.lang.cfg.PseudocodeTraverser.LookInsideStrategy;
+import org.jetbrains.jet.lang.cfg.PseudocodeTraverser.TraversalOrder;
+import org.jetbrains.jet.lang.cfg.pseudocode.*;
+import org.jetbrains.jet.lang.descriptors.VariableDescriptor;
+
+import java.util.*;
+
+/**
+ * Data flow analysis of variables, solving the same equations as {@link PseudocodeTraverser#collectData}.
+ *
+ * Variables are numbered densely, and the data of an instruction is a fixed number of bit sets ("planes") indexed by
+ * variable numbers. Data is never modified once created, so instructions which do not touch variables share it.
+ * Instructions are taken from a worklist in reverse post-order of the flow graph.
+ *
+ * @param <S> state of a single variable, as presented to clients
+ */
+/* package */ abstract class BitVectorDataFlow<S> {
+    private final TraversalOrder traversalOrder;
+    private final LookInsideStrategy lookInside;
+    private final int planeCount;
+
+    private final Map<VariableDescriptor, Integer> variableNumbers = new HashMap<VariableDescriptor, Integer>();
+    private final List<VariableDescriptor> variables = new ArrayList<VariableDescriptor>();
+
+    protected BitVectorDataFlow(@NotNull TraversalOrder traversalOrder, @NotNull LookInsideStrategy lookInside, int planeCount) {
+        this.traversalOrder = traversalOrder;
+        this.lookInside = lookInside;
+        this.planeCount = planeCount;
+    }
+
+    /**
+     * @return the variable which is changed by the instruction, if any
+     */
+    @Nullable
+    protected abstract VariableDescriptor getVariable(@NotNull Instruction instruction);
+
+    @NotNull
+    protected abstract BitSet[] merge(@NotNull List<BitSet[]> incomingData);
+
+    /**
+     * @return {@code enterData} itself if the instruction doesn't change it
+     */
+    @NotNull
+    protected abstract BitSet[] transfer(@NotNull Instruction instruction, int variable, @NotNull BitSet[] enterData);
+
+    protected abstract void encode(@NotNull BitSet[] data, int variable, @NotNull S state);
+
+    /**
+     * @return null if the variable is absent in the data
+     */
+    @Nullable
+    protected abstract S decode(@NotNull BitSet[] data, int variable);
+
+    @NotNull
+    protected final BitSet[] emptyData() {
+        BitSet[] data = new BitSet[planeCount];
+        for (int i = 0; i < planeCount; i++) {
+            data[i] = new BitSet();
+        }
+        return data;
+    }
+
+    @NotNull
+    protected final BitSet[] copyData(@NotNull BitSet[] data) {
+        BitSet[] copy = new BitSet[planeCount];
+        for (int i = 0; i < planeCount; i++) {
+            copy[i] = (BitSet) data[i].clone();
+        }
+        return copy;
+    }
+
+    private int getVariableNumber(@NotNull VariableDescriptor variable) {
+        Integer number = variableNumbers.get(variable);
+        if (number == null) {
+            number = variables.size();
+            variableNumbers.put(variable, number);
+            variables.add(variable);
+        }
+        return number;
+    }
+
+    @NotNull
+    public Map<Instruction, Edges<Map<VariableDescriptor, S>>> solve(
+            @NotNull Pseudocode pseudocode,
+            @NotNull Map<VariableDescriptor, S> dataForStartInstruction
+    ) {
+        BitSet[] startData = emptyData();
+        for (Map.Entry<VariableDescriptor, S> entry : dataForStartInstruction.entrySet()) {
+            encode(startData, getVariableNumber(entry.getKey()), entry.getValue());
+        }
+
+        FlowGraph graph = new FlowGraph();
+        graph.addPseudocode(pseudocode, Collections.<Instruction>emptyList(), false);
+        graph.resolvePredecessors();
+        return graph.solve(startData);
+    }
+
+    @NotNull
+    private Map<VariableDescriptor, S> asMap(@NotNull final BitSet[] data) {
+        return new AbstractMap<VariableDescriptor, S>() {
+            @Override
+            public S get(Object key) {
+                Integer number = variableNumbers.get(key);
+                return number == null ? null : decode(data, number);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @NotNull
+            @Override
+            public Set<Entry<VariableDescriptor, S>> entrySet() {
+                Set<Entry<VariableDescriptor, S>> entries = new LinkedHashSet<Entry<VariableDescriptor, S>>();
+                for (int number = 0; number < variables.size(); number++) {
+                    S state = decode(data, number);
+                    if (state != null) {
+                        entries.add(new SimpleImmutableEntry<VariableDescriptor, S>(variables.get(number), state));
+                    }
+                }
+                return entries;
+            }
+        };
+    }
+
+    /**
+     * Mirrors the way {@link PseudocodeTraverser} walks pseudocode: the start instruction of the analysed pseudocode has fixed data,
+     * bodies of local declarations (if looked into) are entered from the predecessors of the declaration, and the declaration
+     * instruction gets the data of the last instruction of the body.
+     */
+    private class FlowGraph {
+        private final List<Instruction> instructions = new ArrayList<Instruction>();
+        private final Map<Instruction, Integer> indices = new HashMap<Instruction, Integer>();
+        private final List<Collection<Instruction>> previousInstructions = new ArrayList<Collection<Instruction>>();
+        private final List<Integer> aliases = new ArrayList<Integer>();
+
+        private int start = -1;
+        private int[] variableOfInstruction;
+        private int[][] predecessors;
+        private int[][] successors;
+
+        private int add(@NotNull Instruction instruction, @NotNull Collection<Instruction> previous) {
+            int index = instructions.size();
+            instructions.add(instruction);
+            indices.put(instruction, index);
+            previousInstructions.add(previous);
+            aliases.add(-1);
+            return index;
+        }
+
+        private void addPseudocode(@NotNull Pseudocode pseudocode, @NotNull Collection<Instruction> previousSubGraphInstructions, boolean isLocal) {
+            Instruction startInstruction = getStartInstruction(pseudocode);
+            List<Instruction> pseudocodeInstructions =
+                    traversalOrder == TraversalOrder.FORWARD ? pseudocode.getInstructions() : pseudocode.getReversedInstructions();
+
+            for (Instruction instruction : pseudocodeInstructions) {
+                if (!isLocal && isStartInstruction(instruction)) {
+                    // Start instructions keep their initial data
+                    int index = add(instruction, Collections.<Instruction>emptyList());
+                    if (instruction == startInstruction) {
+                        start = index;
+                    }
+                    continue;
+                }
+
+                Collection<Instruction> previous = getPreviousInstructions(instruction);
+
+                if (lookInside == LookInsideStrategy.ANALYSE_LOCAL_DECLARATIONS && instruction instanceof LocalDeclarationInstruction) {
+                    Pseudocode body = ((LocalDeclarationInstruction) instruction).getBody();
+                    addPseudocode(body, previous, true);
+                    Instruction lastInstruction = traversalOrder == TraversalOrder.FORWARD
+                                                  ? body.getSinkInstruction()
+                                                  : body.getEnterInstruction();
+                    int index = add(instruction, Collections.singletonList(lastInstruction));
+                    aliases.set(index, indices.get(lastInstruction));
+                    continue;
+                }
+
+                if (instruction == startInstruction && !previousSubGraphInstructions.isEmpty()) {
+                    List<Instruction> allPrevious = new ArrayList<Instruction>(previous);
+                    allPrevious.addAll(previousSubGraphInstructions);
+                    previous = allPrevious;
+                }
+                add(instruction, previous);
+            }
+        }
+
+        private void resolvePredecessors() {
+            int size = instructions.size();
+            variableOfInstruction = new int[size];
+            predecessors = new int[size][];
+            int[] successorCounts = new int[size];
+
+            for (int i = 0; i < size; i++) {
+                VariableDescriptor variable = i == start ? null : getVariable(instructions.get(i));
+                variableOfInstruction[i] = variable == null ? -1 : getVariableNumber(variable);
+
+                List<Integer> resolved = new ArrayList<Integer>();
+                for (Instruction previous : previousInstructions.get(i)) {
+                    Integer index = indices.get(previous);
+                    if (index != null) {
+                        resolved.add(index);
+                        successorCounts[index]++;
+                    }
+                }
+                predecessors[i] = toArray(resolved);
+            }
+
+            successors = new int[size][];
+            for (int i = 0; i < size; i++) {
+                successors[i] = new int[successorCounts[i]];
+                successorCounts[i] = 0;
+            }
+            for (int i = 0; i < size; i++) {
+                for (int predecessor : predecessors[i]) {
+                    successors[predecessor][successorCounts[predecessor]++] = i;
+                }
+            }
+        }
+
+        @NotNull
+        private Map<Instruction, Edges<Map<VariableDescriptor, S>>> solve(@NotNull BitSet[] startData) {
+            int size = instructions.size();
+            BitSet[][] enterData = new BitSet[size][];
+            BitSet[][] exitData = new BitSet[size][];
+            BitSet[] initialData = emptyData();
+            Arrays.fill(enterData, initialData);
+            Arrays.fill(exitData, initialData);
+            if (start >= 0) {
+                enterData[start] = startData;
+                exitData[start] = startData;
+            }
+
+            int[] order = reversePostOrder();
+            int[] positions = new int[size];
+            for (int position = 0; position < size; position++) {
+                positions[order[position]] = position;
+            }
+
+            BitSet worklist = new BitSet(size);
+            worklist.set(0, size);
+            if (start >= 0) {
+                worklist.clear(positions[start]);
+            }
+
+            List<BitSet[]> incomingData = new ArrayList<BitSet[]>();
+            int position = worklist.nextSetBit(0);
+            while (position >= 0) {
+                worklist.clear(position);
+                int index = order[position];
+
+                BitSet[] newEnterData;
+                BitSet[] newExitData;
+                int alias = aliases.get(index);
+                if (alias >= 0) {
+                    newEnterData = enterData[alias];
+                    newExitData = exitData[alias];
+                }
+                else {
+                    incomingData.clear();
+                    for (int predecessor : predecessors[index]) {
+                        incomingData.add(exitData[predecessor]);
+                    }
+                    newEnterData = merge(incomingData);
+                    newExitData = transfer(instructions.get(index), variableOfInstruction[index], newEnterData);
+                }
+
+                if (!Arrays.equals(newEnterData, enterData[index]) || !Arrays.equals(newExitData, exitData[index])) {
+                    enterData[index] = newEnterData;
+                    exitData[index] = newExitData;
+                    for (int successor : successors[index]) {
+                        if (successor != start) {
+                            worklist.set(positions[successor]);
+                        }
+                    }
+                }
+
+                // Continue forward from the current position, so that each pass over a loop goes in reverse post-order
+                int next = worklist.nextSetBit(position + 1);
+                position = next >= 0 ? next : worklist.nextSetBit(0);
+            }
+
+            Map<Instruction, Edges<Map<VariableDescriptor, S>>> result = new LinkedHashMap<Instruction, Edges<Map<VariableDescriptor, S>>>();
+            Map<BitSet[], Map<VariableDescriptor, S>> views = new IdentityHashMap<BitSet[], Map<VariableDescriptor, S>>();
+            for (int i = 0; i < size; i++) {
+                result.put(instructions.get(i), Edges.create(getView(views, enterData[i]), getView(views, exitData[i])));
+            }
+            return result;
+        }
+
+        @NotNull
+        private Map<VariableDescriptor, S> getView(@NotNull Map<BitSet[], Map<VariableDescriptor, S>> views, @NotNull BitSet[] data) {
+            Map<VariableDescriptor, S> view = views.get(data);
+            if (view == null) {
+                view = asMap(data);
+                views.put(data, view);
+            }
+            return view;
+        }
+
+        @NotNull
+        private int[] reversePostOrder() {
+            int size = instructions.size();
+            int[] postOrder = new int[size];
+            int visitedCount = 0;
+            boolean[] visited = new boolean[size];
+
+            // Iterative depth-first search: the stack keeps instructions and the number of their successors already visited
+            int[] stack = new int[size];
+            int[] successorPositions = new int[size];
+            List<Integer> roots = new ArrayList<Integer>();
+            if (start >= 0) {
+                roots.add(start);
+            }
+            for (int i = 0; i < size; i++) {
+                roots.add(i);
+            }
+
+            for (int root : roots) {
+                if (visited[root]) continue;
+                visited[root] = true;
+                int depth = 0;
+                stack[0] = root;
+                successorPositions[0] = 0;
+                while (depth >= 0) {
+                    int current = stack[depth];
+                    if (successorPositions[depth] < successors[current].length) {
+                        int successor = successors[current][successorPositions[depth]++];
+                        if (!visited[successor]) {
+                            visited[successor] = true;
+                            depth++;
+                            stack[depth] = successor;
+                            successorPositions[depth] = 0;
+                        }
+                    }
+                    else {
+                        postOrder[visitedCount++] = current;
+                        depth--;
+                    }
+                }
+            }
+
+            int[] reversed = new int[size];
+            for (int i = 0; i < size; i++) {
+                reversed[i] = postOrder[size - 1 - i];
+            }
+            return reversed;
+        }
+
+        @NotNull
+        private Instruction getStartInstruction(@NotNull Pseudocode pseudocode) {
+            return traversalOrder == TraversalOrder.FORWARD ? pseudocode.getEnterInstruction() : pseudocode.getSinkInstruction();
+        }
+
+        private boolean isStartInstruction(@NotNull Instruction instruction) {
+            return traversalOrder == TraversalOrder.FORWARD ? instruction instanceof SubroutineEnterInstruction
+                                                            : instruction instanceof SubroutineSinkInstruction;
+        }
+
+        @NotNull
+        private Collection<Instruction> getPreviousInstructions(@NotNull Instruction instruction) {
+            return traversalOrder == TraversalOrder.FORWARD ? instruction.getPreviousInstructions() : instruction.getNextInstructions();
+        }
+    }
+
+    @NotNull
+    private static int[] toArray(@NotNull List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -28,10 +28,7 @@ import org.jetbrains.jet.lang.psi.JetDeclaration;
 import org.jetbrains.jet.lang.psi.JetProperty;
 import org.jetbrains.jet.lang.resolve.BindingContext;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 import static org.jetbrains.jet.lang.cfg.PseudocodeTraverser.LookInsideStrategy.ANALYSE_LOCAL_DECLARATIONS;
 import static org.jetbrains.jet.lang.cfg.PseudocodeTraverser.LookInsideStrategy.SKIP_LOCAL_DECLARATIONS;
@@ -135,24 +132,11 @@ public class PseudocodeVariablesData {
 
         Set<VariableDescriptor> usedVariables = getUsedVariables(pseudocode);
         Set<VariableDescriptor> declaredVariables = getDeclaredVariables(pseudocode, false);
-        Map<VariableDescriptor, VariableInitState> initialMap = Collections.emptyMap();
         Map<VariableDescriptor, VariableInitState> initialMapForStartInstruction = prepareInitializersMapForStartInstruction(
                 usedVariables, declaredVariables);
 
-        Map<Instruction, Edges<Map<VariableDescriptor, VariableInitState>>> variableInitializersMap = PseudocodeTraverser.collectData(
-                pseudocode, FORWARD, SKIP_LOCAL_DECLARATIONS,
-                initialMap, initialMapForStartInstruction, new PseudocodeTraverser.InstructionDataMergeStrategy<Map<VariableDescriptor, VariableInitState>>() {
-            @Override
-            public Edges<Map<VariableDescriptor, VariableInitState>> execute(
-                    @NotNull Instruction instruction, @NotNull Collection<Map<VariableDescriptor, VariableInitState>> incomingEdgesData) {
-
-                Map<VariableDescriptor, VariableInitState> enterInstructionData = mergeIncomingEdgesDataForInitializers(incomingEdgesData);
-                Map<VariableDescriptor, VariableInitState> exitInstructionData =
-                        addVariableInitStateFromCurrentInstructionIfAny(instruction, enterInstructionData);
-                return Edges.create(enterInstructionData, exitInstructionData);
-            }
-        });
-
+        Map<Instruction, Edges<Map<VariableDescriptor, VariableInitState>>> variableInitializersMap =
+                new InitializersDataFlow().solve(pseudocode, initialMapForStartInstruction);
 
         for (LocalDeclarationInstruction localDeclarationInstruction : pseudocode.getLocalDeclarations()) {
             Pseudocode localPseudocode = localDeclarationInstruction.getBody();
@@ -189,62 +173,83 @@ public class PseudocodeVariablesData {
         return initialMapForStartInstruction;
     }
 
-    @NotNull
-    private static Map<VariableDescriptor, VariableInitState> mergeIncomingEdgesDataForInitializers(
-            @NotNull Collection<Map<VariableDescriptor, VariableInitState>> incomingEdgesData) {
+    private class InitializersDataFlow extends BitVectorDataFlow<VariableInitState> {
+        private static final int PRESENT = 0;
+        private static final int INITIALIZED = 1;
+        private static final int DECLARED = 2;
 
-        Set<VariableDescriptor> variablesInScope = Sets.newHashSet();
-        for (Map<VariableDescriptor, VariableInitState> edgeData : incomingEdgesData) {
-            variablesInScope.addAll(edgeData.keySet());
+        private InitializersDataFlow() {
+            super(FORWARD, SKIP_LOCAL_DECLARATIONS, 3);
         }
 
-        Map<VariableDescriptor, VariableInitState> enterInstructionData = Maps.newHashMap();
-        for (VariableDescriptor variable : variablesInScope) {
-            boolean isInitialized = true;
-            boolean isDeclared = true;
-            for (Map<VariableDescriptor, VariableInitState> edgeData : incomingEdgesData) {
-                VariableInitState initState = edgeData.get(variable);
-                if (initState != null) {
-                    if (!initState.isInitialized) {
-                        isInitialized = false;
-                    }
-                    if (!initState.isDeclared) {
-                        isDeclared = false;
-                    }
-                }
+        @Nullable
+        @Override
+        protected VariableDescriptor getVariable(@NotNull Instruction instruction) {
+            if (!(instruction instanceof WriteValueInstruction) && !(instruction instanceof VariableDeclarationInstruction)) {
+                return null;
             }
-            enterInstructionData.put(variable, VariableInitState.create(isInitialized, isDeclared));
+            return PseudocodeUtil.extractVariableDescriptorIfAny(instruction, false, bindingContext);
         }
-        return enterInstructionData;
-    }
-
-    @NotNull
-    private Map<VariableDescriptor, VariableInitState> addVariableInitStateFromCurrentInstructionIfAny(
-            @NotNull Instruction instruction, @NotNull Map<VariableDescriptor, VariableInitState> enterInstructionData) {
 
-        if (!(instruction instanceof WriteValueInstruction) && !(instruction instanceof VariableDeclarationInstruction)) {
-            return enterInstructionData;
+        @NotNull
+        @Override
+        protected BitSet[] merge(@NotNull List<BitSet[]> incomingData) {
+            if (incomingData.size() == 1) return incomingData.get(0);
+
+            // A variable is initialized (declared) if it is so on every incoming edge where it is present
+            BitSet[] result = emptyData();
+            BitSet notInitialized = new BitSet();
+            BitSet notDeclared = new BitSet();
+            for (BitSet[] data : incomingData) {
+                result[PRESENT].or(data[PRESENT]);
+                notInitialized.or(andNot(data[PRESENT], data[INITIALIZED]));
+                notDeclared.or(andNot(data[PRESENT], data[DECLARED]));
+            }
+            result[INITIALIZED].or(andNot(result[PRESENT], notInitialized));
+            result[DECLARED].or(andNot(result[PRESENT], notDeclared));
+            return result;
         }
-        VariableDescriptor variable = PseudocodeUtil.extractVariableDescriptorIfAny(instruction, false, bindingContext);
-        if (variable == null) {
-            return enterInstructionData;
+
+        @NotNull
+        @Override
+        protected BitSet[] transfer(@NotNull Instruction instruction, int variable, @NotNull BitSet[] enterData) {
+            if (variable < 0) return enterData;
+
+            boolean wasPresent = enterData[PRESENT].get(variable);
+            BitSet[] exitData = copyData(enterData);
+            exitData[PRESENT].set(variable);
+            if (instruction instanceof WriteValueInstruction) {
+                boolean isDeclaredHere = ((WriteValueInstruction) instruction).getElement() instanceof JetProperty;
+                exitData[INITIALIZED].set(variable);
+                exitData[DECLARED].set(variable, isDeclaredHere || (wasPresent && enterData[DECLARED].get(variable)));
+            }
+            else { // instruction instanceof VariableDeclarationInstruction
+                exitData[INITIALIZED].set(variable, wasPresent && enterData[INITIALIZED].get(variable));
+                exitData[DECLARED].set(variable);
+            }
+            return exitData;
         }
-        Map<VariableDescriptor, VariableInitState> exitInstructionData = Maps.newHashMap(enterInstructionData);
-        if (instruction instanceof WriteValueInstruction) {
-            VariableInitState enterInitState = enterInstructionData.get(variable);
-            VariableInitState initializationAtThisElement =
-                    VariableInitState.create(((WriteValueInstruction) instruction).getElement() instanceof JetProperty, enterInitState);
-            exitInstructionData.put(variable, initializationAtThisElement);
+
+        @Override
+        protected void encode(@NotNull BitSet[] data, int variable, @NotNull VariableInitState state) {
+            data[PRESENT].set(variable);
+            data[INITIALIZED].set(variable, state.isInitialized);
+            data[DECLARED].set(variable, state.isDeclared);
         }
-        else { // instruction instanceof VariableDeclarationInstruction
-            VariableInitState enterInitState = enterInstructionData.get(variable);
-            if (enterInitState == null || !enterInitState.isInitialized || !enterInitState.isDeclared) {
-                boolean isInitialized = enterInitState != null && enterInitState.isInitialized;
-                VariableInitState variableDeclarationInfo = VariableInitState.create(isInitialized, true);
-                exitInstructionData.put(variable, variableDeclarationInfo);
-            }
+
+        @Nullable
+        @Override
+        protected VariableInitState decode(@NotNull BitSet[] data, int variable) {
+            if (!data[PRESENT].get(variable)) return null;
+            return VariableInitState.create(data[INITIALIZED].get(variable), data[DECLARED].get(variable));
         }
-        return exitInstructionData;
+    }
+
+    @NotNull
+    private static BitSet andNot(@NotNull BitSet bitSet, @NotNull BitSet excluded) {
+        BitSet result = (BitSet) bitSet.clone();
+        result.andNot(excluded);
+        return result;
     }
 
 // variable use
@@ -255,53 +260,86 @@ public class PseudocodeVariablesData {
         for (VariableDescriptor usedVariable : getUsedVariables(pseudocode)) {
             sinkInstructionData.put(usedVariable, VariableUseState.UNUSED);
         }
-        InstructionDataMergeStrategy<Map<VariableDescriptor, VariableUseState>> collectVariableUseStatusStrategy =
-                new InstructionDataMergeStrategy<Map<VariableDescriptor, VariableUseState>>() {
-                    @Override
-                    public Edges<Map<VariableDescriptor, VariableUseState>> execute(
-                            @NotNull Instruction instruction,
-                            @NotNull Collection<Map<VariableDescriptor, VariableUseState>> incomingEdgesData
-                    ) {
-
-                        Map<VariableDescriptor, VariableUseState> enterResult = Maps.newHashMap();
-                        for (Map<VariableDescriptor, VariableUseState> edgeData : incomingEdgesData) {
-                            for (Map.Entry<VariableDescriptor, VariableUseState> entry : edgeData.entrySet()) {
-                                VariableDescriptor variableDescriptor = entry.getKey();
-                                VariableUseState variableUseState = entry.getValue();
-                                enterResult.put(variableDescriptor, variableUseState.merge(enterResult.get(variableDescriptor)));
-                            }
-                        }
-                        VariableDescriptor variableDescriptor = PseudocodeUtil.extractVariableDescriptorIfAny(instruction, true,
-                                                                                                              bindingContext);
-                        if (variableDescriptor == null ||
-                            (!(instruction instanceof ReadValueInstruction) && !(instruction instanceof WriteValueInstruction))) {
-                            return Edges.create(enterResult, enterResult);
-                        }
-                        Map<VariableDescriptor, VariableUseState> exitResult = Maps.newHashMap(enterResult);
-                        if (instruction instanceof ReadValueInstruction) {
-                            exitResult.put(variableDescriptor, VariableUseState.LAST_READ);
-                        }
-                        else { //instruction instanceof WriteValueInstruction
-                            VariableUseState variableUseState = enterResult.get(variableDescriptor);
-                            if (variableUseState == null) {
-                                variableUseState = VariableUseState.UNUSED;
-                            }
-                            switch (variableUseState) {
-                                case UNUSED:
-                                case ONLY_WRITTEN_NEVER_READ:
-                                    exitResult.put(variableDescriptor, VariableUseState.ONLY_WRITTEN_NEVER_READ);
-                                    break;
-                                case LAST_WRITTEN:
-                                case LAST_READ:
-                                    exitResult.put(variableDescriptor, VariableUseState.LAST_WRITTEN);
-                            }
-                        }
-                        return Edges.create(enterResult, exitResult);
-                    }
-                };
-        return PseudocodeTraverser.collectData(pseudocode, BACKWARD, ANALYSE_LOCAL_DECLARATIONS,
-                                               Collections.<VariableDescriptor, VariableUseState>emptyMap(),
-                                               sinkInstructionData, collectVariableUseStatusStrategy);
+        return new UseStatusDataFlow().solve(pseudocode, sinkInstructionData);
+    }
+
+    private class UseStatusDataFlow extends BitVectorDataFlow<VariableUseState> {
+        // Importance of the state is HIGH * 2 + LOW
+        private static final int PRESENT = 0;
+        private static final int HIGH = 1;
+        private static final int LOW = 2;
+
+        private UseStatusDataFlow() {
+            super(BACKWARD, ANALYSE_LOCAL_DECLARATIONS, 3);
+        }
+
+        @Nullable
+        @Override
+        protected VariableDescriptor getVariable(@NotNull Instruction instruction) {
+            if (!(instruction instanceof ReadValueInstruction) && !(instruction instanceof WriteValueInstruction)) {
+                return null;
+            }
+            return PseudocodeUtil.extractVariableDescriptorIfAny(instruction, true, bindingContext);
+        }
+
+        @NotNull
+        @Override
+        protected BitSet[] merge(@NotNull List<BitSet[]> incomingData) {
+            if (incomingData.size() == 1) return incomingData.get(0);
+
+            // The most important state wins
+            BitSet[] result = emptyData();
+            BitSet lowWithHigh = new BitSet();
+            BitSet lowWithoutHigh = new BitSet();
+            for (BitSet[] data : incomingData) {
+                result[PRESENT].or(data[PRESENT]);
+                result[HIGH].or(data[HIGH]);
+                BitSet low = (BitSet) data[LOW].clone();
+                low.and(data[HIGH]);
+                lowWithHigh.or(low);
+                lowWithoutHigh.or(andNot(data[LOW], data[HIGH]));
+            }
+            result[LOW].or(lowWithHigh);
+            result[LOW].or(andNot(lowWithoutHigh, result[HIGH]));
+            return result;
+        }
+
+        @NotNull
+        @Override
+        protected BitSet[] transfer(@NotNull Instruction instruction, int variable, @NotNull BitSet[] enterData) {
+            if (variable < 0) return enterData;
+
+            VariableUseState exitState;
+            if (instruction instanceof ReadValueInstruction) {
+                exitState = VariableUseState.LAST_READ;
+            }
+            else { // instruction instanceof WriteValueInstruction
+                // LAST_WRITTEN and LAST_READ have the high bit
+                exitState = enterData[HIGH].get(variable) ? VariableUseState.LAST_WRITTEN : VariableUseState.ONLY_WRITTEN_NEVER_READ;
+            }
+            BitSet[] exitData = copyData(enterData);
+            encode(exitData, variable, exitState);
+            return exitData;
+        }
+
+        @Override
+        protected void encode(@NotNull BitSet[] data, int variable, @NotNull VariableUseState state) {
+            data[PRESENT].set(variable);
+            data[HIGH].set(variable, state.importance >= 2);
+            data[LOW].set(variable, state.importance % 2 == 1);
+        }
+
+        @Nullable
+        @Override
+        protected VariableUseState decode(@NotNull BitSet[] data, int variable) {
+            if (!data[PRESENT].get(variable)) return null;
+            boolean high = data[HIGH].get(variable);
+            boolean low = data[LOW].get(variable);
+            if (high) {
+                return low ? VariableUseState.LAST_READ : VariableUseState.LAST_WRITTEN;
+            }
+            return low ? VariableUseState.ONLY_WRITTEN_NEVER_READ : VariableUseState.UNUSED;
+        }
     }
 
     public static class VariableInitState {
@@ -331,10 +369,6 @@ public class PseudocodeVariablesData {
         private static VariableInitState create(boolean isInitialized) {
             return create(isInitialized, false);
         }
-
-        private static VariableInitState create(boolean isDeclaredHere, @Nullable VariableInitState mergedEdgesData) {
-            return create(true, isDeclaredHere || (mergedEdgesData != null && mergedEdgesData.isDeclared));
-        }
     }
 
     public static enum VariableUseState {
@@ -349,11 +383,6 @@ public class PseudocodeVariablesData {
             this.importance = importance;
         }
 
-        private VariableUseState merge(@Nullable VariableUseState variableUseState) {
-            if (variableUseState == null || importance > variableUseState.importance) return this;
-            return variableUseState;
-        }
-
         public static boolean isUsed(@Nullable VariableUseState variableUseState) {
             return variableUseState != null && variableUseState != UNUSED;
         }
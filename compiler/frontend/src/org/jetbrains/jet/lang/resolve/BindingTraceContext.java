@@ -34,6 +34,10 @@ public class BindingTraceContext implements BindingTrace {
     /* package */ final static boolean TRACK_REWRITES = false;
     /* package */ final static boolean TRACK_WITH_STACK_TRACES = true;
 
+    // Selects CompactSlicedMap for storing bindings, see createSlicedMap()
+    public static final String COMPACT_SLICED_MAP_PROPERTY = "kotlin.binding.trace.compact.map";
+    private static final boolean USE_COMPACT_SLICED_MAP = Boolean.getBoolean(COMPACT_SLICED_MAP_PROPERTY);
+
     private final MutableSlicedMap map;
 
     private final BindingContext bindingContext = new BindingContext() {
@@ -64,8 +68,16 @@ public class BindingTraceContext implements BindingTrace {
     };
 
     public BindingTraceContext() {
+        this(createSlicedMap());
+    }
+
+    @NotNull
+    /* package */ static MutableSlicedMap createSlicedMap() {
         //noinspection ConstantConditions
-        this(TRACK_REWRITES ? new TrackingSlicedMap(TRACK_WITH_STACK_TRACES) : SlicedMapImpl.create());
+        if (TRACK_REWRITES) {
+            return new TrackingSlicedMap(TRACK_WITH_STACK_TRACES);
+        }
+        return USE_COMPACT_SLICED_MAP ? CompactSlicedMap.create() : SlicedMapImpl.create();
     }
 
 
@@ -29,19 +29,29 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Trace which records into its own map and reads from it first, then from the parent context.
+ *
+ * Many such traces are created for speculative resolution and thrown away with nothing recorded, so storage is only allocated
+ * on the first record. Nothing read from the parent is cached: the parent may be written to while this trace is alive.
+ */
 public class DelegatingBindingTrace implements BindingTrace {
-    @SuppressWarnings("ConstantConditions")
-    private final MutableSlicedMap map = BindingTraceContext.TRACK_REWRITES ? new TrackingSlicedMap(BindingTraceContext.TRACK_WITH_STACK_TRACES) : SlicedMapImpl.create();
+    @Nullable
+    private MutableSlicedMap map = null;
 
     private final BindingContext parentContext;
-    private final List<Diagnostic> diagnostics = Lists.newArrayList();
+    @Nullable
+    private List<Diagnostic> diagnostics = null;
     private final String name;
 
     private final BindingContext bindingContext = new BindingContext() {
         @NotNull
         @Override
         public Diagnostics getDiagnostics() {
-            ArrayList<Diagnostic> mergedDiagnostics = new ArrayList<Diagnostic>(diagnostics);
+            ArrayList<Diagnostic> mergedDiagnostics = new ArrayList<Diagnostic>();
+            if (diagnostics != null) {
+                mergedDiagnostics.addAll(diagnostics);
+            }
             mergedDiagnostics.addAll(parentContext.getDiagnostics().noSuppression().all());
             return new DiagnosticsWithSuppression(this, mergedDiagnostics);
         }
@@ -63,6 +73,7 @@ public class DelegatingBindingTrace implements BindingTrace {
         @Override
         public <K, V> ImmutableMap<K, V> getSliceContents(@NotNull ReadOnlySlice<K, V> slice) {
             ImmutableMap<K, V> parentContents = parentContext.getSliceContents(slice);
+            if (map == null) return parentContents;
             ImmutableMap<K, V> currentContents = map.getSliceContents(slice);
             return ImmutableMap.<K, V>builder().putAll(parentContents).putAll(currentContents).build();
         }
@@ -85,6 +96,9 @@ public class DelegatingBindingTrace implements BindingTrace {
 
     @Override
     public <K, V> void record(WritableSlice<K, V> slice, K key, V value) {
+        if (map == null) {
+            map = BindingTraceContext.createSlicedMap();
+        }
         map.put(slice, key, value);
     }
 
@@ -95,7 +109,8 @@ public class DelegatingBindingTrace implements BindingTrace {
 
     @Override
     public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
-        V value = map.get(slice, key);
+        // Values of some slices are computed even when nothing is recorded, as they are in an empty map
+        V value = map != null ? map.get(slice, key) : SlicedMap.DO_NOTHING.get(slice, key);
         if (slice instanceof Slices.SetSlice) {
             assert value != null;
             if (value.equals(true)) return value;
@@ -110,8 +125,10 @@ public class DelegatingBindingTrace implements BindingTrace {
     @NotNull
     @Override
     public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
-        Collection<K> keys = map.getKeys(slice);
         Collection<K> fromParent = parentContext.getKeys(slice);
+        if (map == null) return fromParent;
+
+        Collection<K> keys = map.getKeys(slice);
         if (keys.isEmpty()) return fromParent;
         if (fromParent.isEmpty()) return keys;
 
@@ -125,38 +142,68 @@ public class DelegatingBindingTrace implements BindingTrace {
     }
 
     public void moveAllMyDataTo(@NotNull BindingTrace trace) {
-        addAllMyDataTo(trace, null, true);
-        clear();
+        moveAllMyDataTo(trace, null, true);
     }
 
     public void addAllMyDataTo(@NotNull BindingTrace trace, @Nullable TraceEntryFilter filter, boolean commitDiagnostics) {
-        for (Map.Entry<SlicedMapKey<?, ?>, ?> entry : map) {
-            SlicedMapKey slicedMapKey = entry.getKey();
-
-            WritableSlice slice = slicedMapKey.getSlice();
-            Object key = slicedMapKey.getKey();
-            Object value = entry.getValue();
-
-            if (filter == null || filter.accept(slice, key)) {
-                //noinspection unchecked
-                trace.record(slice, key, value);
+        if (map != null) {
+            for (Map.Entry<SlicedMapKey<?, ?>, ?> entry : map) {
+                SlicedMapKey slicedMapKey = entry.getKey();
+
+                WritableSlice slice = slicedMapKey.getSlice();
+                Object key = slicedMapKey.getKey();
+                Object value = entry.getValue();
+
+                if (filter == null || filter.accept(slice, key)) {
+                    //noinspection unchecked
+                    trace.record(slice, key, value);
+                }
             }
         }
 
-        if (!commitDiagnostics) return;
+        if (!commitDiagnostics || diagnostics == null) return;
 
         for (Diagnostic diagnostic : diagnostics) {
             trace.report(diagnostic);
         }
     }
 
+    /**
+     * Moves all data of this trace to the given one and clears this trace. When the other trace has nothing recorded,
+     * the storage itself is handed over instead of recording entries one by one. Subclasses may override record() and
+     * report(), so the storage is only handed over to traces of the exact classes known not to do it.
+     */
+    public void moveAllMyDataTo(@NotNull BindingTrace trace, @Nullable TraceEntryFilter filter, boolean commitDiagnostics) {
+        if (filter == null && commitDiagnostics && canTakeStorage(trace)) {
+            DelegatingBindingTrace other = (DelegatingBindingTrace) trace;
+            // Entries were checked by slices and opposite entries were put by afterPut() when recorded here,
+            // recording them one by one to an empty map would give the same map
+            if (other.map == null && other.diagnostics == null) {
+                other.map = map;
+                other.diagnostics = diagnostics;
+                map = null;
+                diagnostics = null;
+                return;
+            }
+        }
+        addAllMyDataTo(trace, filter, commitDiagnostics);
+        clear();
+    }
+
+    private static boolean canTakeStorage(@NotNull BindingTrace trace) {
+        return trace.getClass() == DelegatingBindingTrace.class || trace.getClass() == TemporaryBindingTrace.class;
+    }
+
     public void clear() {
-        map.clear();
-        diagnostics.clear();
+        map = null;
+        diagnostics = null;
     }
 
     @Override
     public void report(@NotNull Diagnostic diagnostic) {
+        if (diagnostics == null) {
+            diagnostics = Lists.newArrayList();
+        }
         diagnostics.add(diagnostic);
     }
 
@@ -40,12 +40,10 @@ public class TemporaryBindingTrace extends DelegatingBindingTrace {
     }
 
     public void commit() {
-        addAllMyDataTo(trace);
-        clear();
+        moveAllMyDataTo(trace, null, true);
     }
 
     public void commit(@NotNull TraceEntryFilter filter, boolean commitDiagnostics) {
-        addAllMyDataTo(trace, filter, commitDiagnostics);
-        clear();
+        moveAllMyDataTo(trace, filter, commitDiagnostics);
     }
 }
@@ -34,6 +34,7 @@ import org.jetbrains.jet.lang.resolve.name.Name;
 import org.jetbrains.jet.lang.resolve.scopes.JetScope;
 import org.jetbrains.jet.lang.resolve.scopes.WritableScope;
 import org.jetbrains.jet.lang.resolve.scopes.WritableScopeImpl;
+import org.jetbrains.jet.lang.types.checker.SubtypeCache;
 import org.jetbrains.jet.lang.types.expressions.ExpressionTypingContext;
 import org.jetbrains.jet.lang.types.lang.KotlinBuiltIns;
 
@@ -122,7 +123,14 @@ public class TopDownAnalyzer {
 //        context.enableDebugOutput();
         context.debug("Enter");
 
-        typeHierarchyResolver.process(outerScope, owner, declarations);
+        // Supertypes of the analysed classes are not known yet, so subtype checks can't be cached
+        SubtypeCache subtypeCache = SubtypeCache.setCurrent(null);
+        try {
+            typeHierarchyResolver.process(outerScope, owner, declarations);
+        }
+        finally {
+            SubtypeCache.setCurrent(subtypeCache);
+        }
         declarationResolver.process(outerScope);
         overrideResolver.process();
 
@@ -147,8 +155,11 @@ public class TopDownAnalyzer {
         }
         for (Map.Entry<JetFile, WritableScope> namespaceScope : context.getNamespaceScopes().entrySet()) {
             // todo: this is hack in favor of REPL
-            if(!namespaceScope.getKey().isScript())
+            if(!namespaceScope.getKey().isScript()) {
                 namespaceScope.getValue().changeLockLevel(WritableScope.LockLevel.READING);
+                // All declarations are resolved, imported packages and classes get no new members
+                namespaceScope.getValue().markImportedScopesComplete();
+            }
         }
     }
 
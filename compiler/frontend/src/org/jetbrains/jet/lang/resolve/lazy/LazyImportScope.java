@@ -33,10 +33,7 @@ import org.jetbrains.jet.lang.resolve.name.LabelName;
 import org.jetbrains.jet.lang.resolve.name.Name;
 import org.jetbrains.jet.lang.resolve.scopes.*;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 import static org.jetbrains.jet.lang.resolve.QualifiedExpressionResolver.LookupMode;
 import static org.jetbrains.jet.lang.resolve.lazy.storage.StorageManager.ReferenceKind.STRONG;
@@ -89,6 +86,8 @@ public class LazyImportScope implements JetScope {
                     directiveImportScope.changeLockLevel(WritableScope.LockLevel.BOTH);
 
                     Importer.StandardImporter importer = new Importer.StandardImporter(directiveImportScope);
+                    // Resolving a directive may need another one resolved, which must not hide the outer one when done
+                    JetImportDirective outerDirectiveUnderResolve = directiveUnderResolve;
                     directiveUnderResolve = directive;
 
                     try {
@@ -102,7 +101,7 @@ public class LazyImportScope implements JetScope {
                                 mode);
                     }
                     finally {
-                        directiveUnderResolve = null;
+                        directiveUnderResolve = outerDirectiveUnderResolve;
                         directiveImportScope.changeLockLevel(WritableScope.LockLevel.READING);
                     }
 
@@ -117,6 +116,9 @@ public class LazyImportScope implements JetScope {
 
     private JetImportDirective directiveUnderResolve = null;
 
+    // Results of lookups by name for every selector, misses included. Guarded by the storage manager
+    private final Map<Object, Map<Name, Object>> lookupCache = new HashMap<Object, Map<Name, Object>>();
+
     public LazyImportScope(
             @NotNull ResolveSession resolveSession,
             @NotNull NamespaceDescriptor packageDescriptor,
@@ -168,6 +170,15 @@ public class LazyImportScope implements JetScope {
         return resolveSession.getStorageManager().compute(new Computable<D>() {
             @Override
             public D compute() {
+                Map<Name, Object> cache = getLookupCache(descriptorSelector);
+                if (cache.containsKey(name)) {
+                    //noinspection unchecked
+                    return (D) cache.get(name);
+                }
+
+                // Lookups made while an import is being resolved may miss what that import brings, so they are not cached
+                boolean mayCache = directiveUnderResolve == null;
+                D result = null;
                 for (JetImportDirective directive : importsProvider.getImports(name)) {
                     if (directive == directiveUnderResolve) {
                         // This is the recursion in imports analysis
@@ -176,11 +187,15 @@ public class LazyImportScope implements JetScope {
 
                     D foundDescriptor = descriptorSelector.get(getImportScope(directive, lookupMode), name);
                     if (foundDescriptor != null) {
-                        return foundDescriptor;
+                        result = foundDescriptor;
+                        break;
                     }
                 }
 
-                return null;
+                if (mayCache) {
+                    cache.put(name, result);
+                }
+                return result;
             }
         });
     }
@@ -194,6 +209,14 @@ public class LazyImportScope implements JetScope {
         return resolveSession.getStorageManager().compute(new Computable<Collection<D>>() {
             @Override
             public Collection<D> compute() {
+                Map<Name, Object> cache = getLookupCache(descriptorsSelector);
+                //noinspection unchecked
+                Collection<D> cached = (Collection<D>) cache.get(name);
+                if (cached != null) {
+                    return cached;
+                }
+
+                boolean mayCache = directiveUnderResolve == null;
                 Set<D> descriptors = Sets.newHashSet();
                 for (JetImportDirective directive : importsProvider.getImports(name)) {
                     if (directive == directiveUnderResolve) {
@@ -204,6 +227,11 @@ public class LazyImportScope implements JetScope {
                     descriptors.addAll(descriptorsSelector.get(getImportScope(directive, lookupMode), name));
                 }
 
+                if (mayCache) {
+                    Collection<D> result = Collections.unmodifiableSet(descriptors);
+                    cache.put(name, result);
+                    return result;
+                }
                 return descriptors;
             }
         });
@@ -232,6 +260,16 @@ public class LazyImportScope implements JetScope {
         });
     }
 
+    @NotNull
+    private Map<Name, Object> getLookupCache(@NotNull Object selector) {
+        Map<Name, Object> cache = lookupCache.get(selector);
+        if (cache == null) {
+            cache = new HashMap<Name, Object>();
+            lookupCache.put(selector, cache);
+        }
+        return cache;
+    }
+
     @NotNull
     private JetScope getImportScope(JetImportDirective directive, LookupMode lookupMode) {
         return importedScopesProvider.fun(directive).scopeForMode(lookupMode);
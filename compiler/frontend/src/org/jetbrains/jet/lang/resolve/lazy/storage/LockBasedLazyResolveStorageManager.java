@@ -30,6 +30,26 @@ import org.jetbrains.jet.util.slicedmap.WritableSlice;
 import java.util.Collection;
 
 public class LockBasedLazyResolveStorageManager extends LockBasedStorageManager implements LazyResolveStorageManager {
+    /**
+     * When set to "true", lazy values and memoized functions are guarded by their own locks instead of the centralized one
+     */
+    public static final String FINE_GRAINED_LOCKS_PROPERTY = "kotlin.resolve.fine.grained.locks";
+
+    public LockBasedLazyResolveStorageManager() {
+    }
+
+    public LockBasedLazyResolveStorageManager(@NotNull LockingStrategy lockingStrategy) {
+        super(lockingStrategy);
+    }
+
+    @NotNull
+    public static LockBasedLazyResolveStorageManager createDefault() {
+        if ("true".equals(System.getProperty(FINE_GRAINED_LOCKS_PROPERTY))) {
+            return new LockBasedLazyResolveStorageManager(new DeadlockDetectingLockingStrategy());
+        }
+        return new LockBasedLazyResolveStorageManager();
+    }
+
     @NotNull
     @Override
     public BindingTrace createSafeTrace(@NotNull BindingTrace originalTrace) {
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.util.slicedmap;
+
+import com.google.common.collect.ImmutableMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Sliced map which keeps a separate open addressing table for every slice, instead of a single hash map of {@link SlicedMapKey}s.
+ * Neither keys nor entries are allocated per binding, which makes it several times smaller than {@link SlicedMapImpl}.
+ *
+ * Entries are iterated in insertion order, as in {@link SlicedMapImpl}: temporary traces commit their entries to the parent trace
+ * in this order, and replaying them in another one could give a different result, e.g. when a slice and its opposite are both
+ * written to. Every entry keeps its sequence number for that.
+ */
+public class CompactSlicedMap implements MutableSlicedMap {
+
+    public static CompactSlicedMap create() {
+        return new CompactSlicedMap();
+    }
+
+    private final Map<WritableSlice<?, ?>, SliceTable> tables = new LinkedHashMap<WritableSlice<?, ?>, SliceTable>();
+    private final Map<WritableSlice<?, ?>, List<Object>> collectiveSliceKeys = new HashMap<WritableSlice<?, ?>, List<Object>>();
+
+    // Slices are usually asked for several times in a row
+    private WritableSlice<?, ?> lastSlice = null;
+    private SliceTable lastTable = null;
+
+    // Sequence number of the next new entry, over all slices
+    private int nextSequence = 0;
+
+    protected CompactSlicedMap() {
+    }
+
+    @Override
+    public <K, V> void put(WritableSlice<K, V> slice, K key, V value) {
+        if (!slice.check(key, value)) {
+            return;
+        }
+
+        SlicedMapKey<K, V> slicedMapKey = slice.makeKey(key);
+        SliceTable table = getOrCreateTable(slicedMapKey.getSlice());
+        Object normalizedKey = slicedMapKey.getKey();
+
+        RewritePolicy rewritePolicy = slice.getRewritePolicy();
+        if (rewritePolicy.rewriteProcessingNeeded(key)) {
+            int index = table.indexOf(normalizedKey);
+            if (index >= 0) {
+                //noinspection unchecked
+                if (!rewritePolicy.processRewrite(slice, key, (V) table.values[index], value)) {
+                    return;
+                }
+            }
+        }
+
+        if (slice.isCollective()) {
+            List<Object> keys = collectiveSliceKeys.get(slice);
+            if (keys == null) {
+                keys = new ArrayList<Object>();
+                collectiveSliceKeys.put(slice, keys);
+            }
+            keys.add(key);
+        }
+
+        if (table.put(normalizedKey, value, nextSequence)) {
+            nextSequence++;
+        }
+        slice.afterPut(this, key, value);
+    }
+
+    @Override
+    public void clear() {
+        tables.clear();
+        lastSlice = null;
+        lastTable = null;
+        nextSequence = 0;
+    }
+
+    @Override
+    public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+        SlicedMapKey<K, V> slicedMapKey = slice.makeKey(key);
+        SliceTable table = getTable(slicedMapKey.getSlice());
+        int index = table == null ? -1 : table.indexOf(slicedMapKey.getKey());
+        //noinspection unchecked
+        V value = index >= 0 ? (V) table.values[index] : null;
+        return slice.computeValue(this, key, value, index < 0);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
+        assert slice.isCollective() : "Keys are not collected for slice " + slice;
+        List<Object> keys = collectiveSliceKeys.get(slice);
+        return keys == null ? Collections.<K>emptyList() : (Collection<K>) Collections.unmodifiableList(keys);
+    }
+
+    @Override
+    public <K, V> V remove(RemovableSlice<K, V> slice, K key) {
+        SlicedMapKey<K, V> slicedMapKey = slice.makeKey(key);
+        SliceTable table = getTable(slicedMapKey.getSlice());
+        //noinspection unchecked
+        return table == null ? null : (V) table.remove(slicedMapKey.getKey());
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Map.Entry<SlicedMapKey<?, ?>, ?>> iterator() {
+        // Sequence numbers of removed entries are not reused, so some of the positions stay empty
+        Map.Entry<?, ?>[] bySequence = new Map.Entry<?, ?>[nextSequence];
+        for (Map.Entry<WritableSlice<?, ?>, SliceTable> entry : tables.entrySet()) {
+            entry.getValue().addEntries(entry.getKey(), bySequence);
+        }
+
+        List<Map.Entry<SlicedMapKey<?, ?>, ?>> entries = new ArrayList<Map.Entry<SlicedMapKey<?, ?>, ?>>();
+        for (Map.Entry<?, ?> entry : bySequence) {
+            if (entry != null) {
+                //noinspection unchecked
+                entries.add((Map.Entry<SlicedMapKey<?, ?>, ?>) entry);
+            }
+        }
+        return Collections.unmodifiableList(entries).iterator();
+    }
+
+    @NotNull
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> ImmutableMap<K, V> getSliceContents(@NotNull ReadOnlySlice<K, V> slice) {
+        SliceTable table = tables.get(slice);
+        if (table == null) {
+            return ImmutableMap.of();
+        }
+
+        // Entries of a slice are stored in insertion order
+        ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
+        for (int i = 0; i < table.size; i++) {
+            if (table.keys[i] != SliceTable.REMOVED_KEY) {
+                builder.put((K) SliceTable.unmaskNull(table.keys[i]), (V) table.values[i]);
+            }
+        }
+        return builder.build();
+    }
+
+    private SliceTable getTable(@NotNull WritableSlice<?, ?> slice) {
+        if (slice == lastSlice) {
+            return lastTable;
+        }
+        SliceTable table = tables.get(slice);
+        if (table != null) {
+            lastSlice = slice;
+            lastTable = table;
+        }
+        return table;
+    }
+
+    @NotNull
+    private SliceTable getOrCreateTable(@NotNull WritableSlice<?, ?> slice) {
+        SliceTable table = getTable(slice);
+        if (table == null) {
+            table = new SliceTable();
+            tables.put(slice, table);
+            lastSlice = slice;
+            lastTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Keys, values and sequence numbers are stored in insertion order in parallel arrays, and looked up through an open addressing
+     * index with linear probing.
+     */
+    private static class SliceTable {
+        private static final Object NULL_KEY = new Object();
+        private static final Object REMOVED_KEY = new Object();
+
+        private static final int FREE_SLOT = 0;
+        private static final int REMOVED_SLOT = -1;
+
+        private Object[] keys = new Object[4];
+        private Object[] values = new Object[4];
+        private int[] sequences = new int[4];
+        // 1-based positions in keys/values, or FREE_SLOT/REMOVED_SLOT; length is a power of two
+        private int[] index = new int[8];
+
+        private int size = 0; // used positions in keys/values, including removed ones
+        private int removed = 0;
+
+        private int indexOf(Object key) {
+            Object maskedKey = maskNull(key);
+            int mask = index.length - 1;
+            for (int slot = hash(maskedKey) & mask; ; slot = (slot + 1) & mask) {
+                int position = index[slot];
+                if (position == FREE_SLOT) return -1;
+                if (position != REMOVED_SLOT) {
+                    Object candidate = keys[position - 1];
+                    if (candidate == maskedKey || candidate.equals(maskedKey)) return position - 1;
+                }
+            }
+        }
+
+        /**
+         * @return true if a new entry is added with the given sequence number, false if the value of an existing one is replaced
+         */
+        private boolean put(Object key, Object value, int sequence) {
+            int existing = indexOf(key);
+            if (existing >= 0) {
+                values[existing] = value;
+                return false;
+            }
+
+            if (size == keys.length) {
+                grow();
+            }
+            keys[size] = maskNull(key);
+            values[size] = value;
+            sequences[size] = sequence;
+            size++;
+            insertIntoIndex(index, size - 1);
+            return true;
+        }
+
+        private Object remove(Object key) {
+            int position = indexOf(key);
+            if (position < 0) return null;
+
+            Object value = values[position];
+            int mask = index.length - 1;
+            for (int slot = hash(keys[position]) & mask; ; slot = (slot + 1) & mask) {
+                if (index[slot] == position + 1) {
+                    index[slot] = REMOVED_SLOT;
+                    break;
+                }
+            }
+            keys[position] = REMOVED_KEY;
+            values[position] = null;
+            removed++;
+            return value;
+        }
+
+        private void addEntries(@NotNull WritableSlice<?, ?> slice, @NotNull Map.Entry<?, ?>[] bySequence) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == REMOVED_KEY) continue;
+                //noinspection unchecked
+                SlicedMapKey<?, ?> key = new SlicedMapKey<Object, Object>((WritableSlice<Object, Object>) slice, unmaskNull(keys[i]));
+                bySequence[sequences[i]] = new AbstractMap.SimpleImmutableEntry<SlicedMapKey<?, ?>, Object>(key, values[i]);
+            }
+        }
+
+        private void grow() {
+            int live = size - removed;
+            // Compact removed entries away instead of growing if there are many of them
+            int capacity = live * 2 <= keys.length ? keys.length : keys.length * 2;
+
+            Object[] newKeys = new Object[capacity];
+            Object[] newValues = new Object[capacity];
+            int[] newSequences = new int[capacity];
+            int newSize = 0;
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == REMOVED_KEY) continue;
+                newKeys[newSize] = keys[i];
+                newValues[newSize] = values[i];
+                newSequences[newSize] = sequences[i];
+                newSize++;
+            }
+            keys = newKeys;
+            values = newValues;
+            sequences = newSequences;
+            size = newSize;
+            removed = 0;
+
+            // The index is kept at most half full
+            int[] newIndex = new int[Math.max(index.length, capacity * 2)];
+            for (int i = 0; i < size; i++) {
+                insertIntoIndex(newIndex, i);
+            }
+            index = newIndex;
+        }
+
+        private void insertIntoIndex(@NotNull int[] index, int position) {
+            int mask = index.length - 1;
+            int slot = hash(keys[position]) & mask;
+            while (index[slot] > 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = position + 1;
+        }
+
+        private static int hash(@NotNull Object key) {
+            int h = key.hashCode();
+            // Spread higher bits, as keys are often objects with identity hash codes
+            return h ^ (h >>> 16);
+        }
+
+        private static Object maskNull(Object key) {
+            return key == null ? NULL_KEY : key;
+        }
+
+        private static Object unmaskNull(Object key) {
+            return key == NULL_KEY ? null : key;
+        }
+    }
+}
@@ -20,9 +20,13 @@ import com.google.common.collect.Lists;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.UserDataHolder;
+import com.intellij.openapi.util.UserDataHolderBase;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.ClassFileViewProvider;
+import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.impl.PsiManagerImpl;
 import com.intellij.psi.impl.compiled.ClsFileImpl;
@@ -30,6 +34,7 @@ import com.intellij.psi.impl.java.stubs.PsiJavaFileStub;
 import com.intellij.psi.impl.java.stubs.impl.PsiJavaFileStubImpl;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.stubs.PsiClassHolderFileStub;
+import com.intellij.psi.stubs.StubBase;
 import com.intellij.psi.stubs.StubElement;
 import com.intellij.psi.util.CachedValueProvider;
 import com.intellij.psi.util.PsiModificationTracker;
@@ -45,12 +50,19 @@ import org.jetbrains.jet.codegen.state.Progress;
 import org.jetbrains.jet.lang.psi.JetClassOrObject;
 import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.psi.JetPsiUtil;
+import org.jetbrains.jet.lang.resolve.BindingContext;
 import org.jetbrains.jet.lang.resolve.name.FqName;
 
 import java.util.Collection;
 import java.util.Collections;
 
+/**
+ * Stubs are recomputed on every out-of-code-block modification, but they are only regenerated when their
+ * {@link LightClassSignatureHash} changes: otherwise the stub generated last time is returned again. The code is still
+ * analyzed every time, since the hash includes the resolved signatures.
+ */
 public class KotlinJavaFileStubProvider implements CachedValueProvider<PsiJavaFileStub> {
+    private static final Key<StubWithSignatureHash> LAST_GENERATED_STUB = Key.create("LAST_GENERATED_STUB");
 
     @NotNull
     public static KotlinJavaFileStubProvider createForPackageClass(
@@ -59,6 +71,8 @@ public class KotlinJavaFileStubProvider implements CachedValueProvider<PsiJavaFi
             @NotNull final GlobalSearchScope searchScope
     ) {
         return new KotlinJavaFileStubProvider(project, new StubGenerationStrategy.NoDeclaredClasses() {
+            // The provider is created once for a light class of a package, so the last stub can be kept here
+            private final UserDataHolder lastGeneratedStubHolder = new UserDataHolderBase();
 
             @NotNull
             @Override
@@ -74,6 +88,18 @@ public class KotlinJavaFileStubProvider implements CachedValueProvider<PsiJavaFi
                 return packageFqName;
             }
 
+            @NotNull
+            @Override
+            public UserDataHolder getLastGeneratedStubHolder() {
+                return lastGeneratedStubHolder;
+            }
+
+            @NotNull
+            @Override
+            public String computeSignatureHash(@NotNull Collection<JetFile> files, @NotNull BindingContext bindingContext) {
+                return LightClassSignatureHash.forPackageClass(files, bindingContext);
+            }
+
             @Override
             public void generate(@NotNull GenerationState state, @NotNull Collection<JetFile> files) {
                 NamespaceCodegen codegen = state.getFactory().forNamespace(packageFqName, files);
@@ -104,6 +130,19 @@ public class KotlinJavaFileStubProvider implements CachedValueProvider<PsiJavaFi
                 return JetPsiUtil.getFQName(getFile());
             }
 
+            @NotNull
+            @Override
+            public UserDataHolder getLastGeneratedStubHolder() {
+                // A new provider is created every time the cached value is requested, while the declaration stays the same
+                return classOrObject;
+            }
+
+            @NotNull
+            @Override
+            public String computeSignatureHash(@NotNull Collection<JetFile> files, @NotNull BindingContext bindingContext) {
+                return LightClassSignatureHash.forDeclaredClass(classOrObject, bindingContext);
+            }
+
             @Override
             public void generate(@NotNull GenerationState state, @NotNull Collection<JetFile> files) {
                 NamespaceCodegen namespaceCodegen = state.getFactory().forNamespace(getPackageFqName(), files);
@@ -141,6 +180,14 @@ public class KotlinJavaFileStubProvider implements CachedValueProvider<PsiJavaFi
             throw new IllegalStateException("failed to analyze: " + error, error);
         }
 
+        // Resolved signatures are hashed too, so the stub isn't reused after changes in other files it depends on
+        UserDataHolder lastGeneratedStubHolder = stubGenerationStrategy.getLastGeneratedStubHolder();
+        String signatureHash = stubGenerationStrategy.computeSignatureHash(files, context.getBindingContext());
+        StubWithSignatureHash lastGenerated = lastGeneratedStubHolder.getUserData(LAST_GENERATED_STUB);
+        if (lastGenerated != null && lastGenerated.signatureHash.equals(signatureHash) && allOriginsValid(lastGenerated.stub)) {
+            return Result.create(lastGenerated.stub, PsiModificationTracker.OUT_OF_CODE_BLOCK_MODIFICATION_COUNT);
+        }
+
         PsiJavaFileStub javaFileStub = createJavaFileStub(packageFqName, getRepresentativeVirtualFile(files));
         try {
             Stack<StubElement> stubStack = new Stack<StubElement>();
@@ -173,9 +220,21 @@ public class KotlinJavaFileStubProvider implements CachedValueProvider<PsiJavaFi
             throw e;
         }
 
+        lastGeneratedStubHolder.putUserData(LAST_GENERATED_STUB, new StubWithSignatureHash(javaFileStub, signatureHash));
         return Result.create(javaFileStub, PsiModificationTracker.OUT_OF_CODE_BLOCK_MODIFICATION_COUNT);
     }
 
+    // Declarations may be reparsed even if their text is the same, and the stub can't be reused then
+    private static boolean allOriginsValid(@NotNull StubElement stub) {
+        PsiElement origin = ((StubBase) stub).getUserData(ClsWrapperStubPsiFactory.ORIGIN_ELEMENT);
+        if (origin != null && !origin.isValid()) return false;
+
+        for (StubElement child : stub.getChildrenStubs()) {
+            if (!allOriginsValid(child)) return false;
+        }
+        return true;
+    }
+
     @NotNull
     private PsiJavaFileStub createJavaFileStub(@NotNull final FqName packageFqName, @NotNull VirtualFile virtualFile) {
         PsiManager manager = PsiManager.getInstance(project);
@@ -230,9 +289,21 @@ public class KotlinJavaFileStubProvider implements CachedValueProvider<PsiJavaFi
                 cause);
     }
 
+    private static class StubWithSignatureHash {
+        private final PsiJavaFileStub stub;
+        private final String signatureHash;
+
+        private StubWithSignatureHash(@NotNull PsiJavaFileStub stub, @NotNull String signatureHash) {
+            this.stub = stub;
+            this.signatureHash = signatureHash;
+        }
+    }
+
     private interface StubGenerationStrategy {
         @NotNull Collection<JetFile> getFiles();
         @NotNull FqName getPackageFqName();
+        @NotNull UserDataHolder getLastGeneratedStubHolder();
+        @NotNull String computeSignatureHash(@NotNull Collection<JetFile> files, @NotNull BindingContext bindingContext);
         boolean generateDeclaredClasses();
         void generate(@NotNull GenerationState state, @NotNull Collection<JetFile> files);
 
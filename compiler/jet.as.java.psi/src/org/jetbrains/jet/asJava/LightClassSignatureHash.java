@@ -0,0 +1,197 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.asJava;
+
+import com.intellij.openapi.vfs.CharsetToolkit;
+import com.intellij.psi.PsiComment;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiWhiteSpace;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.descriptors.ClassDescriptor;
+import org.jetbrains.jet.lang.descriptors.DeclarationDescriptor;
+import org.jetbrains.jet.lang.psi.*;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.renderer.DescriptorRenderer;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Digest of the source text light class stubs are generated from and of the descriptors resolved for it. Whitespace, comments
+ * and the code which can't affect signatures (block bodies, expression bodies of functions with a declared return type,
+ * initializers of properties with a declared type) are not hashed, so the stub generated for the previous text can be reused
+ * if the hash hasn't changed. The text is hashed with MD5, so different signatures don't collide in practice.
+ *
+ * Signatures also depend on other files: supertypes and imported names may resolve to other classes, inferred types may change.
+ * So the descriptors of the declarations are rendered with fully qualified types and hashed too.
+ */
+public final class LightClassSignatureHash {
+    private static final byte SKIPPED_BODY = 0;
+    private static final byte LEAF = 1;
+    private static final byte FILE = 2;
+    private static final byte RESOLVED = 3;
+    private static final byte UNRESOLVED = 4;
+
+    private static final DescriptorRenderer RENDERER = DescriptorRenderer.TEXT;
+
+    private final MessageDigest digest;
+
+    private LightClassSignatureHash() {
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull
+    public static String forDeclaredClass(@NotNull JetClassOrObject topLevelClassOrObject, @NotNull BindingContext bindingContext) {
+        LightClassSignatureHash hash = new LightClassSignatureHash();
+        hash.hashFileHeader((JetFile) topLevelClassOrObject.getContainingFile());
+        hash.hashElement(topLevelClassOrObject);
+        hash.hashDescriptor(bindingContext.get(BindingContext.CLASS, topLevelClassOrObject));
+        return hash.result();
+    }
+
+    @NotNull
+    public static String forPackageClass(@NotNull Collection<JetFile> files, @NotNull BindingContext bindingContext) {
+        LightClassSignatureHash hash = new LightClassSignatureHash();
+        for (JetFile file : files) {
+            hash.update(FILE, file.getName());
+            hash.hashFileHeader(file);
+            for (JetDeclaration declaration : file.getDeclarations()) {
+                // Classes don't contribute to the package class
+                if (!(declaration instanceof JetClassOrObject)) {
+                    hash.hashElement(declaration);
+                    hash.hashDescriptor(bindingContext.get(BindingContext.DECLARATION_TO_DESCRIPTOR, declaration));
+                }
+            }
+        }
+        return hash.result();
+    }
+
+    private void hashFileHeader(@NotNull JetFile file) {
+        for (PsiElement child = file.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (!(child instanceof JetDeclaration)) {
+                hashElement(child);
+            }
+        }
+    }
+
+    private void hashElement(@NotNull PsiElement element) {
+        if (element instanceof PsiWhiteSpace || element instanceof PsiComment) return;
+        if (cannotAffectSignatures(element)) {
+            digest.update(SKIPPED_BODY);
+            return;
+        }
+
+        PsiElement child = element.getFirstChild();
+        if (child == null) {
+            update(LEAF, element.getText());
+            return;
+        }
+        for (; child != null; child = child.getNextSibling()) {
+            hashElement(child);
+        }
+    }
+
+    private void hashDescriptor(@Nullable DeclarationDescriptor descriptor) {
+        if (descriptor == null) {
+            digest.update(UNRESOLVED);
+            return;
+        }
+
+        List<String> rendered = new ArrayList<String>();
+        renderDescriptor(descriptor, rendered, new HashSet<ClassDescriptor>());
+        // Scopes don't keep the order of declarations
+        Collections.sort(rendered);
+        for (String text : rendered) {
+            update(RESOLVED, text);
+        }
+    }
+
+    private static void renderDescriptor(
+            @NotNull DeclarationDescriptor descriptor,
+            @NotNull List<String> rendered,
+            @NotNull Set<ClassDescriptor> renderedClasses
+    ) {
+        rendered.add(RENDERER.render(descriptor));
+        if (!(descriptor instanceof ClassDescriptor)) return;
+
+        ClassDescriptor classDescriptor = (ClassDescriptor) descriptor;
+        if (!renderedClasses.add(classDescriptor)) return;
+
+        // Inherited members are rendered too: delegation and bridges depend on them
+        for (DeclarationDescriptor member : classDescriptor.getDefaultType().getMemberScope().getAllDescriptors()) {
+            if (!(member instanceof ClassDescriptor)) {
+                rendered.add(RENDERER.render(member));
+            }
+        }
+        for (DeclarationDescriptor constructor : classDescriptor.getConstructors()) {
+            rendered.add(RENDERER.render(constructor));
+        }
+        for (DeclarationDescriptor nested : classDescriptor.getUnsubstitutedInnerClassesScope().getAllDescriptors()) {
+            renderDescriptor(nested, rendered, renderedClasses);
+        }
+        ClassDescriptor classObject = classDescriptor.getClassObjectDescriptor();
+        if (classObject != null) {
+            renderDescriptor(classObject, rendered, renderedClasses);
+        }
+    }
+
+    private void update(byte kind, @NotNull String text) {
+        // Lengths are hashed too, so that different sequences of tokens never give the same bytes
+        byte[] bytes = text.getBytes(CharsetToolkit.UTF8_CHARSET);
+        digest.update(kind);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            digest.update((byte) (bytes.length >>> shift));
+        }
+        digest.update(bytes);
+    }
+
+    @NotNull
+    private String result() {
+        return new BigInteger(1, digest.digest()).toString(16);
+    }
+
+    private static boolean cannotAffectSignatures(@NotNull PsiElement element) {
+        PsiElement parent = element.getParent();
+        if (element instanceof JetBlockExpression) {
+            // Bodies of function literals are not skipped: the type of a literal depends on them
+            return parent instanceof JetNamedFunction || parent instanceof JetPropertyAccessor || parent instanceof JetClassInitializer;
+        }
+
+        if (parent instanceof JetNamedFunction) {
+            JetNamedFunction function = (JetNamedFunction) parent;
+            return element == function.getBodyExpression() && function.hasDeclaredReturnType();
+        }
+        if (parent instanceof JetPropertyAccessor) {
+            JetPropertyAccessor accessor = (JetPropertyAccessor) parent;
+            PsiElement property = accessor.getParent();
+            return element == accessor.getBodyExpression() && property instanceof JetProperty && ((JetProperty) property).getTypeRef() != null;
+        }
+        if (parent instanceof JetProperty) {
+            JetProperty property = (JetProperty) parent;
+            return element == property.getInitializer() && property.getTypeRef() != null;
+        }
+        return false;
+    }
+}
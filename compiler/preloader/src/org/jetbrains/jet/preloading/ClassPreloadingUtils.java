@@ -23,8 +23,10 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 public class ClassPreloadingUtils {
@@ -67,6 +69,157 @@ public class ClassPreloadingUtils {
         return preloadClasses(jarFiles, classCountEstimation, parent, null);
     }
 
+    /**
+     * Creates a class loader which defines the classes recorded in {@code snapshotFile} from this memory-mapped file, eagerly
+     * in a background thread, and loads other classes and resources lazily from {@code jarFiles}.
+     *
+     * If there is no snapshot for these jars yet, behaves as {@link #preloadClasses}, and records the classes defined until
+     * the JVM exits into {@code snapshotFile}.
+     *
+     * @param handler handler to be notified on class definitions done by this class loader, or null.
+     *                Instrumentation is not supported: snapshots contain original class files
+     */
+    public static ClassLoader preloadClassesWithSnapshot(
+            Collection<File> jarFiles, int classCountEstimation, ClassLoader parent, ClassHandler handler, File snapshotFile
+    ) throws IOException {
+        PreloaderSnapshot snapshot = PreloaderSnapshot.load(snapshotFile, jarFiles);
+        if (snapshot != null) {
+            ClassLoader classLoader = createSnapshotBasedClassLoader(parent, snapshot, jarFiles, handler);
+            defineInBackground(classLoader, snapshot.getResourceNames());
+            return classLoader;
+        }
+
+        Map<String, ResourceData> entries = loadAllClassesFromJars(jarFiles, classCountEstimation, handler);
+        SnapshotRecorder recorder = new SnapshotRecorder(handler, entries, jarFiles, snapshotFile);
+        Runtime.getRuntime().addShutdownHook(new Thread(recorder, "Preloader snapshot writer"));
+        return createMemoryBasedClassLoader(parent, entries, recorder);
+    }
+
+    private static ClassLoader createSnapshotBasedClassLoader(
+            final ClassLoader parent,
+            final PreloaderSnapshot snapshot,
+            final Collection<File> jarFiles,
+            final ClassHandler handler
+    ) {
+        return new ClassLoader(null) {
+            private List<ZipFile> zipFiles = null;
+
+            @Override
+            public Class<?> loadClass(String name) throws ClassNotFoundException {
+                // Look in this class loader and then in the parent one
+                Class<?> aClass = super.loadClass(name);
+                if (aClass == null) {
+                    return parent.loadClass(name);
+                }
+                return aClass;
+            }
+
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                String internalName = name.replace('.', '/').concat(".class");
+
+                ByteBuffer bytes = snapshot.getClassBytes(internalName);
+                if (bytes == null) {
+                    byte[] bytesFromJar = readFromJars(internalName);
+                    if (bytesFromJar == null) return null;
+                    bytes = ByteBuffer.wrap(bytesFromJar);
+                }
+
+                int sizeInBytes = bytes.remaining();
+                if (handler != null) {
+                    handler.beforeDefineClass(name, sizeInBytes);
+                }
+
+                Class<?> definedClass = defineClass(name, bytes, null);
+
+                if (handler != null) {
+                    handler.afterDefineClass(name);
+                }
+
+                return definedClass;
+            }
+
+            @Override
+            protected URL findResource(String name) {
+                ZipFile zipFile = findZipFileWithEntry(name);
+                if (zipFile == null) return null;
+                try {
+                    return new URL("jar:" + new File(zipFile.getName()).toURI().toURL() + "!/" + name);
+                }
+                catch (MalformedURLException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+            }
+
+            @Override
+            protected Enumeration<URL> findResources(String name) throws IOException {
+                URL resource = findResource(name);
+                if (resource == null) {
+                    return new CompoundEnumeration<URL>(new Enumeration[0]);
+                }
+                // Only the first resource is loaded
+                return Collections.enumeration(Collections.singletonList(resource));
+            }
+
+            private byte[] readFromJars(String resourceName) {
+                ZipFile zipFile = findZipFileWithEntry(resourceName);
+                if (zipFile == null) return null;
+                try {
+                    InputStream stream = zipFile.getInputStream(zipFile.getEntry(resourceName));
+                    try {
+                        return readAll(stream, 32);
+                    }
+                    finally {
+                        stream.close();
+                    }
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            // Only the first entry with such name is used
+            private synchronized ZipFile findZipFileWithEntry(String name) {
+                if (zipFiles == null) {
+                    zipFiles = new ArrayList<ZipFile>(jarFiles.size());
+                    for (File jarFile : jarFiles) {
+                        try {
+                            zipFiles.add(new ZipFile(jarFile));
+                        }
+                        catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+                for (ZipFile zipFile : zipFiles) {
+                    if (zipFile.getEntry(name) != null) return zipFile;
+                }
+                return null;
+            }
+        };
+    }
+
+    private static void defineInBackground(final ClassLoader classLoader, final List<String> resourceNames) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (String resourceName : resourceNames) {
+                    String className = resourceName.substring(0, resourceName.length() - ".class".length()).replace('/', '.');
+                    try {
+                        // Only loads the class, without initializing it
+                        classLoader.loadClass(className);
+                    }
+                    catch (Throwable e) {
+                        // The class will fail the same way when the program uses it
+                    }
+                }
+            }
+        }, "Preloader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     private static ClassLoader createMemoryBasedClassLoader(
             final ClassLoader parent,
             final Map<String, ResourceData> preloadedResources,
@@ -136,7 +289,6 @@ public class ClassPreloadingUtils {
 
             FileInputStream fileInputStream = new FileInputStream(jarFile);
             try {
-                byte[] buffer = new byte[10 * 1024];
                 ZipInputStream stream = new ZipInputStream(new BufferedInputStream(fileInputStream));
                 while (true) {
                     ZipEntry entry = stream.getNextEntry();
@@ -146,15 +298,7 @@ public class ClassPreloadingUtils {
                     if (resources.containsKey(name)) continue; // Only the first resource is stored
 
                     int size = (int) entry.getSize();
-                    int effectiveSize = size < 0 ? 32 : size;
-                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(effectiveSize);
-
-                    int count;
-                    while ((count = stream.read(buffer)) > 0) {
-                        bytes.write(buffer, 0, count);
-                    }
-
-                    byte[] data = bytes.toByteArray();
+                    byte[] data = readAll(stream, size < 0 ? 32 : size);
                     if (handler != null) {
                         data = handler.instrument(name, data);
                     }
@@ -178,6 +322,69 @@ public class ClassPreloadingUtils {
         return resources;
     }
 
+    private static byte[] readAll(InputStream stream, int sizeEstimate) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(sizeEstimate);
+        byte[] buffer = new byte[10 * 1024];
+        int count;
+        while ((count = stream.read(buffer)) > 0) {
+            bytes.write(buffer, 0, count);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Remembers which classes are defined, and writes them to a snapshot when run
+     */
+    private static class SnapshotRecorder extends ClassHandler implements Runnable {
+        private final ClassHandler delegate;
+        private final Map<String, ResourceData> resources;
+        private final Collection<File> jarFiles;
+        private final File snapshotFile;
+        private final List<String> definedClasses = Collections.synchronizedList(new ArrayList<String>());
+
+        private SnapshotRecorder(ClassHandler delegate, Map<String, ResourceData> resources, Collection<File> jarFiles, File snapshotFile) {
+            this.delegate = delegate;
+            this.resources = resources;
+            this.jarFiles = jarFiles;
+            this.snapshotFile = snapshotFile;
+        }
+
+        @Override
+        public void beforeDefineClass(String name, int sizeInBytes) {
+            if (delegate != null) {
+                delegate.beforeDefineClass(name, sizeInBytes);
+            }
+        }
+
+        @Override
+        public void afterDefineClass(String name) {
+            // Superclasses are defined before their subclasses, so the snapshot can be replayed in this order
+            definedClasses.add(name.replace('.', '/').concat(".class"));
+            if (delegate != null) {
+                delegate.afterDefineClass(name);
+            }
+        }
+
+        @Override
+        public void run() {
+            List<String> names;
+            synchronized (definedClasses) {
+                names = new ArrayList<String>(definedClasses);
+            }
+            List<byte[]> bytes = new ArrayList<byte[]>(names.size());
+            for (String name : names) {
+                bytes.add(resources.get(name).bytes);
+            }
+
+            try {
+                PreloaderSnapshot.write(snapshotFile, jarFiles, names, bytes);
+            }
+            catch (IOException e) {
+                System.err.println("PRELOADER WARNING: Cannot write snapshot: " + e.getMessage());
+            }
+        }
+    }
+
     private static class ResourceData {
         private final File jarFile;
         private final String resourceName;
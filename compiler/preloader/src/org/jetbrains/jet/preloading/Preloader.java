@@ -14,6 +14,9 @@ public class Preloader {
     public static final int PRELOADER_ARG_COUNT = 4;
     private static final String INSTRUMENT_PREFIX = "instrument=";
 
+    // Path to a file with the classes used by previous runs, see ClassPreloadingUtils.preloadClassesWithSnapshot()
+    public static final String SNAPSHOT_PROPERTY = "kotlin.preloader.snapshot";
+
     public static void main(String[] args) throws Exception {
         if (args.length < PRELOADER_ARG_COUNT) {
             printUsageAndExit();
@@ -44,7 +47,15 @@ public class Preloader {
         ClassLoader withInstrumenter = instrumentersClasspath.length > 0 ? new URLClassLoader(instrumentersClasspath, parent) : parent;
 
         Handler handler = getHandler(mode, withInstrumenter);
-        ClassLoader preloaded = ClassPreloadingUtils.preloadClasses(files, classNumber, withInstrumenter, handler);
+        String snapshotPath = System.getProperty(SNAPSHOT_PROPERTY);
+        if (snapshotPath != null && mode == Mode.INSTRUMENT) {
+            System.err.println("PRELOADER WARNING: Snapshot is not used with instrumenters");
+            snapshotPath = null;
+        }
+        ClassLoader preloaded = snapshotPath != null
+                                ? ClassPreloadingUtils.preloadClassesWithSnapshot(files, classNumber, withInstrumenter, handler,
+                                                                                  new File(snapshotPath))
+                                : ClassPreloadingUtils.preloadClasses(files, classNumber, withInstrumenter, handler);
 
         Class<?> mainClass = preloaded.loadClass(mainClassCanonicalName);
         Method mainMethod = mainClass.getMethod("main", String[].class);
@@ -163,6 +174,7 @@ public class Preloader {
 
     private static void printUsageAndExit() {
         System.out.println("Usage: Preloader <paths to jars> <main class> <class number estimate> <notime|time|instrument=<instrumenters class path>> <parameters to pass to the main class>");
+        System.out.println("Use -D" + SNAPSHOT_PROPERTY + "=<file> to load only the classes used by previous runs eagerly");
         System.exit(1);
     }
 
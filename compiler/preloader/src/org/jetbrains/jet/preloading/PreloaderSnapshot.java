@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.preloading;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Classes defined by some run of a program, with their bytes, in the order of definition.
+ *
+ * File format: version, the jars the classes come from (path, length, modification time), number of classes,
+ * then name, offset and length of every class, and then the bytes of all classes.
+ * The file is memory-mapped, so class bytes are not copied to the heap.
+ */
+/* package */ class PreloaderSnapshot {
+    private static final int FORMAT_VERSION = 1;
+    private static final String ENCODING = "UTF-8";
+
+    private final List<String> resourceNames;
+    private final Map<String, ClassBytes> classes;
+    private final ByteBuffer data;
+
+    private PreloaderSnapshot(List<String> resourceNames, Map<String, ClassBytes> classes, ByteBuffer data) {
+        this.resourceNames = resourceNames;
+        this.classes = classes;
+        this.data = data;
+    }
+
+    /**
+     * @return names of the class files in the snapshot (e.g. "java/lang/Object.class"), in the order they were defined
+     */
+    public List<String> getResourceNames() {
+        return resourceNames;
+    }
+
+    /**
+     * @return bytes of the class file, or null if it is not in the snapshot
+     */
+    public ByteBuffer getClassBytes(String resourceName) {
+        ClassBytes classBytes = classes.get(resourceName);
+        if (classBytes == null) return null;
+
+        ByteBuffer result = data.duplicate();
+        result.position(classBytes.offset);
+        result.limit(classBytes.offset + classBytes.length);
+        return result;
+    }
+
+    /**
+     * @return the snapshot, or null if there is none or it was written for other versions of the jars
+     */
+    public static PreloaderSnapshot load(File file, Collection<File> jarFiles) {
+        if (!file.isFile()) return null;
+
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                // The mapping stays valid after the file is closed
+                ByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+                if (buffer.getInt() != FORMAT_VERSION) return null;
+
+                int jarCount = buffer.getInt();
+                if (jarCount != jarFiles.size()) return null;
+                for (File jarFile : jarFiles) {
+                    if (!getString(buffer).equals(jarFile.getAbsolutePath()) ||
+                        buffer.getLong() != jarFile.length() ||
+                        buffer.getLong() != jarFile.lastModified()) {
+                        return null;
+                    }
+                }
+
+                int classCount = buffer.getInt();
+                if (classCount < 0) return null;
+                List<String> resourceNames = new ArrayList<String>(classCount);
+                Map<String, ClassBytes> classes = new HashMap<String, ClassBytes>(classCount * 2);
+                for (int i = 0; i < classCount; i++) {
+                    String name = getString(buffer);
+                    resourceNames.add(name);
+                    classes.put(name, new ClassBytes(buffer.getInt(), buffer.getInt()));
+                }
+
+                // Class bytes are only read when classes are defined, when it's too late to fall back to loading from the jars
+                ByteBuffer data = buffer.slice();
+                for (ClassBytes classBytes : classes.values()) {
+                    if (classBytes.offset < 0 || classBytes.length < 0 ||
+                        (long) classBytes.offset + classBytes.length > data.remaining()) {
+                        return null;
+                    }
+                }
+
+                return new PreloaderSnapshot(resourceNames, classes, data);
+            }
+            finally {
+                randomAccessFile.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+        catch (RuntimeException e) {
+            // Truncated or otherwise corrupted file
+            return null;
+        }
+    }
+
+    public static void write(File file, Collection<File> jarFiles, List<String> resourceNames, List<byte[]> classBytes)
+            throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+
+        // Written to a temporary file first, so that concurrent runs never see an incomplete snapshot
+        File tempFile = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                output.writeInt(FORMAT_VERSION);
+
+                output.writeInt(jarFiles.size());
+                for (File jarFile : jarFiles) {
+                    putString(output, jarFile.getAbsolutePath());
+                    output.writeLong(jarFile.length());
+                    output.writeLong(jarFile.lastModified());
+                }
+
+                output.writeInt(resourceNames.size());
+                int offset = 0;
+                for (int i = 0; i < resourceNames.size(); i++) {
+                    int length = classBytes.get(i).length;
+                    putString(output, resourceNames.get(i));
+                    output.writeInt(offset);
+                    output.writeInt(length);
+                    offset += length;
+                }
+
+                for (byte[] bytes : classBytes) {
+                    output.write(bytes);
+                }
+            }
+            finally {
+                output.close();
+            }
+
+            if (!tempFile.renameTo(file)) {
+                file.delete();
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Cannot write " + file);
+                }
+            }
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) throws UnsupportedEncodingException {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, ENCODING);
+    }
+
+    private static void putString(DataOutputStream output, String string) throws IOException {
+        byte[] bytes = string.getBytes(ENCODING);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static class ClassBytes {
+        private final int offset;
+        private final int length;
+
+        private ClassBytes(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package main
+
+import shapes.*
+
+enum class Kind {
+    SQUARE
+    CIRCLE
+}
+
+fun create(kind: Kind, size: Double): Shape = when (kind) {
+    Kind.SQUARE -> Square(size)
+    Kind.CIRCLE -> Circle(size)
+    else -> Origin
+}
+
+fun parse(size: Int): Shape {
+    try {
+        if (size < 0) throw IllegalArgumentException()
+        return create(if (size % 2 == 0) Kind.SQUARE else Kind.CIRCLE, size.toDouble())
+    }
+    catch (e: IllegalArgumentException) {
+        return Origin
+    }
+}
+
+fun main(args: Array<String>) {
+    val shapes = Array<Shape>(args.size) { parse(args[it].length - 2) }
+    val describe = { (shape: Shape?) -> shape?.describe() ?: "none" }
+    System.out.println(describe(largest(shapes)))
+}
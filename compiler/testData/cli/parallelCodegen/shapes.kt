@@ -0,0 +1,30 @@
+package shapes
+
+trait Shape {
+    fun area(): Double
+    fun describe(): String = "shape with area ${area()}"
+}
+
+open class Rectangle(val width: Double, val height: Double) : Shape {
+    override fun area() = width * height
+}
+
+class Square(side: Double) : Rectangle(side, side)
+
+class Circle(val radius: Double) : Shape {
+    override fun area() = 3.14 * radius * radius
+}
+
+object Origin : Shape {
+    override fun area() = 0.0
+}
+
+fun largest(shapes: Array<Shape>): Shape? {
+    var result: Shape? = null
+    for (shape in shapes) {
+        if (result == null || shape.area() > result!!.area()) {
+            result = shape
+        }
+    }
+    return result
+}
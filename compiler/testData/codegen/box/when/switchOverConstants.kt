@@ -0,0 +1,50 @@
+enum class Color {
+    RED
+    GREEN
+    BLUE
+    BLACK
+}
+
+fun int(x: Int): String = when (x) {
+    1, 2 -> "small"
+    3 -> "three"
+    1000 -> "thousand"
+    -5 -> "negative"
+    else -> "other"
+}
+
+fun char(c: Char): String = when (c) {
+    'a' -> "a"
+    'b' -> "b"
+    'z' -> "z"
+    else -> "other"
+}
+
+fun string(s: String): String = when (s) {
+    "Aa" -> "Aa"
+    "BB" -> "BB"
+    "" -> "empty"
+    "OK" -> "OK"
+    else -> "other"
+}
+
+fun color(c: Color): Int = when (c) {
+    Color.BLACK -> 0
+    Color.RED -> 1
+    Color.GREEN, Color.BLUE -> 2
+}
+
+fun box(): String {
+    if (int(1) != "small" || int(2) != "small") return "Fail int 1"
+    if (int(3) != "three" || int(1000) != "thousand" || int(-5) != "negative") return "Fail int 2"
+    if (int(4) != "other" || int(999) != "other") return "Fail int 3"
+
+    if (char('a') != "a" || char('z') != "z" || char('c') != "other") return "Fail char"
+
+    if (string("Aa") != "Aa" || string("BB") != "BB" || string("") != "empty") return "Fail string 1"
+    if (string("C#") != "other" || string("ok") != "other") return "Fail string 2"
+
+    if (color(Color.BLACK) != 0 || color(Color.RED) != 1 || color(Color.GREEN) != 2 || color(Color.BLUE) != 2) return "Fail enum"
+
+    return string("OK")
+}
@@ -0,0 +1,32 @@
+fun dense(x: Int) = when (x) {
+    1 -> "one"
+    2 -> "two"
+    3 -> "three"
+    4 -> "four"
+    else -> "other"
+}
+
+fun sparse(x: Int) = when (x) {
+    1 -> "one"
+    100 -> "hundred"
+    10000 -> "ten thousand"
+    else -> "other"
+}
+
+fun string(s: String) = when (s) {
+    "a" -> 1
+    "b" -> 2
+    "c" -> 3
+    else -> 0
+}
+
+fun notConstant(x: Int, y: Int) = when (x) {
+    1 -> "one"
+    y -> "y"
+    3 -> "three"
+    else -> "other"
+}
+
+// 2 TABLESWITCH
+// 1 LOOKUPSWITCH
+// 3 INVOKEVIRTUAL java/lang/String.equals
@@ -0,0 +1,11 @@
+open class A
+open class B : A()
+trait T : A
+trait U
+trait V : U
+class X : T, B()
+class Y : A(), V
+open class Z : B(), U
+class W : Z(), T
+
+fun box() = "OK"
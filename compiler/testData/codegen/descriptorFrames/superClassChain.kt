@@ -0,0 +1,23 @@
+open class A {
+    fun a() = "OK"
+}
+open class B : A()
+open class C : B()
+class D : C()
+class E : B()
+class F : A()
+
+fun box(): String {
+    var result = ""
+    for (i in 0..2) {
+        val x = when (i) {
+            0 -> D()
+            1 -> E()
+            else -> F()
+        }
+        result = x.a()
+        val y = if (i == 0) D() else E()
+        if (y.a() != result) return "fail $i"
+    }
+    return result
+}
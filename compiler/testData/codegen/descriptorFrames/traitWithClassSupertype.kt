@@ -0,0 +1,16 @@
+open class A {
+    fun a() = "O"
+}
+open class B : A()
+trait T : A
+class X : T, B()
+class Y : A()
+
+fun pick(flag: Boolean) = if (flag) X() else Y()
+
+fun box(): String {
+    // The common super class of X and Y is A, even though A is reached through T first
+    val first = if (true) X() else Y()
+    val second = pick(false)
+    return first.a() + if (second is Y) "K" else "fail"
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.asJava;
+
+import com.google.common.base.Predicates;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.jet.JetLiteFixture;
+import org.jetbrains.jet.JetTestUtils;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.lang.psi.JetClassOrObject;
+import org.jetbrains.jet.lang.psi.JetDeclaration;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.AnalyzerScriptParameter;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.java.AnalyzerFacadeForJVM;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class LightClassSignatureHashTest extends JetLiteFixture {
+    public void testBlockBody() {
+        assertSameClassHash("class A { fun f() { foo() } }", "class A { fun f() { bar(); baz() } }");
+    }
+
+    public void testWhitespaceAndComments() {
+        assertSameClassHash("class A { fun f(): Int = 1 }", "class A {\n    // comment\n    fun f() : Int = 1\n}");
+    }
+
+    public void testSignature() {
+        assertDifferentClassHash("class A { fun f(a: Int) {} }", "class A { fun f(a: Long) {} }");
+        assertDifferentClassHash("class A { fun f() {} }", "class A { private fun f() {} }");
+    }
+
+    public void testExpressionBody() {
+        assertSameClassHash("class A { fun f(): Int = 1 }", "class A { fun f(): Int = 2 }");
+        assertDifferentClassHash("class A { fun f() = 1 }", "class A { fun f() = \"\" }");
+    }
+
+    public void testPropertyInitializer() {
+        assertSameClassHash("class A { val x: Int = 1 }", "class A { val x: Int = 2 }");
+        assertDifferentClassHash("class A { val x = 1 }", "class A { val x = 1L }");
+        assertDifferentClassHash("class A { val x = { 1 } }", "class A { val x = { \"\" } }");
+    }
+
+    public void testPropertyAccessor() {
+        assertSameClassHash("class A { val x: Int get() = 1 }", "class A { val x: Int get() = 2 }");
+    }
+
+    public void testImports() {
+        assertDifferentClassHash("import a.B\nclass A : B()", "import c.B\nclass A : B()");
+    }
+
+    public void testOtherDeclarationsOfFile() {
+        assertSameClassHash("class A\nfun f() = 1", "class A\nfun f() = \"\"");
+        assertSamePackageHash("fun f() = 1\nclass A", "fun f() = 1\nclass A { fun g() {} }");
+        assertDifferentPackageHash("fun f() = 1\nclass A", "fun f() = \"\"\nclass A");
+    }
+
+    public void testHashCodeCollisions() {
+        // "Aa" and "BB" have the same String.hashCode()
+        assertDifferentClassHash("class Aa", "class BB");
+        assertDifferentClassHash("class A { fun Aa() {} }", "class A { fun BB() {} }");
+        assertDifferentPackageHash("fun Aa() = 1", "fun BB() = 1");
+    }
+
+    public void testInferredTypeFromOtherFile() {
+        assertDifferentClassHash(new String[] {"class A { fun f() = g() }", "fun g() = 1"},
+                                 new String[] {"class A { fun f() = g() }", "fun g() = \"\""});
+        assertDifferentPackageHash(new String[] {"import other.g\nval x = g()", "package other\nfun g() = 1"},
+                                   new String[] {"import other.g\nval x = g()", "package other\nfun g() = 1L"});
+    }
+
+    public void testSupertypeFromOtherFile() {
+        String text = "import a.*\nimport b.*\nclass A : B()";
+        assertDifferentClassHash(new String[] {text, "package a\nopen class B", "package b"},
+                                 new String[] {text, "package a", "package b\nopen class B"});
+    }
+
+    public void testInheritedMemberFromOtherFile() {
+        String text = "class A(t: T) : T by t";
+        assertDifferentClassHash(new String[] {text, "trait T { fun f() }"},
+                                 new String[] {text, "trait T { fun f(a: Int) }"});
+        assertSameClassHash(new String[] {text, "trait T { fun f() }"},
+                            new String[] {text, "trait T { fun f() }\nfun g() = 1"});
+    }
+
+    private void assertSameClassHash(String text1, String text2) {
+        assertSameClassHash(new String[] {text1}, new String[] {text2});
+    }
+
+    private void assertSameClassHash(String[] texts1, String[] texts2) {
+        assertEquals(classHash(texts1), classHash(texts2));
+    }
+
+    private void assertDifferentClassHash(String text1, String text2) {
+        assertDifferentClassHash(new String[] {text1}, new String[] {text2});
+    }
+
+    private void assertDifferentClassHash(String[] texts1, String[] texts2) {
+        assertFalse(classHash(texts1).equals(classHash(texts2)));
+    }
+
+    private void assertSamePackageHash(String text1, String text2) {
+        assertEquals(packageHash(new String[] {text1}), packageHash(new String[] {text2}));
+    }
+
+    private void assertDifferentPackageHash(String text1, String text2) {
+        assertDifferentPackageHash(new String[] {text1}, new String[] {text2});
+    }
+
+    private void assertDifferentPackageHash(String[] texts1, String[] texts2) {
+        assertFalse(packageHash(texts1).equals(packageHash(texts2)));
+    }
+
+    // The first file is the one hashed, the others are only analyzed with it
+    private String classHash(String[] texts) {
+        List<JetFile> files = createFiles(texts);
+        BindingContext bindingContext = analyze(files);
+        for (JetDeclaration declaration : files.get(0).getDeclarations()) {
+            if (declaration instanceof JetClassOrObject) {
+                return LightClassSignatureHash.forDeclaredClass((JetClassOrObject) declaration, bindingContext);
+            }
+        }
+        throw new AssertionError("No class in " + texts[0]);
+    }
+
+    private String packageHash(String[] texts) {
+        List<JetFile> files = createFiles(texts);
+        return LightClassSignatureHash.forPackageClass(Collections.singletonList(files.get(0)), analyze(files));
+    }
+
+    private List<JetFile> createFiles(String[] texts) {
+        List<JetFile> files = new ArrayList<JetFile>();
+        for (int i = 0; i < texts.length; i++) {
+            files.add(JetTestUtils.createFile("file" + i + ".kt", texts[i], getProject()));
+        }
+        return files;
+    }
+
+    private BindingContext analyze(List<JetFile> files) {
+        return AnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
+                getProject(), files, Collections.<AnalyzerScriptParameter>emptyList(), Predicates.<PsiFile>alwaysTrue()).getBindingContext();
+    }
+
+    @Override
+    protected JetCoreEnvironment createEnvironment() {
+        return JetTestUtils.createEnvironmentWithMockJdkAndIdeaAnnotations(getTestRootDisposable());
+    }
+}
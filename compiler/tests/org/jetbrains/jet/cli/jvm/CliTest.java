@@ -16,6 +16,7 @@
 
 package org.jetbrains.jet.cli.jvm;
 
+import com.intellij.openapi.util.io.FileUtil;
 import junit.framework.Assert;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.jet.JetTestUtils;
@@ -37,9 +38,10 @@ import org.junit.rules.TestName;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.*;
+import java.util.regex.Pattern;
 
 public class CliTest {
 
@@ -250,4 +252,35 @@ public class CliTest {
                 "-output", new File(tmpdir.getTmpDir(), "out.js").getPath()};
         executeCompilerCompareOutputJS(args);
     }
+
+    @Test
+    public void parallelCodegen() throws Exception {
+        File sequential = new File(tmpdir.getTmpDir(), "sequential");
+        File parallel = new File(tmpdir.getTmpDir(), "parallel");
+        String src = "compiler/testData/cli/parallelCodegen";
+        compileSuccessfully("-src", src, "-output", sequential.getPath());
+        compileSuccessfully("-src", src, "-output", parallel.getPath(), "-parallelCodegen");
+
+        Map<String, byte[]> expected = loadClassFiles(sequential);
+        Map<String, byte[]> actual = loadClassFiles(parallel);
+        Assert.assertTrue(expected.size() > 1);
+        Assert.assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            Assert.assertTrue(entry.getKey(), Arrays.equals(entry.getValue(), actual.get(entry.getKey())));
+        }
+    }
+
+    private static void compileSuccessfully(@NotNull String... args) {
+        String output = executeCompilerGrabOutput(new K2JVMCompiler(), args);
+        Assert.assertTrue(output, output.endsWith(ExitCode.OK + "\n"));
+    }
+
+    @NotNull
+    private static Map<String, byte[]> loadClassFiles(@NotNull File dir) throws IOException {
+        Map<String, byte[]> result = new TreeMap<String, byte[]>();
+        for (File file : FileUtil.findFilesByMask(Pattern.compile(".*\\.class"), dir)) {
+            result.put(FileUtil.getRelativePath(dir, file), FileUtil.loadFileBytes(file));
+        }
+        return result;
+    }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.cli.jvm.daemon;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.Assert;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.cli.common.ExitCode;
+import org.jetbrains.jet.lang.resolve.java.PackageClassUtils;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.test.Tmpdir;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+
+public class K2JVMCompileDaemonTest {
+    private static final String SOURCE = "compiler/testData/cli/simple.kt";
+    private static final int REQUEST_TIMEOUT = 1000;
+
+    @Rule
+    public final Tmpdir tmpdir = new Tmpdir();
+
+    private File tokenFile;
+    private K2JVMCompileDaemon daemon;
+    private Thread daemonThread;
+    private final ByteArrayOutputStream daemonLog = new ByteArrayOutputStream();
+
+    @Before
+    public void startDaemon() throws IOException {
+        tokenFile = new File(tmpdir.getTmpDir(), "daemon/daemon.token");
+        daemon = new K2JVMCompileDaemon(0, tokenFile, new PrintStream(daemonLog, true), REQUEST_TIMEOUT);
+        daemonThread = new Thread("compile daemon") {
+            @Override
+            public void run() {
+                try {
+                    daemon.run();
+                }
+                catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        daemonThread.start();
+    }
+
+    @After
+    public void stopDaemon() throws Exception {
+        K2JVMCompileDaemonClient.shutdown(daemon.getPort(), tokenFile);
+        daemonThread.join(10000);
+        Assert.assertFalse("Daemon has not stopped", daemonThread.isAlive());
+        Assert.assertFalse("Token file is not deleted", tokenFile.exists());
+    }
+
+    @Test
+    public void consecutiveCompilations() throws Exception {
+        File firstOutput = new File(tmpdir.getTmpDir(), "first");
+        assertCompiled(firstOutput, compile("-src", SOURCE, "-output", firstOutput.getPath()));
+
+        // Longer than 64K when encoded, which writeUTF() can't transfer
+        StringBuilder classpath = new StringBuilder();
+        while (classpath.length() < 70000) {
+            classpath.append(new File("compiler/testData/cli").getAbsolutePath()).append(File.pathSeparator);
+        }
+
+        File secondOutput = new File(tmpdir.getTmpDir(), "second");
+        assertCompiled(secondOutput, compile("-src", SOURCE, "-classpath", classpath.toString(), "-output", secondOutput.getPath()));
+    }
+
+    @Test
+    public void wrongTokenIsRejected() throws Exception {
+        File wrongTokenFile = new File(tmpdir.getTmpDir(), "wrong.token");
+        FileUtil.writeToFile(wrongTokenFile, "0123456789abcdef");
+
+        File output = new File(tmpdir.getTmpDir(), "output");
+        try {
+            K2JVMCompileDaemonClient.compile(daemon.getPort(), wrongTokenFile, new String[] {"-src", SOURCE, "-output", output.getPath()},
+                                             new PrintStream(new ByteArrayOutputStream()));
+            Assert.fail("Request with a wrong token should be rejected");
+        }
+        catch (IOException expected) {
+        }
+        Assert.assertFalse(output.exists());
+        Assert.assertTrue(daemonLog.toString(), daemonLog.toString().contains("wrong token"));
+
+        // The daemon keeps serving requests with the right token
+        assertCompiled(output, compile("-src", SOURCE, "-output", output.getPath()));
+    }
+
+    @Test
+    public void silentClientTimesOut() throws Exception {
+        Socket silentClient = new Socket(InetAddress.getByName(null), daemon.getPort());
+        try {
+            // Served after the silent client times out
+            File output = new File(tmpdir.getTmpDir(), "output");
+            assertCompiled(output, compile("-src", SOURCE, "-output", output.getPath()));
+            Assert.assertTrue(daemonLog.toString(), daemonLog.toString().contains("not received in time"));
+        }
+        finally {
+            silentClient.close();
+        }
+    }
+
+    @Test
+    public void slowClientTimesOut() throws Exception {
+        Socket slowClient = new Socket(InetAddress.getByName(null), daemon.getPort());
+        try {
+            // Each byte comes well within the timeout, but the whole request doesn't
+            DataOutputStream stream = new DataOutputStream(slowClient.getOutputStream());
+            // Length of a token, which is then sent byte by byte
+            stream.writeInt(200);
+            long deadline = System.currentTimeMillis() + 3 * REQUEST_TIMEOUT;
+            while (!daemonLog.toString().contains("not received in time")) {
+                Assert.assertTrue("Slow client has not timed out", System.currentTimeMillis() < deadline);
+                stream.write(0);
+                stream.flush();
+                Thread.sleep(REQUEST_TIMEOUT / 5);
+            }
+        }
+        catch (SocketException ignored) {
+            // Closed by the daemon
+        }
+        finally {
+            slowClient.close();
+        }
+
+        File output = new File(tmpdir.getTmpDir(), "output");
+        assertCompiled(output, compile("-src", SOURCE, "-output", output.getPath()));
+    }
+
+    @Test
+    public void negativeArgumentCountIsRejected() throws Exception {
+        Socket client = new Socket(InetAddress.getByName(null), daemon.getPort());
+        try {
+            DataOutputStream output = new DataOutputStream(client.getOutputStream());
+            K2JVMCompileDaemon.writeBytes(output, K2JVMCompileDaemon.readTokenFile(tokenFile));
+            output.writeInt(-1);
+            output.flush();
+            Assert.assertEquals("Connection should be closed without a response", -1, client.getInputStream().read());
+        }
+        finally {
+            client.close();
+        }
+        Assert.assertTrue(daemonLog.toString(), daemonLog.toString().contains("Unexpected length"));
+
+        // The daemon keeps serving requests
+        File output = new File(tmpdir.getTmpDir(), "output");
+        assertCompiled(output, compile("-src", SOURCE, "-output", output.getPath()));
+    }
+
+    private int compile(@NotNull String... args) throws IOException {
+        ByteArrayOutputStream compilerOutput = new ByteArrayOutputStream();
+        int exitCode = K2JVMCompileDaemonClient.compile(daemon.getPort(), tokenFile, args, new PrintStream(compilerOutput, true));
+        Assert.assertEquals(compilerOutput.toString(), ExitCode.OK.getCode(), exitCode);
+        return exitCode;
+    }
+
+    private static void assertCompiled(@NotNull File output, int exitCode) {
+        Assert.assertEquals(ExitCode.OK.getCode(), exitCode);
+        Assert.assertTrue(new File(output, PackageClassUtils.getPackageClassName(FqName.ROOT) + ".class").isFile());
+    }
+}
@@ -97,6 +97,11 @@ public class BytecodeTextTestGenerated extends AbstractBytecodeTextTest {
         doTest("compiler/testData/codegen/bytecodeText/topLevelFunWithDefaultArgs.kt");
     }
     
+    @TestMetadata("whenOverConstants.kt")
+    public void testWhenOverConstants() throws Exception {
+        doTest("compiler/testData/codegen/bytecodeText/whenOverConstants.kt");
+    }
+    
     @TestMetadata("compiler/testData/codegen/bytecodeText/directInvoke")
     public static class DirectInvoke extends AbstractBytecodeTextTest {
         public void testAllFilesPresentInDirectInvoke() throws Exception {
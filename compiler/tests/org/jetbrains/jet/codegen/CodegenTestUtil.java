@@ -56,9 +56,15 @@ public class CodegenTestUtil {
         analyzeExhaust.throwIfError();
         AnalyzingUtils.throwExceptionOnErrors(analyzeExhaust.getBindingContext());
         CompilerConfiguration configuration = environment.getConfiguration();
+        BuiltinToJavaTypesMapping builtinToJavaTypesMapping =
+                configuration.get(JVMConfigurationKeys.BUILTIN_TO_JAVA_TYPES_MAPPING_KEY, BuiltinToJavaTypesMapping.ENABLED);
+        ClassBuilderFactory builderFactory = configuration.get(JVMConfigurationKeys.DESCRIPTOR_BASED_FRAMES, false)
+                ? ClassBuilderFactories.binaries(false, new DescriptorBasedClassHierarchy(
+                        analyzeExhaust.getBindingContext(), builtinToJavaTypesMapping == BuiltinToJavaTypesMapping.ENABLED))
+                : ClassBuilderFactories.TEST;
         GenerationState state = new GenerationState(
-                environment.getProject(), ClassBuilderFactories.TEST, Progress.DEAF, analyzeExhaust.getBindingContext(), files.getPsiFiles(),
-                configuration.get(JVMConfigurationKeys.BUILTIN_TO_JAVA_TYPES_MAPPING_KEY, BuiltinToJavaTypesMapping.ENABLED),
+                environment.getProject(), builderFactory, Progress.DEAF, analyzeExhaust.getBindingContext(), files.getPsiFiles(),
+                builtinToJavaTypesMapping,
                 configuration.get(JVMConfigurationKeys.GENERATE_NOT_NULL_ASSERTIONS, true),
                 configuration.get(JVMConfigurationKeys.GENERATE_NOT_NULL_PARAMETER_ASSERTIONS, true),
                 /*generateDeclaredClasses = */true
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.codegen;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.ConfigurationKind;
+import org.jetbrains.jet.JetTestUtils;
+import org.jetbrains.jet.TestJdkKind;
+import org.jetbrains.jet.cli.jvm.JVMConfigurationKeys;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.config.CompilerConfiguration;
+
+import java.lang.reflect.Method;
+
+/**
+ * Compiles with stack map frames computed by {@link DescriptorBasedClassHierarchy}, as the -descriptorFrames option does
+ */
+public class DescriptorBasedFramesTest extends CodegenTestCase {
+    private static final String[] CLASSES = {"A", "B", "T", "U", "V", "X", "Y", "Z", "W"};
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        CompilerConfiguration configuration = JetTestUtils.compilerConfigurationForTests(
+                ConfigurationKind.JDK_AND_ANNOTATIONS, TestJdkKind.MOCK_JDK, JetTestUtils.getAnnotationsJar());
+        configuration.put(JVMConfigurationKeys.DESCRIPTOR_BASED_FRAMES, true);
+        myEnvironment = new JetCoreEnvironment(getTestRootDisposable(), configuration);
+    }
+
+    @NotNull
+    @Override
+    protected String getPrefix() {
+        return "descriptorFrames";
+    }
+
+    public void testTraitWithClassSupertype() throws Exception {
+        blackBox();
+    }
+
+    public void testSuperClassChain() throws Exception {
+        blackBox();
+    }
+
+    public void testHierarchy() throws Exception {
+        blackBox();
+
+        ClassFileFactory factory = generateClassesInFile();
+        DescriptorBasedClassHierarchy hierarchy = new DescriptorBasedClassHierarchy(factory.getState().getBindingContext(), true);
+        for (String type1 : CLASSES) {
+            for (String type2 : CLASSES) {
+                assertEquals(type1 + " and " + type2,
+                             getCommonSuperClassOfLoadedClasses(type1, type2),
+                             hierarchy.getCommonSuperClass(type1, type2));
+            }
+        }
+    }
+
+    private void blackBox() throws Exception {
+        loadFile();
+        Method box = generateNamespaceClass().getMethod("box");
+        assertEquals("OK", box.invoke(null));
+    }
+
+    /**
+     * The answer of {@link org.jetbrains.asm4.ClassWriter#getCommonSuperClass}, which loads the classes
+     */
+    @NotNull
+    private String getCommonSuperClassOfLoadedClasses(@NotNull String type1, @NotNull String type2) throws ClassNotFoundException {
+        Class<?> class1 = initializedClassLoader.loadClass(type1);
+        Class<?> class2 = initializedClassLoader.loadClass(type2);
+        if (class1.isAssignableFrom(class2)) return type1;
+        if (class2.isAssignableFrom(class1)) return type2;
+        if (class1.isInterface() || class2.isInterface()) return "java/lang/Object";
+
+        do {
+            class1 = class1.getSuperclass();
+        }
+        while (!class1.isAssignableFrom(class2));
+        return class1.getName().replace('.', '/');
+    }
+}
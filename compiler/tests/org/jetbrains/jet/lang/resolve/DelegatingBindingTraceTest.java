@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.resolve;
+
+import junit.framework.TestCase;
+import org.jetbrains.jet.util.slicedmap.Slices;
+import org.jetbrains.jet.util.slicedmap.WritableSlice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DelegatingBindingTraceTest extends TestCase {
+    private static final WritableSlice<String, Integer> NAME_COLOR = Slices.<String, Integer>sliceBuilder().setDebugName("NAME_COLOR").build();
+
+    public void testMoveToEmptyTrace() {
+        DelegatingBindingTrace target = new DelegatingBindingTrace(BindingContext.EMPTY, "target");
+        TemporaryBindingTrace temporary = TemporaryBindingTrace.create(target, "temporary");
+        temporary.record(NAME_COLOR, "RED", 0xff0000);
+        temporary.commit();
+
+        assertEquals(0xff0000, (int) target.get(NAME_COLOR, "RED"));
+        assertNull(temporary.get(NAME_COLOR, "RED"));
+    }
+
+    public void testMoveToTraceWithData() {
+        DelegatingBindingTrace target = new DelegatingBindingTrace(BindingContext.EMPTY, "target");
+        target.record(NAME_COLOR, "GREEN", 0x00ff00);
+        TemporaryBindingTrace temporary = TemporaryBindingTrace.create(target, "temporary");
+        temporary.record(NAME_COLOR, "RED", 0xff0000);
+        temporary.commit();
+
+        assertEquals(0xff0000, (int) target.get(NAME_COLOR, "RED"));
+        assertEquals(0x00ff00, (int) target.get(NAME_COLOR, "GREEN"));
+    }
+
+    public void testMoveToTraceOverridingRecord() {
+        final List<String> recorded = new ArrayList<String>();
+        DelegatingBindingTrace target = new DelegatingBindingTrace(BindingContext.EMPTY, "overriding target") {
+            @Override
+            public <K, V> void record(WritableSlice<K, V> slice, K key, V value) {
+                super.record(slice, key, value);
+                recorded.add(String.valueOf(key));
+            }
+        };
+        TemporaryBindingTrace temporary = TemporaryBindingTrace.create(target, "temporary");
+        temporary.record(NAME_COLOR, "RED", 0xff0000);
+        temporary.record(NAME_COLOR, "GREEN", 0x00ff00);
+        temporary.commit();
+
+        assertEquals(Arrays.asList("RED", "GREEN"), recorded);
+        assertEquals(0xff0000, (int) target.get(NAME_COLOR, "RED"));
+    }
+
+    public void testMoveToTraceRejectingRecords() {
+        TemporaryBindingTrace temporary = TemporaryBindingTrace.create(TraceUtil.DELEGATING_TRACE_STUB, "temporary");
+        temporary.record(NAME_COLOR, "RED", 0xff0000);
+        try {
+            temporary.commit();
+            fail("Records committed to the stub trace should be rejected");
+        }
+        catch (IllegalStateException expected) {
+        }
+    }
+}
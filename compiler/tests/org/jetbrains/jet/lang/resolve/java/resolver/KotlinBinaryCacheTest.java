@@ -0,0 +1,250 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.lang.resolve.java.resolver;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.Assert;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.codegen.forTestCompile.ForTestCompileRuntime;
+import org.jetbrains.jet.test.Tmpdir;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class KotlinBinaryCacheTest {
+    @Rule
+    public final Tmpdir tmpdir = new Tmpdir();
+
+    private File jar;
+    private File cacheDir;
+    private Map<String, byte[]> classes;
+
+    @Before
+    public void copyRuntime() throws IOException {
+        jar = new File(tmpdir.getTmpDir(), "runtime.jar");
+        FileUtil.copy(ForTestCompileRuntime.runtimeJarForTests(), jar);
+        cacheDir = new File(tmpdir.getTmpDir(), "cache");
+        classes = readClasses(jar);
+    }
+
+    @After
+    public void resetLoadedCaches() {
+        KotlinBinaryCache.resetLoadedCaches();
+    }
+
+    @Test
+    public void roundTrip() {
+        int kotlinClasses = 0;
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            KotlinClassFileHeader header = KotlinClassFileHeader.readKotlinHeaderFromBytes(entry.getValue());
+            assertSameHeader(entry.getKey(), header, findHeader(entry.getKey()));
+            if (header.isKotlinCompiledFile()) {
+                kotlinClasses++;
+            }
+        }
+        Assert.assertTrue("No Kotlin classes in " + jar, kotlinClasses > 0);
+
+        // Read by a new process
+        KotlinBinaryCache.resetLoadedCaches();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            assertSameHeader(entry.getKey(), KotlinClassFileHeader.readKotlinHeaderFromBytes(entry.getValue()), findHeader(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void headersAreCachedOnDemand() {
+        String kotlinClass = findClass(true);
+        String javaClass = findClass(false);
+
+        findHeader(kotlinClass);
+        File cacheFile = getCacheFile();
+        long length = cacheFile.length();
+
+        findHeader(kotlinClass);
+        Assert.assertEquals(length, cacheFile.length());
+
+        findHeader(javaClass);
+        Assert.assertTrue(cacheFile.length() > length);
+        length = cacheFile.length();
+
+        KotlinBinaryCache.resetLoadedCaches();
+        findHeader(kotlinClass);
+        findHeader(javaClass);
+        Assert.assertEquals(length, cacheFile.length());
+    }
+
+    @Test
+    public void staleCache() throws IOException {
+        String kotlinClass = findClass(true);
+        String javaClass = findClass(false);
+        Assert.assertTrue(findHeader(kotlinClass).isKotlinCompiledFile());
+
+        // Same names with other contents, so only the checksum of the jar tells it has changed
+        Map<String, byte[]> changedClasses = new TreeMap<String, byte[]>(classes);
+        changedClasses.put(kotlinClass, classes.get(javaClass));
+        writeClasses(jar, changedClasses);
+        Assert.assertTrue(jar.setLastModified(jar.lastModified() + 10000));
+
+        Assert.assertEquals(KotlinClassFileHeader.HeaderType.NONE, findHeader(kotlinClass).getType());
+
+        KotlinBinaryCache.resetLoadedCaches();
+        Assert.assertEquals(KotlinClassFileHeader.HeaderType.NONE, findHeader(kotlinClass).getType());
+    }
+
+    @Test
+    public void truncatedCache() throws IOException {
+        fillCache();
+        File cacheFile = getCacheFile();
+        RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+        try {
+            file.setLength(file.length() - 3);
+        }
+        finally {
+            file.close();
+        }
+
+        assertCacheReadCorrectly();
+    }
+
+    @Test
+    public void corruptCache() throws IOException {
+        fillCache();
+        File cacheFile = getCacheFile();
+        byte[] bytes = FileUtil.loadFileBytes(cacheFile);
+        // Garbage in the middle of the records
+        for (int i = bytes.length / 2; i < bytes.length / 2 + 16; i++) {
+            bytes[i] = (byte) 0xff;
+        }
+        FileUtil.writeToFile(cacheFile, bytes);
+
+        assertCacheReadCorrectly();
+
+        // Garbage instead of the header
+        KotlinBinaryCache.resetLoadedCaches();
+        FileUtil.writeToFile(cacheFile, "not a cache");
+        assertCacheReadCorrectly();
+    }
+
+    private void fillCache() {
+        for (String name : classes.keySet()) {
+            findHeader(name);
+        }
+        KotlinBinaryCache.resetLoadedCaches();
+    }
+
+    private void assertCacheReadCorrectly() {
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            assertSameHeader(entry.getKey(), KotlinClassFileHeader.readKotlinHeaderFromBytes(entry.getValue()), findHeader(entry.getKey()));
+        }
+        // Headers appended after the corrupt part are read back too
+        KotlinBinaryCache.resetLoadedCaches();
+        long length = getCacheFile().length();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            assertSameHeader(entry.getKey(), KotlinClassFileHeader.readKotlinHeaderFromBytes(entry.getValue()), findHeader(entry.getKey()));
+        }
+        Assert.assertEquals(length, getCacheFile().length());
+    }
+
+    @NotNull
+    private KotlinClassFileHeader findHeader(@NotNull String internalName) {
+        KotlinClassFileHeader header = KotlinBinaryCache.findHeader(cacheDir, jar, internalName);
+        Assert.assertNotNull("No header for " + internalName, header);
+        return header;
+    }
+
+    @NotNull
+    private String findClass(boolean kotlin) {
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            if (KotlinClassFileHeader.readKotlinHeaderFromBytes(entry.getValue()).isKotlinCompiledFile() == kotlin) {
+                return entry.getKey();
+            }
+        }
+        throw new AssertionError("No " + (kotlin ? "Kotlin" : "Java") + " classes in " + jar);
+    }
+
+    @NotNull
+    private File getCacheFile() {
+        File[] files = cacheDir.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(1, files.length);
+        return files[0];
+    }
+
+    private static void assertSameHeader(
+            @NotNull String internalName,
+            @NotNull KotlinClassFileHeader expected,
+            @NotNull KotlinClassFileHeader actual
+    ) {
+        Assert.assertEquals(internalName, expected.getType(), actual.getType());
+        Assert.assertEquals(internalName, expected.getVersion(), actual.getVersion());
+        Assert.assertEquals(internalName, expected.isKotlinCompiledFile(), actual.isKotlinCompiledFile());
+        if (expected.isKotlinCompiledFile()) {
+            Assert.assertTrue(internalName, Arrays.equals(expected.getDecodedData(), actual.getDecodedData()));
+        }
+    }
+
+    @NotNull
+    private static Map<String, byte[]> readClasses(@NotNull File jar) throws IOException {
+        Map<String, byte[]> classes = new TreeMap<String, byte[]>();
+        ZipFile zipFile = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class")) continue;
+
+                InputStream stream = zipFile.getInputStream(entry);
+                try {
+                    classes.put(name.substring(0, name.length() - ".class".length()), FileUtil.loadBytes(stream));
+                }
+                finally {
+                    stream.close();
+                }
+            }
+        }
+        finally {
+            zipFile.close();
+        }
+        return classes;
+    }
+
+    private static void writeClasses(@NotNull File jar, @NotNull Map<String, byte[]> classes) throws IOException {
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                output.putNextEntry(new ZipEntry(entry.getKey() + ".class"));
+                output.write(entry.getValue());
+                output.closeEntry();
+            }
+        }
+        finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.lang.resolve.lazy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.ConfigurationKind;
+import org.jetbrains.jet.JetTestUtils;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.lang.ModuleConfiguration;
+import org.jetbrains.jet.lang.descriptors.ClassifierDescriptor;
+import org.jetbrains.jet.lang.descriptors.DeclarationDescriptor;
+import org.jetbrains.jet.lang.descriptors.ModuleDescriptorImpl;
+import org.jetbrains.jet.lang.descriptors.NamespaceDescriptor;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.BindingTraceContext;
+import org.jetbrains.jet.lang.resolve.DescriptorUtils;
+import org.jetbrains.jet.lang.resolve.java.AnalyzerFacadeForJVM;
+import org.jetbrains.jet.lang.resolve.lazy.declarations.FileBasedDeclarationProviderFactory;
+import org.jetbrains.jet.lang.resolve.lazy.storage.LockBasedLazyResolveStorageManager;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.resolve.name.Name;
+import org.jetbrains.jet.lang.resolve.scopes.JetScopeImpl;
+import org.jetbrains.jet.lang.resolve.scopes.WritableScope;
+
+import java.util.Arrays;
+
+public class LazyImportScopeTest extends KotlinTestWithEnvironment {
+    private static final Name X = Name.identifier("X");
+    private static final Name Y = Name.identifier("Y");
+    private static final Name Z = Name.identifier("Z");
+
+    @Override
+    protected JetCoreEnvironment createEnvironment() {
+        return createEnvironmentWithMockJdk(ConfigurationKind.JDK_ONLY);
+    }
+
+    public void testLookupsWhileImportIsResolvedAreNotKept() {
+        // Imports are looked through from the last one: resolving 'probe.*' looks up Y and Z in the same import scope
+        JetFile file = JetTestUtils.createFile("test.kt", "package test\nimport a.Y\nimport probe.*\nimport b.Z", getProject());
+        JetFile a = JetTestUtils.createFile("a.kt", "package a\nclass Y", getProject());
+        JetFile b = JetTestUtils.createFile("b.kt", "package b\nclass Z", getProject());
+
+        ModuleDescriptorImpl module = AnalyzerFacadeForJVM.createJavaModule("<lazy module>");
+        final ProbeScope probe = new ProbeScope(module);
+        ModuleConfiguration moduleConfiguration = new ModuleConfiguration() {
+            @Override
+            public void extendNamespaceScope(
+                    @NotNull NamespaceDescriptor namespaceDescriptor,
+                    @NotNull WritableScope namespaceMemberScope
+            ) {
+                if (DescriptorUtils.getFQName(namespaceDescriptor).isRoot()) {
+                    namespaceMemberScope.importScope(probe);
+                }
+            }
+        };
+
+        LockBasedLazyResolveStorageManager storageManager = new LockBasedLazyResolveStorageManager();
+        module.setModuleConfiguration(moduleConfiguration);
+        ResolveSession session = new ResolveSession(getProject(), storageManager, module,
+                                                    new FileBasedDeclarationProviderFactory(storageManager, Arrays.asList(file, a, b)));
+
+        NamespaceDescriptor testPackage = session.getPackageDescriptorByFqName(new FqName("test"));
+        assertNotNull(testPackage);
+        probe.importScope = LazyImportScope.createImportScopeForFile(session, testPackage, file, new BindingTraceContext(), "test");
+
+        assertNull(probe.importScope.getClassifier(X));
+        assertTrue("Import of 'probe.*' was not resolved", probe.triggered);
+
+        // Resolving 'b.Z' in between must not make 'probe.*' look resolved
+        assertNotNull(probe.classifierZ);
+        assertEquals("b.Z", DescriptorUtils.getFQName(probe.classifierZ).asString());
+        assertNull(probe.classifierY);
+
+        ClassifierDescriptor classifierY = probe.importScope.getClassifier(Y);
+        assertNotNull(classifierY);
+        assertEquals("a.Y", DescriptorUtils.getFQName(classifierY).asString());
+    }
+
+    private static class ProbeScope extends JetScopeImpl {
+        private final DeclarationDescriptor owner;
+        private LazyImportScope importScope;
+        private boolean triggered;
+        private ClassifierDescriptor classifierZ;
+        private ClassifierDescriptor classifierY;
+
+        private ProbeScope(@NotNull DeclarationDescriptor owner) {
+            this.owner = owner;
+        }
+
+        @Nullable
+        @Override
+        public NamespaceDescriptor getNamespace(@NotNull Name name) {
+            if (importScope != null && !triggered && name.asString().equals("probe")) {
+                triggered = true;
+                classifierZ = importScope.getClassifier(Z);
+                classifierY = importScope.getClassifier(Y);
+            }
+            return null;
+        }
+
+        @NotNull
+        @Override
+        public DeclarationDescriptor getContainingDeclaration() {
+            return owner;
+        }
+
+        @Override
+        public String toString() {
+            return "probe";
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.resolve.lazy.storage;
+
+import com.intellij.openapi.util.Computable;
+import com.intellij.util.Function;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DeadlockDetectingStorageManagerTest extends TestCase {
+    private DeadlockDetectingLockingStrategy strategy;
+    private LockBasedStorageManager storageManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        strategy = new DeadlockDetectingLockingStrategy();
+        storageManager = new LockBasedStorageManager(strategy);
+    }
+
+    public void testUnrelatedValuesAreComputedInParallel() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+
+        Computable<String> waitForOther = new Computable<String>() {
+            @Override
+            public String compute() {
+                bothStarted.countDown();
+                await(bothStarted);
+                return "done";
+            }
+        };
+
+        // Would hang forever if both values were guarded by the same lock
+        final NotNullLazyValue<String> first = storageManager.createLazyValue(waitForOther);
+        final NotNullLazyValue<String> second = storageManager.createLazyValue(waitForOther);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                first.compute();
+            }
+        });
+        thread.start();
+        assertEquals("done", second.compute());
+        thread.join();
+
+        assertEquals(0, strategy.getLocksLent());
+    }
+
+    public void testLocksTakenInOppositeOrderDoNotDeadlock() throws Exception {
+        final CountDownLatch bothEntered = new CountDownLatch(2);
+        // Stands for the binding trace: every computation records its key, a computation run twice would record it twice
+        final List<String> sideEffects = Collections.synchronizedList(new ArrayList<String>());
+
+        final AtomicReference<MemoizedFunctionToNotNull<Integer, String>> f = new AtomicReference<MemoizedFunctionToNotNull<Integer, String>>();
+        final AtomicReference<MemoizedFunctionToNotNull<Integer, String>> g = new AtomicReference<MemoizedFunctionToNotNull<Integer, String>>();
+
+        // f(1) needs g(1) and g(2) needs f(2): no cycle in the data, but the locks of f and g are taken in opposite orders
+        f.set(storageManager.createMemoizedFunction(new Function<Integer, String>() {
+            @Override
+            public String fun(Integer x) {
+                sideEffects.add("f" + x);
+                bothEntered.countDown();
+                await(bothEntered);
+                return "f" + (x == 1 ? g.get().fun(x) : "");
+            }
+        }, StorageManager.ReferenceKind.STRONG));
+        g.set(storageManager.createMemoizedFunction(new Function<Integer, String>() {
+            @Override
+            public String fun(Integer x) {
+                sideEffects.add("g" + x);
+                bothEntered.countDown();
+                await(bothEntered);
+                return "g" + (x == 2 ? f.get().fun(x) : "");
+            }
+        }, StorageManager.ReferenceKind.STRONG));
+
+        final AtomicReference<String> fromThread = new AtomicReference<String>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fromThread.set(g.get().fun(2));
+            }
+        });
+        thread.start();
+        String fromMain = f.get().fun(1);
+        thread.join();
+
+        assertEquals("fg", fromMain);
+        assertEquals("gf", fromThread.get());
+        assertEquals(1, strategy.getLocksLent());
+
+        // Nothing is computed twice: the computations are never restarted
+        List<String> sortedSideEffects = new ArrayList<String>(sideEffects);
+        Collections.sort(sortedSideEffects);
+        assertEquals(Arrays.asList("f1", "f2", "g1", "g2"), sortedSideEffects);
+
+        // Lent locks are returned to their owners and released
+        assertEquals("f", f.get().fun(3));
+        assertEquals("g", g.get().fun(4));
+    }
+
+    public void testLockIsLentThroughChainOfWaitingThreads() throws Exception {
+        final CountDownLatch allEntered = new CountDownLatch(3);
+        final AtomicInteger computations = new AtomicInteger();
+
+        final List<MemoizedFunctionToNotNull<Integer, Integer>> functions = new ArrayList<MemoizedFunctionToNotNull<Integer, Integer>>();
+        // Function i on thread i needs function (i + 1) % 3, so every thread waits for the next one
+        for (int i = 0; i < 3; i++) {
+            final int next = (i + 1) % 3;
+            functions.add(storageManager.createMemoizedFunction(new Function<Integer, Integer>() {
+                @Override
+                public Integer fun(Integer depth) {
+                    computations.incrementAndGet();
+                    if (depth == 0) return 0;
+                    allEntered.countDown();
+                    await(allEntered);
+                    return functions.get(next).fun(depth - 1) + 1;
+                }
+            }, StorageManager.ReferenceKind.STRONG));
+        }
+
+        final Integer[] results = new Integer[3];
+        Thread[] threads = new Thread[3];
+        for (int i = 0; i < 3; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    results[index] = functions.get(index).fun(1);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(Arrays.asList(1, 1, 1), Arrays.asList(results));
+        assertEquals(6, computations.get());
+        assertTrue(strategy.getLocksLent() > 0);
+    }
+
+    public void testMemoizedFunctionCachesExceptions() {
+        final AtomicInteger calls = new AtomicInteger();
+        MemoizedFunctionToNotNull<String, String> function = storageManager.createMemoizedFunction(new Function<String, String>() {
+            @Override
+            public String fun(String s) {
+                calls.incrementAndGet();
+                throw new IllegalStateException(s);
+            }
+        }, StorageManager.ReferenceKind.STRONG);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                function.fun("key");
+                fail();
+            }
+            catch (IllegalStateException e) {
+                assertEquals("key", e.getMessage());
+            }
+        }
+        assertEquals(1, calls.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.lang.resolve.scopes;
+
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.JetTestUtils;
+import org.jetbrains.jet.lang.descriptors.ModuleDescriptorImpl;
+import org.jetbrains.jet.lang.descriptors.NamespaceDescriptor;
+import org.jetbrains.jet.lang.descriptors.annotations.AnnotationDescriptor;
+import org.jetbrains.jet.lang.descriptors.impl.NamespaceDescriptorImpl;
+import org.jetbrains.jet.lang.resolve.name.Name;
+
+import java.util.Collections;
+
+public class WritableScopeImportsTest extends TestCase {
+    private static final Name FOO = Name.identifier("foo");
+
+    private ModuleDescriptorImpl module;
+    private WritableScope first;
+    private WritableScope second;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        module = JetTestUtils.createEmptyModule();
+        first = createScope("first");
+        second = createScope("second");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        module = null;
+        first = null;
+        second = null;
+        super.tearDown();
+    }
+
+    public void testMissIsCachedWhenImportedScopesAreComplete() {
+        WritableScope scope = createScopeImporting(first, second);
+        scope.changeLockLevel(WritableScope.LockLevel.READING);
+        scope.markImportedScopesComplete();
+        assertNull(scope.getNamespace(FOO));
+
+        // Breaks the promise to see that the miss is kept
+        NamespaceDescriptor foo = addNamespace(second, FOO);
+        assertNull(scope.getNamespace(FOO));
+        assertSame(foo, second.getNamespace(FOO));
+    }
+
+    public void testNothingIsCachedUntilImportedScopesAreComplete() {
+        // As the root scope of a REPL line, which is locked before declarations of the line are added to imported scopes
+        WritableScope scope = createScopeImporting(first, second);
+        scope.changeLockLevel(WritableScope.LockLevel.READING);
+        assertNull(scope.getNamespace(FOO));
+
+        NamespaceDescriptor foo = addNamespace(second, FOO);
+        assertSame(foo, scope.getNamespace(FOO));
+    }
+
+    public void testImportForgetsCompleteness() {
+        WritableScope scope = createScopeImporting(first, second);
+        scope.markImportedScopesComplete();
+        WritableScope third = createScope("third");
+        scope.importScope(third);
+        scope.changeLockLevel(WritableScope.LockLevel.READING);
+        assertNull(scope.getNamespace(FOO));
+
+        NamespaceDescriptor foo = addNamespace(third, FOO);
+        assertSame(foo, scope.getNamespace(FOO));
+    }
+
+    public void testClearImportsDropsCachedLookups() {
+        NamespaceDescriptor foo = addNamespace(first, FOO);
+        WritableScope worker = createScope("worker");
+        WritableScope scope = new WriteThroughScope(JetScope.EMPTY, worker, RedeclarationHandler.DO_NOTHING, "write through");
+        scope.changeLockLevel(WritableScope.LockLevel.BOTH);
+        scope.importScope(first);
+        scope.importScope(second);
+        scope.changeLockLevel(WritableScope.LockLevel.READING);
+        scope.markImportedScopesComplete();
+        assertSame(foo, scope.getNamespace(FOO));
+
+        scope.clearImports();
+        assertNull(scope.getNamespace(FOO));
+    }
+
+    public void testCachedResultsAreTheImportedOnes() {
+        NamespaceDescriptor foo = addNamespace(second, FOO);
+        WritableScope scope = createScopeImporting(first, second);
+        scope.changeLockLevel(WritableScope.LockLevel.READING);
+        scope.markImportedScopesComplete();
+
+        assertSame(foo, scope.getNamespace(FOO));
+        assertSame(foo, scope.getNamespace(FOO));
+        assertNull(scope.getClassifier(FOO));
+        assertTrue(scope.getFunctions(FOO).isEmpty());
+    }
+
+    @NotNull
+    private WritableScope createScopeImporting(@NotNull WritableScope... imported) {
+        WritableScope scope = createScope("importing");
+        for (WritableScope scopeToImport : imported) {
+            scope.importScope(scopeToImport);
+        }
+        return scope;
+    }
+
+    @NotNull
+    private WritableScope createScope(@NotNull String debugName) {
+        WritableScope scope = new WritableScopeImpl(JetScope.EMPTY, module, RedeclarationHandler.DO_NOTHING, debugName);
+        scope.changeLockLevel(WritableScope.LockLevel.BOTH);
+        return scope;
+    }
+
+    @NotNull
+    private NamespaceDescriptor addNamespace(@NotNull WritableScope scope, @NotNull Name name) {
+        NamespaceDescriptor namespace = new NamespaceDescriptorImpl(module, Collections.<AnnotationDescriptor>emptyList(), name);
+        scope.addNamespace(namespace);
+        return namespace;
+    }
+}
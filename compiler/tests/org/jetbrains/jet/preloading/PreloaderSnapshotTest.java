@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.preloading;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.Assert;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.test.Tmpdir;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PreloaderSnapshotTest {
+    private static final List<String> RESOURCE_NAMES = Arrays.asList("a/First.class", "b/Second.class", "Empty.class");
+    private static final List<byte[]> CLASS_BYTES = Arrays.asList(new byte[] {1, 2, 3}, new byte[] {4, 5}, new byte[0]);
+
+    @Rule
+    public final Tmpdir tmpdir = new Tmpdir();
+
+    private File snapshotFile;
+    private File firstJar;
+    private File secondJar;
+    private List<File> jars;
+
+    @Before
+    public void writeSnapshot() throws IOException {
+        snapshotFile = new File(tmpdir.getTmpDir(), "snapshot/classes.snapshot");
+        firstJar = new File(tmpdir.getTmpDir(), "first.jar");
+        secondJar = new File(tmpdir.getTmpDir(), "second.jar");
+        FileUtil.writeToFile(firstJar, "first");
+        FileUtil.writeToFile(secondJar, "second");
+        jars = Arrays.asList(firstJar, secondJar);
+
+        PreloaderSnapshot.write(snapshotFile, jars, RESOURCE_NAMES, CLASS_BYTES);
+    }
+
+    @Test
+    public void roundTrip() {
+        PreloaderSnapshot snapshot = PreloaderSnapshot.load(snapshotFile, jars);
+        Assert.assertNotNull(snapshot);
+        Assert.assertEquals(RESOURCE_NAMES, snapshot.getResourceNames());
+        for (int i = 0; i < RESOURCE_NAMES.size(); i++) {
+            Assert.assertTrue(RESOURCE_NAMES.get(i), Arrays.equals(CLASS_BYTES.get(i), toArray(snapshot.getClassBytes(RESOURCE_NAMES.get(i)))));
+        }
+        Assert.assertNull(snapshot.getClassBytes("c/Missing.class"));
+
+        Assert.assertEquals("No temporary files should be left", 1, snapshotFile.getParentFile().list().length);
+    }
+
+    @Test
+    public void rewrite() throws IOException {
+        List<String> resourceNames = Collections.singletonList("a/First.class");
+        List<byte[]> classBytes = Collections.singletonList(new byte[] {42});
+        PreloaderSnapshot.write(snapshotFile, jars, resourceNames, classBytes);
+
+        PreloaderSnapshot snapshot = PreloaderSnapshot.load(snapshotFile, jars);
+        Assert.assertNotNull(snapshot);
+        Assert.assertEquals(resourceNames, snapshot.getResourceNames());
+        Assert.assertTrue(Arrays.equals(classBytes.get(0), toArray(snapshot.getClassBytes("a/First.class"))));
+    }
+
+    @Test
+    public void rejectedAfterJarContentsChange() throws IOException {
+        long lastModified = secondJar.lastModified();
+        FileUtil.writeToFile(secondJar, "second, changed");
+        Assert.assertTrue(secondJar.setLastModified(lastModified));
+
+        Assert.assertNull(PreloaderSnapshot.load(snapshotFile, jars));
+    }
+
+    @Test
+    public void rejectedAfterJarIsTouched() {
+        Assert.assertTrue(firstJar.setLastModified(firstJar.lastModified() + 10000));
+
+        Assert.assertNull(PreloaderSnapshot.load(snapshotFile, jars));
+    }
+
+    @Test
+    public void rejectedForOtherJars() {
+        Assert.assertNull(PreloaderSnapshot.load(snapshotFile, Collections.singletonList(firstJar)));
+        Assert.assertNull(PreloaderSnapshot.load(snapshotFile, Arrays.asList(secondJar, firstJar)));
+    }
+
+    @Test
+    public void rejectedWhenTruncated() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+        try {
+            file.setLength(20);
+        }
+        finally {
+            file.close();
+        }
+
+        Assert.assertNull(PreloaderSnapshot.load(snapshotFile, jars));
+    }
+
+    @Test
+    public void rejectedWhenTruncatedInClassBytes() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+        try {
+            // Cuts the last byte of the second class, the empty class after it is still in bounds
+            file.setLength(file.length() - 1);
+        }
+        finally {
+            file.close();
+        }
+
+        Assert.assertNull(PreloaderSnapshot.load(snapshotFile, jars));
+    }
+
+    @Test
+    public void noSnapshot() {
+        Assert.assertNull(PreloaderSnapshot.load(new File(tmpdir.getTmpDir(), "missing.snapshot"), jars));
+    }
+
+    @NotNull
+    private static byte[] toArray(@NotNull ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
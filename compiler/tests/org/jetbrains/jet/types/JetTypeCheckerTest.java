@@ -45,6 +45,7 @@ import org.jetbrains.jet.lang.types.CommonSupertypes;
 import org.jetbrains.jet.lang.types.JetType;
 import org.jetbrains.jet.lang.types.TypeUtils;
 import org.jetbrains.jet.lang.types.checker.JetTypeChecker;
+import org.jetbrains.jet.lang.types.checker.SubtypeCache;
 import org.jetbrains.jet.lang.types.expressions.ExpressionTypingServices;
 import org.jetbrains.jet.lang.types.lang.KotlinBuiltIns;
 
@@ -482,6 +483,29 @@ public class JetTypeCheckerTest extends JetLiteFixture {
 
 ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
+    public void testSubtypeCache() throws Exception {
+        JetType derived = makeType("Derived_T<Int>");
+        JetType baseIn = makeType("Base_T<in Int>");
+        JetType baseAny = makeType("Base_T<Any>");
+
+        SubtypeCache cache = new SubtypeCache(100);
+        SubtypeCache previous = SubtypeCache.setCurrent(cache);
+        try {
+            for (int i = 0; i < 2; i++) {
+                assertTrue(JetTypeChecker.INSTANCE.isSubtypeOf(derived, baseIn));
+                assertFalse(JetTypeChecker.INSTANCE.isSubtypeOf(derived, baseAny));
+            }
+        }
+        finally {
+            SubtypeCache.setCurrent(previous);
+        }
+
+        assertEquals(2, cache.getHits());
+        assertEquals(Boolean.TRUE, cache.get(derived, baseIn));
+        assertEquals(Boolean.FALSE, cache.get(derived, baseAny));
+        assertNull(cache.get(derived, makeType("Base_T<in Int>")));
+    }
+
     private void assertSupertypes(String typeStr, String... supertypeStrs) {
         Set<JetType> allSupertypes = TypeUtils.getAllSupertypes(makeType(scopeWithImports, typeStr));
         Set<JetType> expected = Sets.newHashSet();
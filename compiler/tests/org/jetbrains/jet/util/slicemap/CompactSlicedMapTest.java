@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.util.slicemap;
+
+import junit.framework.TestCase;
+import org.jetbrains.jet.util.slicedmap.*;
+
+import java.util.*;
+
+public class CompactSlicedMapTest extends TestCase {
+    private static final WritableSlice<String, Integer> NAME_COLOR = Slices.<String, Integer>sliceBuilder().setDebugName("NAME_COLOR").build();
+    private static final WritableSlice<Integer, String> COLOR_NAME = Slices.<Integer, String>sliceBuilder().setDebugName("COLOR_NAME").build();
+    private static final WritableSlice<String, Integer> NAME_COLOR_WITH_OPPOSITE =
+            Slices.<String, Integer>sliceBuilder().setOpposite(COLOR_NAME).setDebugName("NAME_COLOR_WITH_OPPOSITE").build();
+    private static final WritableSlice<Object, Boolean> COLLECTIVE = Slices.createCollectiveSetSlice();
+    private static final RemovableSlice<Integer, Boolean> REMOVABLE = Slices.createRemovableSetSlice();
+
+    private static final WritableSlice<Integer, String> REWRITABLE_COLOR_NAME = new BasicWritableSlice<Integer, String>(RewritePolicy.DO_NOTHING);
+    private static final WritableSlice<String, Integer> REWRITABLE_NAME_COLOR_WITH_OPPOSITE =
+            new BasicWritableSlice<String, Integer>(RewritePolicy.DO_NOTHING) {
+                @Override
+                public void afterPut(MutableSlicedMap map, String key, Integer value) {
+                    map.put(REWRITABLE_COLOR_NAME, value, key);
+                }
+            };
+
+    public void testPutAndGet() {
+        CompactSlicedMap map = CompactSlicedMap.create();
+        map.put(NAME_COLOR, "RED", 0xff0000);
+        map.put(NAME_COLOR, "GREEN", 0x00ff00);
+        map.put(COLOR_NAME, 0xff0000, "red");
+
+        assertEquals(0xff0000, (int) map.get(NAME_COLOR, "RED"));
+        assertEquals(0x00ff00, (int) map.get(NAME_COLOR, "GREEN"));
+        assertEquals("red", map.get(COLOR_NAME, 0xff0000));
+        assertNull(map.get(NAME_COLOR, "BLUE"));
+        assertNull(map.get(COLOR_NAME, 0x00ff00));
+    }
+
+    public void testNullKey() {
+        CompactSlicedMap map = CompactSlicedMap.create();
+        map.put(NAME_COLOR, null, 1);
+        assertEquals(1, (int) map.get(NAME_COLOR, null));
+    }
+
+    public void testOppositeSlice() {
+        CompactSlicedMap map = CompactSlicedMap.create();
+        map.put(NAME_COLOR_WITH_OPPOSITE, "RED", 0xff0000);
+        assertEquals("RED", map.get(COLOR_NAME, 0xff0000));
+    }
+
+    public void testCollectiveSlice() {
+        CompactSlicedMap map = CompactSlicedMap.create();
+        assertTrue(map.getKeys(COLLECTIVE).isEmpty());
+        map.put(COLLECTIVE, "a", true);
+        map.put(COLLECTIVE, "b", true);
+        assertEquals(Arrays.<Object>asList("a", "b"), new ArrayList<Object>(map.getKeys(COLLECTIVE)));
+    }
+
+    public void testSameBehaviourAsSlicedMapImpl() {
+        MutableSlicedMap compact = CompactSlicedMap.create();
+        MutableSlicedMap reference = SlicedMapImpl.create();
+
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(500);
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                compact.put(REMOVABLE, key, i % 3 == 0);
+                reference.put(REMOVABLE, key, i % 3 == 0);
+            }
+            else if (operation < 7) {
+                assertEquals(reference.remove(REMOVABLE, key), compact.remove(REMOVABLE, key));
+            }
+            else {
+                assertEquals(reference.get(REMOVABLE, key), compact.get(REMOVABLE, key));
+            }
+        }
+
+        assertEquals(reference.getSliceContents(REMOVABLE), compact.getSliceContents(REMOVABLE));
+        assertEquals(toList(reference), toList(compact));
+    }
+
+    public void testSliceContents() {
+        CompactSlicedMap map = CompactSlicedMap.create();
+        assertTrue(map.getSliceContents(NAME_COLOR).isEmpty());
+
+        map.put(NAME_COLOR, "RED", 0xff0000);
+        map.put(COLOR_NAME, 0xff0000, "red");
+        map.put(NAME_COLOR, "GREEN", 0x00ff00);
+        map.put(NAME_COLOR, "BLUE", 0x0000ff);
+        map.put(REMOVABLE, 1, true);
+        map.remove(REMOVABLE, 1);
+
+        assertEquals(Arrays.asList("RED", "GREEN", "BLUE"), new ArrayList<String>(map.getSliceContents(NAME_COLOR).keySet()));
+        assertEquals(Collections.singletonMap(0xff0000, "red"), map.getSliceContents(COLOR_NAME));
+        assertTrue(map.getSliceContents(REMOVABLE).isEmpty());
+    }
+
+    public void testIterationOrderOverSlices() {
+        MutableSlicedMap compact = CompactSlicedMap.create();
+        MutableSlicedMap reference = SlicedMapImpl.create();
+        for (MutableSlicedMap map : Arrays.asList(compact, reference)) {
+            map.put(REWRITABLE_COLOR_NAME, 0xff0000, "RED");
+            map.put(NAME_COLOR, "RED", 0xff0000);
+            map.put(REMOVABLE, 1, true);
+            map.put(NAME_COLOR, "GREEN", 0x00ff00);
+            map.remove(REMOVABLE, 1);
+            map.put(REWRITABLE_COLOR_NAME, 0x00ff00, "GREEN");
+            // Rewriting doesn't move an entry, removing and putting again does
+            map.put(REWRITABLE_COLOR_NAME, 0xff0000, "red");
+            map.put(REMOVABLE, 1, false);
+        }
+        assertEquals(toList(reference), toList(compact));
+    }
+
+    public void testReplayWithOppositeSlice() {
+        // Entries are committed from a temporary trace to its parent in iteration order
+        MutableSlicedMap compact = CompactSlicedMap.create();
+        MutableSlicedMap direct = SlicedMapImpl.create();
+        for (MutableSlicedMap map : Arrays.asList(compact, direct)) {
+            map.put(REWRITABLE_COLOR_NAME, 0x00ff00, "green");
+            map.put(REWRITABLE_NAME_COLOR_WITH_OPPOSITE, "RED", 0xff0000);
+            map.put(REWRITABLE_COLOR_NAME, 0xff0000, "red");
+        }
+
+        MutableSlicedMap replayed = SlicedMapImpl.create();
+        for (Map.Entry<SlicedMapKey<?, ?>, ?> entry : compact) {
+            //noinspection unchecked
+            replayed.put((WritableSlice<Object, Object>) entry.getKey().getSlice(), entry.getKey().getKey(), entry.getValue());
+        }
+        // Replaying entries grouped by slice would overwrite "red" with the opposite entry of "RED"
+        assertEquals("red", replayed.get(REWRITABLE_COLOR_NAME, 0xff0000));
+        assertEquals(toList(direct), toList(replayed));
+    }
+
+    private static List<Map.Entry<SlicedMapKey<?, ?>, ?>> toList(SlicedMap map) {
+        List<Map.Entry<SlicedMapKey<?, ?>, ?>> result = new ArrayList<Map.Entry<SlicedMapKey<?, ?>, ?>>();
+        for (Map.Entry<SlicedMapKey<?, ?>, ?> entry : map) {
+            result.add(new AbstractMap.SimpleImmutableEntry<SlicedMapKey<?, ?>, Object>(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+}
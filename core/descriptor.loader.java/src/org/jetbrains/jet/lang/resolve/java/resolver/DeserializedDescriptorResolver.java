@@ -92,9 +92,9 @@ public final class DeserializedDescriptorResolver {
 
     @Nullable
     public ClassDescriptor resolveClass(@NotNull ClassId id, @NotNull VirtualFile file) {
-        String[] data = readData(file);
+        byte[] data = readData(file);
         if (data != null) {
-            ClassData classData = JavaProtoBufUtil.readClassDataFrom(data);
+            ClassData classData = ClassData.read(data, JavaProtoBufUtil.getExtensionRegistry());
             return createDeserializedClass(classData, id);
         }
         return null;
@@ -102,9 +102,9 @@ public final class DeserializedDescriptorResolver {
 
     @Nullable
     public JetScope createKotlinPackageScope(@NotNull NamespaceDescriptor descriptor, @NotNull VirtualFile file) {
-        String[] data = readData(file);
+        byte[] data = readData(file);
         if (data != null) {
-            PackageData packageData = JavaProtoBufUtil.readPackageDataFrom(data);
+            PackageData packageData = PackageData.read(data, JavaProtoBufUtil.getExtensionRegistry());
             return new DeserializedPackageMemberScope(storageManager, descriptor, annotationDeserializer, javaDescriptorFinder,
                                                       packageData);
         }
@@ -124,13 +124,13 @@ public final class DeserializedDescriptorResolver {
     }
 
     @Nullable
-    private String[] readData(@NotNull VirtualFile virtualFile) {
+    private byte[] readData(@NotNull VirtualFile virtualFile) {
         KotlinClassFileHeader header = KotlinClassFileHeader.readKotlinHeaderFromClassFile(virtualFile);
         int version = header.getVersion();
         if (!isAbiVersionCompatible(version) && header.getType() != KotlinClassFileHeader.HeaderType.NONE) {
             errorReporter.reportIncompatibleAbiVersion(header.getFqName(), virtualFile, version);
             return null;
         }
-        return header.getAnnotationData();
+        return header.getDecodedData();
     }
 }
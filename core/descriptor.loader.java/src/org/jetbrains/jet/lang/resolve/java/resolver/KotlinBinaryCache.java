@@ -0,0 +1,462 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.resolve.java.resolver;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+import org.jetbrains.jet.lang.resolve.java.JvmClassName;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Kotlin headers of the class files of library jars, with serialized descriptors already decoded from annotation strings,
+ * kept in files in the directory given by the {@link #CACHE_DIR_PROPERTY} system property (no caching if not set).
+ *
+ * The cache of a jar is filled lazily: the header of a class is read from the jar and appended to the cache file the first time
+ * it is asked for, so only the classes which are actually used are ever parsed. The cache is cleared when the checksum of the jar
+ * changes. This checksum is the CRC of the jar's central directory, which contains the CRCs of all its entries.
+ *
+ * File format: version and jar checksum, then a record for every cached class: internal name, header type, ABI version,
+ * length of the decoded data (or -1), the data itself and the CRC of the record. Processes append to the file under a file lock.
+ * A broken record, e.g. the last one of a process which was killed while writing it, and everything after it are ignored
+ * and overwritten.
+ */
+/* package */ class KotlinBinaryCache {
+    public static final String CACHE_DIR_PROPERTY = "kotlin.binary.cache.dir";
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int FILE_HEADER_SIZE = 4 + 8;
+    private static final String JAR_SEPARATOR = "!/";
+    private static final String CLASS_FILE_EXTENSION = ".class";
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_ZIP_COMMENT_SIZE = 0xffff;
+
+    private static final ConcurrentMap<String, JarCache> jarCaches = new ConcurrentHashMap<String, JarCache>();
+
+    private KotlinBinaryCache() {
+    }
+
+    /**
+     * @return header of the class file read from the cache, or null if the file can't be cached
+     */
+    @Nullable
+    public static KotlinClassFileHeader findHeader(@NotNull VirtualFile classFile) {
+        String cacheDir = System.getProperty(CACHE_DIR_PROPERTY);
+        if (cacheDir == null) return null;
+
+        String path = classFile.getPath();
+        int separator = path.indexOf(JAR_SEPARATOR);
+        if (separator < 0 || !path.endsWith(CLASS_FILE_EXTENSION)) return null;
+
+        File jar = new File(path.substring(0, separator));
+        String internalName = path.substring(separator + JAR_SEPARATOR.length(), path.length() - CLASS_FILE_EXTENSION.length());
+        return findHeader(new File(cacheDir), jar, internalName);
+    }
+
+    @Nullable
+    /* package */ static KotlinClassFileHeader findHeader(@NotNull File cacheDir, @NotNull File jar, @NotNull String internalName) {
+        JarCache jarCache = getJarCache(jar, cacheDir);
+        if (jarCache == null) return null;
+
+        try {
+            return jarCache.findHeader(internalName);
+        }
+        catch (IOException e) {
+            // Not being able to cache is not an error: the class file is read directly
+            return null;
+        }
+    }
+
+    /**
+     * Forgets the caches read in this process, as if it were a new one
+     */
+    @TestOnly
+    /* package */ static void resetLoadedCaches() {
+        synchronized (KotlinBinaryCache.class) {
+            for (JarCache jarCache : jarCaches.values()) {
+                jarCache.close();
+            }
+            jarCaches.clear();
+        }
+    }
+
+    @Nullable
+    private static JarCache getJarCache(@NotNull File jar, @NotNull File cacheDir) {
+        String jarPath = jar.getAbsolutePath();
+        JarCache jarCache = jarCaches.get(jarPath);
+        if (jarCache != null && jarCache.isUpToDate()) {
+            return jarCache;
+        }
+
+        synchronized (KotlinBinaryCache.class) {
+            jarCache = jarCaches.get(jarPath);
+            if (jarCache != null) {
+                if (jarCache.isUpToDate()) {
+                    return jarCache;
+                }
+                jarCache.close();
+            }
+
+            try {
+                jarCache = JarCache.open(jar, new File(cacheDir, getCacheFileName(jarPath)));
+            }
+            catch (IOException e) {
+                jarCache = null;
+            }
+
+            if (jarCache != null) {
+                jarCaches.put(jarPath, jarCache);
+            }
+            else {
+                jarCaches.remove(jarPath);
+            }
+            return jarCache;
+        }
+    }
+
+    @NotNull
+    private static String getCacheFileName(@NotNull String jarPath) {
+        String name = new File(jarPath).getName();
+        return name + "." + Integer.toHexString(jarPath.hashCode()) + ".kotlin-binaries";
+    }
+
+    /**
+     * @return CRC of the central directory of a jar, or -1 if it is not a valid jar
+     */
+    private static long computeChecksum(@NotNull File jar) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(jar, "r");
+        try {
+            long length = file.length();
+            int tailLength = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_ZIP_COMMENT_SIZE);
+            byte[] tail = new byte[tailLength];
+            file.seek(length - tailLength);
+            file.readFully(tail);
+
+            ByteBuffer tailBuffer = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+                if (tailBuffer.getInt(i) != END_OF_CENTRAL_DIRECTORY_SIGNATURE) continue;
+
+                long directorySize = tailBuffer.getInt(i + 12) & 0xffffffffL;
+                long directoryOffset = tailBuffer.getInt(i + 16) & 0xffffffffL;
+                if (directoryOffset + directorySize > length) return -1;
+
+                byte[] directory = new byte[(int) directorySize];
+                file.seek(directoryOffset);
+                file.readFully(directory);
+
+                CRC32 crc = new CRC32();
+                crc.update(directory);
+                return crc.getValue();
+            }
+            return -1;
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    @NotNull
+    private static byte[] readEntry(@NotNull ZipFile zipFile, @NotNull ZipEntry entry) throws IOException {
+        InputStream stream = zipFile.getInputStream(entry);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.max(entry.getSize(), 0));
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    private static class JarCache {
+        private final File jar;
+        private final long checksum;
+        private final long jarLength;
+        private final long jarLastModified;
+
+        // Open while the cache is used, data of the records is read from it on every request
+        private final RandomAccessFile file;
+        private final ConcurrentMap<String, CachedHeader> headers = new ConcurrentHashMap<String, CachedHeader>();
+
+        // Guarded by this: end of the last valid record, and the jar, opened on the first class which is not cached yet
+        private long validLength;
+        @Nullable
+        private ZipFile zipFile;
+
+        @Nullable
+        private static JarCache open(@NotNull File jar, @NotNull File cacheFile) throws IOException {
+            long jarLength = jar.length();
+            long jarLastModified = jar.lastModified();
+            long checksum = computeChecksum(jar);
+            if (checksum < 0) return null;
+
+            File parent = cacheFile.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create " + parent);
+            }
+
+            JarCache jarCache = new JarCache(jar, checksum, jarLength, jarLastModified, new RandomAccessFile(cacheFile, "rw"));
+            try {
+                jarCache.load();
+            }
+            catch (IOException e) {
+                jarCache.close();
+                throw e;
+            }
+            return jarCache;
+        }
+
+        private JarCache(@NotNull File jar, long checksum, long jarLength, long jarLastModified, @NotNull RandomAccessFile file) {
+            this.jar = jar;
+            this.checksum = checksum;
+            this.jarLength = jarLength;
+            this.jarLastModified = jarLastModified;
+            this.file = file;
+        }
+
+        private boolean isUpToDate() {
+            return jar.length() == jarLength && jar.lastModified() == jarLastModified;
+        }
+
+        @NotNull
+        private KotlinClassFileHeader findHeader(@NotNull String internalName) throws IOException {
+            JvmClassName className = JvmClassName.byInternalName(internalName);
+
+            CachedHeader cached = headers.get(internalName);
+            if (cached == null) {
+                cached = cacheHeader(internalName);
+            }
+
+            byte[] bytes = null;
+            if (cached.dataOffset >= 0) {
+                bytes = new byte[cached.dataLength];
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                // Positional reads don't change the position of the channel, and may happen on several threads at once
+                FileChannel channel = file.getChannel();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, cached.dataOffset + buffer.position()) < 0) {
+                        throw new EOFException("Cache of " + jar + " is truncated");
+                    }
+                }
+            }
+            return KotlinClassFileHeader.createFromDecodedData(cached.type, cached.version, className, bytes);
+        }
+
+        /**
+         * Reads the header of a class from the jar and appends it to the cache file
+         */
+        @NotNull
+        private synchronized CachedHeader cacheHeader(@NotNull String internalName) throws IOException {
+            CachedHeader cached = headers.get(internalName);
+            if (cached != null) return cached;
+
+            if (zipFile == null) {
+                zipFile = new ZipFile(jar);
+            }
+            String entryName = internalName + CLASS_FILE_EXTENSION;
+            ZipEntry entry = zipFile.getEntry(entryName);
+            if (entry == null) {
+                throw new FileNotFoundException(entryName + " in " + jar);
+            }
+
+            KotlinClassFileHeader header;
+            try {
+                header = KotlinClassFileHeader.readKotlinHeaderFromBytes(readEntry(zipFile, entry));
+            }
+            catch (RuntimeException e) {
+                // Such a class file is reported when it is read directly
+                throw new IOException("Cannot read Kotlin header of " + entryName + " in " + jar, e);
+            }
+            // Headers of incompatible ABI versions may have no or unexpected data, they are never deserialized
+            byte[] data = header.isKotlinCompiledFile() ? header.getDecodedData() : null;
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            CheckedOutputStream checkedRecord = new CheckedOutputStream(record, new CRC32());
+            DataOutputStream output = new DataOutputStream(checkedRecord);
+            output.writeUTF(internalName);
+            output.writeByte(header.getType().ordinal());
+            output.writeInt(header.getVersion());
+            output.writeInt(data != null ? data.length : -1);
+            if (data != null) {
+                output.write(data);
+            }
+            output.flush();
+            output.writeInt((int) checkedRecord.getChecksum().getValue());
+            output.close();
+
+            FileChannel channel = file.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                // Other processes may have appended to the file or cleared it since it was read
+                if (!readRecords()) {
+                    throw new IOException("Cache of " + jar + " is used for another version of it");
+                }
+
+                cached = headers.get(internalName);
+                if (cached != null) return cached;
+
+                ByteBuffer buffer = ByteBuffer.wrap(record.toByteArray());
+                long position = validLength;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                // Drops a broken record which was there
+                channel.truncate(position);
+
+                cached = new CachedHeader(header.getType(), header.getVersion(),
+                                          data != null ? position - 4 - data.length : -1, data != null ? data.length : -1);
+                validLength = position;
+                headers.put(internalName, cached);
+                return cached;
+            }
+            finally {
+                lock.release();
+            }
+        }
+
+        private synchronized void load() throws IOException {
+            FileLock lock = file.getChannel().lock();
+            try {
+                if (!readRecords()) {
+                    // Another format or another version of the jar
+                    file.setLength(0);
+                    file.seek(0);
+                    file.writeInt(FORMAT_VERSION);
+                    file.writeLong(checksum);
+                    validLength = FILE_HEADER_SIZE;
+                }
+            }
+            finally {
+                lock.release();
+            }
+        }
+
+        /**
+         * Reads the records appended since the last read, up to the first broken one. Must be called under the file lock.
+         *
+         * @return false if the file is not a cache of this version of the jar
+         */
+        private boolean readRecords() throws IOException {
+            FileChannel channel = file.getChannel();
+            long length = channel.size();
+            ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            while (fileHeader.hasRemaining()) {
+                if (channel.read(fileHeader, fileHeader.position()) < 0) return false;
+            }
+            if (fileHeader.getInt(0) != FORMAT_VERSION || fileHeader.getLong(4) != checksum) return false;
+            // Records which were read can only disappear if the file was cleared for another version of the jar meanwhile
+            if (length < validLength) return false;
+
+            long position = Math.max(validLength, FILE_HEADER_SIZE);
+            validLength = position;
+
+            CRC32 crc = new CRC32();
+            DataInputStream input = new DataInputStream(
+                    new CheckedInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(position))), crc));
+            KotlinClassFileHeader.HeaderType[] types = KotlinClassFileHeader.HeaderType.values();
+            try {
+                while (position < length) {
+                    crc.reset();
+                    String name = input.readUTF();
+                    int type = input.readByte();
+                    int version = input.readInt();
+                    int dataLength = input.readInt();
+                    long dataOffset = position + 2 + getUTFLength(name) + 1 + 4 + 4;
+                    long end = dataOffset + Math.max(dataLength, 0) + 4;
+                    if (type < 0 || type >= types.length || dataLength < -1 || end > length) break;
+
+                    if (dataLength >= 0) {
+                        skipFully(input, dataLength);
+                    }
+                    int expectedCrc = (int) crc.getValue();
+                    if (input.readInt() != expectedCrc) break;
+
+                    position = end;
+                    validLength = position;
+                    headers.putIfAbsent(name, new CachedHeader(types[type], version, dataLength >= 0 ? dataOffset : -1, dataLength));
+                }
+            }
+            catch (IOException e) {
+                // A broken record, it is overwritten by the next one
+            }
+            return true;
+        }
+
+        private synchronized void close() {
+            try {
+                file.close();
+                if (zipFile != null) {
+                    zipFile.close();
+                }
+            }
+            catch (IOException e) {
+                // Nothing is written when the cache is closed
+            }
+        }
+
+        private static void skipFully(@NotNull DataInputStream input, long count) throws IOException {
+            while (count > 0) {
+                int skipped = input.skipBytes((int) Math.min(count, Integer.MAX_VALUE));
+                if (skipped <= 0) throw new EOFException();
+                count -= skipped;
+            }
+        }
+
+        private static int getUTFLength(@NotNull String s) {
+            int length = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                length += c >= 0x0001 && c <= 0x007f ? 1 : c <= 0x07ff ? 2 : 3;
+            }
+            return length;
+        }
+    }
+
+    private static class CachedHeader {
+        private final KotlinClassFileHeader.HeaderType type;
+        private final int version;
+        private final long dataOffset;
+        private final int dataLength;
+
+        private CachedHeader(@NotNull KotlinClassFileHeader.HeaderType type, int version, long dataOffset, int dataLength) {
+            this.type = type;
+            this.version = version;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+        }
+    }
+}
@@ -25,18 +25,42 @@ import static org.jetbrains.jet.lang.resolve.java.AbiVersionUtil.isAbiVersionCom
 public final class KotlinClassFileHeader {
     @NotNull
     public static KotlinClassFileHeader readKotlinHeaderFromClassFile(@NotNull VirtualFile virtualFile) {
+        KotlinClassFileHeader cached = KotlinBinaryCache.findHeader(virtualFile);
+        if (cached != null) {
+            return cached;
+        }
+
         try {
-            byte[] bytes = virtualFile.contentsToByteArray();
-            ClassReader reader = new ClassReader(bytes);
-            KotlinClassFileHeader classFileData = new KotlinClassFileHeader();
-            reader.accept(classFileData.new ReadDataFromAnnotationVisitor(), SKIP_CODE | SKIP_FRAMES | SKIP_DEBUG);
-            return classFileData;
+            return readKotlinHeaderFromBytes(virtualFile.contentsToByteArray());
         }
         catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    @NotNull
+    /* package */ static KotlinClassFileHeader readKotlinHeaderFromBytes(@NotNull byte[] bytes) {
+        ClassReader reader = new ClassReader(bytes);
+        KotlinClassFileHeader classFileData = new KotlinClassFileHeader();
+        reader.accept(classFileData.new ReadDataFromAnnotationVisitor(), SKIP_CODE | SKIP_FRAMES | SKIP_DEBUG);
+        return classFileData;
+    }
+
+    @NotNull
+    /* package */ static KotlinClassFileHeader createFromDecodedData(
+            @NotNull HeaderType type,
+            int version,
+            @NotNull JvmClassName jvmClassName,
+            @Nullable byte[] decodedData
+    ) {
+        KotlinClassFileHeader header = new KotlinClassFileHeader();
+        header.type = type;
+        header.version = version;
+        header.jvmClassName = jvmClassName;
+        header.decodedData = decodedData;
+        return header;
+    }
+
     @SuppressWarnings("deprecation")
     public enum HeaderType {
         CLASS(JvmAnnotationNames.KOTLIN_CLASS),
@@ -75,6 +99,9 @@ public final class KotlinClassFileHeader {
 
     @Nullable
     private String[] annotationData = null;
+    // Set instead of annotationData when the header comes from KotlinBinaryCache
+    @Nullable
+    private byte[] decodedData = null;
     @NotNull
     HeaderType type = HeaderType.NONE;
     @Nullable
@@ -107,11 +134,26 @@ public final class KotlinClassFileHeader {
 
     public String[] getAnnotationData() {
         assertDataRead();
+        if (annotationData == null && decodedData != null) {
+            annotationData = JavaProtoBufUtil.encodeBytes(decodedData);
+        }
         return annotationData;
     }
 
+    /**
+     * @return serialized descriptors from the annotation, or null if there are none
+     */
+    @Nullable
+    /* package */ byte[] getDecodedData() {
+        assertDataRead();
+        if (decodedData == null && annotationData != null) {
+            decodedData = JavaProtoBufUtil.decodeBytes(annotationData);
+        }
+        return decodedData;
+    }
+
     private void assertDataRead() {
-        if (annotationData == null && type != HeaderType.NONE) {
+        if (annotationData == null && decodedData == null && type != HeaderType.NONE) {
             throw new IllegalStateException("Data for annotations " + type.correspondingAnnotation + " was not read.");
         }
     }
@@ -119,13 +161,17 @@ public final class KotlinClassFileHeader {
     @NotNull
     public ClassData readClassData() {
         assert type == HeaderType.CLASS;
-        return JavaProtoBufUtil.readClassDataFrom(getAnnotationData());
+        byte[] data = getDecodedData();
+        assert data != null : "No data for class " + jvmClassName;
+        return ClassData.read(data, JavaProtoBufUtil.getExtensionRegistry());
     }
 
     @NotNull
     public PackageData readPackageData() {
         assert type == HeaderType.PACKAGE;
-        return JavaProtoBufUtil.readPackageDataFrom(getAnnotationData());
+        byte[] data = getDecodedData();
+        assert data != null : "No data for package " + jvmClassName;
+        return PackageData.read(data, JavaProtoBufUtil.getExtensionRegistry());
     }
 
     private class ReadDataFromAnnotationVisitor extends ClassVisitor {
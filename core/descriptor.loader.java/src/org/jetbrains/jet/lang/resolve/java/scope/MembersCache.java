@@ -16,8 +16,6 @@
 
 package org.jetbrains.jet.lang.resolve.java.scope;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.descriptors.Visibilities;
@@ -27,30 +25,44 @@ import org.jetbrains.jet.lang.resolve.java.structure.*;
 import org.jetbrains.jet.lang.resolve.name.FqName;
 import org.jetbrains.jet.lang.resolve.name.Name;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
+/**
+ * Members are indexed by name when the cache is built, but not processed: a {@link NamedMembers} group is created
+ * only when its name is asked for, so only the members which are actually used are retained.
+ */
 /* package */ final class MembersCache {
-    private final Multimap<Name, Runnable> memberProcessingTasks = HashMultimap.create();
+    // Fields, own methods and nested classes which have not been asked for yet
+    private final Map<Name, List<JavaNamedElement>> unprocessedMembers = new HashMap<Name, List<JavaNamedElement>>();
+    // Names of own and inherited methods which have not been asked for yet: a group is created for each of them, even an empty one
+    private final Set<Name> unprocessedMethodNames = new HashSet<Name>();
     private final Map<Name, NamedMembers> namedMembersMap = new HashMap<Name, NamedMembers>();
 
+    private MemberProcessor processor;
+
+    private void index(@NotNull MemberProcessor processor) {
+        this.processor = processor;
+        processor.index();
+    }
+
     @Nullable
     public NamedMembers get(@NotNull Name name) {
-        runTasksByName(name);
+        processMembersByName(name);
         return namedMembersMap.get(name);
     }
 
     @NotNull
     public Collection<NamedMembers> allMembers() {
-        runAllTasks();
-        memberProcessingTasks.clear();
+        Set<Name> names = new HashSet<Name>(unprocessedMembers.keySet());
+        names.addAll(unprocessedMethodNames);
+        for (Name name : names) {
+            processMembersByName(name);
+        }
         return namedMembersMap.values();
     }
 
     @NotNull
-    private NamedMembers getOrCreateEmpty(@NotNull JavaNamedElement element) {
-        Name name = element.getName();
+    private NamedMembers getOrCreateEmpty(@NotNull Name name) {
         NamedMembers r = namedMembersMap.get(name);
         if (r == null) {
             r = new NamedMembers(name);
@@ -59,47 +71,65 @@ import java.util.Map;
         return r;
     }
 
-    private void addTask(@NotNull JavaNamedElement member, @NotNull RunOnce task) {
-        memberProcessingTasks.put(member.getName(), task);
+    private void addMember(@NotNull JavaNamedElement member) {
+        Name name = member.getName();
+        List<JavaNamedElement> members = unprocessedMembers.get(name);
+        if (members == null) {
+            // Most names denote a single member
+            members = new ArrayList<JavaNamedElement>(1);
+            unprocessedMembers.put(name, members);
+        }
+        members.add(member);
     }
 
-    private void runTasksByName(Name name) {
-        if (!memberProcessingTasks.containsKey(name)) return;
-        Collection<Runnable> tasks = memberProcessingTasks.get(name);
-        for (Runnable task : tasks) {
-            task.run();
+    private void processMembersByName(@NotNull Name name) {
+        if (unprocessedMethodNames.remove(name)) {
+            getOrCreateEmpty(name);
         }
-        // Delete tasks
-        tasks.clear();
-    }
 
-    private void runAllTasks() {
-        for (Runnable task : memberProcessingTasks.values()) {
-            task.run();
+        List<JavaNamedElement> members = unprocessedMembers.remove(name);
+        if (members == null) return;
+
+        for (JavaNamedElement member : members) {
+            if (member instanceof JavaField) {
+                processor.processField((JavaField) member);
+            }
+            else if (member instanceof JavaMethod) {
+                processor.processOwnMethod((JavaMethod) member);
+            }
+            else if (member instanceof JavaClass) {
+                processor.processNestedClass((JavaClass) member);
+            }
         }
     }
 
     @NotNull
     public static MembersCache buildForClass(@NotNull JavaClass javaClass, boolean staticMembers) {
         MembersCache membersCache = new MembersCache();
-
-        membersCache.new ClassMemberProcessor(javaClass, staticMembers).process();
-        membersCache.new ExtraPackageMembersProcessor(javaClass.getInnerClasses()).process();
-
+        membersCache.index(membersCache.new ClassMemberProcessor(javaClass, staticMembers));
         return membersCache;
     }
 
     @NotNull
     public static MembersCache buildForPackage(@NotNull JavaPackage javaPackage) {
         MembersCache membersCache = new MembersCache();
+        membersCache.index(membersCache.new ExtraPackageMembersProcessor(DescriptorResolverUtils.getClassesInPackage(javaPackage)));
+        return membersCache;
+    }
 
-        Collection<JavaClass> classes = DescriptorResolverUtils.getClassesInPackage(javaPackage);
-        membersCache.new ExtraPackageMembersProcessor(classes).process();
+    private abstract class MemberProcessor {
+        protected abstract void index();
 
-        return membersCache;
+        protected void processField(@NotNull JavaField field) {
+        }
+
+        protected void processOwnMethod(@NotNull JavaMethod method) {
+        }
+
+        protected abstract void processNestedClass(@NotNull JavaClass nested);
     }
 
-    private class ExtraPackageMembersProcessor { // 'extra' means that PSI elements for these members are not just top-level classes
+    private class ExtraPackageMembersProcessor extends MemberProcessor { // 'extra' means that PSI elements for these members are not just top-level classes
         @NotNull
         private final Collection<JavaClass> javaClasses;
 
@@ -107,22 +137,24 @@ import java.util.Map;
             this.javaClasses = javaClasses;
         }
 
-        private void process() {
+        @Override
+        protected void index() {
             for (JavaClass javaClass : javaClasses) {
                 if (javaClass.getOriginKind() != JavaClass.OriginKind.KOTLIN_LIGHT_CLASS) {
-                    if (SingleAbstractMethodUtils.isSamInterface(javaClass)) {
-                        processSamInterface(javaClass);
-                    }
+                    addMember(javaClass);
                 }
             }
         }
 
-        private void processSamInterface(@NotNull JavaClass javaClass) {
-            getOrCreateEmpty(javaClass).setSamInterface(javaClass);
+        @Override
+        protected void processNestedClass(@NotNull JavaClass javaClass) {
+            if (SingleAbstractMethodUtils.isSamInterface(javaClass)) {
+                getOrCreateEmpty(javaClass.getName()).setSamInterface(javaClass);
+            }
         }
     }
 
-    private class ClassMemberProcessor {
+    private class ClassMemberProcessor extends MemberProcessor {
         @NotNull
         private final JavaClass javaClass;
         private final boolean staticMembers;
@@ -132,56 +164,24 @@ import java.util.Map;
             this.staticMembers = staticMembers;
         }
 
-        private void process() {
-            processFields();
-            processMethods();
-            processNestedClasses();
-        }
-
-        private void processFields() {
-            for (final JavaField field : javaClass.getAllFields()) {
-                addTask(field, new RunOnce() {
-                    @Override
-                    public void doRun() {
-                        processField(field);
-                    }
-                });
+        @Override
+        protected void index() {
+            for (JavaField field : javaClass.getAllFields()) {
+                addMember(field);
             }
-        }
 
-        private void processMethods() {
-            createEntriesForAllMethods();
-            processOwnMethods();
-        }
-
-        private void createEntriesForAllMethods() {
             for (JavaMethod method : javaClass.getAllMethods()) {
-                getOrCreateEmpty(method);
+                unprocessedMethodNames.add(method.getName());
             }
-        }
-
-        private void processOwnMethods() {
-            for (final JavaMethod method : javaClass.getMethods()) {
-                addTask(method, new RunOnce() {
-                    @Override
-                    public void doRun() {
-                        processOwnMethod(method);
-                    }
-                });
+            for (JavaMethod method : javaClass.getMethods()) {
+                addMember(method);
             }
-        }
 
-        private void processNestedClasses() {
-            if (!staticMembers) {
-                return;
-            }
-            for (final JavaClass nested : javaClass.getInnerClasses()) {
-                addTask(nested, new RunOnce() {
-                    @Override
-                    public void doRun() {
-                        processNestedClass(nested);
-                    }
-                });
+            for (JavaClass nested : javaClass.getInnerClasses()) {
+                // Nested SAM interfaces of Kotlin light classes are only seen through the static members scope
+                if (staticMembers || nested.getOriginKind() != JavaClass.OriginKind.KOTLIN_LIGHT_CLASS) {
+                    addMember(nested);
+                }
             }
         }
 
@@ -214,38 +214,28 @@ import java.util.Map;
             return fqName != null && fqName.equals(javaClass.getFqName());
         }
 
-        private void processField(@NotNull JavaField field) {
+        @Override
+        protected void processField(@NotNull JavaField field) {
             // group must be created even for excluded field
-            NamedMembers namedMembers = getOrCreateEmpty(field);
+            NamedMembers namedMembers = getOrCreateEmpty(field.getName());
 
             if (includeMember(field)) {
                 namedMembers.addField(field);
             }
         }
 
-        private void processOwnMethod(@NotNull JavaMethod ownMethod) {
+        @Override
+        protected void processOwnMethod(@NotNull JavaMethod ownMethod) {
             if (includeMember(ownMethod)) {
-                getOrCreateEmpty(ownMethod).addMethod(ownMethod);
+                getOrCreateEmpty(ownMethod.getName()).addMethod(ownMethod);
             }
         }
 
-        private void processNestedClass(@NotNull JavaClass nested) {
+        @Override
+        protected void processNestedClass(@NotNull JavaClass nested) {
             if (SingleAbstractMethodUtils.isSamInterface(nested)) {
-                getOrCreateEmpty(nested).setSamInterface(nested);
+                getOrCreateEmpty(nested.getName()).setSamInterface(nested);
             }
         }
     }
-
-    private static abstract class RunOnce implements Runnable {
-        private boolean hasRun = false;
-
-        @Override
-        public final void run() {
-            if (hasRun) return;
-            hasRun = true;
-            doRun();
-        }
-
-        protected abstract void doRun();
-    }
 }
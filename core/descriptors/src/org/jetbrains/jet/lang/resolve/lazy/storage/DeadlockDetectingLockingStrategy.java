@@ -0,0 +1,186 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.resolve.lazy.storage;
+
+import com.intellij.openapi.util.Computable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.utils.ExceptionUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every lazy value and memoized function gets its own lock, so unrelated computations may run in parallel.
+ *
+ * Computations are never aborted or restarted. Instead, threads waiting for a lock are registered in a wait-for graph, and
+ * when the owner of a lock is (transitively) waiting for the thread which asks for it, the lock is lent to that thread,
+ * as if the lock were reentrant. Such a chain of blocked threads behaves as one thread with a deeper stack: the borrower runs
+ * exactly what the owner would have run if it had computed everything the chain waits for itself, while all the other threads
+ * of the chain stay blocked. Acquisitions are nested on every thread, so the lock is returned to the owner before anything the
+ * owner waits for is released. Waiting is therefore never cyclic, and every computation runs once, as with the global lock.
+ */
+public class DeadlockDetectingLockingStrategy implements LockingStrategy {
+    private final Object leafLock = new Object() {
+        @Override
+        public String toString() {
+            return "DeadlockDetectingLockingStrategy leaf lock";
+        }
+    };
+
+    // Guards the state of all computation locks and the wait-for graph
+    private final Object monitor = new Object();
+    private final Map<Thread, ComputationLock> waitingFor = new HashMap<Thread, ComputationLock>();
+
+    private int locksLent = 0;
+
+    @NotNull
+    @Override
+    public Object createLock() {
+        return new ComputationLock();
+    }
+
+    @NotNull
+    @Override
+    public Object getLeafLock() {
+        return leafLock;
+    }
+
+    @Override
+    public <T> T computeUnderLock(@NotNull Object lock, @NotNull Computable<T> computable) {
+        ComputationLock computationLock = (ComputationLock) lock;
+        acquire(computationLock);
+        try {
+            return computable.compute();
+        }
+        finally {
+            release(computationLock);
+        }
+    }
+
+    /**
+     * Number of times a lock was lent to avoid a deadlock
+     */
+    public int getLocksLent() {
+        synchronized (monitor) {
+            return locksLent;
+        }
+    }
+
+    private void acquire(@NotNull ComputationLock lock) {
+        Thread currentThread = Thread.currentThread();
+        synchronized (monitor) {
+            boolean waiting = false;
+            try {
+                while (true) {
+                    Thread owner = lock.getOwner();
+                    if (owner == null || owner == currentThread) {
+                        lock.push(currentThread);
+                        return;
+                    }
+                    if (isWaitingFor(owner, currentThread)) {
+                        lock.push(currentThread);
+                        locksLent++;
+                        return;
+                    }
+
+                    if (!waiting) {
+                        waiting = true;
+                        waitingFor.put(currentThread, lock);
+                        // Threads waiting for the locks of the current one may now be able to borrow them
+                        monitor.notifyAll();
+                    }
+                    monitor.wait();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw ExceptionUtils.rethrow(e);
+            }
+            finally {
+                if (waiting) {
+                    waitingFor.remove(currentThread);
+                }
+            }
+        }
+    }
+
+    private void release(@NotNull ComputationLock lock) {
+        synchronized (monitor) {
+            lock.pop(Thread.currentThread());
+            if (!waitingFor.isEmpty()) {
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return true if {@code thread} can't proceed until {@code target} releases some lock
+     */
+    private boolean isWaitingFor(@NotNull Thread thread, @NotNull Thread target) {
+        Thread next = thread;
+        // Waiting is never cyclic, but the chain is bounded anyway
+        for (int i = 0; i <= waitingFor.size(); i++) {
+            ComputationLock lock = waitingFor.get(next);
+            if (lock == null) return false;
+            next = lock.getOwner();
+            if (next == null) return false;
+            if (next == target) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Guarded by the monitor of the strategy. Holders form a stack: the last one owns the lock, every other one lent it to
+     * the holder after it and is blocked until the lock is returned
+     */
+    private static class ComputationLock {
+        private final List<Thread> holders = new ArrayList<Thread>(1);
+        private final List<Integer> holdCounts = new ArrayList<Integer>(1);
+
+        @Nullable
+        private Thread getOwner() {
+            return holders.isEmpty() ? null : holders.get(holders.size() - 1);
+        }
+
+        private void push(@NotNull Thread thread) {
+            int last = holders.size() - 1;
+            if (last >= 0 && holders.get(last) == thread) {
+                holdCounts.set(last, holdCounts.get(last) + 1);
+            }
+            else {
+                holders.add(thread);
+                holdCounts.add(1);
+            }
+        }
+
+        private void pop(@NotNull Thread thread) {
+            int last = holders.size() - 1;
+            assert last >= 0 && holders.get(last) == thread : "Lock is released by " + thread + " which does not own it";
+            int count = holdCounts.get(last) - 1;
+            if (count == 0) {
+                holders.remove(last);
+                holdCounts.remove(last);
+            }
+            else {
+                holdCounts.set(last, count);
+            }
+        }
+    }
+}
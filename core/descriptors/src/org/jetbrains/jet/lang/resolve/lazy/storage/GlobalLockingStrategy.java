@@ -0,0 +1,51 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.resolve.lazy.storage;
+
+import com.intellij.openapi.util.Computable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * All computations of a storage manager are serialized on one lock
+ */
+public class GlobalLockingStrategy implements LockingStrategy {
+    private final Object lock = new Object() {
+        @Override
+        public String toString() {
+            return "LockBasedStorageManager centralized lock";
+        }
+    };
+
+    @NotNull
+    @Override
+    public Object createLock() {
+        return lock;
+    }
+
+    @NotNull
+    @Override
+    public Object getLeafLock() {
+        return lock;
+    }
+
+    @Override
+    public <T> T computeUnderLock(@NotNull Object lock, @NotNull Computable<T> computable) {
+        synchronized (lock) {
+            return computable.compute();
+        }
+    }
+}
@@ -30,12 +30,24 @@ import java.util.concurrent.ConcurrentMap;
 
 public class LockBasedStorageManager implements StorageManager {
 
-    protected final Object lock = new Object() {
-        @Override
-        public String toString() {
-            return "LockBasedStorageManager centralized lock";
-        }
-    };
+    private final LockingStrategy lockingStrategy;
+
+    /**
+     * Guards operations that never acquire other locks, e.g. access to binding traces
+     */
+    protected final Object lock;
+
+    private final Object lockForCompute;
+
+    public LockBasedStorageManager() {
+        this(new GlobalLockingStrategy());
+    }
+
+    public LockBasedStorageManager(@NotNull LockingStrategy lockingStrategy) {
+        this.lockingStrategy = lockingStrategy;
+        this.lock = lockingStrategy.getLeafLock();
+        this.lockForCompute = lockingStrategy.createLock();
+    }
 
     @NotNull
     @Override
@@ -43,7 +55,7 @@ public class LockBasedStorageManager implements StorageManager {
             @NotNull Function<K, V> compute, @NotNull ReferenceKind valuesReferenceKind
     ) {
         ConcurrentMap<K, Object> map = createConcurrentMap(valuesReferenceKind);
-        return new MapBasedMemoizedFunctionToNotNull<K, V>(lock, map, compute);
+        return new MapBasedMemoizedFunctionToNotNull<K, V>(lockingStrategy, map, compute);
     }
 
     @NotNull
@@ -52,7 +64,7 @@ public class LockBasedStorageManager implements StorageManager {
             @NotNull Function<K, V> compute, @NotNull ReferenceKind valuesReferenceKind
     ) {
         ConcurrentMap<K, Object> map = createConcurrentMap(valuesReferenceKind);
-        return new MapBasedMemoizedFunction<K, V>(lock, map, compute);
+        return new MapBasedMemoizedFunction<K, V>(lockingStrategy, map, compute);
     }
 
     private static <K, V> ConcurrentMap<K, V> createConcurrentMap(ReferenceKind referenceKind) {
@@ -62,13 +74,13 @@ public class LockBasedStorageManager implements StorageManager {
     @NotNull
     @Override
     public <T> NotNullLazyValue<T> createLazyValue(@NotNull Computable<T> computable) {
-        return new LockBasedNotNullLazyValue<T>(lock, computable);
+        return new LockBasedNotNullLazyValue<T>(lockingStrategy, computable);
     }
 
     @NotNull
     @Override
     public <T> NotNullLazyValue<T> createLazyValueWithPostCompute(@NotNull Computable<T> computable, @NotNull final Consumer<T> postCompute) {
-        return new LockBasedNotNullLazyValue<T>(lock, computable) {
+        return new LockBasedNotNullLazyValue<T>(lockingStrategy, computable) {
             @Override
             protected void postCompute(@NotNull T value) {
                 postCompute.consume(value);
@@ -79,7 +91,7 @@ public class LockBasedStorageManager implements StorageManager {
     @NotNull
     @Override
     public <T> NullableLazyValue<T> createNullableLazyValue(@NotNull Computable<T> computable) {
-        return new LockBasedLazyValue<T>(lock, computable);
+        return new LockBasedLazyValue<T>(lockingStrategy, computable);
     }
 
     @NotNull
@@ -87,7 +99,7 @@ public class LockBasedStorageManager implements StorageManager {
     public <T> NullableLazyValue<T> createNullableLazyValueWithPostCompute(
             @NotNull Computable<T> computable, @NotNull final Consumer<T> postCompute
     ) {
-        return new LockBasedLazyValue<T>(lock, computable) {
+        return new LockBasedLazyValue<T>(lockingStrategy, computable) {
             @Override
             protected void postCompute(@Nullable T value) {
                 postCompute.consume(value);
@@ -97,20 +109,20 @@ public class LockBasedStorageManager implements StorageManager {
 
     @Override
     public <T> T compute(@NotNull Computable<T> computable) {
-        synchronized (lock) {
-            return computable.compute();
-        }
+        return lockingStrategy.computeUnderLock(lockForCompute, computable);
     }
 
     private static class LockBasedLazyValue<T> implements NullableLazyValue<T> {
+        private final LockingStrategy lockingStrategy;
         private final Object lock;
         private final Computable<T> computable;
 
         @Nullable
         private volatile Object value = null;
 
-        public LockBasedLazyValue(@NotNull Object lock, @NotNull Computable<T> computable) {
-            this.lock = lock;
+        public LockBasedLazyValue(@NotNull LockingStrategy lockingStrategy, @NotNull Computable<T> computable) {
+            this.lockingStrategy = lockingStrategy;
+            this.lock = lockingStrategy.createLock();
             this.computable = computable;
         }
 
@@ -119,20 +131,27 @@ public class LockBasedStorageManager implements StorageManager {
             Object _value = value;
             if (_value != null) return WrappedValues.unescapeExceptionOrNull(_value);
 
-            synchronized (lock) {
-                _value = value;
-                if (_value != null) return WrappedValues.unescapeExceptionOrNull(_value);
-
-                try {
-                    T typedValue = computable.compute();
-                    value = WrappedValues.escapeNull(typedValue);
-                    postCompute(typedValue);
-                    return typedValue;
-                }
-                catch (Throwable throwable) {
-                    value = WrappedValues.escapeThrowable(throwable);
-                    throw ExceptionUtils.rethrow(throwable);
+            return lockingStrategy.computeUnderLock(lock, new Computable<T>() {
+                @Override
+                public T compute() {
+                    return computeLocked();
                 }
+            });
+        }
+
+        private T computeLocked() {
+            Object _value = value;
+            if (_value != null) return WrappedValues.unescapeExceptionOrNull(_value);
+
+            try {
+                T typedValue = computable.compute();
+                value = WrappedValues.escapeNull(typedValue);
+                postCompute(typedValue);
+                return typedValue;
+            }
+            catch (Throwable throwable) {
+                value = WrappedValues.escapeThrowable(throwable);
+                throw ExceptionUtils.rethrow(throwable);
             }
         }
 
@@ -143,8 +162,8 @@ public class LockBasedStorageManager implements StorageManager {
 
     private static class LockBasedNotNullLazyValue<T> extends LockBasedLazyValue<T> implements NotNullLazyValue<T> {
 
-        public LockBasedNotNullLazyValue(@NotNull Object lock, @NotNull Computable<T> computable) {
-            super(lock, computable);
+        public LockBasedNotNullLazyValue(@NotNull LockingStrategy lockingStrategy, @NotNull Computable<T> computable) {
+            super(lockingStrategy, computable);
         }
 
         @Override
@@ -157,39 +176,53 @@ public class LockBasedStorageManager implements StorageManager {
     }
 
     private static class MapBasedMemoizedFunction<K, V> implements MemoizedFunctionToNullable<K, V> {
+        private final LockingStrategy lockingStrategy;
         private final Object lock;
         private final ConcurrentMap<K, Object> cache;
         private final Function<K, V> compute;
 
-        public MapBasedMemoizedFunction(@NotNull Object lock, @NotNull ConcurrentMap<K, Object> map, @NotNull Function<K, V> compute) {
-            this.lock = lock;
+        public MapBasedMemoizedFunction(
+                @NotNull LockingStrategy lockingStrategy,
+                @NotNull ConcurrentMap<K, Object> map,
+                @NotNull Function<K, V> compute
+        ) {
+            this.lockingStrategy = lockingStrategy;
+            this.lock = lockingStrategy.createLock();
             this.cache = map;
             this.compute = compute;
         }
 
         @Override
         @Nullable
-        public V fun(@NotNull K input) {
+        public V fun(@NotNull final K input) {
             Object value = cache.get(input);
             if (value != null) return WrappedValues.unescapeExceptionOrNull(value);
 
-            synchronized (lock) {
-                value = cache.get(input);
-                if (value != null) return WrappedValues.unescapeExceptionOrNull(value);
+            return lockingStrategy.computeUnderLock(lock, new Computable<V>() {
+                @Override
+                public V compute() {
+                    return computeLocked(input);
+                }
+            });
+        }
 
-                try {
-                    V typedValue = compute.fun(input);
-                    Object oldValue = cache.put(input, WrappedValues.escapeNull(typedValue));
-                    assert oldValue == null : "Race condition detected";
+        @Nullable
+        private V computeLocked(@NotNull K input) {
+            Object value = cache.get(input);
+            if (value != null) return WrappedValues.unescapeExceptionOrNull(value);
 
-                    return typedValue;
-                }
-                catch (Throwable throwable) {
-                    Object oldValue = cache.put(input, WrappedValues.escapeThrowable(throwable));
-                    assert oldValue == null : "Race condition detected";
+            try {
+                V typedValue = compute.fun(input);
+                Object oldValue = cache.put(input, WrappedValues.escapeNull(typedValue));
+                assert oldValue == null : "Race condition detected";
 
-                    throw ExceptionUtils.rethrow(throwable);
-                }
+                return typedValue;
+            }
+            catch (Throwable throwable) {
+                Object oldValue = cache.put(input, WrappedValues.escapeThrowable(throwable));
+                assert oldValue == null : "Race condition detected";
+
+                throw ExceptionUtils.rethrow(throwable);
             }
         }
     }
@@ -197,11 +230,11 @@ public class LockBasedStorageManager implements StorageManager {
     private static class MapBasedMemoizedFunctionToNotNull<K, V> extends MapBasedMemoizedFunction<K, V> implements MemoizedFunctionToNotNull<K, V> {
 
         public MapBasedMemoizedFunctionToNotNull(
-                @NotNull Object lock,
+                @NotNull LockingStrategy lockingStrategy,
                 @NotNull ConcurrentMap<K, Object> map,
                 @NotNull Function<K, V> compute
         ) {
-            super(lock, map, compute);
+            super(lockingStrategy, map, compute);
         }
 
         @NotNull
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.resolve.lazy.storage;
+
+import com.intellij.openapi.util.Computable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decides which lock guards each lazy value or memoized function of a {@link LockBasedStorageManager}, and how it is taken
+ */
+public interface LockingStrategy {
+    /**
+     * Called once for every lazy value and memoized function created by the storage manager
+     */
+    @NotNull
+    Object createLock();
+
+    /**
+     * Lock for short operations that never acquire other locks while holding it (e.g. binding trace reads and writes)
+     */
+    @NotNull
+    Object getLeafLock();
+
+    /**
+     * Runs {@code computable} once, holding {@code lock}. The lock is reentrant for the current thread
+     */
+    <T> T computeUnderLock(@NotNull Object lock, @NotNull Computable<T> computable);
+}
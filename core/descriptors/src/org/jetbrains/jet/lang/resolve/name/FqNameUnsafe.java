@@ -16,6 +16,8 @@
 
 package org.jetbrains.jet.lang.resolve.name;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Lists;
 import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
@@ -30,6 +32,9 @@ public final class FqNameUnsafe extends FqNameBase {
 
     public static final Name ROOT_NAME = Name.special("<root>");
 
+    // Many equal fq names are created from PSI and binaries, they share the string so that it is compared by identity
+    private static final Interner<String> STRING_INTERNER = Interners.newWeakInterner();
+
     @NotNull
     private final String fqName;
 
@@ -39,20 +44,20 @@ public final class FqNameUnsafe extends FqNameBase {
     private transient Name shortName;
 
     FqNameUnsafe(@NotNull String fqName, @NotNull FqName safe) {
-        this.fqName = fqName;
+        this.fqName = STRING_INTERNER.intern(fqName);
         this.safe = safe;
 
         validateFqName();
     }
 
     public FqNameUnsafe(@NotNull String fqName) {
-        this.fqName = fqName;
+        this.fqName = STRING_INTERNER.intern(fqName);
 
         validateFqName();
     }
 
     private FqNameUnsafe(@NotNull String fqName, FqNameUnsafe parent, Name shortName) {
-        this.fqName = fqName;
+        this.fqName = STRING_INTERNER.intern(fqName);
         this.parent = parent;
         this.shortName = shortName;
 
@@ -19,6 +19,7 @@ package org.jetbrains.jet.lang.resolve.scopes;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.descriptors.*;
 import org.jetbrains.jet.lang.resolve.name.LabelName;
 import org.jetbrains.jet.lang.resolve.name.Name;
@@ -87,12 +88,26 @@ public class ChainedScope implements JetScope {
 
     @NotNull
     @Override
-    public Set<VariableDescriptor> getProperties(@NotNull Name name) {
-        Set<VariableDescriptor> properties = Sets.newLinkedHashSet();
+    public Collection<VariableDescriptor> getProperties(@NotNull Name name) {
+        Set<VariableDescriptor> result = null;
+        Set<VariableDescriptor> single = null;
         for (JetScope jetScope : scopeChain) {
-            properties.addAll(jetScope.getProperties(name));
+            Collection<VariableDescriptor> properties = jetScope.getProperties(name);
+            if (properties.isEmpty()) continue;
+
+            if (result == null && single == null && properties instanceof Set) {
+                single = (Set<VariableDescriptor>) properties;
+                continue;
+            }
+            if (result == null) {
+                result = Sets.newLinkedHashSet();
+                if (single != null) {
+                    result.addAll(single);
+                }
+            }
+            result.addAll(properties);
         }
-        return properties;
+        return chainResult(result, single);
     }
 
     @Override
@@ -108,16 +123,34 @@ public class ChainedScope implements JetScope {
 
     @NotNull
     @Override
-    public Set<FunctionDescriptor> getFunctions(@NotNull Name name) {
-        if (scopeChain.length == 0) {
-            return Collections.emptySet();
-        }
-
-        Set<FunctionDescriptor> result = Sets.newLinkedHashSet();
+    public Collection<FunctionDescriptor> getFunctions(@NotNull Name name) {
+        Set<FunctionDescriptor> result = null;
+        Set<FunctionDescriptor> single = null;
         for (JetScope jetScope : scopeChain) {
-            result.addAll(jetScope.getFunctions(name));
+            Collection<FunctionDescriptor> functions = jetScope.getFunctions(name);
+            if (functions.isEmpty()) continue;
+
+            if (result == null && single == null && functions instanceof Set) {
+                single = (Set<FunctionDescriptor>) functions;
+                continue;
+            }
+            if (result == null) {
+                result = Sets.newLinkedHashSet();
+                if (single != null) {
+                    result.addAll(single);
+                }
+            }
+            result.addAll(functions);
         }
-        return result;
+        return chainResult(result, single);
+    }
+
+    // Most names are declared in one scope of the chain only: its result is returned as is, without copying it to a new set
+    @NotNull
+    private static <D> Collection<D> chainResult(@Nullable Set<D> merged, @Nullable Set<D> single) {
+        if (merged != null) return merged;
+        if (single != null) return Collections.unmodifiableSet(single);
+        return Collections.emptySet();
     }
 
     @NotNull
@@ -73,4 +73,10 @@ public interface WritableScope extends JetScope {
     void importVariableAlias(@NotNull Name aliasName, @NotNull VariableDescriptor variableDescriptor);
 
     void clearImports();
+
+    /**
+     * Promises that the scopes imported so far will get no new declarations, so that lookups in them may be cached while
+     * this scope is locked for reading. The promise is forgotten when imports are changed.
+     */
+    void markImportedScopesComplete();
 }
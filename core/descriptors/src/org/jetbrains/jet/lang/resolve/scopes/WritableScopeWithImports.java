@@ -30,8 +30,16 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
     @NotNull
     private final String debugName;
 
+    // Lookups in many imported scopes are repeated for every reference, so their results are kept once imports can not change
+    private static final int MIN_IMPORTS_TO_CACHE_LOOKUPS = 2;
+
     @Nullable
     private List<JetScope> imports;
+    // Being locked for reading is not enough: imported scopes may still be filled, e.g. the root scope of a REPL line is
+    // locked before the line is analyzed. The owner of the scope tells when they are complete
+    private boolean importedScopesComplete = false;
+    @Nullable
+    private ImportedLookupCache importedLookupCache;
     private WritableScope currentIndividualImportScope;
     protected final RedeclarationHandler redeclarationHandler;
     private List<ReceiverParameterDescriptor> implicitReceiverHierarchy;
@@ -51,6 +59,10 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
         if (lockLevel.ordinal() < this.lockLevel.ordinal()) {
             throw new IllegalStateException("cannot lower lock level from " + this.lockLevel + " to " + lockLevel + " at " + toString());
         }
+        if (lockLevel != LockLevel.READING) {
+            // Results are only kept while nothing can be imported
+            importedLookupCache = null;
+        }
         this.lockLevel = lockLevel;
         return this;
     }
@@ -94,6 +106,24 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
 
         getImports().add(0, imported);
         currentIndividualImportScope = null;
+        importedScopesComplete = false;
+        importedLookupCache = null;
+    }
+
+    @Override
+    public void markImportedScopesComplete() {
+        importedScopesComplete = true;
+    }
+
+    @Nullable
+    private ImportedLookupCache getImportedLookupCache() {
+        if (!importedScopesComplete || lockLevel != LockLevel.READING || getImports().size() < MIN_IMPORTS_TO_CACHE_LOOKUPS) {
+            return null;
+        }
+        if (importedLookupCache == null) {
+            importedLookupCache = new ImportedLookupCache();
+        }
+        return importedLookupCache;
     }
 
     @NotNull
@@ -124,10 +154,21 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
     public Set<VariableDescriptor> getProperties(@NotNull Name name) {
         checkMayRead();
 
+        ImportedLookupCache cache = getImportedLookupCache();
+        if (cache != null) {
+            Set<VariableDescriptor> cached = cache.properties.get(name);
+            if (cached != null) return cached;
+        }
+
         Set<VariableDescriptor> properties = Sets.newLinkedHashSet();
         for (JetScope imported : getImports()) {
             properties.addAll(imported.getProperties(name));
         }
+
+        if (cache != null) {
+            properties = Collections.unmodifiableSet(properties);
+            cache.properties.put(name, properties);
+        }
         return properties;
     }
 
@@ -135,14 +176,25 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
     public VariableDescriptor getLocalVariable(@NotNull Name name) {
         checkMayRead();
 
+        ImportedLookupCache cache = getImportedLookupCache();
+        if (cache != null && cache.localVariables.containsKey(name)) {
+            return cache.localVariables.get(name);
+        }
+
         // Meaningful lookup goes here
+        VariableDescriptor result = null;
         for (JetScope imported : getImports()) {
             VariableDescriptor importedDescriptor = imported.getLocalVariable(name);
             if (importedDescriptor != null) {
-                return importedDescriptor;
+                result = importedDescriptor;
+                break;
             }
         }
-        return null;
+
+        if (cache != null) {
+            cache.localVariables.put(name, result);
+        }
+        return result;
     }
 
     @NotNull
@@ -153,10 +205,22 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
         if (getImports().isEmpty()) {
             return Collections.emptySet();
         }
+
+        ImportedLookupCache cache = getImportedLookupCache();
+        if (cache != null) {
+            Set<FunctionDescriptor> cached = cache.functions.get(name);
+            if (cached != null) return cached;
+        }
+
         Set<FunctionDescriptor> result = Sets.newLinkedHashSet();
         for (JetScope imported : getImports()) {
             result.addAll(imported.getFunctions(name));
         }
+
+        if (cache != null) {
+            result = Collections.unmodifiableSet(result);
+            cache.functions.put(name, result);
+        }
         return result;
     }
 
@@ -164,39 +228,72 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
     public ClassifierDescriptor getClassifier(@NotNull Name name) {
         checkMayRead();
 
+        ImportedLookupCache cache = getImportedLookupCache();
+        if (cache != null && cache.classifiers.containsKey(name)) {
+            return cache.classifiers.get(name);
+        }
+
+        ClassifierDescriptor result = null;
         for (JetScope imported : getImports()) {
             ClassifierDescriptor importedClassifier = imported.getClassifier(name);
             if (importedClassifier != null) {
-                return importedClassifier;
+                result = importedClassifier;
+                break;
             }
         }
-        return null;
+
+        if (cache != null) {
+            cache.classifiers.put(name, result);
+        }
+        return result;
     }
 
     @Override
     public ClassDescriptor getObjectDescriptor(@NotNull Name name) {
         checkMayRead();
 
+        ImportedLookupCache cache = getImportedLookupCache();
+        if (cache != null && cache.objects.containsKey(name)) {
+            return cache.objects.get(name);
+        }
+
+        ClassDescriptor result = null;
         for (JetScope imported : getImports()) {
             ClassDescriptor objectDescriptor = imported.getObjectDescriptor(name);
             if (objectDescriptor != null) {
-                return objectDescriptor;
+                result = objectDescriptor;
+                break;
             }
         }
-        return null;
+
+        if (cache != null) {
+            cache.objects.put(name, result);
+        }
+        return result;
     }
 
     @Override
     public NamespaceDescriptor getNamespace(@NotNull Name name) {
         checkMayRead();
 
+        ImportedLookupCache cache = getImportedLookupCache();
+        if (cache != null && cache.namespaces.containsKey(name)) {
+            return cache.namespaces.get(name);
+        }
+
+        NamespaceDescriptor result = null;
         for (JetScope imported : getImports()) {
             NamespaceDescriptor importedDescriptor = imported.getNamespace(name);
             if (importedDescriptor != null) {
-                return importedDescriptor;
+                result = importedDescriptor;
+                break;
             }
         }
-        return null;
+
+        if (cache != null) {
+            cache.namespaces.put(name, result);
+        }
+        return result;
     }
 
     private WritableScope getCurrentIndividualImportScope() {
@@ -241,9 +338,24 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
     @Override
     public void clearImports() {
         currentIndividualImportScope = null;
+        importedScopesComplete = false;
+        importedLookupCache = null;
         getImports().clear();
     }
 
+    /**
+     * Results of lookups in imported scopes by name, misses included. Only used when imported scopes are marked complete
+     * and this scope is locked for reading, so that neither imports nor imported scopes can change.
+     */
+    private static class ImportedLookupCache {
+        private final Map<Name, ClassifierDescriptor> classifiers = new HashMap<Name, ClassifierDescriptor>();
+        private final Map<Name, ClassDescriptor> objects = new HashMap<Name, ClassDescriptor>();
+        private final Map<Name, NamespaceDescriptor> namespaces = new HashMap<Name, NamespaceDescriptor>();
+        private final Map<Name, VariableDescriptor> localVariables = new HashMap<Name, VariableDescriptor>();
+        private final Map<Name, Set<VariableDescriptor>> properties = new HashMap<Name, Set<VariableDescriptor>>();
+        private final Map<Name, Set<FunctionDescriptor>> functions = new HashMap<Name, Set<FunctionDescriptor>>();
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this)) + " " + debugName + " for " + getContainingDeclaration();
@@ -33,6 +33,9 @@ public final class JetTypeImpl extends AnnotatedImpl implements JetType {
     private final boolean nullable;
     private final JetScope memberScope;
 
+    // Computed lazily: hashing type arguments is recursive
+    private int hashCode;
+
     public JetTypeImpl(List<AnnotationDescriptor> annotations, TypeConstructor constructor, boolean nullable, @NotNull List<TypeProjection> arguments, JetScope memberScope) {
         super(annotations);
 
@@ -103,9 +106,13 @@ public final class JetTypeImpl extends AnnotatedImpl implements JetType {
 
     @Override
     public int hashCode() {
-        int result = constructor.hashCode();
-        result = 31 * result + arguments.hashCode();
-        result = 31 * result + (nullable ? 1 : 0);
+        int result = hashCode;
+        if (result == 0) {
+            result = constructor.hashCode();
+            result = 31 * result + arguments.hashCode();
+            result = 31 * result + (nullable ? 1 : 0);
+            hashCode = result;
+        }
         return result;
     }
 }
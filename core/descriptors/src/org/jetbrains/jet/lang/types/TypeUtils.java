@@ -19,6 +19,7 @@ package org.jetbrains.jet.lang.types;
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.intellij.openapi.util.Pair;
@@ -41,6 +42,7 @@ import org.jetbrains.jet.lang.types.lang.KotlinBuiltIns;
 import org.jetbrains.jet.utils.DFS;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
 
 public class TypeUtils {
     public static final JetType DONT_CARE = ErrorUtils.createErrorTypeWithCustomDebugName("DONT_CARE");
@@ -49,6 +51,9 @@ public class TypeUtils {
 
     public static final JetType CANT_INFER_LAMBDA_PARAM_TYPE = ErrorUtils.createErrorType("Cannot be inferred");
 
+    // Keys are compared by identity, both keys and values are weak
+    private static final ConcurrentMap<JetType, JetType> NULLABILITY_OPPOSITES = new MapMaker().weakKeys().weakValues().makeMap();
+
     public static class SpecialType implements JetType {
         private final String name;
 
@@ -121,7 +126,22 @@ public class TypeUtils {
         if (type.isError()) {
             return type;
         }
-        return new JetTypeImpl(type.getAnnotations(), type.getConstructor(), nullable, type.getArguments(), type.getMemberScope());
+        if (!(type instanceof JetTypeImpl)) {
+            return new JetTypeImpl(type.getAnnotations(), type.getConstructor(), nullable, type.getArguments(), type.getMemberScope());
+        }
+
+        // The same types (e.g. default types of classes) are made nullable and not-null over and over again,
+        // so the opposite variant of every type instance is kept while both are in use
+        JetType opposite = NULLABILITY_OPPOSITES.get(type);
+        if (opposite == null) {
+            opposite = new JetTypeImpl(type.getAnnotations(), type.getConstructor(), nullable, type.getArguments(), type.getMemberScope());
+            JetType existing = NULLABILITY_OPPOSITES.putIfAbsent(type, opposite);
+            if (existing != null) {
+                return existing;
+            }
+            NULLABILITY_OPPOSITES.put(opposite, type);
+        }
+        return opposite;
     }
 
     public static boolean isIntersectionEmpty(@NotNull JetType typeA, @NotNull JetType typeB) {
@@ -56,7 +56,7 @@ public class JetTypeChecker {
         }).equalTypes(a, b);
     }
 
-    private static final TypeCheckingProcedure TYPE_CHECKER = new TypeCheckingProcedure(new TypeCheckerTypingConstraints());
+    private static final TypeCheckingProcedure TYPE_CHECKER = new TypeCheckingProcedure(new TypeCheckerTypingConstraints(), true);
 
     private static class TypeCheckerTypingConstraints implements TypingConstraints {
         @Override
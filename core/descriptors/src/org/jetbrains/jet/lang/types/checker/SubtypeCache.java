@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.types.checker;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.types.JetType;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of subtype checks made by {@link JetTypeChecker} during one analysis. Types are compared by identity,
+ * so the cache never has to compute hash codes of types, and a type created after some check can't be confused with
+ * another one.
+ *
+ * The cache is used by the current thread between {@link #setCurrent} calls. It is thread-safe, so the same cache may be set
+ * for several threads analysing the same code.
+ */
+public class SubtypeCache {
+    /**
+     * When set to "true" or to a maximum number of entries, subtype checks of the top-down analysis are cached
+     */
+    public static final String SUBTYPE_CACHE_PROPERTY = "kotlin.resolve.subtype.cache";
+
+    private static final int DEFAULT_MAX_SIZE = 1 << 16;
+
+    private static final ThreadLocal<SubtypeCache> CURRENT = new ThreadLocal<SubtypeCache>();
+
+    private final int maxSize;
+    private final ConcurrentMap<TypePair, Boolean> results = new ConcurrentHashMap<TypePair, Boolean>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SubtypeCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return a new cache, or null if caching is not enabled by {@link #SUBTYPE_CACHE_PROPERTY}
+     */
+    @Nullable
+    public static SubtypeCache createDefault() {
+        String value = System.getProperty(SUBTYPE_CACHE_PROPERTY);
+        if (value == null) return null;
+        if ("true".equals(value)) return new SubtypeCache(DEFAULT_MAX_SIZE);
+        try {
+            int maxSize = Integer.parseInt(value);
+            return maxSize > 0 ? new SubtypeCache(maxSize) : null;
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    public static SubtypeCache getCurrent() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return the cache which was used by the current thread before, to be restored when the analysis is over
+     */
+    @Nullable
+    public static SubtypeCache setCurrent(@Nullable SubtypeCache cache) {
+        SubtypeCache previous = CURRENT.get();
+        if (cache == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(cache);
+        }
+        return previous;
+    }
+
+    public static boolean isCacheable(@NotNull JetType type) {
+        return !type.isError();
+    }
+
+    /**
+     * @return the cached result of the check, or null if the pair of types was not checked yet
+     */
+    @Nullable
+    public Boolean get(@NotNull JetType subtype, @NotNull JetType supertype) {
+        Boolean result = results.get(new TypePair(subtype, supertype));
+        if (result == null) {
+            misses.incrementAndGet();
+        }
+        else {
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    public void put(@NotNull JetType subtype, @NotNull JetType supertype, boolean result) {
+        // The bound is kept by starting over: most repeated checks are close to each other
+        if (size.incrementAndGet() > maxSize) {
+            results.clear();
+            size.set(1);
+        }
+        results.put(new TypePair(subtype, supertype), result);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SubtypeCache{hits=" + hits + ", misses=" + misses + "}";
+    }
+
+    private static class TypePair {
+        private final JetType subtype;
+        private final JetType supertype;
+
+        private TypePair(@NotNull JetType subtype, @NotNull JetType supertype) {
+            this.subtype = subtype;
+            this.supertype = supertype;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TypePair)) return false;
+            TypePair other = (TypePair) o;
+            return subtype == other.subtype && supertype == other.supertype;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(subtype) + System.identityHashCode(supertype);
+        }
+    }
+}
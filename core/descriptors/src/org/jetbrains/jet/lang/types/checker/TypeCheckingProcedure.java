@@ -56,9 +56,16 @@ public class TypeCheckingProcedure {
     }
 
     private final TypingConstraints constraints;
+    // Subtype checks of the default type checker depend only on the types, so they may be cached
+    private final boolean useSubtypeCache;
 
     public TypeCheckingProcedure(TypingConstraints constraints) {
+        this(constraints, false);
+    }
+
+    /* package */ TypeCheckingProcedure(TypingConstraints constraints, boolean useSubtypeCache) {
         this.constraints = constraints;
+        this.useSubtypeCache = useSubtypeCache;
     }
 
     public boolean equalTypes(@NotNull JetType type1, @NotNull JetType type2) {
@@ -156,6 +163,20 @@ public class TypeCheckingProcedure {
     }
 
     public boolean isSubtypeOf(@NotNull JetType subtype, @NotNull JetType supertype) {
+        SubtypeCache cache = useSubtypeCache ? SubtypeCache.getCurrent() : null;
+        if (cache == null || !SubtypeCache.isCacheable(subtype) || !SubtypeCache.isCacheable(supertype)) {
+            return computeIsSubtypeOf(subtype, supertype);
+        }
+
+        Boolean cached = cache.get(subtype, supertype);
+        if (cached != null) return cached;
+
+        boolean result = computeIsSubtypeOf(subtype, supertype);
+        cache.put(subtype, supertype, result);
+        return result;
+    }
+
+    private boolean computeIsSubtypeOf(@NotNull JetType subtype, @NotNull JetType supertype) {
         if (subtype.isError() || supertype.isError()) {
             return true;
         }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.plugin.project;
+
+import com.intellij.openapi.components.AbstractProjectComponent;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.psi.JetElement;
+import org.jetbrains.jet.lang.psi.JetFile;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Marks declarations resolved by {@link ResolveElementCache} when code blocks inside them are modified without changing
+ * the out of code block modification count. Only such declarations need to be resolved again after the modification.
+ */
+public class InBlockModificationListener extends AbstractProjectComponent {
+    private static final Key<Long> IN_BLOCK_MODIFICATION_STAMP = Key.create("IN_BLOCK_MODIFICATION_STAMP");
+
+    private static final AtomicLong lastStamp = new AtomicLong();
+
+    public InBlockModificationListener(Project project) {
+        super(project);
+    }
+
+    @Override
+    public void initComponent() {
+        if (!ResolveElementCache.isInBlockResolveEnabled()) return;
+
+        PsiManager.getInstance(myProject).addPsiTreeChangeListener(new PsiTreeChangeAdapter() {
+            @Override
+            public void childAdded(@NotNull PsiTreeChangeEvent event) {
+                processChange(event.getParent());
+            }
+
+            @Override
+            public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+                processChange(event.getParent());
+            }
+
+            @Override
+            public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+                processChange(event.getParent());
+            }
+
+            @Override
+            public void childMoved(@NotNull PsiTreeChangeEvent event) {
+                processChange(event.getOldParent());
+                processChange(event.getNewParent());
+            }
+
+            @Override
+            public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+                processChange(event.getParent());
+            }
+        }, myProject);
+    }
+
+    /**
+     * @return a value which changes every time code blocks inside the element are modified
+     */
+    public static long getInBlockModificationStamp(@NotNull JetElement element) {
+        Long stamp = element.getUserData(IN_BLOCK_MODIFICATION_STAMP);
+        return stamp != null ? stamp : 0;
+    }
+
+    private static void processChange(@Nullable PsiElement place) {
+        if (place == null || !(place.getContainingFile() instanceof JetFile) || !isInCodeBlock(place)) return;
+
+        JetElement element = PsiTreeUtil.getParentOfType(place, JetElement.class, false);
+        JetElement declaration = element != null ? ResolveElementCache.getElementOfAdditionalResolve(element) : null;
+        if (declaration != null) {
+            declaration.putUserData(IN_BLOCK_MODIFICATION_STAMP, lastStamp.incrementAndGet());
+        }
+    }
+
+    // The same check as the one made by JavaCodeBlockModificationListener to decide whether the change is out of code block
+    private static boolean isInCodeBlock(@NotNull PsiElement place) {
+        for (PsiElement parent = place; parent != null && !(parent instanceof PsiFileSystemItem); parent = parent.getParent()) {
+            if (parent instanceof PsiModifiableCodeBlock && !((PsiModifiableCodeBlock) parent).shouldChangeModificationCount(place)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -51,9 +51,15 @@ import java.util.Collections;
 import java.util.Map;
 
 public class ResolveElementCache {
+    /**
+     * When set to "true", modifications inside code blocks invalidate only the results for the declaration containing the block,
+     * instead of all of them
+     */
+    public static final String IN_BLOCK_RESOLVE_PROPERTY = "kotlin.ide.in.block.resolve";
+
     private static final BodyResolveContextForLazy EMPTY_CONTEXT = new BodyResolveContextForLazy(Functions.<JetScope>constant(null));
 
-    private final CachedValue<MemoizedFunctionToNotNull<JetElement, BindingContext>> additionalResolveCache;
+    private final CachedValue<MemoizedFunctionToNotNull<ElementWithStamp, BindingContext>> additionalResolveCache;
     private final ResolveSession resolveSession;
 
     public ResolveElementCache(ResolveSession resolveSession, Project project) {
@@ -61,45 +67,44 @@ public class ResolveElementCache {
 
         // Recreate internal cache after change of modification count
         this.additionalResolveCache =
-                CachedValuesManager.getManager(project).createCachedValue(new CachedValueProvider<MemoizedFunctionToNotNull<JetElement, BindingContext>>() {
+                CachedValuesManager.getManager(project).createCachedValue(new CachedValueProvider<MemoizedFunctionToNotNull<ElementWithStamp, BindingContext>>() {
                             @Nullable
                             @Override
-                            public Result<MemoizedFunctionToNotNull<JetElement, BindingContext>> compute() {
+                            public Result<MemoizedFunctionToNotNull<ElementWithStamp, BindingContext>> compute() {
                                 StorageManager manager = ResolveElementCache.this.resolveSession.getStorageManager();
-                                MemoizedFunctionToNotNull<JetElement, BindingContext> elementsCacheFunction =
-                                        manager.createMemoizedFunction(new com.intellij.util.Function<JetElement, BindingContext>() {
+                                MemoizedFunctionToNotNull<ElementWithStamp, BindingContext> elementsCacheFunction =
+                                        manager.createMemoizedFunction(new com.intellij.util.Function<ElementWithStamp, BindingContext>() {
                                             @Override
-                                            public BindingContext fun(JetElement jetElement) {
-                                                return elementAdditionalResolve(jetElement);
+                                            public BindingContext fun(ElementWithStamp elementWithStamp) {
+                                                return elementAdditionalResolve(elementWithStamp.element);
                                             }
                                         }, StorageManager.ReferenceKind.WEAK);
 
-                                return Result.create(elementsCacheFunction, PsiModificationTracker.MODIFICATION_COUNT);
+                                // In-block modifications are taken into account by stamps of the elements
+                                Object dependency = isInBlockResolveEnabled()
+                                                    ? PsiModificationTracker.OUT_OF_CODE_BLOCK_MODIFICATION_COUNT
+                                                    : PsiModificationTracker.MODIFICATION_COUNT;
+                                return Result.create(elementsCacheFunction, dependency);
                             }
                         },
                         false);
     }
 
+    public static boolean isInBlockResolveEnabled() {
+        return "true".equals(System.getProperty(IN_BLOCK_RESOLVE_PROPERTY));
+    }
+
     @NotNull
     public BindingContext resolveElement(@NotNull JetElement jetElement) {
-        @SuppressWarnings("unchecked") JetElement elementOfAdditionalResolve = (JetElement) JetPsiUtil.getTopmostParentOfTypes(
-                jetElement,
-                JetNamedFunction.class,
-                JetClassInitializer.class,
-                JetProperty.class,
-                JetDelegationSpecifierList.class,
-                JetImportDirective.class,
-                JetAnnotationEntry.class,
-                JetTypeParameter.class,
-                JetTypeConstraint.class,
-                JetNamespaceHeader.class);
+        JetElement elementOfAdditionalResolve = getElementOfAdditionalResolve(jetElement);
 
         if (elementOfAdditionalResolve != null) {
             if (elementOfAdditionalResolve instanceof JetNamespaceHeader) {
                 elementOfAdditionalResolve = jetElement;
             }
 
-            return additionalResolveCache.getValue().fun(elementOfAdditionalResolve);
+            return additionalResolveCache.getValue().fun(new ElementWithStamp(
+                    elementOfAdditionalResolve, InBlockModificationListener.getInBlockModificationStamp(elementOfAdditionalResolve)));
         }
 
         JetParameter parameter = PsiTreeUtil.getTopmostParentOfType(jetElement, JetParameter.class);
@@ -117,6 +122,22 @@ public class ResolveElementCache {
         return resolveSession.getBindingContext();
     }
 
+    @Nullable
+    /* package */ static JetElement getElementOfAdditionalResolve(@NotNull JetElement jetElement) {
+        //noinspection unchecked
+        return (JetElement) JetPsiUtil.getTopmostParentOfTypes(
+                jetElement,
+                JetNamedFunction.class,
+                JetClassInitializer.class,
+                JetProperty.class,
+                JetDelegationSpecifierList.class,
+                JetImportDirective.class,
+                JetAnnotationEntry.class,
+                JetTypeParameter.class,
+                JetTypeConstraint.class,
+                JetNamespaceHeader.class);
+    }
+
     @NotNull
     private BindingContext elementAdditionalResolve(@NotNull JetElement resolveElement) {
         // All additional resolve should be done to separate trace
@@ -389,6 +410,28 @@ public class ResolveElementCache {
         return null;
     }
 
+    private static class ElementWithStamp {
+        private final JetElement element;
+        private final long stamp;
+
+        private ElementWithStamp(@NotNull JetElement element, long stamp) {
+            this.element = element;
+            this.stamp = stamp;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ElementWithStamp)) return false;
+            ElementWithStamp other = (ElementWithStamp) o;
+            return element.equals(other.element) && stamp == other.stamp;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * element.hashCode() + (int) (stamp ^ (stamp >>> 32));
+        }
+    }
+
     private static class BodyResolveContextForLazy implements BodiesResolveContext {
 
         private final Function<? super JetDeclaration, JetScope> declaringScopes;
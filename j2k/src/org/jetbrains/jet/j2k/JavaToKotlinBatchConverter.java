@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.j2k;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Converts all Java files of a source tree to Kotlin files of the same relative paths.
+ *
+ * Files are converted in parallel, every one with its own {@link Converter}, while all of them are parsed and resolved
+ * in the same project. The code of a file is printed to its output file as it is generated.
+ */
+public class JavaToKotlinBatchConverter {
+    private static final String JAVA_EXTENSION = ".java";
+    private static final String KOTLIN_EXTENSION = ".kt";
+
+    private final Project project;
+    private final Set<J2KConverterFlags> flags;
+    private final int threadCount;
+
+    public JavaToKotlinBatchConverter(@NotNull Project project, @NotNull Set<J2KConverterFlags> flags, int threadCount) {
+        assert threadCount > 0 : "Thread count should be positive: " + threadCount;
+        this.project = project;
+        this.flags = EnumSet.noneOf(J2KConverterFlags.class);
+        this.flags.addAll(flags);
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @return files which failed to convert with the errors, in the order of conversion
+     */
+    @NotNull
+    public Map<File, Throwable> convertSourceTree(@NotNull final File javaRoot, @NotNull final File kotlinRoot)
+            throws InterruptedException {
+        List<File> javaFiles = new ArrayList<File>();
+        collectJavaFiles(javaRoot, javaFiles);
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(javaFiles.size());
+        for (final File javaFile : javaFiles) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    convertFile(javaFile, getKotlinFile(javaRoot, kotlinRoot, javaFile));
+                    return null;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<Void>> results;
+        try {
+            results = executor.invokeAll(tasks);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        Map<File, Throwable> failures = new LinkedHashMap<File, Throwable>();
+        for (int i = 0; i < javaFiles.size(); i++) {
+            try {
+                results.get(i).get();
+            }
+            catch (ExecutionException e) {
+                failures.put(javaFiles.get(i), e.getCause());
+            }
+        }
+        return failures;
+    }
+
+    private void convertFile(@NotNull File javaFile, @NotNull File kotlinFile) throws IOException {
+        PsiFile file = JavaToKotlinTranslator.createFile(project, javaFile.getName(), FileUtil.loadFile(javaFile, true));
+        if (!(file instanceof PsiJavaFile)) {
+            throw new IllegalStateException("Not a Java file: " + javaFile);
+        }
+
+        Converter converter = new Converter(project);
+        for (J2KConverterFlags flag : flags) {
+            converter.addFlag(flag);
+        }
+
+        File directory = kotlinFile.getParentFile();
+        // Other threads may be creating the same directory
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Can't create directory " + directory);
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(kotlinFile), "UTF-8"));
+        try {
+            JavaToKotlinTranslator.convertFile(converter, (PsiJavaFile) file, writer);
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    @NotNull
+    private static File getKotlinFile(@NotNull File javaRoot, @NotNull File kotlinRoot, @NotNull File javaFile) {
+        String relativePath = FileUtil.getRelativePath(javaRoot, javaFile);
+        assert relativePath != null : javaFile + " is not under " + javaRoot;
+        String kotlinPath = relativePath.substring(0, relativePath.length() - JAVA_EXTENSION.length()) + KOTLIN_EXTENSION;
+        return new File(kotlinRoot, kotlinPath);
+    }
+
+    private static void collectJavaFiles(@NotNull File file, @NotNull List<File> result) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null) return;
+            Arrays.sort(children);
+            for (File child : children) {
+                collectJavaFiles(child, result);
+            }
+        }
+        else if (file.getName().endsWith(JAVA_EXTENSION)) {
+            result.add(file);
+        }
+    }
+}
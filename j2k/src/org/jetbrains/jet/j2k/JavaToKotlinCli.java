@@ -1,144 +1,99 @@
-//package org.jetbrains.jet.j2k;
-//
-//import com.intellij.psi.PsiFile;
-//import com.intellij.psi.PsiJavaFile;
-//import org.apache.commons.cli.*;
-//import org.jetbrains.annotations.NotNull;
-//import org.jetbrains.annotations.Nullable;
-//
-//import java.io.File;
-//import java.io.FileNotFoundException;
-//import java.io.IOException;
-//import java.util.ArrayList;
-//import java.util.Arrays;
-//import java.util.List;
-//import java.util.logging.Logger;
-//import java.util.regex.Pattern;
-//
-//import static org.apache.commons.io.FileUtils.readFileToString;
-//import static org.apache.commons.io.FileUtils.writeStringToFile;
-//
-//@SuppressWarnings({"CallToPrintStackTrace", "UseOfSystemOutOrSystemErr"})
-//public class JavaToKotlinCli {
-//  private static final Logger myLogger = Logger.getAnonymousLogger();
-//
-//  private JavaToKotlinCli() {
-//  }
-//
-//  public static void main(String[] args) {
-//    CommandLineParser parser = new BasicParser();
-//    Options options = new Options()
-//      .addOption("h", "help", false, "Print usage information")
-//      .addOption("f", "from", true, "Directory with Java sources")
-//      .addOption("t", "to", true, "Directory with Kotlin sources")
-//      .addOption("p", "public-only", false, "Only public and protected members")
-//      .addOption("fqn", "fqn", false, "Full qualified names")
-//      .addOption("d", "declarations-only", false, "Declarations only")
-//      ;
-//
-//    try {
-//      CommandLine commandLine = parser.parse(options, args);
-//
-//      if (commandLine.hasOption("help"))
-//        showHelpAndExit();
-//
-//      if (commandLine.hasOption("from") && commandLine.hasOption("to")) {
-//        String from = commandLine.getOptionValue("from");
-//        String to = commandLine.getOptionValue("to");
-//
-//        for (Option o : commandLine.getOptions()) {
-//          Converter.addFlag(o.getLongOpt());
-//        }
-//
-//        if (!from.isEmpty() && !to.isEmpty())
-//          convertSourceTree(from, to);
-//        else
-//          showHelpAndExit();
-//      } else
-//        showHelpAndExit();
-//    } catch (ParseException e) {
-//      e.printStackTrace();
-//    }
-//  }
-//
-//  @SuppressWarnings("ResultOfMethodCallIgnored")
-//  private static void convertSourceTree(String javaPath, String kotlinPath) {
-//    try {
-//      File javaDir = new File(javaPath);
-//      File kotlinDir = new File(kotlinPath);
-//
-//      if (kotlinDir.exists())
-//        kotlinDir.delete();
-//
-//      if (!kotlinDir.exists() && !kotlinDir.mkdir())
-//        myLogger.warning("Creation failed: " + kotlinDir.getAbsolutePath());
-//
-//      for (File f : getJavaFiles(javaDir.getAbsolutePath())) {
-//        String relative = javaDir.toURI().relativize(f.toURI()).getPath().replace(".java", ".kt");
-//        File file = new File(kotlinPath, relative);
-//
-//        if (file.exists())
-//          file.delete();
-//
-//        if (f.isDirectory())
-//          if (!file.exists() && !file.mkdir())
-//            myLogger.warning("Creation failed: " + file.getAbsolutePath());
-//
-//        if (f.isFile()) {
-//          writeStringToFile(file, fileToKotlin(f));
-//        }
-//      }
-//    } catch (FileNotFoundException e) {
-//      e.printStackTrace();
-//    } catch (IOException e) {
-//      e.printStackTrace();
-//    }
-//  }
-//
-//  @NotNull
-//  private static String fileToKotlin(File f) throws IOException {
-//    final String javaCode = readJavaFileToString(f);
-//    return generateKotlinCode(JavaToKotlinTranslator.createFile(JavaToKotlinTranslator.setUpJavaCoreEnvironment(), javaCode));
-//  }
-//
-//  @NotNull
-//  private static String generateKotlinCode(@Nullable PsiFile file) {
-//    if (file != null && file instanceof PsiJavaFile) {
-//      JavaToKotlinTranslator.setClassIdentifiers(file);
-//      return JavaToKotlinTranslator.prettify(Converter.fileToFile((PsiJavaFile) file).toKotlin());
-//    }
-//    return "";
-//  }
-//
-//  @NotNull
-//  private static String readJavaFileToString(@NotNull File javaFile) throws IOException {
-//    return Pattern.compile("\\s*/\\*.*\\*/", Pattern.DOTALL).matcher(readFileToString(javaFile)).replaceAll("");
-//  }
-//
-//  private static void showHelpAndExit() {
-//    System.err.println("Usage: java -jar java2kotlin.jar -f <from> -t <to>");
-//    System.exit(1);
-//  }
-//
-//  static public List<File> getJavaFiles(String startDirName) throws FileNotFoundException {
-//    return getJavaFiles(new File(startDirName));
-//  }
-//
-//  private static List<File> getJavaFiles(File start) throws FileNotFoundException {
-//    List<File> result = new ArrayList<File>();
-//
-//    if (start.isFile())
-//      return Arrays.asList(start);
-//
-//    for (File file : Arrays.asList(start.listFiles())) {
-//      if ((file.isFile() && file.getName().endsWith(".java")) || file.isDirectory())
-//        result.add(file);
-//
-//      if (file.isDirectory()) {
-//        List<File> deeperList = getJavaFiles(file);
-//        result.addAll(deeperList);
-//      }
-//    }
-//    return result;
-//  }
-//}
\ No newline at end of file
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.j2k;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+@SuppressWarnings({"CallToPrintStackTrace", "UseOfSystemOutOrSystemErr"})
+public class JavaToKotlinCli {
+    private JavaToKotlinCli() {
+    }
+
+    public static void main(@NotNull String[] args) throws InterruptedException {
+        PrintStream err = System.err;
+
+        File from = null;
+        File to = null;
+        Set<J2KConverterFlags> flags = EnumSet.noneOf(J2KConverterFlags.class);
+        int threadCount = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ((arg.equals("-f") || arg.equals("--from")) && i + 1 < args.length) {
+                from = new File(args[++i]);
+            }
+            else if ((arg.equals("-t") || arg.equals("--to")) && i + 1 < args.length) {
+                to = new File(args[++i]);
+            }
+            else if ((arg.equals("-j") || arg.equals("--threads")) && i + 1 < args.length) {
+                try {
+                    threadCount = Integer.parseInt(args[++i]);
+                }
+                catch (NumberFormatException e) {
+                    showHelpAndExit();
+                }
+            }
+            else if (arg.equals("-p") || arg.equals("--public-only")) {
+                flags.add(J2KConverterFlags.SKIP_NON_PUBLIC_MEMBERS);
+            }
+            else if (arg.equals("--fqn")) {
+                flags.add(J2KConverterFlags.FULLY_QUALIFIED_TYPE_NAMES);
+            }
+            else if (arg.equals("-d") || arg.equals("--declarations-only")) {
+                flags.add(J2KConverterFlags.SKIP_BODIES);
+            }
+            else {
+                showHelpAndExit();
+            }
+        }
+
+        if (from == null || to == null || !from.isDirectory() || threadCount <= 0) {
+            showHelpAndExit();
+            return;
+        }
+
+        JavaToKotlinBatchConverter converter = new JavaToKotlinBatchConverter(
+                JavaToKotlinTranslator.setUpJavaCoreEnvironment(from).getProject(), flags, threadCount);
+        Map<File, Throwable> failures = converter.convertSourceTree(from, to);
+
+        for (Map.Entry<File, Throwable> failure : failures.entrySet()) {
+            err.println("Failed to convert " + failure.getKey() + ":");
+            failure.getValue().printStackTrace();
+        }
+        if (!failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    private static void showHelpAndExit() {
+        System.err.println(
+                "Usage: java -jar java2kotlin.jar -f <from> -t <to> [options]\n" +
+                "  -f, --from <dir>             Directory with Java sources\n" +
+                "  -t, --to <dir>               Directory for Kotlin sources\n" +
+                "  -j, --threads <count>        Number of files converted in parallel, the number of processors by default\n" +
+                "  -p, --public-only            Only public and protected members\n" +
+                "      --fqn                    Full qualified names\n" +
+                "  -d, --declarations-only      Declarations only");
+        System.exit(1);
+    }
+}
@@ -20,12 +20,14 @@ import com.intellij.core.JavaCoreProjectEnvironment;
 import com.intellij.lang.java.JavaLanguage;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiFileFactory;
 import com.intellij.psi.PsiJavaFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.j2k.util.PrettifyingAppendable;
 import org.jetbrains.jet.j2k.visitors.ClassVisitor;
 import org.jetbrains.jet.utils.PathUtil;
 
@@ -56,13 +58,26 @@ public class JavaToKotlinTranslator {
 
     @Nullable
     static PsiFile createFile(@NotNull Project project, @NotNull String text) {
+        return createFile(project, "test.java", text);
+    }
+
+    @Nullable
+    static PsiFile createFile(@NotNull Project project, @NotNull String fileName, @NotNull String text) {
         return PsiFileFactory.getInstance(project).createFileFromText(
-                "test.java", JavaLanguage.INSTANCE, text
+                fileName, JavaLanguage.INSTANCE, text
         );
     }
 
     @NotNull
     static JavaCoreProjectEnvironment setUpJavaCoreEnvironment() {
+        return setUpJavaCoreEnvironment(null);
+    }
+
+    /**
+     * @param sourceRoot root of Java sources the converted code may refer to, or null if there are none
+     */
+    @NotNull
+    static JavaCoreProjectEnvironment setUpJavaCoreEnvironment(@Nullable File sourceRoot) {
         JavaCoreApplicationEnvironment applicationEnvironment = new JavaCoreApplicationEnvironment(DISPOSABLE);
         JavaCoreProjectEnvironment javaCoreEnvironment = new JavaCoreProjectEnvironment(DISPOSABLE, applicationEnvironment);
 
@@ -71,6 +86,13 @@ public class JavaToKotlinTranslator {
         if (annotations != null && annotations.exists()) {
             javaCoreEnvironment.addJarToClassPath(annotations);
         }
+        if (sourceRoot != null) {
+            VirtualFile root = applicationEnvironment.getLocalFileSystem().findFileByPath(sourceRoot.getAbsolutePath());
+            if (root == null) {
+                throw new SetupJavaCoreEnvironmentException("Source root not found: " + sourceRoot);
+            }
+            javaCoreEnvironment.addSourcesToClasspath(root);
+        }
         return javaCoreEnvironment;
     }
 
@@ -79,15 +101,22 @@ public class JavaToKotlinTranslator {
         if (code == null) {
             return "";
         }
-        return code
-                .trim()
-                .replaceAll("\r\n", "\n")
-                .replaceAll(" \n", "\n")
-                .replaceAll("\n ", "\n")
-                .replaceAll("\n+", "\n")
-                .replaceAll(" +", " ")
-                .trim()
-                ;
+        StringBuilder result = new StringBuilder();
+        try {
+            new PrettifyingAppendable(result).append(code);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("StringBuilder doesn't throw", e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Converts the file and prints the prettified code to the output without keeping the text of the whole file in memory.
+     */
+    static void convertFile(@NotNull Converter converter, @NotNull PsiJavaFile file, @NotNull Appendable out) throws IOException {
+        setClassIdentifiers(converter, file);
+        converter.fileToFile(file).appendKotlin(new PrettifyingAppendable(out));
     }
 
     @Nullable
@@ -19,6 +19,7 @@ package org.jetbrains.jet.j2k.ast;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.jet.j2k.util.AstUtil;
 
+import java.io.IOException;
 import java.util.List;
 
 public class File extends Node {
@@ -44,4 +45,15 @@ public class File extends Node {
         return "package" + SPACE + myPackageName + N +
                common;
     }
+
+    @Override
+    public void appendKotlin(@NotNull Appendable out) throws IOException {
+        if (!myPackageName.isEmpty()) {
+            out.append("package").append(SPACE).append(myPackageName).append(N);
+        }
+        AstUtil.appendNodes(out, myImports, N);
+        out.append(N2);
+        AstUtil.appendNodes(out, myClasses, N);
+        out.append(N).append(myMainFunction);
+    }
 }
@@ -18,6 +18,7 @@ package org.jetbrains.jet.j2k.ast;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -29,6 +30,14 @@ public abstract class Node implements INode {
         return Kind.UNDEFINED;
     }
 
+    /**
+     * Prints the same code as {@link #toKotlin()} does. Nodes which contain many others may print them one by one
+     * instead of concatenating the whole text first.
+     */
+    public void appendKotlin(@NotNull Appendable out) throws IOException {
+        out.append(toKotlin());
+    }
+
     @NotNull
     final static Set<String> ONLY_KOTLIN_KEYWORDS = new HashSet<String>(Arrays.asList(
             "package", "as", "type", "val", "var", "fun", "is", "in", "object", "when", "trait", "This"
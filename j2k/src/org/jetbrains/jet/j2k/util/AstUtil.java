@@ -19,7 +19,9 @@ package org.jetbrains.jet.j2k.util;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.j2k.ast.INode;
+import org.jetbrains.jet.j2k.ast.Node;
 
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +49,17 @@ public class AstUtil {
         return join(nodesToKotlin(nodes), delimiter);
     }
 
+    public static void appendNodes(@NotNull Appendable out, @NotNull List<? extends Node> nodes, String delimiter) throws IOException {
+        boolean first = true;
+        for (Node node : nodes) {
+            if (!first) {
+                out.append(delimiter);
+            }
+            node.appendKotlin(out);
+            first = false;
+        }
+    }
+
     public static String join(@NotNull List<String> array, String delimiter) {
         return join(array.toArray(new String[array.size()]), delimiter);
     }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.j2k.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Normalizes whitespace of the generated code on its way to the output, as {@code JavaToKotlinTranslator.prettify()} does
+ * with the whole text: leading and trailing whitespace is trimmed, spaces next to line breaks are dropped,
+ * empty lines and repeated spaces are collapsed.
+ *
+ * All these replacements only touch runs of characters not greater than a space, so such runs are kept until
+ * the next printable character and normalized one by one. Whitespace at the end of the output is never written.
+ */
+public class PrettifyingAppendable implements Appendable {
+    private final Appendable out;
+    private final StringBuilder whitespace = new StringBuilder();
+    private boolean started = false;
+
+    public PrettifyingAppendable(@NotNull Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+        CharSequence sequence = csq == null ? "null" : csq;
+        return append(sequence, 0, sequence.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        CharSequence sequence = csq == null ? "null" : csq;
+        int printableStart = start;
+        for (int i = start; i < end; i++) {
+            char c = sequence.charAt(i);
+            if (c <= ' ') {
+                if (printableStart < i) {
+                    out.append(sequence, printableStart, i);
+                }
+                whitespace.append(c);
+                printableStart = i + 1;
+            }
+            else if (whitespace.length() > 0) {
+                flushWhitespace();
+            }
+            else {
+                started = true;
+            }
+        }
+        if (printableStart < end) {
+            out.append(sequence, printableStart, end);
+        }
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        if (c <= ' ') {
+            whitespace.append(c);
+        }
+        else {
+            if (whitespace.length() > 0) {
+                flushWhitespace();
+            }
+            started = true;
+            out.append(c);
+        }
+        return this;
+    }
+
+    /**
+     * Does in one pass what the replacements of {@code prettify()} do one after another: "\r\n" becomes a line break,
+     * a space is dropped when there is a line break right before or after it, and then repeated line breaks and repeated
+     * spaces are collapsed, whatever was dropped between them.
+     */
+    private void flushWhitespace() throws IOException {
+        if (started) {
+            int length = whitespace.length();
+            char previous = 0;
+            char written = 0;
+            for (int i = 0; i < length; i++) {
+                char c = whitespace.charAt(i);
+                if (c == '\r' && i + 1 < length && whitespace.charAt(i + 1) == '\n') continue;
+
+                boolean dropped = c == ' ' && (previous == '\n' || isLineBreakAt(i + 1));
+                previous = c;
+                if (dropped || ((c == '\n' || c == ' ') && c == written)) continue;
+
+                out.append(c);
+                written = c;
+            }
+        }
+        started = true;
+        whitespace.setLength(0);
+    }
+
+    private boolean isLineBreakAt(int index) {
+        if (index >= whitespace.length()) return false;
+        char c = whitespace.charAt(index);
+        return c == '\n' || (c == '\r' && index + 1 < whitespace.length() && whitespace.charAt(index + 1) == '\n');
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.j2k;
+
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.j2k.util.PrettifyingAppendable;
+
+import java.io.IOException;
+
+public class PrettifyingAppendableTest extends TestCase {
+    private static final String[] TEXTS = {
+            "",
+            "   ",
+            "a",
+            "  a b  ",
+            "a  \n  b",
+            "a \n \n \n b",
+            "a\r\n\r\nb",
+            "a \t\n b",
+            "a  \n  \n\t  b",
+            "a \r\n \r\r\n\t \n  b",
+            "\n\nclass A {\n    fun f() {\n\n    }\n}\n\n",
+            "package a\n\n\nimport b\n\n\n\nclass C\n \n",
+    };
+
+    public void testWholeText() throws IOException {
+        for (String text : TEXTS) {
+            StringBuilder result = new StringBuilder();
+            new PrettifyingAppendable(result).append(text);
+            assertEquals(text, prettifyWithRegexps(text), result.toString());
+        }
+    }
+
+    public void testCharByChar() throws IOException {
+        for (String text : TEXTS) {
+            StringBuilder result = new StringBuilder();
+            PrettifyingAppendable appendable = new PrettifyingAppendable(result);
+            for (int i = 0; i < text.length(); i++) {
+                appendable.append(text.charAt(i));
+            }
+            assertEquals(text, prettifyWithRegexps(text), result.toString());
+        }
+    }
+
+    public void testChunks() throws IOException {
+        for (String text : TEXTS) {
+            for (int split = 0; split <= text.length(); split++) {
+                StringBuilder result = new StringBuilder();
+                new PrettifyingAppendable(result).append(text, 0, split).append(text, split, text.length());
+                assertEquals(text + " split at " + split, prettifyWithRegexps(text), result.toString());
+            }
+        }
+    }
+
+    @NotNull
+    private static String prettifyWithRegexps(@NotNull String code) {
+        return code
+                .trim()
+                .replaceAll("\r\n", "\n")
+                .replaceAll(" \n", "\n")
+                .replaceAll("\n ", "\n")
+                .replaceAll("\n+", "\n")
+                .replaceAll(" +", " ")
+                .trim();
+    }
+}
@@ -16,9 +16,11 @@
 
 package org.jetbrains.jet.jps.build;
 
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.Function;
 import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.containers.MultiMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.jet.cli.common.KotlinVersion;
 import org.jetbrains.jet.cli.common.messages.CompilerMessageLocation;
@@ -41,8 +43,11 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import static org.jetbrains.jet.cli.common.messages.CompilerMessageSeverity.ERROR;
 import static org.jetbrains.jet.cli.common.messages.CompilerMessageSeverity.EXCEPTION;
 import static org.jetbrains.jet.cli.common.messages.CompilerMessageSeverity.INFO;
 import static org.jetbrains.jet.cli.common.messages.CompilerMessageSeverity.WARNING;
@@ -76,7 +81,7 @@ public class KotlinBuilder extends ModuleLevelBuilder {
             DirtyFilesHolder<JavaSourceRootDescriptor, ModuleBuildTarget> dirtyFilesHolder,
             OutputConsumer outputConsumer
     ) throws ProjectBuildException, IOException {
-        MessageCollector messageCollector = new MessageCollectorAdapter(context);
+        MessageCollectorAdapter messageCollector = new MessageCollectorAdapter(context);
         if (!isJavaPluginEnabled(context)) {
             messageCollector.report(INFO, "Kotlin JPS plugin is disabled", CompilerMessageLocation.NO_LOCATION);
             return ExitCode.NOTHING_DONE;
@@ -97,18 +102,56 @@ public class KotlinBuilder extends ModuleLevelBuilder {
 
         ModuleBuildTarget representativeTarget = chunk.representativeTarget();
 
-        // For non-incremental build: take all sources
-        if (!KotlinSourceFileCollector.hasDirtyFiles(dirtyFilesHolder)) {
+        List<String> removedFiles = KotlinSourceFileCollector.getRemovedKotlinFiles(dirtyFilesHolder, representativeTarget);
+        if (!KotlinSourceFileCollector.hasDirtyFiles(dirtyFilesHolder) && removedFiles.isEmpty()) {
             return ExitCode.NOTHING_DONE;
         }
-        List<File> sourceFiles = KotlinSourceFileCollector.getAllKotlinSourceFiles(representativeTarget);
-        //List<File> sourceFiles = KotlinSourceFileCollector.getDirtySourceFiles(dirtyFilesHolder);
+
+        KotlinIncrementalCache cache = KotlinIncrementalCache.load(context, representativeTarget);
+        List<File> allSourceFiles = KotlinSourceFileCollector.getAllKotlinSourceFiles(representativeTarget);
+
+        // Dependencies of Kotlin code on Java code are not tracked, so any change in Java sources makes the build non-incremental
+        boolean incremental = cache.isLoaded()
+                              && !context.isProjectRebuild()
+                              && !KotlinSourceFileCollector.hasDirtyNonKotlinFiles(dirtyFilesHolder);
+
+        List<File> sourceFiles;
+        if (incremental) {
+            sourceFiles = getFilesToRecompile(
+                    cache, allSourceFiles, KotlinSourceFileCollector.getDirtySourceFiles(dirtyFilesHolder), removedFiles);
+        }
+        else {
+            cache.clean();
+            sourceFiles = allSourceFiles;
+        }
+
+        Set<String> obsoleteOutputs = new HashSet<String>();
+        for (String removedFile : removedFiles) {
+            obsoleteOutputs.addAll(cache.getOutputs(removedFile));
+            cache.removeSource(removedFile);
+        }
 
         if (sourceFiles.isEmpty()) {
+            boolean abiChanged = cache.updateFingerprints(obsoleteOutputs, Collections.<File>emptyList());
+            cache.save();
+            if (abiChanged) {
+                return recompileOtherFiles(context, allSourceFiles, sourceFiles);
+            }
             return ExitCode.NOTHING_DONE;
         }
 
-        File moduleFile = KotlinBuilderModuleScriptGenerator.generateModuleDescription(context, representativeTarget, sourceFiles);
+        for (File sourceFile : sourceFiles) {
+            String path = sourceFile.getPath();
+            List<String> outputs = cache.getOutputs(path);
+            obsoleteOutputs.addAll(outputs);
+            // Classes of the files that are recompiled must not be seen on the class path
+            for (String output : outputs) {
+                FileUtil.delete(new File(output));
+            }
+            cache.setPackage(path, KotlinSourceFileCollector.getPackageName(sourceFile));
+        }
+
+        File moduleFile = KotlinBuilderModuleScriptGenerator.generateModuleDescription(context, representativeTarget, sourceFiles, incremental);
 
         File outputDir = representativeTarget.getOutputDir();
 
@@ -129,16 +172,97 @@ public class KotlinBuilder extends ModuleLevelBuilder {
                 outputItemCollector,
                 /*runOutOfProcess = */false);
 
+        MultiMap<String, String> sourceToOutputs = new MultiMap<String, String>();
+        List<File> outputs = ContainerUtil.newArrayList();
         for (SimpleOutputItem outputItem : outputItemCollector.getOutputs()) {
             outputConsumer.registerOutputFile(
                     representativeTarget,
                     outputItem.getOutputFile(),
                     paths(outputItem.getSourceFiles()));
+
+            outputs.add(outputItem.getOutputFile());
+            for (File sourceFile : outputItem.getSourceFiles()) {
+                sourceToOutputs.putValue(sourceFile.getPath(), outputItem.getOutputFile().getPath());
+            }
+        }
+
+        if (messageCollector.hasErrors()) {
+            // Outputs may be only partially updated, so the next build has to start from scratch
+            cache.clean();
+            return ExitCode.OK;
+        }
+
+        for (File sourceFile : sourceFiles) {
+            cache.setOutputs(sourceFile.getPath(), sourceToOutputs.get(sourceFile.getPath()));
+        }
+        boolean abiChanged = cache.updateFingerprints(obsoleteOutputs, outputs);
+        cache.save();
+
+        if (incremental && abiChanged && sourceFiles.size() < allSourceFiles.size()) {
+            return recompileOtherFiles(context, allSourceFiles, sourceFiles);
         }
 
         return ExitCode.OK;
     }
 
+    /**
+     * Usages of changed declarations are not tracked, so everything that was not compiled against the new ABI is recompiled
+     */
+    @NotNull
+    private static ExitCode recompileOtherFiles(
+            @NotNull CompileContext context,
+            @NotNull List<File> allSourceFiles,
+            @NotNull List<File> compiledFiles
+    ) throws IOException {
+        Set<File> compiled = new HashSet<File>(compiledFiles);
+        boolean markedAny = false;
+        for (File sourceFile : allSourceFiles) {
+            if (!compiled.contains(sourceFile)) {
+                FSOperations.markDirty(context, sourceFile);
+                markedAny = true;
+            }
+        }
+        return markedAny ? ExitCode.ADDITIONAL_PASS_REQUIRED : ExitCode.OK;
+    }
+
+    /**
+     * Package facade classes are shared by all files of a package, so the smallest unit of recompilation is a package
+     */
+    @NotNull
+    private static List<File> getFilesToRecompile(
+            @NotNull KotlinIncrementalCache cache,
+            @NotNull List<File> allSourceFiles,
+            @NotNull List<File> dirtySourceFiles,
+            @NotNull List<String> removedFiles
+    ) throws IOException {
+        Set<String> dirtyPackages = new HashSet<String>();
+        for (File dirtyFile : dirtySourceFiles) {
+            dirtyPackages.add(KotlinSourceFileCollector.getPackageName(dirtyFile));
+            // The file could have been moved from another package
+            String oldPackageName = cache.getPackage(dirtyFile.getPath());
+            if (oldPackageName != null) {
+                dirtyPackages.add(oldPackageName);
+            }
+        }
+        for (String removedFile : removedFiles) {
+            String packageName = cache.getPackage(removedFile);
+            if (packageName == null) return allSourceFiles;
+            dirtyPackages.add(packageName);
+        }
+
+        List<File> result = ContainerUtil.newArrayList();
+        for (File sourceFile : allSourceFiles) {
+            String packageName = cache.getPackage(sourceFile.getPath());
+            if (packageName == null) {
+                packageName = KotlinSourceFileCollector.getPackageName(sourceFile);
+            }
+            if (dirtyPackages.contains(packageName)) {
+                result.add(sourceFile);
+            }
+        }
+        return result;
+    }
+
     private static boolean isJavaPluginEnabled(@NotNull CompileContext context) {
         try {
             Field javaPluginIsEnabledField = JavaBuilder.class.getDeclaredField("IS_ENABLED");
@@ -160,17 +284,25 @@ public class KotlinBuilder extends ModuleLevelBuilder {
     public static class MessageCollectorAdapter implements MessageCollector {
 
         private final CompileContext context;
+        private boolean hasErrors = false;
 
         public MessageCollectorAdapter(@NotNull CompileContext context) {
             this.context = context;
         }
 
+        public boolean hasErrors() {
+            return hasErrors;
+        }
+
         @Override
         public void report(
                 @NotNull CompilerMessageSeverity severity,
                 @NotNull String message,
                 @NotNull CompilerMessageLocation location
         ) {
+            if (severity == ERROR || severity == EXCEPTION) {
+                hasErrors = true;
+            }
             String prefix = "";
             if (severity == EXCEPTION) {
                 prefix = CompilerRunnerConstants.INTERNAL_ERROR_PREFIX;
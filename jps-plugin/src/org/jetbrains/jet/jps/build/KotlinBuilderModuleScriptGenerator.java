@@ -49,16 +49,19 @@ public class KotlinBuilderModuleScriptGenerator {
 
     public static final KotlinModuleDescriptionGenerator GENERATOR = KotlinModuleXmlGenerator.INSTANCE;
 
-    public static File generateModuleDescription(CompileContext context, ModuleBuildTarget target, List<File> sourceFiles)
-            throws IOException
-    {
+    public static File generateModuleDescription(
+            CompileContext context,
+            ModuleBuildTarget target,
+            List<File> sourceFiles,
+            boolean incremental
+    ) throws IOException {
         CharSequence moduleScriptText = GENERATOR.generateModuleScript(
                 target.getId(),
                 getKotlinModuleDependencies(context, target),
                 sourceFiles,
                 target.isTests(),
-                // this excludes the output directory from the class path, to be removed for true incremental compilation
-                Collections.singleton(target.getOutputDir())
+                // an incremental build compiles against the classes of the previous build, otherwise they must be ignored
+                incremental ? Collections.<File>emptySet() : Collections.singleton(target.getOutputDir())
         );
 
         File scriptFile = new File(target.getOutputDir(), "script." + GENERATOR.getFileExtension());
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.jps.build;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.asm4.AnnotationVisitor;
+import org.jetbrains.asm4.ClassReader;
+import org.jetbrains.asm4.ClassVisitor;
+import org.jetbrains.asm4.Opcodes;
+import org.jetbrains.jps.incremental.CompileContext;
+import org.jetbrains.jps.incremental.ModuleBuildTarget;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data about the previous Kotlin build of a module target, kept in the JPS data directory:
+ * - the package of every compiled source file, so that a package can be recompiled as a whole (its facade class is shared by
+ *   all of its files) even when one of them is deleted
+ * - the output classes of every source file
+ * - the ABI fingerprint of every output class, i.e. a digest of the serialized descriptors in its {@code KotlinClass} or
+ *   {@code KotlinPackage} annotation, so that changes that do not affect other files do not cause their recompilation
+ */
+public class KotlinIncrementalCache {
+    private static final String CACHE_FILE_NAME = "kotlin-incremental-cache.bin";
+    private static final int CACHE_VERSION = 2;
+
+    private static final String KOTLIN_CLASS_ANNOTATION = "Ljet/KotlinClass;";
+    private static final String KOTLIN_PACKAGE_ANNOTATION = "Ljet/KotlinPackage;";
+    private static final String DATA_FIELD = "data";
+
+    private final File cacheFile;
+    private final boolean loaded;
+    private final Map<String, String> sourceToPackage = ContainerUtil.newHashMap();
+    private final Map<String, List<String>> sourceToOutputs = ContainerUtil.newHashMap();
+    private final Map<String, String> outputToFingerprint = ContainerUtil.newHashMap();
+
+    private KotlinIncrementalCache(@NotNull File cacheFile) {
+        this.cacheFile = cacheFile;
+        this.loaded = readFrom(cacheFile);
+    }
+
+    @NotNull
+    public static KotlinIncrementalCache load(@NotNull CompileContext context, @NotNull ModuleBuildTarget target) {
+        File dataRoot = context.getProjectDescriptor().dataManager.getDataPaths().getTargetDataRoot(target);
+        return new KotlinIncrementalCache(new File(dataRoot, CACHE_FILE_NAME));
+    }
+
+    /**
+     * Whether there was a successful build of this target, the results of which can be relied upon
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    @Nullable
+    public String getPackage(@NotNull String sourcePath) {
+        return sourceToPackage.get(sourcePath);
+    }
+
+    public void setPackage(@NotNull String sourcePath, @NotNull String packageName) {
+        sourceToPackage.put(sourcePath, packageName);
+    }
+
+    @NotNull
+    public List<String> getOutputs(@NotNull String sourcePath) {
+        List<String> outputs = sourceToOutputs.get(sourcePath);
+        return outputs == null ? Collections.<String>emptyList() : outputs;
+    }
+
+    public void setOutputs(@NotNull String sourcePath, @NotNull Collection<String> outputPaths) {
+        sourceToOutputs.put(sourcePath, new ArrayList<String>(outputPaths));
+    }
+
+    public void removeSource(@NotNull String sourcePath) {
+        sourceToPackage.remove(sourcePath);
+        sourceToOutputs.remove(sourcePath);
+    }
+
+    /**
+     * Records new fingerprints for {@code outputs}, forgetting those of {@code obsoleteOutputs}
+     * @return true if the ABI of the outputs differs from what was recorded before
+     */
+    public boolean updateFingerprints(@NotNull Collection<String> obsoleteOutputs, @NotNull Collection<File> outputs) throws IOException {
+        Map<String, String> oldFingerprints = ContainerUtil.newHashMap();
+        for (String path : obsoleteOutputs) {
+            String fingerprint = outputToFingerprint.remove(path);
+            if (fingerprint != null) {
+                oldFingerprints.put(path, fingerprint);
+            }
+        }
+
+        boolean abiChanged = false;
+        for (File output : outputs) {
+            String path = output.getPath();
+            String oldFingerprint = oldFingerprints.remove(path);
+            String newFingerprint = computeAbiFingerprint(output);
+            if (newFingerprint != null) {
+                outputToFingerprint.put(path, newFingerprint);
+            }
+            if (newFingerprint == null ? oldFingerprint != null : !newFingerprint.equals(oldFingerprint)) {
+                abiChanged = true;
+            }
+        }
+
+        // Declarations that disappeared altogether
+        return abiChanged || !oldFingerprints.isEmpty();
+    }
+
+    public void save() throws IOException {
+        FileUtil.createParentDirs(cacheFile);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)));
+        try {
+            output.writeInt(CACHE_VERSION);
+            writeMap(output, sourceToPackage);
+            writeMultiMap(output, sourceToOutputs);
+            writeMap(output, outputToFingerprint);
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    public void clean() {
+        sourceToPackage.clear();
+        sourceToOutputs.clear();
+        outputToFingerprint.clear();
+        FileUtil.delete(cacheFile);
+    }
+
+    private boolean readFrom(@NotNull File file) {
+        if (!file.exists()) return false;
+
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (input.readInt() != CACHE_VERSION) return false;
+                readMap(input, sourceToPackage);
+                readMultiMap(input, sourceToOutputs);
+                readMap(input, outputToFingerprint);
+                return true;
+            }
+            finally {
+                input.close();
+            }
+        }
+        catch (IOException e) {
+            // A broken cache only means that the next build is not incremental
+            sourceToPackage.clear();
+            sourceToOutputs.clear();
+            outputToFingerprint.clear();
+            return false;
+        }
+    }
+
+    private static void writeMap(@NotNull DataOutput output, @NotNull Map<String, String> map) throws IOException {
+        output.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeUTF(entry.getValue());
+        }
+    }
+
+    private static void readMap(@NotNull DataInput input, @NotNull Map<String, String> map) throws IOException {
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            map.put(input.readUTF(), input.readUTF());
+        }
+    }
+
+    // Every string is written separately, writeUTF() can't write strings longer than 64K
+    private static void writeMultiMap(@NotNull DataOutput output, @NotNull Map<String, List<String>> map) throws IOException {
+        output.writeInt(map.size());
+        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+            output.writeUTF(entry.getKey());
+            List<String> values = entry.getValue();
+            output.writeInt(values.size());
+            for (String value : values) {
+                output.writeUTF(value);
+            }
+        }
+    }
+
+    private static void readMultiMap(@NotNull DataInput input, @NotNull Map<String, List<String>> map) throws IOException {
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            String key = input.readUTF();
+            int valueCount = input.readInt();
+            List<String> values = ContainerUtil.newArrayList();
+            for (int j = 0; j < valueCount; j++) {
+                values.add(input.readUTF());
+            }
+            map.put(key, values);
+        }
+    }
+
+    /**
+     * @return digest of the serialized descriptors of a class file, or null if it has none (e.g. closures and package parts)
+     */
+    @Nullable
+    private static String computeAbiFingerprint(@NotNull File classFile) throws IOException {
+        if (!classFile.getName().endsWith(".class") || !classFile.exists()) return null;
+
+        final MessageDigest digest = createDigest();
+        final boolean[] hasData = new boolean[1];
+
+        new ClassReader(FileUtil.loadFileBytes(classFile)).accept(new ClassVisitor(Opcodes.ASM4) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                if (!KOTLIN_CLASS_ANNOTATION.equals(desc) && !KOTLIN_PACKAGE_ANNOTATION.equals(desc)) return null;
+
+                return new AnnotationVisitor(Opcodes.ASM4) {
+                    @Override
+                    public AnnotationVisitor visitArray(String name) {
+                        if (!DATA_FIELD.equals(name)) return null;
+
+                        return new AnnotationVisitor(Opcodes.ASM4) {
+                            @Override
+                            public void visit(String name, Object value) {
+                                if (value instanceof String) {
+                                    hasData[0] = true;
+                                    digest.update(((String) value).getBytes(CharsetToolkit.UTF8_CHARSET));
+                                }
+                            }
+                        };
+                    }
+                };
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        return hasData[0] ? new BigInteger(1, digest.digest()).toString(16) : null;
+    }
+
+    @NotNull
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -66,6 +66,23 @@ public class KotlinSourceFileCollector {
         return result.get();
     }
 
+    public static boolean hasDirtyNonKotlinFiles(DirtyFilesHolder<JavaSourceRootDescriptor, ModuleBuildTarget> dirtyFilesHolder)
+            throws IOException {
+        final Ref<Boolean> result = Ref.create(false);
+
+        dirtyFilesHolder.processDirtyFiles(new FileProcessor<JavaSourceRootDescriptor, ModuleBuildTarget>() {
+            @Override
+            public boolean apply(ModuleBuildTarget target, File file, JavaSourceRootDescriptor root) throws IOException {
+                if (!isKotlinSourceFile(file)) {
+                    result.set(true);
+                    return false;
+                }
+                return true;
+            }
+        });
+        return result.get();
+    }
+
     @NotNull
     public static List<File> getAllKotlinSourceFiles(@NotNull ModuleBuildTarget target) {
         final List<File> result = ContainerUtil.newArrayList();
@@ -83,6 +100,25 @@ public class KotlinSourceFileCollector {
         return result;
     }
 
+    @NotNull
+    public static List<String> getRemovedKotlinFiles(
+            @NotNull DirtyFilesHolder<JavaSourceRootDescriptor, ModuleBuildTarget> dirtyFilesHolder,
+            @NotNull ModuleBuildTarget target
+    ) {
+        List<String> result = ContainerUtil.newArrayList();
+        for (String path : dirtyFilesHolder.getRemovedFiles(target)) {
+            if (isKotlinSourceFile(new File(path))) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    @NotNull
+    public static String getPackageName(@NotNull File file) throws IOException {
+        return PackageDirectiveReader.readPackageName(FileUtil.loadFile(file));
+    }
+
     private static Iterable<JpsModuleSourceRoot> getRelevantSourceRoots(ModuleBuildTarget target) {
         JavaSourceRootType sourceRootType = target.isTests() ? JavaSourceRootType.TEST_SOURCE : JavaSourceRootType.SOURCE;
 
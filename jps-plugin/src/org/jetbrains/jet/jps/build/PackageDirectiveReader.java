@@ -0,0 +1,255 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.jps.build;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads the package directive of a Kotlin file, tokenizing the beginning of the file the way the Kotlin lexer does: the JPS
+ * process does not have the Kotlin parser. Only comments, whitespace and the modifier list (annotations) may precede the
+ * directive, so reading stops at the first token which can't be a part of them, and the package keyword is never found inside
+ * of comments, strings or declarations.
+ */
+/* package */ final class PackageDirectiveReader {
+    private static final String PACKAGE_KEYWORD = "package";
+
+    // Hard keywords other than "package", none of them can occur in a modifier list
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+            "as", "type", "class", "this", "super", "val", "var", "fun", "for", "null", "true", "false", "is", "in", "throw", "return",
+            "break", "continue", "object", "if", "try", "else", "while", "do", "when", "trait", "import", "This"
+    ));
+
+    private final CharSequence text;
+    private int offset = 0;
+
+    @NotNull
+    public static String readPackageName(@NotNull CharSequence text) {
+        return new PackageDirectiveReader(text).read();
+    }
+
+    private PackageDirectiveReader(@NotNull CharSequence text) {
+        this.text = text;
+    }
+
+    @NotNull
+    private String read() {
+        skipShebang();
+        while (true) {
+            skipWhitespaceAndComments();
+            if (offset >= text.length()) return "";
+
+            char c = text.charAt(offset);
+            String identifier = readIdentifier();
+            if (identifier != null) {
+                // Quoted names are never keywords
+                if (c == '`') continue;
+                if (PACKAGE_KEYWORD.equals(identifier)) return readQualifiedName();
+                if (KEYWORDS.contains(identifier)) return "";
+            }
+            else if (c == '[' || c == '(' || c == '<') {
+                if (!skipGroup()) return "";
+            }
+            else if (c == '.' || c == ',' || c == ':' || c == '@' || c == '?') {
+                offset++;
+            }
+            else {
+                return "";
+            }
+        }
+    }
+
+    @NotNull
+    private String readQualifiedName() {
+        StringBuilder result = new StringBuilder();
+        while (true) {
+            skipWhitespaceAndComments();
+            boolean quoted = offset < text.length() && text.charAt(offset) == '`';
+            String name = readIdentifier();
+            if (name == null || (!quoted && (KEYWORDS.contains(name) || PACKAGE_KEYWORD.equals(name)))) break;
+            result.append(name);
+
+            skipWhitespaceAndComments();
+            if (offset >= text.length() || text.charAt(offset) != '.') break;
+            offset++;
+            result.append('.');
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return the identifier at the current offset without backticks, or null if there is none
+     */
+    @Nullable
+    private String readIdentifier() {
+        if (offset >= text.length()) return null;
+
+        char first = text.charAt(offset);
+        if (first == '`') {
+            int end = offset + 1;
+            while (end < text.length() && text.charAt(end) != '`' && text.charAt(end) != '\n') {
+                end++;
+            }
+            if (end >= text.length() || text.charAt(end) != '`') return null;
+            String name = text.subSequence(offset + 1, end).toString();
+            offset = end + 1;
+            return name;
+        }
+
+        if (!Character.isLetter(first) && first != '_') return null;
+        int end = offset + 1;
+        while (end < text.length() && (Character.isLetterOrDigit(text.charAt(end)) || text.charAt(end) == '_')) {
+            end++;
+        }
+        String name = text.subSequence(offset, end).toString();
+        offset = end;
+        return name;
+    }
+
+    /**
+     * Skips brackets, parentheses or angle brackets of an annotation together with everything inside of them
+     * @return false if the group is not closed
+     */
+    private boolean skipGroup() {
+        int depth = 0;
+        while (true) {
+            skipWhitespaceAndComments();
+            if (offset >= text.length()) return false;
+
+            char c = text.charAt(offset);
+            if (c == '[' || c == '(' || c == '<') {
+                depth++;
+                offset++;
+            }
+            else if (c == ']' || c == ')' || c == '>') {
+                depth--;
+                offset++;
+                if (depth == 0) return true;
+            }
+            else if (c == '"') {
+                skipString();
+            }
+            else if (c == '\'') {
+                skipCharacterLiteral();
+            }
+            else {
+                offset++;
+            }
+        }
+    }
+
+    private void skipString() {
+        if (startsWith("\"\"\"")) {
+            int end = indexOf("\"\"\"", offset + 3);
+            offset = end < 0 ? text.length() : end + 3;
+            return;
+        }
+
+        offset++;
+        while (offset < text.length()) {
+            char c = text.charAt(offset++);
+            if (c == '\\') {
+                offset++;
+            }
+            else if (c == '"' || c == '\n') {
+                return;
+            }
+        }
+    }
+
+    private void skipCharacterLiteral() {
+        offset++;
+        while (offset < text.length()) {
+            char c = text.charAt(offset++);
+            if (c == '\\') {
+                offset++;
+            }
+            else if (c == '\'' || c == '\n') {
+                return;
+            }
+        }
+    }
+
+    private void skipShebang() {
+        if (startsWith("#!")) {
+            skipLine();
+        }
+    }
+
+    private void skipWhitespaceAndComments() {
+        while (offset < text.length()) {
+            if (Character.isWhitespace(text.charAt(offset))) {
+                offset++;
+            }
+            else if (startsWith("//")) {
+                skipLine();
+            }
+            else if (startsWith("/*")) {
+                skipBlockComment();
+            }
+            else {
+                return;
+            }
+        }
+    }
+
+    private void skipLine() {
+        int end = indexOf("\n", offset);
+        offset = end < 0 ? text.length() : end + 1;
+    }
+
+    // Block comments nest in Kotlin
+    private void skipBlockComment() {
+        int depth = 0;
+        while (offset < text.length()) {
+            if (startsWith("/*")) {
+                depth++;
+                offset += 2;
+            }
+            else if (startsWith("*/")) {
+                offset += 2;
+                if (--depth == 0) return;
+            }
+            else {
+                offset++;
+            }
+        }
+    }
+
+    private boolean startsWith(@NotNull String prefix) {
+        return offset + prefix.length() <= text.length() && regionMatches(offset, prefix);
+    }
+
+    private int indexOf(@NotNull String substring, int fromIndex) {
+        int last = text.length() - substring.length();
+        for (int i = fromIndex; i <= last; i++) {
+            if (regionMatches(i, substring)) return i;
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int start, @NotNull String substring) {
+        for (int i = 0; i < substring.length(); i++) {
+            if (text.charAt(start + i) != substring.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -19,15 +19,25 @@ package org.jetbrains.jet.jps.build;
 import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.asm4.ClassReader;
+import org.jetbrains.asm4.ClassVisitor;
+import org.jetbrains.asm4.MethodVisitor;
+import org.jetbrains.asm4.Opcodes;
 import org.jetbrains.jps.model.java.*;
 import org.jetbrains.jps.model.module.JpsModule;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 public class KotlinJpsBuildTestCase extends AbstractKotlinJpsBuildTestCase {
     private static final String PROJECT_NAME = "kotlinProject";
     private static final String JDK_NAME = "IDEA_JDK";
 
+    // Timestamp put on class files to check that they are not written again
+    private static final long OLD_TIMESTAMP = 1000000000000L;
+
     @Override
     public void setUp() throws Exception {
         super.setUp();
@@ -109,4 +119,86 @@ public class KotlinJpsBuildTestCase extends AbstractKotlinJpsBuildTestCase {
         makeAll().assertSuccessful();
     }
 
+    public void testIncrementalTouchOneFile() throws IOException {
+        initProject();
+        makeAll().assertSuccessful();
+
+        markOld("a/APackage.class", "b/BPackage.class");
+        change(workDir + "/src/a1.kt", "package a\n\nfun a1() = 1 // touched\n");
+        makeAll().assertSuccessful();
+
+        assertRecompiled("a/APackage.class");
+        // The ABI of package a is the same, so its users are not recompiled
+        assertNotRecompiled("b/BPackage.class");
+    }
+
+    public void testIncrementalDeleteFile() throws IOException {
+        initProject();
+        makeAll().assertSuccessful();
+
+        markOld("a/APackage.class", "b/BPackage.class");
+        delete(workDir + "/src/a3.kt");
+        makeAll().assertSuccessful();
+
+        assertRecompiled("a/APackage.class");
+        Set<String> methods = getMethodNames("a/APackage.class");
+        assertTrue(methods.toString(), methods.contains("a1") && methods.contains("a2"));
+        assertFalse(methods.toString(), methods.contains("a3"));
+
+        // b uses a2(), so it is recompiled after a2.kt is deleted, and fails to compile
+        delete(workDir + "/src/a2.kt");
+        makeAll().assertFailed();
+    }
+
+    public void testIncrementalChangePackage() throws IOException {
+        initProject();
+        makeAll().assertSuccessful();
+
+        markOld("b/BPackage.class");
+        // The package directive in the comment must be ignored
+        change(workDir + "/src/a2.kt", "/*\npackage a\n*/\npackage c\n\nfun a2() = 2\n");
+        makeAll().assertSuccessful();
+
+        // The file is gone from its old package, which is recompiled as well
+        Set<String> methods = getMethodNames("a/APackage.class");
+        assertTrue(methods.toString(), methods.contains("a1"));
+        assertFalse(methods.toString(), methods.contains("a2"));
+        assertTrue(getMethodNames("c/CPackage.class").contains("a2"));
+    }
+
+    private File getOutputFile(String relativePath) {
+        return new File(workDir, "out/production/" + PROJECT_NAME + "/" + relativePath);
+    }
+
+    private void markOld(String... relativePaths) {
+        for (String path : relativePaths) {
+            File file = getOutputFile(path);
+            assertTrue("Not compiled: " + file, file.isFile());
+            assertTrue(file.setLastModified(OLD_TIMESTAMP));
+        }
+    }
+
+    private void assertRecompiled(String relativePath) {
+        File file = getOutputFile(relativePath);
+        assertTrue("Not compiled: " + file, file.isFile());
+        assertTrue("Not recompiled: " + file, file.lastModified() != OLD_TIMESTAMP);
+    }
+
+    private void assertNotRecompiled(String relativePath) {
+        File file = getOutputFile(relativePath);
+        assertTrue("Not compiled: " + file, file.isFile());
+        assertEquals("Recompiled: " + file, OLD_TIMESTAMP, file.lastModified());
+    }
+
+    private Set<String> getMethodNames(String relativePath) throws IOException {
+        final Set<String> result = new HashSet<String>();
+        new ClassReader(FileUtil.loadFileBytes(getOutputFile(relativePath))).accept(new ClassVisitor(Opcodes.ASM4) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                result.add(name);
+                return null;
+            }
+        }, ClassReader.SKIP_CODE);
+        return result;
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.jps.build;
+
+import junit.framework.TestCase;
+
+public class PackageDirectiveReaderTest extends TestCase {
+    public void testNoDirective() {
+        assertPackage("", "fun foo() {}");
+        assertPackage("", "");
+    }
+
+    public void testSimpleDirective() {
+        assertPackage("foo.bar", "package foo.bar\n\nfun foo() {}");
+        assertPackage("foo.bar", "package foo . bar;");
+        assertPackage("foo", "package foo { fun foo() {} }");
+    }
+
+    public void testBackticks() {
+        assertPackage("foo.in", "package foo.`in`");
+        assertPackage("foo", "`package` package foo");
+    }
+
+    public void testComments() {
+        assertPackage("foo", "// package wrong\n/* package wrong */\n/** package wrong */\npackage foo");
+        assertPackage("foo", "/* outer /* package wrong */ package wrong */ package foo");
+        assertPackage("foo", "#!/usr/bin/env kotlin\npackage foo");
+        assertPackage("foo.bar", "package foo./* comment */bar");
+    }
+
+    public void testNotInsideDeclarations() {
+        assertPackage("", "fun foo() = \"\"\"\npackage wrong\n\"\"\"");
+        assertPackage("", "/*\npackage wrong\n*/\nval s = \"package wrong\"");
+        assertPackage("", "class A {\n}\n  package wrong");
+    }
+
+    public void testAnnotations() {
+        assertPackage("foo", "[suppress(\"package wrong\")] package foo");
+        assertPackage("foo", "deprecated(\"]\") package foo");
+    }
+
+    private static void assertPackage(String expected, String text) {
+        assertEquals(expected, PackageDirectiveReader.readPackageName(text));
+    }
+}
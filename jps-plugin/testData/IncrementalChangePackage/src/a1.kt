@@ -0,0 +1,3 @@
+package a
+
+fun a1() = 1
@@ -0,0 +1,3 @@
+package b
+
+fun b() = a.a1()
@@ -18,6 +18,7 @@ package org.jetbrains.k2js.test.config;
 
 import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.resolve.BindingContext;
 import org.jetbrains.k2js.config.Config;
@@ -45,7 +46,18 @@ public class TestConfig extends Config {
 
     public TestConfig(@NotNull Project project, @NotNull EcmaVersion version,
             @NotNull List<JetFile> files, @NotNull BindingContext context) {
-        super(project, REWRITABLE_MODULE_NAME, version);
+        this(project, REWRITABLE_MODULE_NAME, version, files, context);
+    }
+
+    public TestConfig(@NotNull Project project, @NotNull String moduleId, @NotNull EcmaVersion version,
+            @NotNull List<JetFile> files, @NotNull BindingContext context) {
+        this(project, moduleId, version, files, context, false, null);
+    }
+
+    public TestConfig(@NotNull Project project, @NotNull String moduleId, @NotNull EcmaVersion version,
+            @NotNull List<JetFile> files, @NotNull BindingContext context,
+            boolean sourcemap, @Nullable List<String> exportedDeclarations) {
+        super(project, moduleId, version, sourcemap, exportedDeclarations);
         jsLibFiles = files;
         libraryContext = context;
     }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.test.semantics;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.k2js.config.Config;
+import org.jetbrains.k2js.config.EcmaVersion;
+import org.jetbrains.k2js.facade.MainCallParameters;
+import org.jetbrains.k2js.test.SingleFileTranslationTest;
+import org.jetbrains.k2js.test.config.TestConfig;
+import org.jetbrains.k2js.test.config.TestConfigFactory;
+import org.jetbrains.k2js.test.rhino.RhinoFunctionResultChecker;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Translates with unreachable declarations eliminated and runs what is left
+ */
+public final class DeadCodeEliminationTest extends SingleFileTranslationTest {
+    public DeadCodeEliminationTest() {
+        super("deadCodeElimination/");
+    }
+
+    public void testOverride() throws Exception {
+        String output = translateAndRun("box", "derivedName", "Derived");
+        assertFalse(output, output.contains("UnusedDerived"));
+        assertFalse(output, output.contains("unusedDerivedName"));
+    }
+
+    public void testExportedEntryPoint() throws Exception {
+        String output = translateAndRun("entry", "prefix", "Greeting");
+        assertFalse(output, output.contains("notExported"));
+        assertFalse(output, output.contains("box"));
+    }
+
+    /**
+     * @return generated code, which must still contain the given names
+     */
+    @NotNull
+    private String translateAndRun(@NotNull String exportedFunction, @NotNull String... keptNames) throws Exception {
+        String filename = getTestName(true) + ".kt";
+        List<String> exported = Collections.singletonList("foo." + exportedFunction);
+        generateJavaScriptFiles(Collections.singletonList(getInputFilePath(filename)), filename, MainCallParameters.noCall(),
+                                DEFAULT_ECMA_VERSIONS, new ExportingConfigFactory(exported));
+        runRhinoTests(filename, DEFAULT_ECMA_VERSIONS, new RhinoFunctionResultChecker("foo", exportedFunction, "OK"));
+
+        String output = FileUtil.loadFile(new File(getOutputFilePath(filename, EcmaVersion.v5)));
+        for (String name : keptNames) {
+            assertTrue(output, output.contains(name));
+        }
+        return output;
+    }
+
+    private static class ExportingConfigFactory implements TestConfigFactory {
+        private final List<String> exported;
+
+        private ExportingConfigFactory(@NotNull List<String> exported) {
+            this.exported = exported;
+        }
+
+        @Override
+        public TestConfig create(@NotNull Project project, @NotNull EcmaVersion version, @NotNull List<JetFile> files,
+                @NotNull BindingContext context) {
+            return new TestConfig(project, Config.REWRITABLE_MODULE_NAME, version, files, context, false, exported);
+        }
+    }
+}
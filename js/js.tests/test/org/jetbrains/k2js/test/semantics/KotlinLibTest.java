@@ -63,6 +63,11 @@ public final class KotlinLibTest extends SingleFileTranslationTest {
     }
 
 
+    public void testPrimitiveHashMap() throws Exception {
+        runJavascriptTest("primitiveHashMap.js");
+    }
+
+
     private void runJavascriptTest(@NotNull String filename) throws Exception {
         runRhinoTest(withAdditionalFiles(cases(filename), EcmaVersion.defaultVersion()),
                      new RhinoFunctionResultChecker("test", true));
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.test.semantics;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.lang.descriptors.FunctionDescriptor;
+import org.jetbrains.jet.lang.descriptors.NamespaceDescriptor;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.resolve.name.FqNameUnsafe;
+import org.jetbrains.jet.lang.resolve.name.Name;
+import org.jetbrains.jet.test.util.NamespaceComparator;
+import org.jetbrains.k2js.analyze.AnalyzerFacadeForJS;
+import org.jetbrains.k2js.config.Config;
+import org.jetbrains.k2js.config.EcmaVersion;
+import org.jetbrains.k2js.facade.K2JSTranslator;
+import org.jetbrains.k2js.facade.MainCallParameters;
+import org.jetbrains.k2js.serialize.JsLibraryDescriptors;
+import org.jetbrains.k2js.serialize.JsLibraryMetadataSerializer;
+import org.jetbrains.k2js.test.SingleFileTranslationTest;
+import org.jetbrains.k2js.test.config.TestConfig;
+import org.jetbrains.k2js.test.config.TestConfigFactory;
+import org.jetbrains.k2js.test.rhino.RhinoFunctionResultChecker;
+import org.jetbrains.k2js.test.utils.TranslationUtils;
+import org.jetbrains.k2js.translate.utils.AnnotationsUtils;
+import org.jetbrains.k2js.translate.utils.PredefinedAnnotation;
+import org.jetbrains.k2js.utils.JetFileUtils;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compiles a library to JavaScript and to its metadata, and then compiles code against the metadata instead of the library sources
+ */
+public final class PrecompiledLibraryTest extends SingleFileTranslationTest {
+    private static final String MAIN = "precompiledLibrary/";
+    private static final String LIBRARY_MODULE = "library";
+    private static final String LIBRARY_NAME = "library.kt";
+    private static final String[] LIBRARY_FILES = {"lib.kt", "inner.kt"};
+    private static final String[] LIBRARY_PACKAGES = {"lib", "lib.inner"};
+
+    public PrecompiledLibraryTest() {
+        super(MAIN);
+    }
+
+    public void testMetadataRoundTrip() throws Exception {
+        List<JetFile> files = createLibraryFiles();
+        BindingContext context = analyzeLibrary(files, EcmaVersion.v5);
+        File metadataFile = getMetadataFile(EcmaVersion.v5);
+        writeMetadata(context, files, metadataFile);
+
+        JsLibraryDescriptors libraries = new JsLibraryDescriptors();
+        libraries.load(metadataFile, LIBRARY_MODULE);
+
+        NamespaceComparator.Configuration configuration =
+                NamespaceComparator.DONT_INCLUDE_METHODS_OF_OBJECT.filterRecursion(Predicates.<FqNameUnsafe>alwaysFalse());
+        for (String packageName : LIBRARY_PACKAGES) {
+            FqName fqName = new FqName(packageName);
+            NamespaceDescriptor expected = context.get(BindingContext.FQNAME_TO_NAMESPACE_DESCRIPTOR, fqName);
+            assertNotNull(expected);
+            List<NamespaceDescriptor> actual = libraries.getPackages(fqName);
+            assertEquals(1, actual.size());
+            NamespaceComparator.validateAndCompareNamespaces(expected, actual.get(0), configuration, null);
+        }
+
+        NamespaceDescriptor inner = libraries.getPackages(new FqName("lib.inner")).get(0);
+        Collection<FunctionDescriptor> functions = inner.getMemberScope().getFunctions(Name.identifier("greeting"));
+        assertEquals(1, functions.size());
+        FunctionDescriptor greeting = functions.iterator().next();
+        assertEquals("nativeGreeting", AnnotationsUtils.getNameForAnnotatedObject(greeting, PredefinedAnnotation.NATIVE));
+        assertEquals(LIBRARY_MODULE, JsLibraryDescriptors.getExternalModuleName(greeting));
+    }
+
+    public void testUsage() throws Exception {
+        for (EcmaVersion version : DEFAULT_ECMA_VERSIONS) {
+            compileLibrary(version);
+        }
+        generateJavaScriptFiles(Collections.singletonList(getInputFilePath("usage.kt")), "usage.kt", MainCallParameters.noCall(),
+                                DEFAULT_ECMA_VERSIONS, new UsageConfigFactory());
+        runRhinoTests("usage.kt", DEFAULT_ECMA_VERSIONS, new RhinoFunctionResultChecker("foo", "box", "OK"));
+    }
+
+    @NotNull
+    @Override
+    protected List<String> additionalJSFiles(@NotNull EcmaVersion ecmaVersion) {
+        List<String> result = Lists.newArrayList(super.additionalJSFiles(ecmaVersion));
+        result.add(pathToTestFiles() + "native.js");
+        result.add(getOutputFilePath(LIBRARY_NAME, ecmaVersion));
+        return result;
+    }
+
+    private void compileLibrary(@NotNull EcmaVersion version) throws Exception {
+        List<JetFile> files = createLibraryFiles();
+        writeMetadata(analyzeLibrary(files, version), files, getMetadataFile(version));
+
+        K2JSTranslator translator = new K2JSTranslator(TranslationUtils.getConfig(getProject(), version, LIBRARY_CONFIG_FACTORY));
+        FileUtil.writeToFile(new File(getOutputFilePath(LIBRARY_NAME, version)),
+                             translator.generateProgramCode(files, MainCallParameters.noCall()));
+    }
+
+    @NotNull
+    private BindingContext analyzeLibrary(@NotNull List<JetFile> files, @NotNull EcmaVersion version) {
+        Config config = TranslationUtils.getConfig(getProject(), version, LIBRARY_CONFIG_FACTORY);
+        BindingContext context = AnalyzerFacadeForJS.analyzeFiles(files, config);
+        AnalyzerFacadeForJS.checkForErrors(files, context);
+        return context;
+    }
+
+    private static void writeMetadata(@NotNull BindingContext context, @NotNull List<JetFile> files, @NotNull File metadataFile)
+            throws IOException {
+        OutputStream stream = new BufferedOutputStream(new FileOutputStream(metadataFile));
+        try {
+            JsLibraryMetadataSerializer.serialize(context, files, stream);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    @NotNull
+    private List<JetFile> createLibraryFiles() throws IOException {
+        List<JetFile> result = Lists.newArrayList();
+        for (String name : LIBRARY_FILES) {
+            String path = pathToTestFiles() + "library/" + name;
+            result.add(JetFileUtils.createJetFile(path, FileUtil.loadFile(new File(path)), getProject()));
+        }
+        return result;
+    }
+
+    @NotNull
+    private File getMetadataFile(@NotNull EcmaVersion version) {
+        return new File(getOutputFilePath(LIBRARY_NAME, version) + JsLibraryMetadataSerializer.FILE_EXTENSION);
+    }
+
+    private static final TestConfigFactory LIBRARY_CONFIG_FACTORY = new TestConfigFactory() {
+        @Override
+        public TestConfig create(@NotNull Project project, @NotNull EcmaVersion version, @NotNull List<JetFile> files,
+                @NotNull BindingContext context) {
+            return new TestConfig(project, LIBRARY_MODULE, version, files, context);
+        }
+    };
+
+    private class UsageConfigFactory implements TestConfigFactory {
+        @Override
+        public TestConfig create(@NotNull Project project, @NotNull final EcmaVersion version, @NotNull List<JetFile> files,
+                @NotNull BindingContext context) {
+            return new TestConfig(project, version, files, context) {
+                @NotNull
+                @Override
+                protected JsLibraryDescriptors loadLibraryDescriptors() {
+                    JsLibraryDescriptors libraries = new JsLibraryDescriptors();
+                    try {
+                        libraries.load(getMetadataFile(version), LIBRARY_MODULE);
+                    }
+                    catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return libraries;
+                }
+            };
+        }
+    }
+}
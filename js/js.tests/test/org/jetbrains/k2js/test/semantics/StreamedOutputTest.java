@@ -0,0 +1,127 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.test.semantics;
+
+import com.google.dart.compiler.util.TextOutputImpl;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.js.compiler.sourcemap.SourceMap3Builder;
+import org.jetbrains.k2js.config.Config;
+import org.jetbrains.k2js.config.EcmaVersion;
+import org.jetbrains.k2js.facade.K2JSTranslator;
+import org.jetbrains.k2js.facade.MainCallParameters;
+import org.jetbrains.k2js.facade.SourceMapBuilderConsumer;
+import org.jetbrains.k2js.test.SingleFileTranslationTest;
+import org.jetbrains.k2js.test.config.TestConfig;
+import org.jetbrains.k2js.test.config.TestConfigFactory;
+import org.jetbrains.k2js.test.rhino.RhinoFunctionResultChecker;
+import org.jetbrains.k2js.test.utils.TranslationUtils;
+import org.jetbrains.k2js.utils.JetFileUtils;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that the code and the source map written to files by the translator are the same as when they are generated in memory
+ */
+public final class StreamedOutputTest extends SingleFileTranslationTest {
+    private static final String FILE_NAME = "streamed.kt";
+    // Enough to make the source map builder flush its mappings several times
+    private static final int FUNCTION_COUNT = 1000;
+
+    public StreamedOutputTest() {
+        super("streamedOutput/");
+    }
+
+    public void testWithoutSourceMap() throws Exception {
+        doTest(false);
+    }
+
+    public void testWithSourceMap() throws Exception {
+        doTest(true);
+    }
+
+    private void doTest(boolean sourcemap) throws Exception {
+        List<JetFile> files = Collections.singletonList(JetFileUtils.createJetFile(FILE_NAME, generateSource(), getProject()));
+        Config config = TranslationUtils.getConfig(getProject(), EcmaVersion.v5, new SourceMapConfigFactory(sourcemap));
+        File outFile = new File(getOutputFilePath(FILE_NAME, EcmaVersion.v5));
+        File sourceMapFile = SourceMap3Builder.getSourceMapFile(outFile);
+
+        TextOutputImpl output = new TextOutputImpl();
+        SourceMap3Builder sourceMapBuilder = sourcemap ? new SourceMap3Builder(outFile, output, new SourceMapBuilderConsumer()) : null;
+        String expectedCode = new K2JSTranslator(config).generateProgramCode(files, MainCallParameters.noCall(), output, sourceMapBuilder);
+
+        // Stale output is replaced
+        FileUtil.writeToFile(outFile, "stale");
+        K2JSTranslator.translateWithMainCallParametersAndSaveToFile(MainCallParameters.noCall(), files, outFile.getPath(), config);
+
+        assertEquals(expectedCode, FileUtil.loadFile(outFile));
+        if (sourceMapBuilder != null) {
+            assertEquals(sourceMapBuilder.build(), FileUtil.loadFile(sourceMapFile));
+        }
+        else {
+            assertFalse(sourceMapFile.exists());
+        }
+
+        String[] tempFiles = outFile.getParentFile().list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".tmp");
+            }
+        });
+        assertEquals(0, tempFiles.length);
+
+        runRhinoTests(FILE_NAME, Collections.singletonList(EcmaVersion.v5), new RhinoFunctionResultChecker("foo", "box", "OK"));
+    }
+
+    @NotNull
+    private static String generateSource() {
+        StringBuilder sb = new StringBuilder("package foo\n\n");
+        for (int i = 0; i < FUNCTION_COUNT; i++) {
+            sb.append("fun f").append(i).append("(a: Int): Int {\n");
+            sb.append("    return a + ").append(i).append("\n");
+            sb.append("}\n\n");
+        }
+        sb.append("fun box(): String {\n");
+        sb.append("    var sum = 0\n");
+        for (int i = 0; i < FUNCTION_COUNT; i++) {
+            sb.append("    sum = f").append(i).append("(sum)\n");
+        }
+        sb.append("    return if (sum == ").append(FUNCTION_COUNT * (FUNCTION_COUNT - 1) / 2).append(") \"OK\" else \"fail: \" + sum\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static class SourceMapConfigFactory implements TestConfigFactory {
+        private final boolean sourcemap;
+
+        private SourceMapConfigFactory(boolean sourcemap) {
+            this.sourcemap = sourcemap;
+        }
+
+        @Override
+        public TestConfig create(@NotNull Project project, @NotNull EcmaVersion version, @NotNull List<JetFile> files,
+                @NotNull BindingContext context) {
+            return new TestConfig(project, Config.REWRITABLE_MODULE_NAME, version, files, context, sourcemap, null);
+        }
+    }
+}
@@ -4,18 +4,30 @@ import com.google.dart.compiler.common.SourceInfo;
 import com.google.dart.compiler.util.TextOutput;
 import com.intellij.util.PairConsumer;
 import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.js.compiler.SourceMapBuilder;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
 public class SourceMap3Builder implements SourceMapBuilder {
-    private final StringBuilder out = new StringBuilder(8192);
+    private static final int FLUSH_THRESHOLD = 8192;
+
+    private final StringBuilder out = new StringBuilder(FLUSH_THRESHOLD);
     private final File generatedFile;
     private final TextOutput textOutput;
     private final PairConsumer<SourceMapBuilder, Object> sourceInfoConsumer;
 
+    // When set, mappings are written to it as soon as lines are complete, and the map is written by writeMap()
+    @Nullable
+    private final Writer mappingsWriter;
+    private IOException error;
+
     private String lastSource;
     private int lastSourceIndex;
 
@@ -35,26 +47,98 @@ public class SourceMap3Builder implements SourceMapBuilder {
     private int previousSourceColumn;
 
     public SourceMap3Builder(File generatedFile, TextOutput textOutput, PairConsumer<SourceMapBuilder, Object> sourceInfoConsumer) {
+        this(generatedFile, textOutput, sourceInfoConsumer, null);
+    }
+
+    public SourceMap3Builder(
+            File generatedFile,
+            TextOutput textOutput,
+            PairConsumer<SourceMapBuilder, Object> sourceInfoConsumer,
+            @Nullable Writer mappingsWriter
+    ) {
         this.generatedFile = generatedFile;
         this.textOutput = textOutput;
         this.sourceInfoConsumer = sourceInfoConsumer;
+        this.mappingsWriter = mappingsWriter;
+    }
+
+    public static File getSourceMapFile(File generatedFile) {
+        return new File(generatedFile.getParentFile(), generatedFile.getName() + ".map");
     }
 
     @Override
     public File getOutFile() {
-        return new File(generatedFile.getParentFile(), generatedFile.getName() + ".map");
+        return getSourceMapFile(generatedFile);
     }
 
     @Override
     public String build() {
+        if (mappingsWriter != null) {
+            throw new IllegalStateException("Mappings are written to the writer, writeMap() should be used instead");
+        }
+
         StringBuilder sb = new StringBuilder(out.length() + (128 * orderedSources.size()));
+        appendHeader(sb);
+        sb.append(out);
+        sb.append("\"}");
+        return sb.toString();
+    }
+
+    /**
+     * Writes the remaining mappings to the writer given to the constructor.
+     */
+    public void flushMappings() throws IOException {
+        assert mappingsWriter != null : "Source map is built in memory, build() should be used instead";
+
+        writeMappings();
+        if (error == null) {
+            try {
+                mappingsWriter.flush();
+            }
+            catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Writes the same map as {@link #build()} would, reading the mappings back from what was written to the mappings writer
+     * before. Mappings go after sources, which are only known when all the mappings are added.
+     */
+    public void writeMap(@NotNull Writer writer, @NotNull Reader writtenMappings) throws IOException {
+        StringBuilder sb = new StringBuilder(128 * orderedSources.size());
+        appendHeader(sb);
+        writer.append(sb);
+
+        char[] buffer = new char[FLUSH_THRESHOLD];
+        int count;
+        while ((count = writtenMappings.read(buffer)) != -1) {
+            writer.write(buffer, 0, count);
+        }
+        writer.write("\"}");
+    }
+
+    private void appendHeader(StringBuilder sb) {
         sb.append("{\"version\":3,\"file\":\"").append(generatedFile.getName()).append('"').append(',');
         appendSources(sb);
         sb.append(",\"names\":[");
         sb.append("],\"mappings\":\"");
-        sb.append(out);
-        sb.append("\"}");
-        return sb.toString();
+    }
+
+    private void writeMappings() {
+        assert mappingsWriter != null;
+        if (error == null) {
+            try {
+                mappingsWriter.append(out);
+            }
+            catch (IOException e) {
+                error = e;
+            }
+        }
+        out.setLength(0);
     }
 
     private void appendSources(StringBuilder sb) {
@@ -76,6 +160,9 @@ public class SourceMap3Builder implements SourceMapBuilder {
     public void newLine() {
         out.append(';');
         previousGeneratedColumn = -1;
+        if (mappingsWriter != null && out.length() >= FLUSH_THRESHOLD) {
+            writeMappings();
+        }
     }
 
     @Override
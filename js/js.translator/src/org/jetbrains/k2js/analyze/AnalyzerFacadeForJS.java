@@ -88,7 +88,8 @@ public final class AnalyzerFacadeForJS {
         BindingTrace trace = libraryBindingContext == null ?
                              new ObservableBindingTrace(new BindingTraceContext()) :
                              new DelegatingBindingTrace(libraryBindingContext, "trace for analyzing library in js");
-        owner.setModuleConfiguration(new JsConfiguration(libraryBindingContext));
+        owner.setModuleConfiguration(new JsConfiguration(libraryBindingContext, config.getLibraryDescriptors()));
+        config.getLibraryDescriptors().setSourceModule(owner);
         InjectorForTopDownAnalyzerForJs injector = new InjectorForTopDownAnalyzerForJs(project, topDownAnalysisParameters, trace, owner);
         try {
             Collection<JetFile> allFiles = libraryBindingContext != null ?
@@ -140,11 +141,12 @@ public final class AnalyzerFacadeForJS {
 
     @NotNull
     public static ResolveSession getLazyResolveSession(Collection<JetFile> files, Config config) {
-        LockBasedLazyResolveStorageManager storageManager = new LockBasedLazyResolveStorageManager();
+        LockBasedLazyResolveStorageManager storageManager = LockBasedLazyResolveStorageManager.createDefault();
         FileBasedDeclarationProviderFactory declarationProviderFactory = new FileBasedDeclarationProviderFactory(
                 storageManager, Config.withJsLibAdded(files, config), Predicates.<FqName>alwaysFalse());
         ModuleDescriptorImpl lazyModule = createJsModule("<lazy module>");
-        lazyModule.setModuleConfiguration(new JsConfiguration(null));
+        lazyModule.setModuleConfiguration(new JsConfiguration(null, config.getLibraryDescriptors()));
+        config.getLibraryDescriptors().setSourceModule(lazyModule);
         return new ResolveSession(config.getProject(), storageManager, lazyModule, declarationProviderFactory);
     }
 
@@ -29,6 +29,7 @@ import org.jetbrains.jet.lang.resolve.name.FqName;
 import org.jetbrains.jet.lang.resolve.name.FqNameUnsafe;
 import org.jetbrains.jet.lang.resolve.scopes.WritableScope;
 import org.jetbrains.jet.lang.types.lang.KotlinBuiltIns;
+import org.jetbrains.k2js.serialize.JsLibraryDescriptors;
 
 import java.util.List;
 
@@ -49,8 +50,12 @@ public class JsConfiguration implements ModuleConfiguration {
     @Nullable
     private final BindingContext preanalyzedContext;
 
-    JsConfiguration(@Nullable BindingContext preanalyzedContext) {
+    @NotNull
+    private final JsLibraryDescriptors libraryDescriptors;
+
+    JsConfiguration(@Nullable BindingContext preanalyzedContext, @NotNull JsLibraryDescriptors libraryDescriptors) {
         this.preanalyzedContext = preanalyzedContext;
+        this.libraryDescriptors = libraryDescriptors;
     }
 
     @Override
@@ -62,6 +67,11 @@ public class JsConfiguration implements ModuleConfiguration {
             namespaceMemberScope.importScope(KotlinBuiltIns.getInstance().getBuiltInsScope());
         }
 
+        FqName fqName = DescriptorUtils.getFQName(namespaceDescriptor).toSafe();
+        for (NamespaceDescriptor libraryNamespace : libraryDescriptors.getPackages(fqName)) {
+            namespaceMemberScope.importScope(libraryNamespace.getMemberScope());
+        }
+
         if (hasPreanalyzedContextForTests()) {
             extendScopeWithPreAnalyzedContextForTests(namespaceDescriptor, namespaceMemberScope);
         }
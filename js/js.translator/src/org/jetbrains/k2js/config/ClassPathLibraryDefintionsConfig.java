@@ -18,6 +18,7 @@ package org.jetbrains.k2js.config;
 
 import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.psi.JetFile;
 
 import java.util.List;
@@ -31,7 +32,17 @@ public class ClassPathLibraryDefintionsConfig extends Config {
     public static final String META_INF_SERVICES_FILE = "META-INF/services/org.jetbrains.kotlin.js.libraryDefinitions";
 
     public ClassPathLibraryDefintionsConfig(@NotNull Project project, @NotNull String moduleId, @NotNull EcmaVersion version, boolean sourcemap) {
-        super(project, moduleId, version, sourcemap);
+        this(project, moduleId, version, sourcemap, null);
+    }
+
+    public ClassPathLibraryDefintionsConfig(
+            @NotNull Project project,
+            @NotNull String moduleId,
+            @NotNull EcmaVersion version,
+            boolean sourcemap,
+            @Nullable List<String> exportedDeclarations
+    ) {
+        super(project, moduleId, version, sourcemap, exportedDeclarations);
     }
 
     @NotNull
@@ -22,6 +22,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.k2js.serialize.JsLibraryDescriptors;
 import org.jetbrains.k2js.translate.test.JSTester;
 import org.jetbrains.k2js.translate.test.QUnitTester;
 
@@ -141,6 +142,8 @@ public abstract class Config {
     private final Project project;
     @Nullable
     private List<JetFile> libFiles = null;
+    @Nullable
+    private JsLibraryDescriptors libraryDescriptors = null;
     @NotNull
     private final EcmaVersion target;
 
@@ -149,21 +152,44 @@ public abstract class Config {
 
     private final boolean sourcemap;
 
+    @Nullable
+    private final List<String> exportedDeclarations;
+
     public Config(@NotNull Project project, @NotNull String moduleId, @NotNull EcmaVersion ecmaVersion) {
         this(project, moduleId, ecmaVersion, false);
     }
 
     public Config(@NotNull Project project, @NotNull String moduleId, @NotNull EcmaVersion ecmaVersion, boolean sourcemap) {
+        this(project, moduleId, ecmaVersion, sourcemap, null);
+    }
+
+    public Config(
+            @NotNull Project project,
+            @NotNull String moduleId,
+            @NotNull EcmaVersion ecmaVersion,
+            boolean sourcemap,
+            @Nullable List<String> exportedDeclarations
+    ) {
         this.project = project;
         this.target = ecmaVersion;
         this.moduleId = moduleId;
         this.sourcemap = sourcemap;
+        this.exportedDeclarations = exportedDeclarations;
     }
 
     public boolean isSourcemap() {
         return sourcemap;
     }
 
+    /**
+     * @return fully qualified names of declarations used from outside of the module, or null if no declarations
+     * should be eliminated as unused
+     */
+    @Nullable
+    public List<String> getExportedDeclarations() {
+        return exportedDeclarations;
+    }
+
     @NotNull
     public Project getProject() {
         return project;
@@ -190,6 +216,22 @@ public abstract class Config {
         return libFiles;
     }
 
+    /**
+     * Libraries which are used in the precompiled form instead of their sources
+     */
+    @NotNull
+    protected JsLibraryDescriptors loadLibraryDescriptors() {
+        return new JsLibraryDescriptors();
+    }
+
+    @NotNull
+    public final JsLibraryDescriptors getLibraryDescriptors() {
+        if (libraryDescriptors == null) {
+            libraryDescriptors = loadLibraryDescriptors();
+        }
+        return libraryDescriptors;
+    }
+
     @Nullable
     public BindingContext getLibraryBindingContext() {
         return null;
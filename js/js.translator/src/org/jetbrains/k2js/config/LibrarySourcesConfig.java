@@ -25,9 +25,13 @@ import com.intellij.openapi.vfs.*;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.k2js.serialize.JsLibraryDescriptors;
+import org.jetbrains.k2js.serialize.JsLibraryMetadataSerializer;
 import org.jetbrains.k2js.utils.JetFileUtils;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -56,7 +60,18 @@ public class LibrarySourcesConfig extends Config {
             @NotNull EcmaVersion ecmaVersion,
             boolean sourcemap
     ) {
-        super(project, moduleId, ecmaVersion, sourcemap);
+        this(project, moduleId, files, ecmaVersion, sourcemap, null);
+    }
+
+    public LibrarySourcesConfig(
+            @NotNull Project project,
+            @NotNull String moduleId,
+            @NotNull List<String> files,
+            @NotNull EcmaVersion ecmaVersion,
+            boolean sourcemap,
+            @Nullable List<String> exportedDeclarations
+    ) {
+        super(project, moduleId, ecmaVersion, sourcemap, exportedDeclarations);
         this.files = files;
     }
 
@@ -76,6 +91,10 @@ public class LibrarySourcesConfig extends Config {
             if (path.charAt(0) == '@') {
                 moduleName = path.substring(1);
             }
+            else if (path.endsWith(JsLibraryMetadataSerializer.FILE_EXTENSION)) {
+                // Precompiled libraries are loaded by loadLibraryDescriptors()
+                continue;
+            }
             else if (path.endsWith(".jar") || path.endsWith(".zip")) {
                 try {
                     jetFiles.addAll(readZip(path));
@@ -102,6 +121,27 @@ public class LibrarySourcesConfig extends Config {
         return jetFiles;
     }
 
+    @NotNull
+    @Override
+    protected JsLibraryDescriptors loadLibraryDescriptors() {
+        JsLibraryDescriptors libraries = new JsLibraryDescriptors();
+        String moduleName = UNKNOWN_EXTERNAL_MODULE_NAME;
+        for (String path : files) {
+            if (path.charAt(0) == '@') {
+                moduleName = path.substring(1);
+            }
+            else if (path.endsWith(JsLibraryMetadataSerializer.FILE_EXTENSION)) {
+                try {
+                    libraries.load(new File(path), moduleName);
+                }
+                catch (IOException e) {
+                    LOG.error(e);
+                }
+            }
+        }
+        return libraries;
+    }
+
     private List<JetFile> readZip(String file) throws IOException {
         ZipFile zipFile = new ZipFile(file);
         try {
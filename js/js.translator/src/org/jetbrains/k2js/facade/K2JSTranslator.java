@@ -20,12 +20,14 @@ import com.google.dart.compiler.backend.js.ast.JsProgram;
 import com.google.dart.compiler.util.TextOutputImpl;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.resolve.BindingContext;
 import org.jetbrains.js.compiler.JsSourceGenerationVisitor;
 import org.jetbrains.js.compiler.SourceMapBuilder;
+import org.jetbrains.js.compiler.WriterTextOutput;
 import org.jetbrains.js.compiler.sourcemap.SourceMap3Builder;
 import org.jetbrains.k2js.analyze.AnalyzerFacadeForJS;
 import org.jetbrains.k2js.config.Config;
@@ -33,8 +35,8 @@ import org.jetbrains.k2js.facade.exceptions.TranslationException;
 import org.jetbrains.k2js.translate.general.Translation;
 import org.jetbrains.k2js.utils.JetFileUtils;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -54,13 +56,104 @@ public final class K2JSTranslator {
             @NotNull Config config) throws TranslationException, IOException {
         K2JSTranslator translator = new K2JSTranslator(config);
         File outFile = new File(outputPath);
-        TextOutputImpl output = new TextOutputImpl();
-        SourceMapBuilder sourceMapBuilder = config.isSourcemap() ? new SourceMap3Builder(outFile, output, new SourceMapBuilderConsumer()) : null;
-        String programCode = translator.generateProgramCode(files, mainCall, output, sourceMapBuilder);
-        FileUtil.writeToFile(outFile, programCode);
-        if (sourceMapBuilder != null) {
-            FileUtil.writeToFile(sourceMapBuilder.getOutFile(), sourceMapBuilder.build());
+        JsProgram program = translator.generateProgram(files, mainCall);
+
+        // The code and the source map are written to temporary files while the program is printed, so that neither is kept
+        // in memory, and the output files are only replaced when everything is written
+        FileUtil.createParentDirs(outFile);
+        File outDir = outFile.getAbsoluteFile().getParentFile();
+        List<File> tempFiles = new ArrayList<File>();
+        try {
+            File tempOutFile = createTempFile(outDir, outFile, tempFiles);
+            if (config.isSourcemap()) {
+                File mappingsFile = createTempFile(outDir, outFile, tempFiles);
+                SourceMap3Builder sourceMapBuilder = writeProgram(program, outFile, tempOutFile, mappingsFile);
+                assert sourceMapBuilder != null;
+
+                File tempSourceMapFile = createTempFile(outDir, outFile, tempFiles);
+                writeSourceMap(sourceMapBuilder, mappingsFile, tempSourceMapFile);
+                replace(tempSourceMapFile, sourceMapBuilder.getOutFile());
+            }
+            else {
+                writeProgram(program, outFile, tempOutFile, null);
+            }
+            replace(tempOutFile, outFile);
         }
+        finally {
+            for (File tempFile : tempFiles) {
+                FileUtil.delete(tempFile);
+            }
+        }
+    }
+
+    @Nullable
+    private static SourceMap3Builder writeProgram(
+            @NotNull JsProgram program,
+            @NotNull File outFile,
+            @NotNull File codeFile,
+            @Nullable File mappingsFile
+    ) throws IOException {
+        Writer writer = createFileWriter(codeFile);
+        try {
+            WriterTextOutput output = new WriterTextOutput(writer);
+            SourceMap3Builder sourceMapBuilder = null;
+            if (mappingsFile != null) {
+                Writer mappingsWriter = createFileWriter(mappingsFile);
+                try {
+                    sourceMapBuilder = new SourceMap3Builder(outFile, output, new SourceMapBuilderConsumer(), mappingsWriter);
+                    program.accept(new JsSourceGenerationVisitor(output, sourceMapBuilder));
+                    sourceMapBuilder.flushMappings();
+                }
+                finally {
+                    mappingsWriter.close();
+                }
+            }
+            else {
+                program.accept(new JsSourceGenerationVisitor(output, null));
+            }
+            output.flush();
+            return sourceMapBuilder;
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private static void writeSourceMap(@NotNull SourceMap3Builder sourceMapBuilder, @NotNull File mappingsFile, @NotNull File sourceMapFile)
+            throws IOException {
+        Writer writer = createFileWriter(sourceMapFile);
+        try {
+            Reader mappings = new BufferedReader(new InputStreamReader(new FileInputStream(mappingsFile), CharsetToolkit.UTF8_CHARSET));
+            try {
+                sourceMapBuilder.writeMap(writer, mappings);
+            }
+            finally {
+                mappings.close();
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    @NotNull
+    private static File createTempFile(@NotNull File dir, @NotNull File outFile, @NotNull List<File> tempFiles) throws IOException {
+        // In the output directory, so that it can be renamed to the output file
+        File file = File.createTempFile("." + outFile.getName() + ".", ".tmp", dir);
+        tempFiles.add(file);
+        return file;
+    }
+
+    private static void replace(@NotNull File from, @NotNull File to) throws IOException {
+        // renameTo() doesn't replace existing files on some platforms
+        if (!from.renameTo(to)) {
+            FileUtil.copy(from, to);
+        }
+    }
+
+    @NotNull
+    private static Writer createFileWriter(@NotNull File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), CharsetToolkit.UTF8_CHARSET));
     }
 
     @NotNull
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.serialize;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.descriptors.serialization.*;
+import org.jetbrains.jet.descriptors.serialization.descriptors.AnnotationDeserializer;
+import org.jetbrains.jet.descriptors.serialization.descriptors.AnnotationDeserializer.AnnotatedCallableKind;
+import org.jetbrains.jet.descriptors.serialization.descriptors.DeserializedPackageMemberScope;
+import org.jetbrains.jet.lang.PlatformToKotlinClassMap;
+import org.jetbrains.jet.lang.descriptors.*;
+import org.jetbrains.jet.lang.descriptors.annotations.AnnotationDescriptor;
+import org.jetbrains.jet.lang.descriptors.impl.AbstractNamespaceDescriptorImpl;
+import org.jetbrains.jet.lang.descriptors.impl.NamespaceDescriptorParent;
+import org.jetbrains.jet.lang.resolve.DescriptorUtils;
+import org.jetbrains.jet.lang.resolve.ImportPath;
+import org.jetbrains.jet.lang.resolve.constants.StringValue;
+import org.jetbrains.jet.lang.resolve.lazy.storage.LockBasedStorageManager;
+import org.jetbrains.jet.lang.resolve.lazy.storage.StorageManager;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.resolve.name.Name;
+import org.jetbrains.jet.lang.resolve.scopes.JetScope;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Descriptors of a JS library read from the file written by {@link JsLibraryMetadataSerializer}.
+ * Packages of the library are created when the library is loaded, and their members are deserialized lazily.
+ */
+public class DeserializedJsLibrary {
+    @NotNull
+    private final JsLibraryDescriptors libraries;
+    @NotNull
+    private final String externalModuleName;
+
+    private final StorageManager storageManager = new LockBasedStorageManager();
+    private final NameResolver nameResolver;
+
+    private final Map<FqName, ProtoBuf.Package> packageProtos = new HashMap<FqName, ProtoBuf.Package>();
+    private final Map<ClassId, ProtoBuf.Class> classProtos = new HashMap<ClassId, ProtoBuf.Class>();
+    private final Map<FqName, List<Name>> classNames = new HashMap<FqName, List<Name>>();
+
+    private final Map<ClassId, List<SerializedAnnotation>> classAnnotations = new HashMap<ClassId, List<SerializedAnnotation>>();
+    private final Map<CallableKey, List<SerializedAnnotation>> callableAnnotations = new HashMap<CallableKey, List<SerializedAnnotation>>();
+
+    private final AnnotationDeserializer annotationDeserializer = new LibraryAnnotationDeserializer();
+    private final Finder finder = new Finder();
+    private final Map<FqName, LibraryNamespaceDescriptor> namespaces = new HashMap<FqName, LibraryNamespaceDescriptor>();
+
+    /* package */ DeserializedJsLibrary(
+            @NotNull JsLibraryDescriptors libraries,
+            @NotNull String externalModuleName,
+            @NotNull InputStream stream
+    ) throws IOException {
+        this.libraries = libraries;
+        this.externalModuleName = externalModuleName;
+
+        DataInputStream in = new DataInputStream(stream);
+        int version = in.readInt();
+        if (version != JsLibraryMetadataSerializer.FORMAT_VERSION) {
+            throw new IOException("Unsupported version of library metadata: " + version);
+        }
+
+        nameResolver = NameSerializationUtil.deserializeNameResolver(in);
+        readPackages(in);
+        readAnnotations(in);
+
+        createNamespaces();
+    }
+
+    @NotNull
+    public String getExternalModuleName() {
+        return externalModuleName;
+    }
+
+    /**
+     * @return the package of the library, or null if it has no declarations in this package or in its subpackages
+     */
+    @Nullable
+    public NamespaceDescriptor getPackage(@NotNull FqName fqName) {
+        return namespaces.get(fqName);
+    }
+
+    /**
+     * @return the class declared in this library, or null if there is no such class
+     */
+    @Nullable
+    /* package */ ClassDescriptor findOwnClass(@NotNull ClassId classId) {
+        return classProtos.containsKey(classId) ? finder.findClass(classId) : null;
+    }
+
+    private void readPackages(@NotNull DataInputStream in) throws IOException {
+        int packageCount = in.readInt();
+        for (int i = 0; i < packageCount; i++) {
+            int fqNameIndex = in.readInt();
+            FqName packageFqName = fqNameIndex == -1 ? FqName.ROOT : nameResolver.getFqName(fqNameIndex);
+            packageProtos.put(packageFqName, ProtoBuf.Package.parseDelimitedFrom(in));
+
+            List<Name> packageClassNames = new ArrayList<Name>();
+            int classCount = in.readInt();
+            for (int j = 0; j < classCount; j++) {
+                ClassId classId = nameResolver.getClassId(in.readInt());
+                classProtos.put(classId, ProtoBuf.Class.parseDelimitedFrom(in));
+                if (classId.isTopLevelClass()) {
+                    packageClassNames.add(classId.getRelativeClassName().shortName());
+                }
+            }
+            classNames.put(packageFqName, packageClassNames);
+        }
+    }
+
+    private void readAnnotations(@NotNull DataInputStream in) throws IOException {
+        int classCount = in.readInt();
+        for (int i = 0; i < classCount; i++) {
+            ClassId classId = nameResolver.getClassId(in.readInt());
+            classAnnotations.put(classId, readAnnotationList(in));
+        }
+
+        int callableCount = in.readInt();
+        for (int i = 0; i < callableCount; i++) {
+            String containerKey = in.readUTF();
+            AnnotatedCallableKind kind = AnnotatedCallableKind.values()[in.readByte()];
+            byte[] protoBytes = new byte[in.readInt()];
+            in.readFully(protoBytes);
+            callableAnnotations.put(new CallableKey(containerKey, kind, protoBytes), readAnnotationList(in));
+        }
+    }
+
+    @NotNull
+    private List<SerializedAnnotation> readAnnotationList(@NotNull DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<SerializedAnnotation> result = new ArrayList<SerializedAnnotation>(count);
+        for (int i = 0; i < count; i++) {
+            ClassId annotationClassId = nameResolver.getClassId(in.readInt());
+            int argumentCount = in.readInt();
+            Map<Name, String> arguments = new LinkedHashMap<Name, String>();
+            for (int j = 0; j < argumentCount; j++) {
+                arguments.put(nameResolver.getName(in.readInt()), in.readUTF());
+            }
+            result.add(new SerializedAnnotation(annotationClassId, arguments));
+        }
+        return result;
+    }
+
+    private void createNamespaces() {
+        ModuleDescriptorImpl module = new ModuleDescriptorImpl(Name.special("<js library " + externalModuleName + ">"),
+                                                               Collections.<ImportPath>emptyList(), PlatformToKotlinClassMap.EMPTY);
+        LibraryNamespaceDescriptor root = new LibraryNamespaceDescriptor(module, DescriptorUtils.ROOT_NAMESPACE_NAME, FqName.ROOT);
+        module.setRootNamespace(root);
+        namespaces.put(FqName.ROOT, root);
+
+        // Packages without declarations are created as well, so that declarations in their subpackages can be reached
+        for (FqName packageFqName : packageProtos.keySet()) {
+            getOrCreateNamespace(packageFqName);
+        }
+    }
+
+    @NotNull
+    private LibraryNamespaceDescriptor getOrCreateNamespace(@NotNull FqName fqName) {
+        LibraryNamespaceDescriptor namespace = namespaces.get(fqName);
+        if (namespace == null) {
+            LibraryNamespaceDescriptor parent = getOrCreateNamespace(fqName.parent());
+            namespace = new LibraryNamespaceDescriptor(parent, fqName.shortName(), fqName);
+            namespaces.put(fqName, namespace);
+        }
+        return namespace;
+    }
+
+    @NotNull
+    private List<AnnotationDescriptor> createAnnotations(@Nullable List<SerializedAnnotation> serializedAnnotations) {
+        if (serializedAnnotations == null) return Collections.emptyList();
+
+        List<AnnotationDescriptor> result = new ArrayList<AnnotationDescriptor>(serializedAnnotations.size());
+        for (SerializedAnnotation serializedAnnotation : serializedAnnotations) {
+            ClassDescriptor annotationClass = finder.findClass(serializedAnnotation.classId);
+            // The translator doesn't know annotations of unavailable classes anyway
+            if (annotationClass == null) continue;
+
+            AnnotationDescriptor annotation = new AnnotationDescriptor();
+            annotation.setAnnotationType(annotationClass.getDefaultType());
+            for (Map.Entry<Name, String> argument : serializedAnnotation.arguments.entrySet()) {
+                ValueParameterDescriptor parameter = getAnnotationParameter(annotationClass, argument.getKey());
+                if (parameter != null) {
+                    annotation.setValueArgument(parameter, new StringValue(argument.getValue()));
+                }
+            }
+            result.add(annotation);
+        }
+        return result;
+    }
+
+    @Nullable
+    private static ValueParameterDescriptor getAnnotationParameter(@NotNull ClassDescriptor annotationClass, @NotNull Name name) {
+        for (ConstructorDescriptor constructor : annotationClass.getConstructors()) {
+            for (ValueParameterDescriptor parameter : constructor.getValueParameters()) {
+                if (parameter.getName().equals(name)) {
+                    return parameter;
+                }
+            }
+        }
+        return null;
+    }
+
+    /* package */ class LibraryNamespaceDescriptor extends AbstractNamespaceDescriptorImpl {
+        private final FqName fqName;
+        private final JetScope memberScope;
+
+        private LibraryNamespaceDescriptor(@NotNull NamespaceDescriptorParent containingDeclaration, @NotNull Name name, @NotNull FqName fqName) {
+            super(containingDeclaration, Collections.<AnnotationDescriptor>emptyList(), name);
+            this.fqName = fqName;
+
+            ProtoBuf.Package packageProto = packageProtos.get(fqName);
+            memberScope = new DeserializedPackageMemberScope(
+                    storageManager, this, annotationDeserializer, finder,
+                    packageProto != null ? packageProto : ProtoBuf.Package.getDefaultInstance(), nameResolver);
+        }
+
+        @NotNull
+        public DeserializedJsLibrary getLibrary() {
+            return DeserializedJsLibrary.this;
+        }
+
+        @NotNull
+        @Override
+        public JetScope getMemberScope() {
+            return memberScope;
+        }
+
+        @NotNull
+        @Override
+        public FqName getFqName() {
+            return fqName;
+        }
+    }
+
+    private class Finder extends AbstractDescriptorFinder {
+        public Finder() {
+            super(storageManager, annotationDeserializer);
+        }
+
+        @Nullable
+        @Override
+        public ClassDescriptor findClass(@NotNull ClassId classId) {
+            ClassDescriptor descriptor = super.findClass(classId);
+            return descriptor != null ? descriptor : libraries.findClass(classId, DeserializedJsLibrary.this);
+        }
+
+        @Nullable
+        @Override
+        protected ClassData getClassData(@NotNull ClassId classId) {
+            ProtoBuf.Class classProto = classProtos.get(classId);
+            return classProto != null ? new ClassData(nameResolver, classProto) : null;
+        }
+
+        @Nullable
+        @Override
+        public NamespaceDescriptor findPackage(@NotNull FqName fqName) {
+            return namespaces.get(fqName);
+        }
+
+        @NotNull
+        @Override
+        public Collection<Name> getClassNames(@NotNull FqName packageName) {
+            List<Name> names = classNames.get(packageName);
+            return names != null ? names : Collections.<Name>emptyList();
+        }
+    }
+
+    private class LibraryAnnotationDeserializer implements AnnotationDeserializer {
+        @NotNull
+        @Override
+        public List<AnnotationDescriptor> loadClassAnnotations(@NotNull ClassDescriptor descriptor, @NotNull ProtoBuf.Class classProto) {
+            return createAnnotations(classAnnotations.get(ClassSerializationUtil.getClassId(descriptor)));
+        }
+
+        @NotNull
+        @Override
+        public List<AnnotationDescriptor> loadCallableAnnotations(
+                @NotNull ClassOrNamespaceDescriptor container,
+                @NotNull ProtoBuf.Callable proto,
+                @NotNull NameResolver nameResolver,
+                @NotNull AnnotatedCallableKind kind
+        ) {
+            String containerKey = JsLibraryMetadataSerializer.getContainerKey(container);
+            return createAnnotations(callableAnnotations.get(new CallableKey(containerKey, kind, proto.toByteArray())));
+        }
+
+        @NotNull
+        @Override
+        public List<AnnotationDescriptor> loadValueParameterAnnotations(@NotNull ProtoBuf.Callable.ValueParameter parameterProto) {
+            // Annotations of parameters are not written
+            return Collections.emptyList();
+        }
+    }
+
+    private static class SerializedAnnotation {
+        private final ClassId classId;
+        private final Map<Name, String> arguments;
+
+        private SerializedAnnotation(@NotNull ClassId classId, @NotNull Map<Name, String> arguments) {
+            this.classId = classId;
+            this.arguments = arguments;
+        }
+    }
+
+    private static class CallableKey {
+        private final String containerKey;
+        private final AnnotatedCallableKind kind;
+        private final byte[] protoBytes;
+
+        private CallableKey(@NotNull String containerKey, @NotNull AnnotatedCallableKind kind, @NotNull byte[] protoBytes) {
+            this.containerKey = containerKey;
+            this.kind = kind;
+            this.protoBytes = protoBytes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CallableKey)) return false;
+            CallableKey other = (CallableKey) o;
+            return containerKey.equals(other.containerKey) && kind == other.kind && Arrays.equals(protoBytes, other.protoBytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * containerKey.hashCode() + kind.hashCode()) + Arrays.hashCode(protoBytes);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.serialize;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.descriptors.serialization.ClassId;
+import org.jetbrains.jet.lang.descriptors.*;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.resolve.name.Name;
+import org.jetbrains.jet.lang.resolve.scopes.JetScope;
+import org.jetbrains.jet.lang.types.lang.KotlinBuiltIns;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precompiled JS libraries used by the analysis instead of their sources. Libraries can refer to classes of each other,
+ * to built-in classes and to classes of the module compiled against them, which include those of the JS standard library
+ * (e.g. annotation classes).
+ */
+public class JsLibraryDescriptors {
+    private final List<DeserializedJsLibrary> libraries = new ArrayList<DeserializedJsLibrary>();
+
+    @Nullable
+    private ModuleDescriptor sourceModule = null;
+
+    public void load(@NotNull File file, @NotNull String externalModuleName) throws IOException {
+        InputStream stream = new BufferedInputStream(new FileInputStream(file));
+        try {
+            libraries.add(new DeserializedJsLibrary(this, externalModuleName, stream));
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * @param module the module compiled against the libraries, classes which are not declared in the libraries are looked up there
+     */
+    public void setSourceModule(@NotNull ModuleDescriptor module) {
+        sourceModule = module;
+    }
+
+    public boolean isEmpty() {
+        return libraries.isEmpty();
+    }
+
+    /**
+     * @return packages with the given name of all libraries which have it
+     */
+    @NotNull
+    public List<NamespaceDescriptor> getPackages(@NotNull FqName fqName) {
+        List<NamespaceDescriptor> result = new ArrayList<NamespaceDescriptor>();
+        for (DeserializedJsLibrary library : libraries) {
+            NamespaceDescriptor namespace = library.getPackage(fqName);
+            if (namespace != null) {
+                result.add(namespace);
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    /* package */ ClassDescriptor findClass(@NotNull ClassId classId, @NotNull DeserializedJsLibrary requestingLibrary) {
+        for (DeserializedJsLibrary library : libraries) {
+            if (library == requestingLibrary) continue;
+
+            ClassDescriptor descriptor = library.findOwnClass(classId);
+            if (descriptor != null) return descriptor;
+        }
+
+        if (classId.getPackageFqName().equals(KotlinBuiltIns.BUILT_INS_PACKAGE_FQ_NAME)) {
+            return findClassInPackage(KotlinBuiltIns.getInstance().getBuiltInsScope(), classId);
+        }
+        return findSourceClass(classId);
+    }
+
+    @Nullable
+    private ClassDescriptor findSourceClass(@NotNull ClassId classId) {
+        NamespaceDescriptor namespace = sourceModule != null ? sourceModule.getNamespace(classId.getPackageFqName()) : null;
+        return namespace != null ? findClassInPackage(namespace.getMemberScope(), classId) : null;
+    }
+
+    @Nullable
+    private static ClassDescriptor findClassInPackage(@NotNull JetScope packageScope, @NotNull ClassId classId) {
+        ClassDescriptor result = null;
+        for (Name name : classId.getRelativeClassName().pathSegments()) {
+            if (result == null) {
+                result = findClass(packageScope, name);
+            }
+            else if (name.isSpecial()) {
+                result = result.getClassObjectDescriptor();
+            }
+            else {
+                result = findClass(result.getUnsubstitutedInnerClassesScope(), name);
+            }
+            if (result == null) return null;
+        }
+        return result;
+    }
+
+    @Nullable
+    private static ClassDescriptor findClass(@NotNull JetScope scope, @NotNull Name name) {
+        ClassifierDescriptor classifier = scope.getClassifier(name);
+        return classifier instanceof ClassDescriptor ? (ClassDescriptor) classifier : scope.getObjectDescriptor(name);
+    }
+
+    /**
+     * @return name of the external module of the precompiled library declaring the descriptor,
+     *         or null if the descriptor does not come from such a library
+     */
+    @Nullable
+    public static String getExternalModuleName(@NotNull DeclarationDescriptor descriptor) {
+        for (DeclarationDescriptor current = descriptor; current != null; current = current.getContainingDeclaration()) {
+            if (current instanceof DeserializedJsLibrary.LibraryNamespaceDescriptor) {
+                return ((DeserializedJsLibrary.LibraryNamespaceDescriptor) current).getLibrary().getExternalModuleName();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.serialize;
+
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.descriptors.serialization.*;
+import org.jetbrains.jet.descriptors.serialization.descriptors.AnnotationDeserializer.AnnotatedCallableKind;
+import org.jetbrains.jet.lang.descriptors.*;
+import org.jetbrains.jet.lang.descriptors.annotations.Annotated;
+import org.jetbrains.jet.lang.descriptors.annotations.AnnotationDescriptor;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.BindingContextUtils;
+import org.jetbrains.jet.lang.resolve.DescriptorUtils;
+import org.jetbrains.jet.lang.resolve.constants.CompileTimeConstant;
+import org.jetbrains.jet.lang.resolve.constants.StringValue;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Writes descriptors declared in the files of a JS library, so that the library can be used by {@link DeserializedJsLibrary}
+ * instead of its sources.
+ *
+ * File format: format version, the name table, number of packages, then for every package its fq name, the package proto and
+ * its classes (fq name and the class proto), and then annotations of classes and callables.
+ * Protos are written delimited, and all of them refer to the same name table.
+ *
+ * Callables have no identity in protos, so their annotations are keyed by the serialized callable proto itself.
+ * Only String arguments of annotations are written: that is what the JS translator reads from them.
+ */
+public final class JsLibraryMetadataSerializer {
+    public static final String FILE_EXTENSION = ".kjsm";
+
+    /* package */ static final int FORMAT_VERSION = 1;
+
+    private JsLibraryMetadataSerializer() {
+    }
+
+    public static void serialize(
+            @NotNull BindingContext bindingContext,
+            @NotNull Collection<JetFile> files,
+            @NotNull OutputStream out
+    ) throws IOException {
+        Set<JetFile> fileSet = new HashSet<JetFile>(files);
+        Set<NamespaceDescriptor> packages = new LinkedHashSet<NamespaceDescriptor>();
+        for (JetFile file : files) {
+            NamespaceDescriptor namespace = bindingContext.get(BindingContext.FILE_TO_NAMESPACE, file);
+            assert namespace != null : "No namespace for " + file.getName();
+            packages.add(namespace);
+        }
+
+        AnnotationCollector annotations = new AnnotationCollector();
+        DescriptorSerializer serializer = new DescriptorSerializer(annotations);
+
+        // Indices of the name table are only known when all protos are built, so the table goes before the rest of the file
+        ByteArrayOutputStream bodyStream = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyStream);
+
+        body.writeInt(packages.size());
+        for (NamespaceDescriptor namespace : packages) {
+            body.writeInt(getPackageFqNameIndex(serializer, namespace));
+
+            ProtoBuf.Package.Builder packageProto = ProtoBuf.Package.newBuilder();
+            List<ClassDescriptor> classes = new ArrayList<ClassDescriptor>();
+            for (DeclarationDescriptor member : DescriptorSerializer.sort(namespace.getMemberScope().getAllDescriptors())) {
+                // Namespace scopes of the analyzed module contain declarations from other files and libraries too
+                if (!isDeclaredIn(bindingContext, member, fileSet)) continue;
+
+                if (member instanceof PropertyDescriptor || member instanceof FunctionDescriptor) {
+                    packageProto.addMember(serializer.callableProto((CallableMemberDescriptor) member));
+                }
+                else if (member instanceof ClassDescriptor) {
+                    classes.add((ClassDescriptor) member);
+                }
+            }
+            for (ClassDescriptor object : DescriptorSerializer.sort(namespace.getMemberScope().getObjectDescriptors())) {
+                if (isDeclaredIn(bindingContext, object, fileSet)) {
+                    classes.add(object);
+                }
+            }
+            packageProto.build().writeDelimitedTo(body);
+
+            final List<ClassDescriptor> allClasses = new ArrayList<ClassDescriptor>();
+            final List<ProtoBuf.Class> classProtos = new ArrayList<ProtoBuf.Class>();
+            ClassSerializationUtil.serializeClasses(classes, serializer, new ClassSerializationUtil.Sink() {
+                @Override
+                public void writeClass(@NotNull ClassDescriptor classDescriptor, @NotNull ProtoBuf.Class classProto) {
+                    allClasses.add(classDescriptor);
+                    classProtos.add(classProto);
+                }
+            });
+
+            body.writeInt(allClasses.size());
+            for (int i = 0; i < allClasses.size(); i++) {
+                ClassDescriptor classDescriptor = allClasses.get(i);
+                body.writeInt(serializer.getNameTable().getFqNameIndex(classDescriptor));
+                classProtos.get(i).writeDelimitedTo(body);
+                annotations.addClass(classDescriptor);
+            }
+        }
+
+        annotations.write(body, serializer.getNameTable());
+        body.close();
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(FORMAT_VERSION);
+        NameSerializationUtil.serializeNameTable(data, serializer.getNameTable());
+        bodyStream.writeTo(data);
+        data.flush();
+    }
+
+    private static int getPackageFqNameIndex(@NotNull DescriptorSerializer serializer, @NotNull NamespaceDescriptor namespace) {
+        FqName fqName = ClassSerializationUtil.getPackageFqName(namespace);
+        return fqName.isRoot() ? -1 : serializer.getNameTable().getFqNameIndex(fqName);
+    }
+
+    private static boolean isDeclaredIn(
+            @NotNull BindingContext bindingContext,
+            @NotNull DeclarationDescriptor descriptor,
+            @NotNull Set<JetFile> files
+    ) {
+        PsiElement declaration = BindingContextUtils.descriptorToDeclaration(bindingContext, descriptor);
+        //noinspection SuspiciousMethodCalls
+        return declaration != null && files.contains(declaration.getContainingFile());
+    }
+
+    @NotNull
+    /* package */ static String getContainerKey(@NotNull DeclarationDescriptor container) {
+        String kind = container instanceof ClassDescriptor ? "class " : "package ";
+        return kind + DescriptorUtils.getFQName(container).asString();
+    }
+
+    private static class AnnotationCollector extends SerializerExtension {
+        private final Map<ClassDescriptor, List<AnnotationDescriptor>> classAnnotations =
+                new LinkedHashMap<ClassDescriptor, List<AnnotationDescriptor>>();
+        private final List<CallableAnnotations> callableAnnotations = new ArrayList<CallableAnnotations>();
+
+        @Override
+        public void serializeCallable(
+                @NotNull CallableMemberDescriptor callable,
+                @NotNull ProtoBuf.Callable.Builder proto,
+                @NotNull NameTable nameTable
+        ) {
+            // The extension is called when the proto is complete
+            byte[] protoBytes = proto.clone().build().toByteArray();
+            String containerKey = getContainerKey(callable.getContainingDeclaration());
+
+            if (callable instanceof PropertyDescriptor) {
+                PropertyDescriptor property = (PropertyDescriptor) callable;
+                addCallable(containerKey, AnnotatedCallableKind.PROPERTY, protoBytes, callable);
+                if (property.getGetter() != null) {
+                    addCallable(containerKey, AnnotatedCallableKind.PROPERTY_GETTER, protoBytes, property.getGetter());
+                }
+                if (property.getSetter() != null) {
+                    addCallable(containerKey, AnnotatedCallableKind.PROPERTY_SETTER, protoBytes, property.getSetter());
+                }
+            }
+            else {
+                addCallable(containerKey, AnnotatedCallableKind.FUNCTION, protoBytes, callable);
+            }
+        }
+
+        private void addCallable(
+                @NotNull String containerKey,
+                @NotNull AnnotatedCallableKind kind,
+                @NotNull byte[] protoBytes,
+                @NotNull Annotated annotated
+        ) {
+            if (!annotated.getAnnotations().isEmpty()) {
+                callableAnnotations.add(new CallableAnnotations(containerKey, kind, protoBytes, annotated.getAnnotations()));
+            }
+        }
+
+        public void addClass(@NotNull ClassDescriptor classDescriptor) {
+            if (!classDescriptor.getAnnotations().isEmpty()) {
+                classAnnotations.put(classDescriptor, classDescriptor.getAnnotations());
+            }
+        }
+
+        public void write(@NotNull DataOutputStream out, @NotNull NameTable nameTable) throws IOException {
+            out.writeInt(classAnnotations.size());
+            for (Map.Entry<ClassDescriptor, List<AnnotationDescriptor>> entry : classAnnotations.entrySet()) {
+                out.writeInt(nameTable.getFqNameIndex(entry.getKey()));
+                writeAnnotations(out, nameTable, entry.getValue());
+            }
+
+            out.writeInt(callableAnnotations.size());
+            for (CallableAnnotations entry : callableAnnotations) {
+                out.writeUTF(entry.containerKey);
+                out.writeByte(entry.kind.ordinal());
+                out.writeInt(entry.protoBytes.length);
+                out.write(entry.protoBytes);
+                writeAnnotations(out, nameTable, entry.annotations);
+            }
+        }
+
+        private static void writeAnnotations(
+                @NotNull DataOutputStream out,
+                @NotNull NameTable nameTable,
+                @NotNull List<AnnotationDescriptor> annotations
+        ) throws IOException {
+            List<AnnotationDescriptor> written = new ArrayList<AnnotationDescriptor>();
+            for (AnnotationDescriptor annotation : annotations) {
+                if (annotation.getType().getConstructor().getDeclarationDescriptor() instanceof ClassDescriptor) {
+                    written.add(annotation);
+                }
+            }
+
+            out.writeInt(written.size());
+            for (AnnotationDescriptor annotation : written) {
+                ClassDescriptor annotationClass = (ClassDescriptor) annotation.getType().getConstructor().getDeclarationDescriptor();
+                assert annotationClass != null;
+                out.writeInt(nameTable.getFqNameIndex(annotationClass));
+
+                Map<ValueParameterDescriptor, String> arguments = new LinkedHashMap<ValueParameterDescriptor, String>();
+                for (Map.Entry<ValueParameterDescriptor, CompileTimeConstant<?>> argument : annotation.getAllValueArguments().entrySet()) {
+                    if (argument.getValue() instanceof StringValue) {
+                        arguments.put(argument.getKey(), ((StringValue) argument.getValue()).getValue());
+                    }
+                }
+
+                out.writeInt(arguments.size());
+                for (Map.Entry<ValueParameterDescriptor, String> argument : arguments.entrySet()) {
+                    out.writeInt(nameTable.getSimpleNameIndex(argument.getKey().getName()));
+                    out.writeUTF(argument.getValue());
+                }
+            }
+        }
+    }
+
+    private static class CallableAnnotations {
+        private final String containerKey;
+        private final AnnotatedCallableKind kind;
+        private final byte[] protoBytes;
+        private final List<AnnotationDescriptor> annotations;
+
+        private CallableAnnotations(
+                @NotNull String containerKey,
+                @NotNull AnnotatedCallableKind kind,
+                @NotNull byte[] protoBytes,
+                @NotNull List<AnnotationDescriptor> annotations
+        ) {
+            this.containerKey = containerKey;
+            this.kind = kind;
+            this.protoBytes = protoBytes;
+            this.annotations = annotations;
+        }
+    }
+}
@@ -48,6 +48,8 @@ public final class Namer {
     private static final String ROOT_NAMESPACE = "_";
     private static final String RECEIVER_PARAMETER_NAME = "$receiver";
     private static final String CLASSES_OBJECT_NAME = "_c";
+    private static final String DEFINE_PACKAGE = "definePackage";
+    private static final String DEFINE_ROOT_PACKAGE = "defineRootPackage";
     private static final String THROW_NPE_FUN_NAME = "throwNPE";
     private static final String CLASS_OBJECT_GETTER = "object";
     private static final String CLASS_OBJECT_INITIALIZER = "object_initializer$";
@@ -84,6 +86,10 @@ public final class Namer {
         return CLASSES_OBJECT_NAME;
     }
 
+    public static boolean isPackageDefinitionMethodName(@NotNull String name) {
+        return name.equals(DEFINE_PACKAGE) || name.equals(DEFINE_ROOT_PACKAGE);
+    }
+
     @NotNull
     public static String getNameForAccessor(@NotNull String propertyName, boolean isGetter, boolean useNativeAccessor) {
         if (useNativeAccessor) {
@@ -173,8 +179,8 @@ public final class Namer {
         kotlinScope = new JsScope(rootScope, "Kotlin standard object");
         traitName = kotlinScope.declareName(TRAIT_OBJECT_NAME);
 
-        definePackage = kotlin("definePackage");
-        defineRootPackage = kotlin("defineRootPackage");
+        definePackage = kotlin(DEFINE_PACKAGE);
+        defineRootPackage = kotlin(DEFINE_ROOT_PACKAGE);
 
         className = kotlinScope.declareName(CLASS_OBJECT_NAME);
         enumEntriesName = kotlinScope.declareName(ENUM_ENTRIES_NAME);
@@ -19,7 +19,6 @@ package org.jetbrains.k2js.translate.context;
 import com.google.common.collect.Maps;
 import com.google.dart.compiler.backend.js.ast.*;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.descriptors.*;
@@ -28,6 +27,7 @@ import org.jetbrains.jet.lang.resolve.BindingContextUtils;
 import org.jetbrains.jet.lang.resolve.DescriptorUtils;
 import org.jetbrains.k2js.config.EcmaVersion;
 import org.jetbrains.k2js.config.LibrarySourcesConfig;
+import org.jetbrains.k2js.serialize.JsLibraryDescriptors;
 import org.jetbrains.k2js.translate.context.generator.Generator;
 import org.jetbrains.k2js.translate.context.generator.Rule;
 import org.jetbrains.k2js.translate.declaration.ClassDeclarationTranslator;
@@ -482,15 +482,14 @@ public final class StaticContext {
                                 .getCorrespondingProperty());
                     }
 
-                    if (element != null) {
-                        PsiFile file = element.getContainingFile();
-                        String moduleName = file.getUserData(LibrarySourcesConfig.EXTERNAL_MODULE_NAME);
-                        if (LibrarySourcesConfig.UNKNOWN_EXTERNAL_MODULE_NAME.equals(moduleName)) {
-                            return null;
-                        }
-                        else if (moduleName != null) {
-                            qualifier.setQualifier(new JsArrayAccess(namer.kotlin("modules"), program.getStringLiteral(moduleName)));
-                        }
+                    String moduleName = element != null
+                                        ? element.getContainingFile().getUserData(LibrarySourcesConfig.EXTERNAL_MODULE_NAME)
+                                        : JsLibraryDescriptors.getExternalModuleName(descriptor);
+                    if (LibrarySourcesConfig.UNKNOWN_EXTERNAL_MODULE_NAME.equals(moduleName)) {
+                        return null;
+                    }
+                    else if (moduleName != null) {
+                        qualifier.setQualifier(new JsArrayAccess(namer.kotlin("modules"), program.getStringLiteral(moduleName)));
                     }
 
                     if (qualifier.getQualifier() == null) {
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.translate.general;
+
+import com.google.dart.compiler.backend.js.ast.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.k2js.translate.context.Namer;
+
+import java.util.*;
+
+import static com.google.dart.compiler.backend.js.ast.JsVars.JsVar;
+
+/**
+ * Removes declarations which can't be reached from the rest of the program: functions, classes and subpackages defined
+ * as members of packages, and classes of the classes object. Class members, properties and initializers of packages are
+ * always kept, so is every statement of the program which is not such a declaration.
+ *
+ * Members are accessed by name, often through a qualifier which can't be resolved statically, so a declaration is
+ * reachable if any reachable code refers to its name, whatever the qualifier is. Names of exported declarations are
+ * considered referenced. Code outside of the program, including the runtime library, is not analyzed, so the program
+ * shouldn't be used by other modules except through the exported declarations.
+ */
+public final class DeadCodeEliminator {
+    private final Set<String> referencedNames = new HashSet<String>();
+    private final Map<String, List<Definition>> unreachableDefinitions = new HashMap<String, List<Definition>>();
+    private final Queue<JsNode> nodesToVisit = new ArrayDeque<JsNode>();
+
+    private final List<List<JsPropertyInitializer>> definitionLists = new ArrayList<List<JsPropertyInitializer>>();
+    private final Map<JsVars, List<JsStatement>> definitionVars = new LinkedHashMap<JsVars, List<JsStatement>>();
+
+    private final ReferenceCollector collector = new ReferenceCollector();
+
+    public static void eliminate(@NotNull JsProgram program, @NotNull Collection<String> exportedFqNames) {
+        new DeadCodeEliminator().doEliminate(program, exportedFqNames);
+    }
+
+    private DeadCodeEliminator() {
+    }
+
+    private void doEliminate(@NotNull JsProgram program, @NotNull Collection<String> exportedFqNames) {
+        for (String fqName : exportedFqNames) {
+            // Packages of exported declarations must be kept too
+            for (String name : fqName.split("\\.")) {
+                reference(name);
+            }
+        }
+
+        nodesToVisit.add(program);
+        while (!nodesToVisit.isEmpty()) {
+            nodesToVisit.poll().accept(collector);
+        }
+
+        removeUnreachableDefinitions();
+    }
+
+    private void reference(@Nullable String name) {
+        if (name == null || !referencedNames.add(name)) return;
+
+        List<Definition> definitions = unreachableDefinitions.remove(name);
+        if (definitions != null) {
+            for (Definition definition : definitions) {
+                nodesToVisit.add(definition.value);
+            }
+        }
+    }
+
+    private void define(@NotNull String name, @NotNull JsNode node, @NotNull JsExpression value) {
+        if (referencedNames.contains(name)) {
+            nodesToVisit.add(value);
+            return;
+        }
+
+        List<Definition> definitions = unreachableDefinitions.get(name);
+        if (definitions == null) {
+            definitions = new ArrayList<Definition>(1);
+            unreachableDefinitions.put(name, definitions);
+        }
+        definitions.add(new Definition(node, value));
+    }
+
+    private void defineMembers(@NotNull List<JsPropertyInitializer> members) {
+        definitionLists.add(members);
+        for (JsPropertyInitializer member : members) {
+            String name = getLabelName(member.getLabelExpr());
+            JsExpression value = member.getValueExpr();
+            if (name != null && isRemovableValue(value)) {
+                define(name, member, value);
+            }
+            else {
+                nodesToVisit.add(value);
+            }
+        }
+    }
+
+    private void defineClasses(@NotNull JsExpression classes) {
+        if (classes instanceof JsObjectLiteral) {
+            defineMembers(((JsObjectLiteral) classes).getPropertyInitializers());
+            return;
+        }
+
+        // function() { var A = ..., B = ...; return {A: A, B: B}; }()
+        if (classes instanceof JsInvocation && ((JsInvocation) classes).getQualifier() instanceof JsFunction) {
+            List<JsStatement> statements = ((JsFunction) ((JsInvocation) classes).getQualifier()).getBody().getStatements();
+            for (JsStatement statement : statements) {
+                if (statement instanceof JsVars) {
+                    definitionVars.put((JsVars) statement, statements);
+                    for (JsVar var : (JsVars) statement) {
+                        JsExpression value = var.getInitExpression();
+                        if (value != null) {
+                            define(var.getName().getIdent(), var, value);
+                        }
+                    }
+                }
+                else if (statement instanceof JsReturn && ((JsReturn) statement).getExpression() instanceof JsObjectLiteral) {
+                    defineMembers(((JsObjectLiteral) ((JsReturn) statement).getExpression()).getPropertyInitializers());
+                }
+                else {
+                    nodesToVisit.add(statement);
+                }
+            }
+            return;
+        }
+
+        nodesToVisit.add(classes);
+    }
+
+    private void removeUnreachableDefinitions() {
+        Set<JsNode> unreachable = new HashSet<JsNode>();
+        for (List<Definition> definitions : unreachableDefinitions.values()) {
+            for (Definition definition : definitions) {
+                unreachable.add(definition.node);
+            }
+        }
+        if (unreachable.isEmpty()) return;
+
+        for (List<JsPropertyInitializer> members : definitionLists) {
+            List<JsPropertyInitializer> reachable = new ArrayList<JsPropertyInitializer>(members.size());
+            for (JsPropertyInitializer member : members) {
+                if (!unreachable.contains(member)) {
+                    reachable.add(member);
+                }
+            }
+            if (reachable.size() != members.size()) {
+                members.clear();
+                members.addAll(reachable);
+            }
+        }
+
+        for (Map.Entry<JsVars, List<JsStatement>> entry : definitionVars.entrySet()) {
+            JsVars vars = entry.getKey();
+            JsVars reachable = new JsVars(vars.isMultiline());
+            for (JsVar var : vars) {
+                if (!unreachable.contains(var)) {
+                    reachable.add(var);
+                }
+            }
+
+            List<JsStatement> statements = entry.getValue();
+            int index = statements.indexOf(vars);
+            if (reachable.isEmpty()) {
+                statements.remove(index);
+            }
+            else {
+                statements.set(index, reachable);
+            }
+        }
+    }
+
+    @Nullable
+    private static String getLabelName(@NotNull JsExpression label) {
+        if (label instanceof JsNameRef) {
+            return ((JsNameRef) label).getIdent();
+        }
+        if (label instanceof JsStringLiteral) {
+            return ((JsStringLiteral) label).getValue();
+        }
+        return null;
+    }
+
+    private static boolean isRemovableValue(@NotNull JsExpression value) {
+        if (value instanceof JsFunction || value instanceof JsNameRef) return true;
+        if (value instanceof JsInvocation) {
+            JsInvocation invocation = (JsInvocation) value;
+            // Initializers of packages have side effects
+            return !isPackageDefinition(invocation) || invocation.getArguments().get(0) == JsLiteral.NULL;
+        }
+        return false;
+    }
+
+    private static boolean isPackageDefinition(@NotNull JsInvocation invocation) {
+        JsExpression qualifier = invocation.getQualifier();
+        List<JsExpression> arguments = invocation.getArguments();
+        return qualifier instanceof JsNameRef &&
+               Namer.isPackageDefinitionMethodName(((JsNameRef) qualifier).getIdent()) &&
+               arguments.size() == 3 && arguments.get(2) instanceof JsObjectLiteral;
+    }
+
+    private class ReferenceCollector extends RecursiveJsVisitor {
+        @Override
+        public void visitNameRef(JsNameRef nameRef) {
+            reference(nameRef.getIdent());
+            super.visitNameRef(nameRef);
+        }
+
+        @Override
+        public void visitString(JsStringLiteral x) {
+            // May be used to access a member by its name
+            reference(x.getValue());
+        }
+
+        @Override
+        public void visitPropertyInitializer(JsPropertyInitializer x) {
+            // Labels declare names rather than refer to them
+            x.getValueExpr().accept(this);
+        }
+
+        @Override
+        public void visitInvocation(JsInvocation invocation) {
+            if (!isPackageDefinition(invocation)) {
+                super.visitInvocation(invocation);
+                return;
+            }
+
+            invocation.getQualifier().accept(this);
+            List<JsExpression> arguments = invocation.getArguments();
+            arguments.get(0).accept(this);
+            arguments.get(1).accept(this);
+            defineMembers(((JsObjectLiteral) arguments.get(2)).getPropertyInitializers());
+        }
+
+        @Override
+        public void visitVars(JsVars vars) {
+            for (JsVar var : vars) {
+                JsExpression value = var.getInitExpression();
+                if (value != null && Namer.nameForClassesVariable().equals(var.getName().getIdent())) {
+                    defineClasses(value);
+                }
+                else {
+                    var.accept(this);
+                }
+            }
+        }
+    }
+
+    private static class Definition {
+        private final JsNode node;
+        private final JsExpression value;
+
+        private Definition(@NotNull JsNode node, @NotNull JsExpression value) {
+            this.node = node;
+            this.value = value;
+        }
+    }
+}
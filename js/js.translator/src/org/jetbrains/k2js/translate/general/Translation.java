@@ -145,6 +145,11 @@ public final class Translation {
             }
         }
         mayBeGenerateTests(files, config, rootBlock, context);
+
+        List<String> exportedDeclarations = config.getExportedDeclarations();
+        if (exportedDeclarations != null) {
+            DeadCodeEliminator.eliminate(context.program(), exportedDeclarations);
+        }
         return context.program();
     }
 
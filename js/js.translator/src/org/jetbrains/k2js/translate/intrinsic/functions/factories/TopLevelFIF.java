@@ -247,12 +247,8 @@ public final class TopLevelFIF extends CompositeFIF {
                 @NotNull TranslationContext context
         ) {
             JetType keyType = callTranslator.getResolvedCall().getTypeArguments().values().iterator().next();
-            Name keyTypeName = JsDescriptorUtils.getNameIfStandardType(keyType);
             String collectionClassName;
-            if (keyTypeName != null &&
-                (NamePredicate.PRIMITIVE_NUMBERS.apply(keyTypeName) ||
-                 keyTypeName.asString().equals("String") ||
-                 PrimitiveType.BOOLEAN.getTypeName().equals(keyTypeName))) {
+            if (isPrimitiveKeyType(keyType)) {
                 collectionClassName = isSet ? "PrimitiveHashSet" : "PrimitiveHashMap";
             }
             else {
@@ -261,5 +257,16 @@ public final class TopLevelFIF extends CompositeFIF {
 
             return callTranslator.createConstructorCallExpression(context.namer().kotlin(collectionClassName));
         }
+
+        // Primitive collections store elements as property names of a JS object, so null would be confused with "null"
+        private static boolean isPrimitiveKeyType(@NotNull JetType keyType) {
+            if (keyType.isNullable()) return false;
+
+            Name keyTypeName = JsDescriptorUtils.getNameIfStandardType(keyType);
+            return keyTypeName != null &&
+                   (NamePredicate.PRIMITIVE_NUMBERS.apply(keyTypeName) ||
+                    keyTypeName.asString().equals("String") ||
+                    PrimitiveType.BOOLEAN.getTypeName().equals(keyTypeName));
+        }
     }
 }
@@ -0,0 +1,11 @@
+package foo
+
+class Greeting(val text: String)
+
+fun prefix(): String = "O"
+
+fun entry(): String = Greeting(prefix() + "K").text
+
+fun notExported(): String = "notExported"
+
+fun box(): String = notExported()
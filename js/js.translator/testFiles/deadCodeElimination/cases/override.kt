@@ -0,0 +1,26 @@
+package foo
+
+open class Base {
+    open fun name(): String = "base"
+}
+
+class Derived : Base() {
+    // Reachable only through the virtual call in box()
+    override fun name(): String = derivedName()
+}
+
+class UnusedDerived : Base() {
+    override fun name(): String = unusedDerivedName()
+}
+
+fun derivedName(): String = "derived"
+
+fun unusedDerivedName(): String = "unused"
+
+fun create(): Base = Derived()
+
+fun box(): String {
+    val name = create().name()
+    if (name != "derived") return "fail: $name"
+    return "OK"
+}
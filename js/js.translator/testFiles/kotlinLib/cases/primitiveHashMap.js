@@ -0,0 +1,42 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+var map = new Kotlin.PrimitiveHashMap();
+
+map.put("a", 1);
+map.put("b", 2);
+
+function test() {
+    if (map.containsKey("toString") || map.containsKey("constructor") || map.containsKey("__proto__")) return false;
+    if (map.get("hasOwnProperty") != null) return false;
+    map.put("toString", 3);
+    if (map.size() !== 3 || map.get("toString") !== 3) return false;
+
+    var other = new Kotlin.PrimitiveHashMap();
+    other.put("b", 20);
+    other.put("c", 30);
+    map.putAll(other);
+    if (map.size() !== 4 || map.get("b") !== 20 || map.get("c") !== 30) return false;
+
+    var keys = map.keySet();
+    if (keys.size() !== 4 || !keys.contains("toString") || keys.contains("valueOf")) return false;
+
+    if (map.remove("a") !== 1 || map.size() !== 3 || map.containsKey("a")) return false;
+    map.clear();
+    if (!map.isEmpty() || map.containsKey("b")) return false;
+
+    return true;
+}
@@ -429,7 +429,8 @@ Kotlin.ComplexHashMap = Kotlin.HashMap;
     Kotlin.PrimitiveHashMap = Kotlin.createClass(Kotlin.Map,
         function () {
             this.$size = 0;
-            this.map = {};
+            // No prototype: keys like "toString" are not inherited, and missing keys are not looked up along the chain
+            this.map = Object.create(null);
         }, {
             size: function () {
                 return this.$size;
@@ -443,7 +444,7 @@ Kotlin.ComplexHashMap = Kotlin.HashMap;
             containsValue: function (value) {
                 var map = this.map;
                 for (var key in map) {
-                    if (map.hasOwnProperty(key) && map[key] === value) {
+                    if (map[key] === value) {
                         return true;
                     }
                 }
@@ -471,25 +472,30 @@ Kotlin.ComplexHashMap = Kotlin.HashMap;
             },
             clear: function () {
                 this.$size = 0;
-                this.map = {};
+                this.map = Object.create(null);
             },
             putAll: function (fromMap) {
-                var map = fromMap.map;
-                for (var key in map) {
-                    if (map.hasOwnProperty(key)) {
-                        this.map[key] = map[key];
-                        this.$size++;
+                if (fromMap instanceof Kotlin.PrimitiveHashMap) {
+                    var map = fromMap.map;
+                    for (var key in map) {
+                        this.put(key, map[key]);
+                    }
+                }
+                else {
+                    var keys = fromMap.keySet().iterator();
+                    while (keys.hasNext()) {
+                        var k = keys.next();
+                        this.put(k, fromMap.get(k));
                     }
                 }
             },
             keySet: function () {
                 var result = new Kotlin.PrimitiveHashSet();
-                var map = this.map;
-                for (var key in map) {
-                    if (map.hasOwnProperty(key)) {
-                        result.add(key);
-                    }
+                var keys = Object.keys(this.map);
+                for (var i = 0, n = keys.length; i < n; i++) {
+                    result.map[keys[i]] = true;
                 }
+                result.$size = keys.length;
 
                 return result;
             },
@@ -507,7 +513,7 @@ Kotlin.Set = Kotlin.createClass(Kotlin.Collection);
 Kotlin.PrimitiveHashSet = Kotlin.createClass(Kotlin.AbstractCollection,
     function () {
         this.$size = 0;
-        this.map = {};
+        this.map = Object.create(null);
     }, {
         contains: function (key) {
             return this.map[key] === true;
@@ -535,7 +541,7 @@ Kotlin.PrimitiveHashSet = Kotlin.createClass(Kotlin.AbstractCollection,
         },
         clear: function () {
             this.$size = 0;
-            this.map = {};
+            this.map = Object.create(null);
         },
         toArray: function () {
             return Object.keys(this.map);
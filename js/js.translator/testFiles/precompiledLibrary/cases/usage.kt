@@ -0,0 +1,21 @@
+package foo
+
+import lib.*
+import lib.inner.*
+
+fun box(): String {
+    if (twice("ab") != "abab") return "fail: twice"
+    if (answer != 42) return "fail: answer"
+    if (Greeter(Greeter.DEFAULT_NAME).greet() != "Hello, world") return "fail: greet"
+
+    val greeter: Greeter = LoudGreeter("Kotlin")
+    if (greeter.greet() != "Hello, Kotlin!") return "fail: override"
+    if (Registry.size() != 3) return "fail: object"
+
+    if (greeting() != "native") return "fail: native function"
+    val counter = NativeCounter(1)
+    counter.next()
+    if (counter.next() != 3) return "fail: native class"
+
+    return "OK"
+}
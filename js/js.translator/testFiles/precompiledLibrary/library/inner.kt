@@ -0,0 +1,19 @@
+package lib.inner
+
+import lib.Greeter
+
+public class LoudGreeter(name: String) : Greeter(name) {
+    override fun greet(): String = super.greet() + "!"
+}
+
+public object Registry {
+    public fun size(): Int = 3
+}
+
+native("nativeGreeting")
+public fun greeting(): String = js.noImpl
+
+native
+public class NativeCounter(start: Int) {
+    public fun next(): Int = js.noImpl
+}
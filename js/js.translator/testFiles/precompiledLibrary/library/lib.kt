@@ -0,0 +1,17 @@
+package lib
+
+public open class Greeter(val name: String) {
+    public open fun greet(): String = "Hello, " + name
+
+    class object {
+        public val DEFAULT_NAME: String = "world"
+    }
+}
+
+public trait Named {
+    val name: String
+}
+
+public fun twice(s: String): String = s + s
+
+public val answer: Int = 42
@@ -0,0 +1,11 @@
+function nativeGreeting() {
+    return "native";
+}
+
+function NativeCounter(start) {
+    this.count = start;
+}
+
+NativeCounter.prototype.next = function () {
+    return ++this.count;
+};